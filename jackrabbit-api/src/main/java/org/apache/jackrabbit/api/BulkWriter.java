@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.api;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+
+/**
+ * A <code>BulkWriter</code> appends new node trees below a node of a
+ * workspace. It is meant for the ingestion of large amounts of machine
+ * generated content: the nodes are not added to the transient space of a
+ * session, but are persisted directly in batches of a fixed number of nodes.
+ * <p>
+ * Node trees are written in document order, i.e. a node is started with
+ * {@link #startNode(String, String, String...)}, its properties are set
+ * and its child nodes are written, and finally the node is ended with
+ * {@link #endNode()}. Node type constraints are checked once per node type
+ * and name, access control, locks and the checked-out status once for the
+ * node below which the trees are appended.
+ * <p>
+ * A bulk write is not atomic. Batches that have been persisted remain in
+ * the workspace even if a later batch fails. A batch can only be persisted
+ * if the reference properties it contains refer to existing nodes.
+ * <p>
+ * A <code>BulkWriter</code> must not be used concurrently by multiple
+ * threads and must be closed after use.
+ *
+ * @see JackrabbitWorkspace#createBulkWriter(String, int)
+ */
+public interface BulkWriter {
+
+    /**
+     * Starts a new node. The node is added as child of the currently open
+     * node, or of the target node of this writer if no node is open.
+     *
+     * @param name the name of the new node
+     * @param primaryNodeTypeName the name of the primary node type of the
+     *                            new node
+     * @param mixinNames the names of the mixin types of the new node
+     * @throws javax.jcr.ItemExistsException if a node with the same name
+     *         exists and same name siblings are not allowed
+     * @throws javax.jcr.nodetype.ConstraintViolationException if the node
+     *         is not allowed by the node type of its parent
+     * @throws RepositoryException if another error occurs
+     */
+    void startNode(String name, String primaryNodeTypeName, String... mixinNames)
+            throws RepositoryException;
+
+    /**
+     * Sets a single-valued property of the currently open node.
+     *
+     * @param name the name of the property
+     * @param value the value of the property
+     * @throws javax.jcr.nodetype.ConstraintViolationException if the
+     *         property is not allowed by the node types of the node
+     * @throws RepositoryException if no node is open or another error occurs
+     */
+    void setProperty(String name, Value value) throws RepositoryException;
+
+    /**
+     * Sets a multi-valued property of the currently open node.
+     *
+     * @param name the name of the property
+     * @param values the values of the property
+     * @throws javax.jcr.nodetype.ConstraintViolationException if the
+     *         property is not allowed by the node types of the node
+     * @throws RepositoryException if no node is open or another error occurs
+     */
+    void setProperty(String name, Value[] values) throws RepositoryException;
+
+    /**
+     * Ends the currently open node.
+     *
+     * @throws javax.jcr.nodetype.ConstraintViolationException if a
+     *         mandatory item of the node is missing
+     * @throws RepositoryException if no node is open or another error occurs
+     */
+    void endNode() throws RepositoryException;
+
+    /**
+     * Persists the nodes written since the last batch was persisted.
+     *
+     * @throws RepositoryException if the nodes cannot be persisted
+     */
+    void flush() throws RepositoryException;
+
+    /**
+     * Persists the remaining nodes and releases this writer. All started
+     * nodes must have been ended.
+     *
+     * @throws RepositoryException if the nodes cannot be persisted
+     */
+    void close() throws RepositoryException;
+
+    /**
+     * Returns the number of nodes persisted by this writer.
+     *
+     * @return number of persisted nodes
+     */
+    long getNodeCount();
+
+    /**
+     * Returns the number of nodes this writer persisted per second since it
+     * was created.
+     *
+     * @return throughput in nodes per second
+     */
+    double getNodesPerSecond();
+
+}
@@ -64,4 +64,29 @@ public interface JackrabbitWorkspace extends Workspace {
      * @throws RepositoryException If an error occurs.
      */
     PrivilegeManager getPrivilegeManager() throws RepositoryException;
+
+    /**
+     * Creates a writer that appends node trees below the node at the given
+     * path and persists them in batches of the given number of nodes,
+     * bypassing the transient space of the session.
+     * <p>
+     * The batches are persisted immediately and do not take part in a
+     * transaction the session may be associated with. Implementations that
+     * support transactions therefore reject bulk writes while a transaction
+     * is active.
+     *
+     * @param parentAbsPath the absolute path of the node below which the
+     *                      node trees are appended
+     * @param batchSize the number of nodes that are persisted at once
+     * @return the bulk writer
+     * @throws javax.jcr.PathNotFoundException if no node exists at the path
+     * @throws AccessDeniedException if the session may not add nodes below
+     *                               the node
+     * @throws RepositoryException if the node cannot be modified, a
+     *                             transaction is active or another error
+     *                             occurs
+     * @see BulkWriter
+     */
+    BulkWriter createBulkWriter(String parentAbsPath, int batchSize)
+            throws AccessDeniedException, RepositoryException;
 }
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.api.jmx;
+
+import javax.management.openmbean.TabularData;
+
+import org.apache.jackrabbit.api.stats.LatencyHistogram;
+
+/**
+ * JMX Bindings for the {@link LatencyHistogram}s of the repository
+ * operations.
+ *
+ * @since Apache Jackrabbit 2.16
+ */
+public interface LatencyStatsMBean {
+
+    String NAME = "org.apache.jackrabbit:type=LatencyStats";
+
+    /**
+     * @return one row per operation with the number of operations and the
+     *         mean, median, 99th and 99.9th percentile and maximum latency
+     *         in nano seconds
+     */
+    TabularData getLatencies();
+
+}
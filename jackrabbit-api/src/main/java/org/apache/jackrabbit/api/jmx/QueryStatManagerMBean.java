@@ -76,4 +76,16 @@ public interface QueryStatManagerMBean {
      */
     void clearPopularQueriesQueue();
 
+    /**
+     * @return the number of queries that were answered from the query
+     *         result cache
+     */
+    long getResultCacheHitCount();
+
+    /**
+     * @return the number of cacheable queries that were not found in the
+     *         query result cache
+     */
+    long getResultCacheMissCount();
+
 }
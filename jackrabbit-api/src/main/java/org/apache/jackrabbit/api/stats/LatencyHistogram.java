@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.api.stats;
+
+/**
+ * Distribution of the latencies of a repository operation since the
+ * repository was started. All values are in nano seconds. Latencies are
+ * kept in buckets that grow with the value, like an HDR histogram, so
+ * percentiles are accurate to within two percent of the value whatever
+ * its magnitude.
+ *
+ * @since Apache Jackrabbit 2.16
+ */
+public interface LatencyHistogram {
+
+    /**
+     * Returns the number of recorded operations.
+     *
+     * @return number of operations
+     */
+    long getCount();
+
+    /**
+     * Returns the mean latency of the recorded operations.
+     *
+     * @return mean latency in nano seconds, or <code>0</code> if no
+     *         operation was recorded
+     */
+    long getMean();
+
+    /**
+     * Returns the highest recorded latency.
+     *
+     * @return maximum latency in nano seconds, or <code>0</code> if no
+     *         operation was recorded
+     */
+    long getMax();
+
+    /**
+     * Returns the latency that the given percentage of the recorded
+     * operations did not exceed, for example the median for
+     * <code>50</code> or the 99th percentile for <code>99</code>.
+     *
+     * @param percentile percentile between <code>0</code> and
+     *                   <code>100</code>
+     * @return latency in nano seconds, or <code>0</code> if no operation
+     *         was recorded
+     */
+    long getValueAtPercentile(double percentile);
+
+}
@@ -41,6 +41,52 @@ public interface RepositoryStatistics {
         BUNDLE_COUNTER(true),
         BUNDLE_WS_SIZE_COUNTER(true),
 
+        /**
+         * Number of bundles that were compressed when written.
+         */
+        BUNDLE_COMPRESSION_COUNTER(true),
+
+        /**
+         * Total time spent compressing bundles in nano seconds.
+         */
+        BUNDLE_COMPRESSION_DURATION(true),
+
+        /**
+         * Average time spent compressing a bundle in nano seconds.
+         */
+        BUNDLE_COMPRESSION_AVERAGE(false),
+
+        /**
+         * Number of compressed bundles that were decompressed when read.
+         */
+        BUNDLE_DECOMPRESSION_COUNTER(true),
+
+        /**
+         * Total time spent decompressing bundles in nano seconds.
+         */
+        BUNDLE_DECOMPRESSION_DURATION(true),
+
+        /**
+         * Average time spent decompressing a bundle in nano seconds.
+         */
+        BUNDLE_DECOMPRESSION_AVERAGE(false),
+
+        /**
+         * Total size in bytes of the compressed bundles before compression.
+         */
+        BUNDLE_UNCOMPRESSED_SIZE_COUNTER(true),
+
+        /**
+         * Total size in bytes of the compressed bundles after compression.
+         */
+        BUNDLE_COMPRESSED_SIZE_COUNTER(true),
+
+        /**
+         * Size of the compressed bundles after compression in percent of
+         * their size before compression.
+         */
+        BUNDLE_COMPRESSION_RATIO(false),
+
         /**
          * Number of read accesses through any session.
          */
@@ -141,7 +187,67 @@ public interface RepositoryStatistics {
         }
     }
 
+    /**
+     * The operations whose latencies are returned by
+     * {@link #getLatencyHistogram(LatencyType)}.
+     */
+    enum LatencyType {
+
+        /**
+         * Read operations through any session.
+         */
+        SESSION_READ,
+
+        /**
+         * Write operations through any session.
+         */
+        SESSION_WRITE,
+
+        /**
+         * Bundle reads of the persistence managers, including the ones
+         * answered from the bundle cache. Cache misses are all timed, cache
+         * hits only by a sample that counts for the hits it stands for.
+         */
+        BUNDLE_READ,
+
+        /**
+         * Bundle writes of the persistence managers.
+         */
+        BUNDLE_WRITE,
+
+        /**
+         * Bundle reads of the persistence managers that missed the bundle
+         * cache.
+         */
+        BUNDLE_CACHE_MISS,
+
+        /**
+         * Query executions.
+         */
+        QUERY,
+
+        /**
+         * Commits of the changes of a save to the search indexes.
+         */
+        INDEX_COMMIT,
+
+        /**
+         * Records appended to the cluster journal.
+         */
+        JOURNAL_APPEND
+
+    }
+
     TimeSeries getTimeSeries(Type type);
 
     TimeSeries getTimeSeries(String type, boolean resetValueEachSecond);
+
+    /**
+     * Returns the latency distribution of the given operation.
+     *
+     * @param type operation
+     * @return latency histogram
+     * @since Apache Jackrabbit 2.16
+     */
+    LatencyHistogram getLatencyHistogram(LatencyType type);
 }
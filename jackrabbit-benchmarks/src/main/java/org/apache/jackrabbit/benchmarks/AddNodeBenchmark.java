@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>NodeImpl.addNode</code> followed by
+ * <code>SessionImpl.save</code>. Each thread has its own session and adds
+ * nodes below its own node, in folders of at most 1000 nodes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AddNodeBenchmark {
+
+    private static final int FOLDER_SIZE = 1000;
+
+    @Param({"memory", "derby", "h2"})
+    public String backend;
+
+    /**
+     * Number of nodes added before the session is saved.
+     */
+    @Param({"1", "100"})
+    public int nodesPerSave;
+
+    private RepositoryFixture fixture;
+
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new RepositoryFixture(backend);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.dispose();
+    }
+
+    @State(Scope.Thread)
+    public static class SessionState {
+
+        private Session session;
+
+        private Node parent;
+
+        private Node folder;
+
+        private int count;
+
+        @Setup(Level.Iteration)
+        public void setUp(AddNodeBenchmark benchmark) throws Exception {
+            session = benchmark.fixture.login();
+            parent = session.getRootNode().addNode(
+                    "thread" + benchmark.threads.incrementAndGet(),
+                    "nt:unstructured");
+            session.save();
+            count = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws Exception {
+            parent.remove();
+            session.save();
+            session.logout();
+        }
+
+    }
+
+    @Benchmark
+    public void addNodes(SessionState state) throws Exception {
+        for (int i = 0; i < nodesPerSave; i++) {
+            if (state.count % FOLDER_SIZE == 0) {
+                state.folder = state.parent.addNode(
+                        "folder" + state.count / FOLDER_SIZE, "nt:unstructured");
+            }
+            Node node = state.folder.addNode(
+                    "node" + state.count++, "nt:unstructured");
+            node.setProperty("title", "title" + state.count);
+        }
+        state.session.save();
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.util.BundleBinding;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.PropertyEntry;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>BundleWriter</code> and <code>BundleReader</code>, through
+ * {@link BundleBinding}, for bundles of the given shape.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BundleBindingBenchmark {
+
+    private static final NameFactory FACTORY = NameFactoryImpl.getInstance();
+
+    @Param({"10"})
+    public int properties;
+
+    /**
+     * Number of values of each property.
+     */
+    @Param({"1", "20"})
+    public int values;
+
+    @Param({"10", "1000"})
+    public int childNodes;
+
+    private final BundleBinding binding =
+        new BundleBinding(null, null, null, null, null);
+
+    private NodePropBundle bundle;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws Exception {
+        bundle = new NodePropBundle(new NodeId(0, 1));
+        bundle.setParentId(new NodeId(0, 0));
+        bundle.setNodeTypeName(NameConstants.NT_UNSTRUCTURED);
+        bundle.setMixinTypeNames(Collections.<Name>emptySet());
+        bundle.setSharedSet(Collections.<NodeId>emptySet());
+        for (int p = 0; p < properties; p++) {
+            PropertyEntry property = new PropertyEntry(new PropertyId(
+                    bundle.getId(), FACTORY.create("", "property" + p)));
+            InternalValue[] array = new InternalValue[values];
+            for (int v = 0; v < values; v++) {
+                switch (p % 3) {
+                case 0:
+                    array[v] = InternalValue.create("value " + v);
+                    break;
+                case 1:
+                    array[v] = InternalValue.create(Calendar.getInstance());
+                    break;
+                default:
+                    array[v] = InternalValue.create((long) v);
+                }
+            }
+            property.setType(array[0].getType());
+            property.setMultiValued(values > 1);
+            property.setValues(array);
+            bundle.addProperty(property);
+        }
+        for (int c = 0; c < childNodes; c++) {
+            bundle.addChildNodeEntry(
+                    FACTORY.create("", "child" + c), new NodeId(1, c));
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        binding.writeBundle(buffer, bundle);
+        data = buffer.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeBundle() throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length);
+        binding.writeBundle(buffer, bundle);
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public NodePropBundle readBundle() throws Exception {
+        return binding.readBundle(
+                new ByteArrayInputStream(data), bundle.getId());
+    }
+
+    /**
+     * Reads a bundle and decodes all property values, which are decoded
+     * lazily by the current bundle format.
+     */
+    @Benchmark
+    public int readBundleAndValues() throws Exception {
+        NodePropBundle read = binding.readBundle(
+                new ByteArrayInputStream(data), bundle.getId());
+        int count = 0;
+        for (PropertyEntry property : read.getPropertyEntries()) {
+            count += property.getValues().length;
+        }
+        return count;
+    }
+
+}
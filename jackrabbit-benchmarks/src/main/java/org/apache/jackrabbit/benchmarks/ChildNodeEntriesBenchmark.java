@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.ChildNodeEntry;
+import org.apache.jackrabbit.core.state.ItemState;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the child node entries of a node state with the given number of
+ * child nodes: looking up an entry, listing and iterating the entries, and
+ * adding or removing an entry in a copy of the state, as done by the
+ * transient and the shared item state layers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChildNodeEntriesBenchmark {
+
+    private static final NameFactory FACTORY = NameFactoryImpl.getInstance();
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private NodeState state;
+
+    private Name[] names;
+
+    private NodeId[] ids;
+
+    private final Name newName = FACTORY.create("", "new");
+
+    private final NodeId newId = NodeId.randomId();
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        state = new NodeState(
+                NodeId.randomId(), NameConstants.NT_UNSTRUCTURED, null,
+                ItemState.STATUS_EXISTING, false);
+        names = new Name[size];
+        ids = new NodeId[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = FACTORY.create("", "node" + i);
+            ids[i] = NodeId.randomId();
+            state.addChildNodeEntry(names[i], ids[i]);
+        }
+    }
+
+    private int next() {
+        next = (next + 7919) % size;
+        return next;
+    }
+
+    @Benchmark
+    public ChildNodeEntry getByName() {
+        return state.getChildNodeEntry(names[next()], 1);
+    }
+
+    @Benchmark
+    public ChildNodeEntry getById() {
+        return state.getChildNodeEntry(ids[next()]);
+    }
+
+    @Benchmark
+    public List<ChildNodeEntry> list() {
+        return state.getChildNodeEntries();
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (ChildNodeEntry entry : state.getChildNodeEntries()) {
+            blackhole.consume(entry);
+        }
+    }
+
+    @Benchmark
+    public List<ChildNodeEntry> listCopyAfterAdd() {
+        NodeState copy = new NodeState(state, ItemState.STATUS_EXISTING, true);
+        copy.addChildNodeEntry(newName, newId);
+        return copy.getChildNodeEntries();
+    }
+
+    @Benchmark
+    public NodeState addToCopy() {
+        NodeState copy = new NodeState(state, ItemState.STATUS_EXISTING, true);
+        copy.addChildNodeEntry(newName, newId);
+        return copy;
+    }
+
+    @Benchmark
+    public NodeState removeFromCopy() {
+        NodeState copy = new NodeState(state, ItemState.STATUS_EXISTING, true);
+        copy.removeChildNodeEntry(ids[next()]);
+        return copy;
+    }
+
+}
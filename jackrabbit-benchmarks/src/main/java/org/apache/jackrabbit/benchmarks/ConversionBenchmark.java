@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.NamespaceException;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.commons.conversion.CachingNameResolver;
+import org.apache.jackrabbit.spi.commons.conversion.CachingPathResolver;
+import org.apache.jackrabbit.spi.commons.conversion.NameParser;
+import org.apache.jackrabbit.spi.commons.conversion.NameResolver;
+import org.apache.jackrabbit.spi.commons.conversion.ParsingNameResolver;
+import org.apache.jackrabbit.spi.commons.conversion.ParsingPathResolver;
+import org.apache.jackrabbit.spi.commons.conversion.PathParser;
+import org.apache.jackrabbit.spi.commons.conversion.PathResolver;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.jackrabbit.spi.commons.namespace.NamespaceMapping;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversion of JCR names and paths by {@link NameParser},
+ * {@link PathParser} and the caching resolvers. The resolvers are shared by
+ * all threads, as by the sessions of a repository; run with <code>-t</code>
+ * to convert concurrently.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+
+    /**
+     * Number of distinct names, about the size of a working set.
+     */
+    @Param({"500"})
+    public int names;
+
+    private String[] jcrNames;
+
+    private String[] jcrPaths;
+
+    private NamespaceMapping namespaces;
+
+    private NameResolver parsingNameResolver;
+
+    private NameResolver cachingNameResolver;
+
+    private PathResolver cachingPathResolver;
+
+    /**
+     * The position of a thread in the names and paths.
+     */
+    @State(Scope.Thread)
+    public static class Position {
+
+        private int next;
+
+        private int next(int size) {
+            next = (next + 7919) % size;
+            return next;
+        }
+
+    }
+
+    @Setup
+    public void setUp() throws NamespaceException {
+        jcrNames = new String[names];
+        jcrPaths = new String[names];
+        for (int i = 0; i < names; i++) {
+            jcrNames[i] = (i % 3 == 0 ? "jcr:" : "") + "name" + i;
+            jcrPaths[i] = "/content/site" + (i % 10) + "/" + jcrNames[i] + "/jcr:content";
+        }
+        namespaces = new NamespaceMapping();
+        namespaces.setMapping(Name.NS_EMPTY_PREFIX, Name.NS_DEFAULT_URI);
+        namespaces.setMapping(Name.NS_JCR_PREFIX, Name.NS_JCR_URI);
+        parsingNameResolver = new ParsingNameResolver(
+                NameFactoryImpl.getInstance(), namespaces);
+        cachingNameResolver = new CachingNameResolver(parsingNameResolver);
+        cachingPathResolver = new CachingPathResolver(new ParsingPathResolver(
+                PathFactoryImpl.getInstance(), parsingNameResolver));
+    }
+
+    @Benchmark
+    public Name parseName(Position position) throws Exception {
+        return NameParser.parse(
+                jcrNames[position.next(names)], namespaces,
+                NameFactoryImpl.getInstance());
+    }
+
+    @Benchmark
+    public Path parsePath(Position position) throws Exception {
+        return PathParser.parse(
+                jcrPaths[position.next(names)], parsingNameResolver,
+                PathFactoryImpl.getInstance());
+    }
+
+    @Benchmark
+    public String cachingNameResolver(Position position) throws Exception {
+        Name name = cachingNameResolver.getQName(jcrNames[position.next(names)]);
+        return cachingNameResolver.getJCRName(name);
+    }
+
+    @Benchmark
+    public String cachingPathResolver(Position position) throws Exception {
+        Path path = cachingPathResolver.getQPath(jcrPaths[position.next(names)]);
+        return cachingPathResolver.getJCRPath(path);
+    }
+
+}
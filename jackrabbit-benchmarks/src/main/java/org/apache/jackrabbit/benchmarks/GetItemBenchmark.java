@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.core.ItemImpl;
+import org.apache.jackrabbit.core.ItemManager;
+import org.apache.jackrabbit.core.NodeImpl;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>ItemManager.getItem</code> by id and by path on a tree of
+ * the given shape. Each thread has its own session; run with
+ * <code>-t</code> to read concurrently.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetItemBenchmark {
+
+    @Param({"memory", "derby", "h2"})
+    public String backend;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"10"})
+    public int fanout;
+
+    private RepositoryFixture fixture;
+
+    private List<String> paths;
+
+    private List<NodeId> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new RepositoryFixture(backend);
+        Session session = fixture.login();
+        try {
+            List<Node> nodes = new ArrayList<Node>();
+            RepositoryFixture.createTree(
+                    session.getRootNode(), "tree", depth, fanout, nodes);
+            paths = new ArrayList<String>(nodes.size());
+            ids = new ArrayList<NodeId>(nodes.size());
+            for (Node node : nodes) {
+                paths.add(node.getPath());
+                ids.add(((NodeImpl) node).getNodeId());
+            }
+        } finally {
+            session.logout();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.dispose();
+    }
+
+    @State(Scope.Thread)
+    public static class SessionState {
+
+        private SessionImpl session;
+
+        private ItemManager itemManager;
+
+        private Path[] paths;
+
+        private NodeId[] ids;
+
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(GetItemBenchmark benchmark) throws Exception {
+            session = (SessionImpl) benchmark.fixture.login();
+            itemManager = session.getItemManager();
+            paths = new Path[benchmark.paths.size()];
+            for (int i = 0; i < paths.length; i++) {
+                paths[i] = session.getQPath(benchmark.paths.get(i));
+            }
+            ids = benchmark.ids.toArray(new NodeId[benchmark.ids.size()]);
+            next = System.identityHashCode(this);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            session.logout();
+        }
+
+        /**
+         * Returns the index of the next item to read. The items are visited
+         * in a different order than they were created.
+         */
+        private int next() {
+            next = (next + 7919) & Integer.MAX_VALUE;
+            return next % ids.length;
+        }
+
+    }
+
+    @Benchmark
+    public ItemImpl getItemById(SessionState state) throws Exception {
+        return state.itemManager.getItem(state.ids[state.next()]);
+    }
+
+    @Benchmark
+    public ItemImpl getItemByPath(SessionState state) throws Exception {
+        return state.itemManager.getItem(state.paths[state.next()]);
+    }
+
+}
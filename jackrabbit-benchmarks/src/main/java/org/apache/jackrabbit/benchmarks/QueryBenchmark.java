@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the evaluation of queries by the <code>SearchIndex</code>,
+ * including reading the result nodes, on a tree of the given shape. Each
+ * thread has its own session; run with <code>-t</code> to query
+ * concurrently.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    @Param({"memory", "derby", "h2"})
+    public String backend;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"10"})
+    public int fanout;
+
+    private RepositoryFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new RepositoryFixture(backend);
+        Session session = fixture.login();
+        try {
+            RepositoryFixture.createTree(
+                    session.getRootNode(), "tree", depth, fanout, null);
+        } finally {
+            session.logout();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.dispose();
+    }
+
+    @State(Scope.Thread)
+    public static class SessionState {
+
+        private Session session;
+
+        private QueryManager queryManager;
+
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(QueryBenchmark benchmark) throws Exception {
+            session = benchmark.fixture.login();
+            queryManager = session.getWorkspace().getQueryManager();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            session.logout();
+        }
+
+        private String nextTitle() {
+            next = (next + 1) % 100;
+            return "title" + next;
+        }
+
+    }
+
+    @Benchmark
+    public long xpathPropertyEquals(SessionState state) throws Exception {
+        return execute(state.queryManager.createQuery(
+                "/jcr:root/tree//*[@title = '" + state.nextTitle() + "']",
+                Query.XPATH));
+    }
+
+    @Benchmark
+    public long xpathRangeOrderBy(SessionState state) throws Exception {
+        return execute(state.queryManager.createQuery(
+                "/jcr:root/tree//*[@count < 100] order by @title",
+                Query.XPATH));
+    }
+
+    @Benchmark
+    public long sql2PropertyEquals(SessionState state) throws Exception {
+        return execute(state.queryManager.createQuery(
+                "SELECT * FROM [nt:unstructured] AS n"
+                + " WHERE ISDESCENDANTNODE(n, '/tree')"
+                + " AND n.[title] = '" + state.nextTitle() + "'",
+                Query.JCR_SQL2));
+    }
+
+    /**
+     * Executes the query and reads the result nodes.
+     */
+    private static long execute(Query query) throws Exception {
+        long count = 0;
+        for (NodeIterator nodes = query.execute().getNodes(); nodes.hasNext(); ) {
+            count += nodes.nextNode().getDepth();
+        }
+        return count;
+    }
+
+}
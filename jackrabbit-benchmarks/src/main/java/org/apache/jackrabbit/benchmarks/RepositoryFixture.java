@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+
+/**
+ * A repository created in a temporary directory for a benchmark. The
+ * backend is one of
+ * <ul>
+ * <li><code>memory</code>: {@link org.apache.jackrabbit.core.persistence.mem.InMemBundlePersistenceManager}</li>
+ * <li><code>derby</code>: {@link org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager}</li>
+ * <li><code>h2</code>: {@link org.apache.jackrabbit.core.persistence.pool.H2PersistenceManager}</li>
+ * </ul>
+ * The search index is kept in a
+ * {@link org.apache.jackrabbit.core.query.lucene.directory.RAMDirectoryManager}
+ * with all backends.
+ */
+public class RepositoryFixture {
+
+    private final File home;
+
+    private final RepositoryImpl repository;
+
+    /**
+     * Creates a repository.
+     *
+     * @param backend the name of the backend
+     * @throws Exception if the repository cannot be created
+     */
+    public RepositoryFixture(String backend) throws Exception {
+        home = File.createTempFile("jackrabbit-benchmark-", "");
+        home.delete();
+        home.mkdirs();
+        String resource = "repository-" + backend + ".xml";
+        InputStream xml = RepositoryFixture.class.getResourceAsStream(resource);
+        if (xml == null) {
+            throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+        try {
+            repository = RepositoryImpl.create(
+                    RepositoryConfig.create(xml, home.getPath()));
+        } finally {
+            xml.close();
+        }
+    }
+
+    /**
+     * Logs in as administrator.
+     *
+     * @return a new session
+     * @throws RepositoryException if the login fails
+     */
+    public Session login() throws RepositoryException {
+        return repository.login(
+                new SimpleCredentials("admin", "admin".toCharArray()));
+    }
+
+    /**
+     * Shuts down the repository and deletes its directory.
+     *
+     * @throws IOException if the directory cannot be deleted
+     */
+    public void dispose() throws IOException {
+        repository.shutdown();
+        FileUtils.deleteDirectory(home);
+    }
+
+    /**
+     * Creates a tree of <code>nt:unstructured</code> nodes. Each node has
+     * a <code>title</code> property with one of 100 values and a
+     * <code>count</code> property with its sequence number. The changes
+     * are saved after each node of the level above the leaves.
+     *
+     * @param parent the parent of the tree
+     * @param name the name of the root node of the tree
+     * @param depth the number of levels below the root node of the tree
+     * @param fanout the number of child nodes of each node
+     * @param nodes receives the nodes of the tree in depth-first order,
+     *              or <code>null</code>
+     * @return the root node of the tree
+     * @throws RepositoryException if the tree cannot be created
+     */
+    public static Node createTree(
+            Node parent, String name, int depth, int fanout, List<Node> nodes)
+            throws RepositoryException {
+        Node root = parent.addNode(name, "nt:unstructured");
+        parent.getSession().save();
+        addChildren(root, depth, fanout, nodes, new int[1]);
+        return root;
+    }
+
+    private static void addChildren(
+            Node node, int depth, int fanout, List<Node> nodes, int[] count)
+            throws RepositoryException {
+        if (depth == 0) {
+            return;
+        }
+        for (int i = 0; i < fanout; i++) {
+            Node child = node.addNode("node" + i, "nt:unstructured");
+            child.setProperty("title", "title" + (count[0] % 100));
+            child.setProperty("count", count[0]++);
+            if (nodes != null) {
+                nodes.add(child);
+            }
+            addChildren(child, depth - 1, fanout, nodes, count);
+        }
+        if (depth == 1) {
+            node.getSession().save();
+        }
+    }
+
+}
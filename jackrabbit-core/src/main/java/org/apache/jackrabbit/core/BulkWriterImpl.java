@@ -0,0 +1,677 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.AccessDeniedException;
+import javax.jcr.ItemExistsException;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.nodetype.ConstraintViolationException;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.Privilege;
+
+import org.apache.jackrabbit.api.BulkWriter;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.nodetype.EffectiveNodeType;
+import org.apache.jackrabbit.core.nodetype.NodeTypeConflictException;
+import org.apache.jackrabbit.core.nodetype.NodeTypeRegistry;
+import org.apache.jackrabbit.core.security.AccessManager;
+import org.apache.jackrabbit.core.security.authorization.Permission;
+import org.apache.jackrabbit.core.session.SessionContext;
+import org.apache.jackrabbit.core.state.ChangeLog;
+import org.apache.jackrabbit.core.state.ItemState;
+import org.apache.jackrabbit.core.state.ItemStateException;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.jackrabbit.core.state.PropertyState;
+import org.apache.jackrabbit.core.state.SharedItemStateManager;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.QItemDefinition;
+import org.apache.jackrabbit.spi.QNodeDefinition;
+import org.apache.jackrabbit.spi.QNodeTypeDefinition;
+import org.apache.jackrabbit.spi.QPropertyDefinition;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.jackrabbit.value.ValueHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>BulkWriterImpl</code> builds the change logs of the written node
+ * trees directly, bypassing the transient space and the item manager of the
+ * session, and persists them through the shared item state manager of the
+ * workspace whenever the configured number of nodes has been written.
+ * <p>
+ * The applicable item definitions are looked up once per effective node type
+ * and item name (and property type) and cached for the lifetime of the
+ * writer. Locks, the checked-out status, holds and retention policies are
+ * checked once for the target node; the written trees inherit them. Like a
+ * save, the writer checks the permission to add each node and to set each
+ * property on the path of the item, so that access control entries with
+ * restrictions below the target node are respected. Versionable nodes are not
+ * supported, since they require a version history to be created along with
+ * the node.
+ * <p>
+ * The batches are persisted immediately and can therefore not take part in
+ * a transaction of an {@link XASessionImpl}. A writer can neither be created
+ * nor persist a batch while the session is associated with a transaction.
+ */
+class BulkWriterImpl implements BulkWriter {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger log = LoggerFactory.getLogger(BulkWriterImpl.class);
+
+    /**
+     * Privileges the session needs on the target node.
+     */
+    private static final String[] PRIVILEGES = {
+            Privilege.JCR_ADD_CHILD_NODES,
+            Privilege.JCR_MODIFY_PROPERTIES,
+            Privilege.JCR_NODE_TYPE_MANAGEMENT
+    };
+
+    /**
+     * Component context of the writing session.
+     */
+    private final SessionContext context;
+
+    /**
+     * The workspace whose states are written.
+     */
+    private final WorkspaceImpl workspace;
+
+    /**
+     * Shared item state manager of the workspace.
+     */
+    private final SharedItemStateManager stateMgr;
+
+    /**
+     * Node type registry.
+     */
+    private final NodeTypeRegistry ntReg;
+
+    /**
+     * Access manager of the session.
+     */
+    private final AccessManager accessMgr;
+
+    /**
+     * Sets the values of auto-created properties.
+     */
+    private final NodeTypeInstanceHandler instanceHandler;
+
+    /**
+     * Number of nodes after which the changes are persisted.
+     */
+    private final int batchSize;
+
+    /**
+     * Cached node and property definitions.
+     */
+    private final Map<DefinitionKey, QItemDefinition> definitions =
+            new HashMap<DefinitionKey, QItemDefinition>();
+
+    /**
+     * The open nodes, the innermost first. The last entry is the target node.
+     */
+    private final LinkedList<OpenNode> openNodes = new LinkedList<OpenNode>();
+
+    /**
+     * Changes that have not been persisted yet.
+     */
+    private ChangeLog changes = new ChangeLog();
+
+    /**
+     * Number of nodes in {@link #changes}.
+     */
+    private int pending;
+
+    /**
+     * Number of persisted nodes.
+     */
+    private long nodeCount;
+
+    /**
+     * Creation time of this writer, in nanoseconds.
+     */
+    private final long startTime = System.nanoTime();
+
+    /**
+     * Whether this writer has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a writer that appends node trees below the given node.
+     *
+     * @param context   component context of the session.
+     * @param workspace the workspace.
+     * @param target    the node below which the trees are written.
+     * @param batchSize number of nodes after which changes are persisted.
+     * @throws AccessDeniedException if the session may not add nodes below
+     *                               the target node.
+     * @throws RepositoryException   if the target node cannot be modified.
+     */
+    BulkWriterImpl(SessionContext context, WorkspaceImpl workspace,
+                   NodeImpl target, int batchSize)
+            throws AccessDeniedException, RepositoryException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size must be positive: " + batchSize);
+        }
+        checkNoTransaction(context);
+        context.getItemValidator().checkModify(target,
+                ItemValidator.CHECK_LOCK | ItemValidator.CHECK_CHECKED_OUT
+                | ItemValidator.CHECK_CONSTRAINTS | ItemValidator.CHECK_HOLD
+                | ItemValidator.CHECK_RETENTION
+                | ItemValidator.CHECK_PENDING_CHANGES_ON_NODE,
+                Permission.NONE);
+        AccessControlManager acMgr =
+                context.getSessionImpl().getAccessControlManager();
+        Privilege[] privileges = new Privilege[PRIVILEGES.length];
+        for (int i = 0; i < PRIVILEGES.length; i++) {
+            privileges[i] = acMgr.privilegeFromName(PRIVILEGES[i]);
+        }
+        if (!acMgr.hasPrivileges(target.getPath(), privileges)) {
+            throw new AccessDeniedException(
+                    target.safeGetJCRPath() + ": not allowed to add nodes");
+        }
+
+        this.context = context;
+        this.workspace = workspace;
+        this.stateMgr = workspace.getSharedItemStateManager();
+        this.ntReg = context.getNodeTypeRegistry();
+        this.accessMgr = context.getAccessManager();
+        this.instanceHandler = new NodeTypeInstanceHandler(
+                context.getSessionImpl().getUserID());
+        this.batchSize = batchSize;
+
+        NodeState state = (NodeState) target.getItemState();
+        openNodes.add(new OpenNode(
+                state.getNodeId(), target.getPrimaryPath(), getEffectiveNodeType(state)));
+    }
+
+    //---------------------------------------------------------< BulkWriter >
+
+    public void startNode(String name, String primaryNodeTypeName, String... mixinNames)
+            throws RepositoryException {
+        sanityCheck();
+        Name nodeName = context.getQName(name);
+        Name ntName = context.getQName(primaryNodeTypeName);
+        Set<Name> mixins = new LinkedHashSet<Name>();
+        for (String mixinName : mixinNames) {
+            Name mixin = context.getQName(mixinName);
+            QNodeTypeDefinition ntDef = ntReg.getNodeTypeDef(mixin);
+            if (!ntDef.isMixin()) {
+                throw new ConstraintViolationException(mixinName + " is not a mixin.");
+            }
+            if (ntDef.isAbstract()) {
+                throw new ConstraintViolationException(mixinName + " is abstract.");
+            }
+            mixins.add(mixin);
+        }
+
+        OpenNode parent = openNodes.getFirst();
+        QNodeDefinition def = getNodeDefinition(parent.ent, nodeName, ntName);
+        if (def.isAutoCreated()) {
+            throw new ConstraintViolationException(
+                    nodeName + " is auto-created and can not be manually added");
+        }
+        try {
+            NodeState parentState = getNodeState(parent.id);
+            Path path = getChildPath(parentState, parent.path, nodeName);
+            checkPermission(path, Permission.ADD_NODE | Permission.NODE_TYPE_MNGMT);
+            NodeState state = addNode(parentState, path, ntName, mixins, def);
+            openNodes.addFirst(new OpenNode(
+                    state.getNodeId(), path, getEffectiveNodeType(state)));
+        } catch (ItemStateException e) {
+            throw new RepositoryException("Unable to add node " + name, e);
+        }
+    }
+
+    public void setProperty(String name, Value value) throws RepositoryException {
+        if (value == null) {
+            sanityCheck();
+            return;
+        }
+        setProperty(name, new Value[] {value}, false);
+    }
+
+    public void setProperty(String name, Value[] values) throws RepositoryException {
+        if (values == null) {
+            sanityCheck();
+            return;
+        }
+        setProperty(name, values, true);
+    }
+
+    public void endNode() throws RepositoryException {
+        sanityCheck();
+        if (openNodes.size() < 2) {
+            throw new RepositoryException("No open node");
+        }
+        OpenNode node = openNodes.getFirst();
+        try {
+            NodeState state = (NodeState) changes.get(node.id);
+            if (state == null) {
+                state = (NodeState) stateMgr.getItemState(node.id);
+            }
+            for (QPropertyDefinition pd : node.ent.getMandatoryPropDefs()) {
+                if (!pd.definesResidual() && !state.hasPropertyName(pd.getName())) {
+                    throw new ConstraintViolationException(
+                            "mandatory property " + pd.getName() + " does not exist");
+                }
+            }
+            for (QNodeDefinition nd : node.ent.getMandatoryNodeDefs()) {
+                if (!nd.definesResidual() && !state.hasChildNodeEntry(nd.getName())) {
+                    throw new ConstraintViolationException(
+                            "mandatory child node " + nd.getName() + " does not exist");
+                }
+            }
+        } catch (ItemStateException e) {
+            throw new RepositoryException("Unable to end node " + node.id, e);
+        }
+        openNodes.removeFirst();
+        if (pending >= batchSize) {
+            persist();
+        }
+    }
+
+    public void flush() throws RepositoryException {
+        sanityCheck();
+        persist();
+    }
+
+    public void close() throws RepositoryException {
+        sanityCheck();
+        if (openNodes.size() > 1) {
+            throw new RepositoryException(
+                    (openNodes.size() - 1) + " nodes have not been ended");
+        }
+        persist();
+        closed = true;
+        log.debug("Bulk write of {} nodes completed ({} nodes/s)",
+                nodeCount, (long) getNodesPerSecond());
+    }
+
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public double getNodesPerSecond() {
+        long elapsed = Math.max(1, System.nanoTime() - startTime);
+        return nodeCount * 1000000000.0 / elapsed;
+    }
+
+    //------------------------------------------------------------< private >
+
+    private void sanityCheck() throws RepositoryException {
+        if (closed) {
+            throw new RepositoryException("Bulk writer has been closed");
+        }
+        context.getSessionState().checkAlive();
+    }
+
+    private void setProperty(String name, Value[] values, boolean multiple)
+            throws RepositoryException {
+        sanityCheck();
+        if (openNodes.size() < 2) {
+            throw new RepositoryException("No open node");
+        }
+        OpenNode node = openNodes.getFirst();
+        Name propName = context.getQName(name);
+        int type = PropertyType.UNDEFINED;
+        for (Value value : values) {
+            if (value != null) {
+                type = value.getType();
+                break;
+            }
+        }
+        QPropertyDefinition def = getPropertyDefinition(node.ent, propName, type, multiple);
+        int targetType = def.getRequiredType();
+        if (targetType == PropertyType.UNDEFINED) {
+            targetType = type == PropertyType.UNDEFINED ? PropertyType.STRING : type;
+        }
+
+        int count = 0;
+        for (Value value : values) {
+            if (value != null) {
+                count++;
+            }
+        }
+        InternalValue[] internalValues = new InternalValue[count];
+        int i = 0;
+        for (Value value : values) {
+            if (value != null) {
+                if (value.getType() != targetType) {
+                    value = ValueHelper.convert(value, targetType, context.getValueFactory());
+                }
+                internalValues[i++] = InternalValue.create(value, context, context.getDataStore());
+            }
+        }
+        EffectiveNodeType.checkSetPropertyValueConstraints(def, internalValues);
+        checkPermission(PathFactoryImpl.getInstance().create(node.path, propName, true),
+                Permission.SET_PROPERTY);
+
+        try {
+            NodeState state = getNodeState(node.id);
+            PropertyState prop = getPropertyState(state, propName);
+            prop.setType(targetType);
+            prop.setMultiValued(def.isMultiple());
+            prop.setValues(internalValues);
+        } catch (ItemStateException e) {
+            throw new RepositoryException("Unable to set property " + name, e);
+        }
+    }
+
+    /**
+     * Adds a new node with its auto-created items to the change log. The
+     * permission to add the node must have been checked by the caller.
+     */
+    private NodeState addNode(NodeState parent, Path path, Name ntName,
+                              Set<Name> mixins, QNodeDefinition def)
+            throws RepositoryException {
+        Name name = path.getName();
+        if (ntName == null) {
+            ntName = def.getDefaultPrimaryType();
+        }
+        EffectiveNodeType ent = getEffectiveNodeType(ntName, mixins);
+        if (ent.includesNodeType(NameConstants.MIX_SIMPLE_VERSIONABLE)) {
+            throw new ConstraintViolationException(
+                    "Versionable nodes can not be written in bulk: " + name);
+        }
+        if (!def.allowsSameNameSiblings() && parent.hasChildNodeEntry(name)) {
+            throw new ItemExistsException(
+                    "Same name siblings are not allowed: " + name);
+        }
+
+        NodeId id = context.getNodeIdFactory().newNodeId();
+        NodeState state = new NodeState(
+                id, ntName, parent.getNodeId(), ItemState.STATUS_NEW, false);
+        if (!mixins.isEmpty()) {
+            state.setMixinTypeNames(mixins);
+        }
+        if (ent.includesNodeType(NameConstants.MIX_SHAREABLE)) {
+            state.addShare(parent.getNodeId());
+        }
+        changes.added(state);
+        parent.addChildNodeEntry(name, id);
+        pending++;
+
+        for (QPropertyDefinition pd : ent.getAutoCreatePropDefs()) {
+            createProperty(state, path, pd.getName(), pd);
+        }
+        if (!mixins.isEmpty()) {
+            createProperty(state, path, NameConstants.JCR_MIXINTYPES,
+                    ent.getApplicablePropertyDef(
+                            NameConstants.JCR_MIXINTYPES, PropertyType.NAME, true));
+        }
+        for (QNodeDefinition nd : ent.getAutoCreateNodeDefs()) {
+            Path childPath = getChildPath(state, path, nd.getName());
+            if (!nd.isProtected()) {
+                checkPermission(childPath, Permission.ADD_NODE);
+            }
+            addNode(state, childPath, null, new LinkedHashSet<Name>(), nd);
+        }
+        return state;
+    }
+
+    /**
+     * Adds a new property with its default values to the change log.
+     */
+    private void createProperty(NodeState parent, Path parentPath, Name name,
+                                QPropertyDefinition def)
+            throws RepositoryException {
+        if (!def.isProtected()) {
+            checkPermission(PathFactoryImpl.getInstance().create(parentPath, name, true),
+                    Permission.SET_PROPERTY);
+        }
+        PropertyState prop = new PropertyState(
+                new PropertyId(parent.getNodeId(), name), ItemState.STATUS_NEW, false);
+        prop.setType(def.getRequiredType() == PropertyType.UNDEFINED
+                ? PropertyType.STRING : def.getRequiredType());
+        prop.setMultiValued(def.isMultiple());
+        instanceHandler.setDefaultValues(prop, parent, def);
+        changes.added(prop);
+        parent.addPropertyName(name);
+    }
+
+    /**
+     * Returns the path of a new child node with the given name.
+     */
+    private static Path getChildPath(NodeState parent, Path parentPath, Name name)
+            throws RepositoryException {
+        int index = parent.getChildNodeEntries(name).size() + 1;
+        return PathFactoryImpl.getInstance().create(parentPath, name, index, true);
+    }
+
+    /**
+     * Checks the given permissions on the path of a new or modified item,
+     * like {@link ItemSaveOperation} does for the transient items of a save.
+     */
+    private void checkPermission(Path path, int permissions)
+            throws RepositoryException {
+        if (!accessMgr.isGranted(path, permissions)) {
+            String msg = context.getItemManager().safeGetJCRPath(path)
+                    + ": not allowed to add or modify item";
+            log.debug(msg);
+            throw new AccessDeniedException(msg);
+        }
+    }
+
+    /**
+     * Returns a node state of the change log, the node state is added as
+     * modified state if it is not part of the change log yet.
+     */
+    private NodeState getNodeState(NodeId id) throws ItemStateException {
+        NodeState state = (NodeState) changes.get(id);
+        if (state == null) {
+            state = new NodeState((NodeState) stateMgr.getItemState(id),
+                    ItemState.STATUS_EXISTING, false);
+            changes.modified(state);
+        }
+        return state;
+    }
+
+    /**
+     * Returns the property state of the change log for the given property,
+     * which is created if it does not exist yet.
+     */
+    private PropertyState getPropertyState(NodeState parent, Name name)
+            throws ItemStateException {
+        PropertyId id = new PropertyId(parent.getNodeId(), name);
+        PropertyState state = (PropertyState) changes.get(id);
+        if (state == null) {
+            if (parent.hasPropertyName(name)) {
+                state = new PropertyState((PropertyState) stateMgr.getItemState(id),
+                        ItemState.STATUS_EXISTING, false);
+                changes.modified(state);
+            } else {
+                state = new PropertyState(id, ItemState.STATUS_NEW, false);
+                changes.added(state);
+                parent.addPropertyName(name);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Checks that the session is not associated with a transaction, as the
+     * changes of a bulk write are persisted immediately and would neither be
+     * rolled back nor be isolated by the transaction.
+     *
+     * @param context component context of the session.
+     * @throws RepositoryException if a transaction is active.
+     */
+    private static void checkNoTransaction(SessionContext context)
+            throws RepositoryException {
+        SessionImpl session = context.getSessionImpl();
+        if (session instanceof XASessionImpl
+                && ((XASessionImpl) session).isAssociated()) {
+            throw new RepositoryException(
+                    "Bulk writes are not supported within a transaction");
+        }
+    }
+
+    /**
+     * Persists the pending changes and starts a new change log.
+     */
+    private void persist() throws RepositoryException {
+        if (!changes.hasUpdates()) {
+            return;
+        }
+        checkNoTransaction(context);
+        try {
+            stateMgr.update(changes, workspace);
+            changes.persisted();
+        } catch (ItemStateException e) {
+            // the open nodes may not have been persisted
+            closed = true;
+            throw new RepositoryException("Unable to persist bulk write", e);
+        } finally {
+            changes = new ChangeLog();
+        }
+        nodeCount += pending;
+        pending = 0;
+        if (log.isDebugEnabled()) {
+            log.debug("Persisted {} nodes ({} nodes/s)",
+                    nodeCount, (long) getNodesPerSecond());
+        }
+    }
+
+    private EffectiveNodeType getEffectiveNodeType(NodeState state)
+            throws RepositoryException {
+        return getEffectiveNodeType(state.getNodeTypeName(), state.getMixinTypeNames());
+    }
+
+    private EffectiveNodeType getEffectiveNodeType(Name ntName, Set<Name> mixins)
+            throws RepositoryException {
+        try {
+            return ntReg.getEffectiveNodeType(ntName, mixins);
+        } catch (NodeTypeConflictException e) {
+            throw new ConstraintViolationException(
+                    "Conflicting node types of " + ntName + " and " + mixins, e);
+        }
+    }
+
+    private QNodeDefinition getNodeDefinition(
+            EffectiveNodeType parent, Name name, Name ntName)
+            throws RepositoryException {
+        DefinitionKey key = new DefinitionKey(parent, name, ntName, false);
+        QNodeDefinition def = (QNodeDefinition) definitions.get(key);
+        if (def == null) {
+            QNodeTypeDefinition ntDef = ntReg.getNodeTypeDef(ntName);
+            if (ntDef.isAbstract()) {
+                throw new ConstraintViolationException(ntName + " is abstract.");
+            }
+            if (ntDef.isMixin()) {
+                throw new ConstraintViolationException(ntName + " is mixin.");
+            }
+            def = parent.getApplicableChildNodeDef(name, ntName, ntReg);
+            if (def.isProtected()) {
+                throw new ConstraintViolationException(name + " is protected");
+            }
+            definitions.put(key, def);
+        }
+        return def;
+    }
+
+    private QPropertyDefinition getPropertyDefinition(
+            EffectiveNodeType parent, Name name, int type, boolean multiple)
+            throws RepositoryException {
+        DefinitionKey key = new DefinitionKey(parent, name, type, multiple);
+        QPropertyDefinition def = (QPropertyDefinition) definitions.get(key);
+        if (def == null) {
+            def = parent.getApplicablePropertyDef(name, type, multiple);
+            if (def.isProtected()) {
+                throw new ConstraintViolationException(name + " is protected");
+            }
+            definitions.put(key, def);
+        }
+        return def;
+    }
+
+    /**
+     * A node that has been started but not ended.
+     */
+    private static final class OpenNode {
+
+        private final NodeId id;
+
+        private final Path path;
+
+        private final EffectiveNodeType ent;
+
+        private OpenNode(NodeId id, Path path, EffectiveNodeType ent) {
+            this.id = id;
+            this.path = path;
+            this.ent = ent;
+        }
+    }
+
+    /**
+     * Key of a cached item definition: the effective node type of the parent,
+     * the item name and the node type or property type of the item.
+     */
+    private static final class DefinitionKey {
+
+        private final EffectiveNodeType parent;
+
+        private final Name name;
+
+        private final Object type;
+
+        private final boolean multiple;
+
+        private DefinitionKey(EffectiveNodeType parent, Name name,
+                              Object type, boolean multiple) {
+            this.parent = parent;
+            this.name = name;
+            this.type = type;
+            this.multiple = multiple;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof DefinitionKey) {
+                DefinitionKey other = (DefinitionKey) obj;
+                return parent == other.parent && name.equals(other.name)
+                        && type.equals(other.type) && multiple == other.multiple;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(parent) * 31 + name.hashCode()) * 31
+                    + type.hashCode() + (multiple ? 1 : 0);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.PathNotFoundException;
@@ -29,12 +30,16 @@ import javax.jcr.RepositoryException;
 import org.apache.commons.collections.map.ReferenceMap;
 import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
 import org.apache.jackrabbit.core.state.ChildNodeEntry;
 import org.apache.jackrabbit.core.state.ItemState;
 import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.state.ItemStateManager;
+import org.apache.jackrabbit.core.state.LocalItemStateManager;
 import org.apache.jackrabbit.core.state.NodeState;
 import org.apache.jackrabbit.core.state.NodeStateListener;
+import org.apache.jackrabbit.core.state.SessionItemStateManager;
+import org.apache.jackrabbit.core.state.SharedPathCache;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.Path;
 import org.apache.jackrabbit.spi.commons.conversion.MalformedPathException;
@@ -78,9 +83,9 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
     private final ReferenceMap idCache = new ReferenceMap(ReferenceMap.HARD, ReferenceMap.HARD);
 
     /**
-     * Cache monitor object
+     * Lock that guards the cache
      */
-    private final Object cacheMonitor = new Object();
+    private final ReentrantLock cacheLock = new ReentrantLock();
 
     /**
      * Upper limit
@@ -107,6 +112,12 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      */
     private boolean consistencyCheckEnabled;
 
+    /**
+     * Paths shared with other hierarchy managers of the same workspace or
+     * <code>null</code> if not shared.
+     */
+    private SharedPathCache sharedCache;
+
     /**
      * Log interval for item state exceptions.
      */
@@ -145,6 +156,18 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
         this.consistencyCheckEnabled = enable;
     }
 
+    /**
+     * Sets the cache of persisted paths that is shared with the other
+     * hierarchy managers of the workspace. While the item state manager of
+     * this hierarchy manager has no local changes, paths are looked up in
+     * and added to the shared cache instead of the cache of this instance.
+     *
+     * @param sharedCache the shared path cache or <code>null</code>.
+     */
+    public void setSharedPathCache(SharedPathCache sharedCache) {
+        this.sharedCache = sharedCache;
+    }
+
     //-------------------------------------------------< base class overrides >
 
     /**
@@ -160,6 +183,11 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             pathToNode = path.getAncestor(1);
         }
 
+        SharedPathCache shared = getSharedCache();
+        if (shared != null && path.isCanonical()) {
+            return resolvePath(shared, path, pathToNode, typesAllowed);
+        }
+
         PathMap.Element<LRUEntry> element = map(pathToNode);
         if (element == null) {
             // not even intermediate match: call base class
@@ -169,8 +197,11 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
         LRUEntry entry = element.get();
         if (element.hasPath(path)) {
             // exact match: return answer
-            synchronized (cacheMonitor) {
+            cacheLock.lock();
+            try {
                 entry.touch();
+            } finally {
+                cacheLock.unlock();
             }
             return entry.getId();
         }
@@ -195,7 +226,7 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
     protected void pathResolved(ItemId id, PathBuilder builder)
             throws MalformedPathException {
 
-        if (id.denotesNode()) {
+        if (id.denotesNode() && getSharedCache() == null) {
             cache((NodeId) id, builder.getPath());
         }
     }
@@ -212,14 +243,13 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             PathBuilder builder, ItemState state, CycleDetector detector)
             throws ItemStateException, RepositoryException {
 
+        SharedPathCache shared = null;
+        long generation = 0;
         if (state.isNode()) {
             PathMap.Element<LRUEntry> element = get(state.getId());
             if (element != null) {
                 try {
-                    Path.Element[] elements = element.getPath().getElements();
-                    for (int i = elements.length - 1; i >= 0; i--) {
-                        builder.addFirst(elements[i]);
-                    }
+                    addFirst(builder, element.getPath());
                     return;
                 } catch (MalformedPathException mpe) {
                     String msg = "Failed to build path of " + state.getId();
@@ -227,13 +257,26 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                     throw new RepositoryException(msg, mpe);
                 }
             }
+            shared = getSharedCache();
+            if (shared != null) {
+                generation = shared.getGeneration();
+                Path path = shared.getPath((NodeId) state.getId());
+                if (path != null) {
+                    addFirst(builder, path);
+                    return;
+                }
+            }
         }
 
         super.buildPath(builder, state, detector);
 
         if (state.isNode()) {
             try {
-                cache(((NodeState) state).getNodeId(), builder.getPath());
+                if (shared != null) {
+                    shared.cache((NodeId) state.getId(), builder.getPath(), generation);
+                } else {
+                    cache(((NodeState) state).getNodeId(), builder.getPath());
+                }
             } catch (MalformedPathException mpe) {
                 log.warn("Failed to build path of " + state.getId());
             }
@@ -262,6 +305,10 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                     throw new RepositoryException(msg, mpe);
                 }
             }
+            Path path = getSharedPath(id);
+            if (path != null) {
+                return path;
+            }
         }
         return super.getPath(id);
     }
@@ -277,6 +324,10 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             if (element != null) {
                 return element.getName();
             }
+            Path path = getSharedPath(id);
+            if (path != null) {
+                return path.getName();
+            }
         }
         return super.getName(id);
     }
@@ -292,6 +343,10 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             if (element != null) {
                 return element.getDepth();
             }
+            Path path = getSharedPath(id);
+            if (path != null) {
+                return path.getDepth();
+            }
         }
         return super.getDepth(id);
     }
@@ -310,6 +365,15 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                     return element.isAncestorOf(child);
                 }
             }
+            Path path = getSharedPath(nodeId);
+            if (path != null) {
+                Path childPath = getSharedPath(itemId);
+                // shareable nodes may have other ancestors than those of
+                // the cached primary path, hence only trust a positive answer
+                if (childPath != null && path.isAncestorOf(childPath)) {
+                    return true;
+                }
+            }
         }
         return super.isAncestor(nodeId, itemId);
     }
@@ -339,7 +403,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * (longer) exist in the underlying <code>NodeState</code>.
      */
     public void nodeModified(NodeState modified) {
-        synchronized (cacheMonitor) {
+        cacheLock.lock();
+        try {
             for (PathMap.Element<LRUEntry> element
                     : getCachedPaths(modified.getNodeId())) {
                 for (PathMap.Element<LRUEntry> child : element.getChildren()) {
@@ -359,6 +424,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 }
             }
             checkConsistency();
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -403,7 +470,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * {@inheritDoc}
      */
     public void nodeAdded(NodeState state, Name name, int index, NodeId id) {
-        synchronized (cacheMonitor) {
+        cacheLock.lock();
+        try {
             if (idCache.containsKey(state.getNodeId())) {
                 // Optimization: ignore notifications for nodes that are not in the cache
                 try {
@@ -426,6 +494,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 // A top level node was added
                 evictAll(id, true);
             }
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -436,7 +506,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * child's position.
      */
     public void nodesReplaced(NodeState state) {
-        synchronized (cacheMonitor) {
+        cacheLock.lock();
+        try {
             LRUEntry entry = (LRUEntry) idCache.get(state.getNodeId());
             if (entry == null) {
                 return;
@@ -482,6 +553,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 }
             }
             checkConsistency();
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -489,7 +562,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * {@inheritDoc}
      */
     public void nodeRemoved(NodeState state, Name name, int index, NodeId id) {
-        synchronized (cacheMonitor) {
+        cacheLock.lock();
+        try {
             if (idCache.containsKey(state.getNodeId())) {
                 // Optimization: ignore notifications for nodes that are not in the cache
                 try {
@@ -512,11 +586,118 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 // A top level node was removed
                 evictAll(id, true);
             }
+        } finally {
+            cacheLock.unlock();
         }
     }
 
     //------------------------------------------------------< private methods >
 
+    /**
+     * Returns the shared path cache if it reflects the state seen by this
+     * hierarchy manager, i.e. if its item state manager has no local changes.
+     *
+     * @return the shared path cache or <code>null</code> if it must not be
+     *         used currently.
+     */
+    private SharedPathCache getSharedCache() {
+        if (sharedCache == null) {
+            return null;
+        }
+        if (provider instanceof SessionItemStateManager) {
+            if (((SessionItemStateManager) provider).hasLocalChanges()) {
+                return null;
+            }
+        } else if (provider instanceof LocalItemStateManager) {
+            if (((LocalItemStateManager) provider).hasLocalChanges()) {
+                return null;
+            }
+        }
+        return sharedCache;
+    }
+
+    /**
+     * Returns the path of the given node from the shared path cache.
+     *
+     * @param id node id
+     * @return the cached path or <code>null</code> if the shared cache
+     *         cannot be used or has no path for the node
+     */
+    private Path getSharedPath(ItemId id) {
+        SharedPathCache shared = getSharedCache();
+        if (shared != null) {
+            return shared.getPath((NodeId) id);
+        }
+        return null;
+    }
+
+    /**
+     * Resolves a path using the shared path cache. Starts at the closest
+     * ancestor-or-self of the node path that is cached and caches the
+     * resolved node.
+     *
+     * @param shared       shared path cache
+     * @param path         path to resolve
+     * @param pathToNode   path of the node to resolve: <code>path</code> or
+     *                     its parent if no node may be returned
+     * @param typesAllowed one of <code>RETURN_ANY</code>, <code>RETURN_NODE</code>
+     *                     or <code>RETURN_PROPERTY</code>
+     * @return id or <code>null</code>
+     * @throws RepositoryException if an error occurs
+     */
+    private ItemId resolvePath(SharedPathCache shared, Path path,
+                               Path pathToNode, int typesAllowed)
+            throws RepositoryException {
+
+        long generation = shared.getGeneration();
+        Path ancestor = pathToNode;
+        NodeId ancestorId = shared.getId(ancestor);
+        while (ancestorId == null && ancestor.getDepth() > 0) {
+            ancestor = ancestor.getAncestor(1);
+            ancestorId = shared.getId(ancestor);
+        }
+
+        ItemId id;
+        if (ancestorId != null && ancestor.getDepth() == path.getDepth()) {
+            // exact match
+            id = ancestorId;
+        } else if (ancestorId != null) {
+            try {
+                id = resolvePath(path.getElements(), ancestor.getDepth() + 1,
+                        ancestorId, typesAllowed);
+            } catch (ItemStateException e) {
+                // probably stale cache entry, fall back to base class
+                log.debug("failed to retrieve state of intermediary node for entry: "
+                        + ancestorId + ", path: " + path.getString());
+                id = super.resolvePath(path, typesAllowed);
+            }
+        } else {
+            id = super.resolvePath(path, typesAllowed);
+        }
+
+        if (id != null) {
+            if (id.denotesNode()) {
+                shared.cache(path, (NodeId) id, generation);
+            } else if (pathToNode != path) {
+                shared.cache(pathToNode, ((PropertyId) id).getParentId(), generation);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Adds the elements of a path to the beginning of a path builder.
+     *
+     * @param builder path builder
+     * @param path    path to add
+     */
+    private static void addFirst(PathBuilder builder, Path path) {
+        Path.Element[] elements = path.getElements();
+        for (int i = elements.length - 1; i >= 0; i--) {
+            builder.addFirst(elements[i]);
+        }
+    }
+
     /**
      * Return the first cached path that is mapped to given id.
      *
@@ -524,13 +705,16 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * @return cached element, <code>null</code> if not found
      */
     private PathMap.Element<LRUEntry> get(ItemId id) {
-        synchronized (cacheMonitor) {
+        cacheLock.lock();
+        try {
             LRUEntry entry = (LRUEntry) idCache.get(id);
             if (entry != null) {
                 entry.touch();
                 return entry.getElements()[0];
             }
             return null;
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -543,7 +727,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * @return cached element, <code>null</code> if not found
      */
     private PathMap.Element<LRUEntry> map(Path path) {
-        synchronized (cacheMonitor) {
+        cacheLock.lock();
+        try {
             PathMap.Element<LRUEntry> element = pathCache.map(path, false);
             while (element != null) {
                 LRUEntry entry = element.get();
@@ -554,6 +739,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 element = element.getParent();
             }
             return null;
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -564,7 +751,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * @param path path to item
      */
     private void cache(NodeId id, Path path) {
-        synchronized (cacheMonitor) {
+        cacheLock.lock();
+        try {
             if (isCached(id, path)) {
                 return;
             }
@@ -606,6 +794,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             element.set(entry);
 
             checkConsistency();
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -621,7 +811,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      *         <code>false</code> otherwise
      */
     boolean isCached(NodeId id, Path path) {
-        synchronized (cacheMonitor) {
+        cacheLock.lock();
+        try {
             LRUEntry entry = (LRUEntry) idCache.get(id);
             if (entry == null) {
                 return false;
@@ -636,6 +827,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 }
             }
             return false;
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -647,12 +840,15 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      *         <code>false</code> otherwise
      */
     boolean isCached(Path path) {
-        synchronized (cacheMonitor) {
+        cacheLock.lock();
+        try {
             PathMap.Element<LRUEntry> element = pathCache.map(path, true);
             if (element != null) {
                 return element.get() != null;
             }
             return false;
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -664,7 +860,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * @param id item id
      */
     private void evictAll(ItemId id, boolean shift) {
-        synchronized (cacheMonitor) {
+        cacheLock.lock();
+        try {
             LRUEntry entry = (LRUEntry) idCache.get(id);
             if (entry != null) {
                 PathMap.Element<LRUEntry>[] elements = entry.getElements();
@@ -673,6 +870,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 }
             }
             checkConsistency();
+        } finally {
+            cacheLock.unlock();
         }
     }
 
@@ -684,7 +883,7 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * @param element path map element
      */
     private void evict(PathMap.Element<LRUEntry> element, boolean shift) {
-        // assert: synchronized (cacheMonitor)
+        // assert: cacheLock is held
         element.traverse(new PathMap.ElementVisitor<LRUEntry>() {
             public void elementVisited(PathMap.Element<LRUEntry> element) {
                 LRUEntry entry = (LRUEntry) element.get();
@@ -711,7 +910,7 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
     private void nodeAdded(NodeState state, Path path, NodeId id)
             throws RepositoryException, ItemStateException {
 
-        // assert: synchronized (cacheMonitor)
+        // assert: cacheLock is held
         PathMap.Element<LRUEntry> element = null;
 
         LRUEntry entry = (LRUEntry) idCache.get(id);
@@ -756,7 +955,7 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
     private void nodeRemoved(NodeState state, Path path, NodeId id)
             throws RepositoryException, ItemStateException {
 
-        // assert: synchronized (cacheMonitor)
+        // assert: cacheLock is held
         PathMap.Element<LRUEntry> parent =
             pathCache.map(path.getAncestor(1), true);
         if (parent == null) {
@@ -795,7 +994,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      */
     public String toString() {
         final StringBuilder builder = new StringBuilder();
-        synchronized (cacheMonitor) {
+        cacheLock.lock();
+        try {
             pathCache.traverse(new PathMap.ElementVisitor<LRUEntry>() {
                 public void elementVisited(PathMap.Element<LRUEntry> element) {
                     for (int i = 0; i < element.getDepth(); i++) {
@@ -813,6 +1013,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                     builder.append("\n");
                 }
             }, true);
+        } finally {
+            cacheLock.unlock();
         }
         return builder.toString();
     }
@@ -821,7 +1023,7 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * Check consistency.
      */
     private void checkConsistency() throws IllegalStateException {
-        // assert: synchronized (cacheMonitor)
+        // assert: cacheLock is held
         if (!consistencyCheckEnabled) {
             return;
         }
@@ -1051,7 +1253,7 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
         private long timeStamp = 0;
 
         public CacheStatistics() {
-            this.id = cacheMonitor.toString();
+            this.id = Integer.toHexString(System.identityHashCode(cacheLock));
             this.cache = idCache;
         }
 
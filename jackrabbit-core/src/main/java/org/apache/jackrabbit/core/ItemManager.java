@@ -49,6 +49,7 @@ import org.apache.jackrabbit.core.state.SessionItemStateManager;
 import org.apache.jackrabbit.core.version.VersionHistoryImpl;
 import org.apache.jackrabbit.core.version.VersionImpl;
 import org.apache.jackrabbit.core.security.AccessManager;
+import org.apache.jackrabbit.core.security.BatchReadAccessManager;
 import org.apache.jackrabbit.core.session.SessionContext;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.Path;
@@ -457,6 +458,37 @@ public class ItemManager implements ItemStateListener {
         }
     }
 
+    /**
+     * Evaluates the read permission of the given child items of the node
+     * with the given id at once.
+     *
+     * @param parentId The id of the parent node.
+     * @param childIds The ids of child items of the parent node.
+     * @return an array of the same length as <code>childIds</code> indicating
+     * for each child item whether it can be read.
+     * @throws RepositoryException if an error occurs.
+     */
+    synchronized boolean[] canReadChildren(NodeId parentId, ItemId[] childIds)
+            throws RepositoryException {
+        ItemData data = getItemData(parentId, null, false);
+        AccessManager accessMgr = sessionContext.getAccessManager();
+        if (data.getStatus() == ItemState.STATUS_EXISTING
+                && accessMgr instanceof BatchReadAccessManager) {
+            // none of the child items is NEW
+            return ((BatchReadAccessManager) accessMgr).canRead(childIds);
+        }
+        boolean[] canRead = new boolean[childIds.length];
+        for (int i = 0; i < childIds.length; i++) {
+            try {
+                canRead[i] = canRead(data, childIds[i]);
+            } catch (ItemNotFoundException e) {
+                // removed in the meantime
+                canRead[i] = true;
+            }
+        }
+        return canRead;
+    }
+
     //--------------------------------------------------< item access methods >
     /**
      * Checks whether an item exists at the specified path.
@@ -17,7 +17,9 @@
 package org.apache.jackrabbit.core;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import javax.jcr.AccessDeniedException;
@@ -55,6 +57,11 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
     /** Logger instance for this class */
     private static Logger log = LoggerFactory.getLogger(LazyItemIterator.class);
 
+    /**
+     * The number of child nodes whose read permissions are evaluated at once.
+     */
+    private static final int READ_BATCH_SIZE = 100;
+
     /**
      * The session context used to access the repository.
      */
@@ -75,6 +82,12 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
     /** prefetched item to be returned on <code>{@link #next()}</code> */
     private Item next;
 
+    /**
+     * the read permissions of the child nodes evaluated ahead of the current
+     * position (only used when returning children nodes)
+     */
+    private final Map<ItemId, Boolean> readable = new HashMap<ItemId, Boolean>();
+
     /**
      * Creates a new <code>LazyItemIterator</code> instance.
      *
@@ -117,6 +130,13 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
             ItemId id = idList.get(pos);
             try {
                 if (parentId != null) {
+                    if (!isReadable(id)) {
+                        log.debug("ignoring nonexistent item " + id);
+                        // remove invalid id
+                        idList.remove(pos);
+                        // try next
+                        continue;
+                    }
                     next = itemMgr.getNode((NodeId) id, parentId);
                 } else {
                     next = itemMgr.getItem(id);
@@ -158,6 +178,38 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
         }
     }
 
+    /**
+     * Returns whether the child node with the given id, which is at the
+     * current position, can be read. The read permissions of the child nodes
+     * starting at the current position are evaluated together in batches.
+     *
+     * @param id the id of a child node.
+     * @return <code>false</code> if the child node can not be read.
+     */
+    private boolean isReadable(ItemId id) {
+        Boolean canRead = readable.get(id);
+        if (canRead == null) {
+            readable.clear();
+            int end = Math.min(pos + READ_BATCH_SIZE, idList.size());
+            ItemId[] ids = idList.subList(pos, end).toArray(new ItemId[end - pos]);
+            try {
+                boolean[] canReadIds = itemMgr.canReadChildren(parentId, ids);
+                for (int i = 0; i < ids.length; i++) {
+                    readable.put(ids[i], canReadIds[i]);
+                }
+                canRead = canReadIds[0];
+            } catch (RepositoryException e) {
+                // leave the check to the item manager
+                log.debug("failed to evaluate read permissions of child nodes of " + parentId, e);
+                for (ItemId i : ids) {
+                    readable.put(i, Boolean.TRUE);
+                }
+                canRead = Boolean.TRUE;
+            }
+        }
+        return canRead;
+    }
+
     //---------------------------------------------------------< NodeIterator >
     /**
      * {@inheritDoc}
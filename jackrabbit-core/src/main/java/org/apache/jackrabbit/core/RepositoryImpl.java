@@ -32,7 +32,10 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.jcr.AccessDeniedException;
 import javax.jcr.Credentials;
@@ -78,6 +81,8 @@ import org.apache.jackrabbit.core.fs.FileSystemResource;
 import org.apache.jackrabbit.core.gc.GarbageCollector;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.NodeIdFactory;
+import org.apache.jackrabbit.core.journal.AbstractJournal;
+import org.apache.jackrabbit.core.journal.Journal;
 import org.apache.jackrabbit.core.lock.LockManager;
 import org.apache.jackrabbit.core.lock.LockManagerImpl;
 import org.apache.jackrabbit.core.nodetype.NodeTypeRegistry;
@@ -115,10 +120,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.InputSource;
 
-import EDU.oswego.cs.dl.util.concurrent.Mutex;
-import EDU.oswego.cs.dl.util.concurrent.ReadWriteLock;
-import EDU.oswego.cs.dl.util.concurrent.ReentrantWriterPreferenceReadWriteLock;
-import EDU.oswego.cs.dl.util.concurrent.WriterPreferenceReadWriteLock;
 
 /**
  * A <code>RepositoryImpl</code> ...
@@ -228,7 +229,7 @@ public class RepositoryImpl extends AbstractRepository
      * down, but that only a single shutdown and no concurrent logins can
      * happen simultaneously.
      */
-    private final ReadWriteLock shutdownLock = new WriterPreferenceReadWriteLock();
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
 
     /**
      * There is one cache manager per repository that manages the sizes of the caches used.
@@ -665,6 +666,11 @@ public class RepositoryImpl extends AbstractRepository
         try {
             ClusterNode clusterNode = new ClusterNode();
             clusterNode.init(new ExternalEventListener());
+            Journal journal = clusterNode.getJournal();
+            if (journal instanceof AbstractJournal) {
+                ((AbstractJournal) journal).setRepositoryStatistics(
+                        context.getRepositoryStatistics());
+            }
             return clusterNode;
         } catch (Exception e) {
             throw new RepositoryException(e);
@@ -1062,7 +1068,7 @@ public class RepositoryImpl extends AbstractRepository
      */
     public void shutdown() {
         try {
-            shutdownLock.writeLock().acquire();
+            shutdownLock.writeLock().lockInterruptibly();
         } catch (InterruptedException e) {
             // TODO: Should this be a checked exception?
             throw new RuntimeException("Shutdown lock could not be acquired", e);
@@ -1074,7 +1080,7 @@ public class RepositoryImpl extends AbstractRepository
                 doShutdown();
             }
         } finally {
-            shutdownLock.writeLock().release();
+            shutdownLock.writeLock().unlock();
         }
     }
 
@@ -1465,7 +1471,7 @@ public class RepositoryImpl extends AbstractRepository
     public Session login(Credentials credentials, String workspaceName)
             throws LoginException, NoSuchWorkspaceException, RepositoryException {
         try {
-            shutdownLock.readLock().acquire();
+            shutdownLock.readLock().lockInterruptibly();
         } catch (InterruptedException e) {
             throw new RepositoryException("Login lock could not be acquired", e);
         }
@@ -1528,7 +1534,7 @@ public class RepositoryImpl extends AbstractRepository
             // authenticated subject is not authorized for the specified workspace
             throw new LoginException("Workspace access denied", ade);
         } finally {
-            shutdownLock.readLock().release();
+            shutdownLock.readLock().unlock();
         }
     }
 
@@ -1710,8 +1716,7 @@ public class RepositoryImpl extends AbstractRepository
         /**
          * lock that guards the initialization of this instance
          */
-        private final ReadWriteLock initLock =
-                new ReentrantWriterPreferenceReadWriteLock();
+        private final ReadWriteLock initLock = new ReentrantReadWriteLock();
 
         /**
          * timestamp when the workspace has been determined being idle
@@ -1719,9 +1724,11 @@ public class RepositoryImpl extends AbstractRepository
         private long idleTimestamp;
 
         /**
-         * mutex for this workspace, used for locking transactions
+         * mutex for this workspace, used for locking transactions. A
+         * semaphore is used, as the lock may be released by a different
+         * thread than the one that acquired it.
          */
-        private final Mutex xaLock = new Mutex();
+        private final Semaphore xaLock = new Semaphore(1);
 
         /**
          * Update event channel, used in clustered environment.
@@ -1792,16 +1799,12 @@ public class RepositoryImpl extends AbstractRepository
          * @return <code>true</code> if this workspace info is initialized.
          */
         protected final boolean isInitialized() {
-            try {
-                if (!initLock.readLock().attempt(0)) {
-                    return false;
-                }
-            } catch (InterruptedException e) {
+            if (!initLock.readLock().tryLock()) {
                 return false;
             }
             // can't use 'finally' pattern here
             boolean ret = initialized;
-            initLock.readLock().release();
+            initLock.readLock().unlock();
             return ret;
         }
 
@@ -2007,7 +2010,7 @@ public class RepositoryImpl extends AbstractRepository
         final boolean initialize() throws RepositoryException {
             // check initialize status
             try {
-                initLock.readLock().acquire();
+                initLock.readLock().lockInterruptibly();
             } catch (InterruptedException e) {
                 throw new RepositoryException("Unable to aquire read lock.", e);
             }
@@ -2017,12 +2020,12 @@ public class RepositoryImpl extends AbstractRepository
                     return false;
                 }
             } finally {
-                initLock.readLock().release();
+                initLock.readLock().unlock();
             }
 
             // workspace info was not initialized, now check again with write lock
             try {
-                initLock.writeLock().acquire();
+                initLock.writeLock().lockInterruptibly();
             } catch (InterruptedException e) {
                 throw new RepositoryException("Unable to aquire write lock.", e);
             }
@@ -2038,7 +2041,7 @@ public class RepositoryImpl extends AbstractRepository
                 log.info("workspace '" + getName() + "' initialized");
                 return true;
             } finally {
-                initLock.writeLock().release();
+                initLock.writeLock().unlock();
             }
         }
 
@@ -2151,10 +2154,11 @@ public class RepositoryImpl extends AbstractRepository
          */
         final void disposeIfIdle(long maxIdleTime) {
             try {
-                initLock.readLock().acquire();
+                initLock.readLock().lockInterruptibly();
             } catch (InterruptedException e) {
                 return;
             }
+            boolean idle = false;
             try {
                 if (!initialized || active) {
                     return;
@@ -2169,11 +2173,27 @@ public class RepositoryImpl extends AbstractRepository
                         log.info("disposing workspace '" + getName()
                                 + "' which has been idle for "
                                 + (currentTS - idleTimestamp) + " ms");
-                        dispose();
+                        idle = true;
                     }
                 }
             } finally {
-                initLock.readLock().release();
+                initLock.readLock().unlock();
+            }
+            // the read lock cannot be upgraded, check the state again
+            // with the write lock
+            if (idle) {
+                try {
+                    initLock.writeLock().lockInterruptibly();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    if (!active && idleTimestamp != 0) {
+                        dispose();
+                    }
+                } finally {
+                    initLock.writeLock().unlock();
+                }
             }
         }
 
@@ -2182,7 +2202,7 @@ public class RepositoryImpl extends AbstractRepository
          */
         final void dispose() {
             try {
-                initLock.writeLock().acquire();
+                initLock.writeLock().lockInterruptibly();
             } catch (InterruptedException e) {
                 throw new IllegalStateException("Unable to aquire write lock.");
             }
@@ -2201,7 +2221,7 @@ public class RepositoryImpl extends AbstractRepository
                 initialized = false;
                 log.info("workspace '" + getName() + "' has been shutdown");
             } finally {
-                initLock.writeLock().release();
+                initLock.writeLock().unlock();
             }
         }
 
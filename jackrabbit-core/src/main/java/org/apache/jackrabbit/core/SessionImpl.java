@@ -69,6 +69,7 @@ import org.apache.jackrabbit.api.security.user.Authorizable;
 import org.apache.jackrabbit.api.security.user.User;
 import org.apache.jackrabbit.api.security.user.UserManager;
 import org.apache.jackrabbit.commons.AbstractSession;
+import org.apache.jackrabbit.core.config.ImportConfig;
 import org.apache.jackrabbit.core.config.WorkspaceConfig;
 import org.apache.jackrabbit.core.gc.GarbageCollector;
 import org.apache.jackrabbit.core.id.NodeId;
@@ -940,9 +941,15 @@ public class SessionImpl extends AbstractSession
                 ItemValidator.CHECK_CONSTRAINTS | ItemValidator.CHECK_HOLD | ItemValidator.CHECK_RETENTION;
         context.getItemValidator().checkModify(parent, options, Permission.NONE);
 
+        ImportConfig importConfig =
+            context.getWorkspace().getConfig().getImportConfig();
         SessionImporter importer = new SessionImporter(
-                parent, this, uuidBehavior,
-                context.getWorkspace().getConfig().getImportConfig());
+                parent, this, uuidBehavior, importConfig);
+        if (importConfig != null) {
+            return new ImportHandler(
+                    importer, this, importConfig.getBinaryThreads(),
+                    context.getDataStore());
+        }
         return new ImportHandler(importer, this);
     }
 
@@ -39,9 +39,11 @@ import javax.jcr.version.Version;
 import javax.jcr.version.VersionException;
 import javax.jcr.version.VersionManager;
 
+import org.apache.jackrabbit.api.BulkWriter;
 import org.apache.jackrabbit.api.JackrabbitWorkspace;
 import org.apache.jackrabbit.api.security.authorization.PrivilegeManager;
 import org.apache.jackrabbit.commons.AbstractWorkspace;
+import org.apache.jackrabbit.core.config.ImportConfig;
 import org.apache.jackrabbit.core.config.WorkspaceConfig;
 import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.id.NodeId;
@@ -154,6 +156,7 @@ public class WorkspaceImpl extends AbstractWorkspace
         this.stateMgr = createItemStateManager();
         this.hierMgr = new CachingHierarchyManager(
                 context.getRootNodeId(), this.stateMgr);
+        this.hierMgr.setSharedPathCache(this.stateMgr.getSharedPathCache());
         this.stateMgr.addListener(hierMgr);
         this.session = context.getSessionImpl();
     }
@@ -353,6 +356,26 @@ public class WorkspaceImpl extends AbstractWorkspace
         return context.getPrivilegeManager();
     }
 
+    /**
+     * Creates a writer that persists node trees below the given node in
+     * batches, bypassing the transient space of the session.
+     *
+     * @param parentAbsPath path of the node below which the trees are written
+     * @param batchSize number of nodes after which changes are persisted
+     * @return a new bulk writer
+     * @throws AccessDeniedException if the session may not add nodes below
+     *                               the given node
+     * @throws RepositoryException if the node cannot be modified or another
+     *                             error occurs
+     * @see org.apache.jackrabbit.api.JackrabbitWorkspace#createBulkWriter(String, int)
+     */
+    public BulkWriter createBulkWriter(String parentAbsPath, int batchSize)
+            throws AccessDeniedException, RepositoryException {
+        sanityCheck();
+        NodeImpl parent = (NodeImpl) getSession().getNode(parentAbsPath);
+        return new BulkWriterImpl(context, this, parent, batchSize);
+    }
+
 
     /**
      * Returns the configuration of this workspace.
@@ -864,9 +887,14 @@ public class WorkspaceImpl extends AbstractWorkspace
             throw new RepositoryException("not an absolute path: " + parentAbsPath);
         }
 
+        ImportConfig importConfig = wspConfig.getImportConfig();
         Importer importer = new WorkspaceImporter(
-                parentPath, this, context,
-                uuidBehavior, wspConfig.getImportConfig());
+                parentPath, this, context, uuidBehavior, importConfig);
+        if (importConfig != null) {
+            return new ImportHandler(
+                    importer, getSession(), importConfig.getBinaryThreads(),
+                    context.getDataStore());
+        }
         return new ImportHandler(importer, getSession());
     }
 
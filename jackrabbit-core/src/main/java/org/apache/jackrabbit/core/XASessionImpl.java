@@ -382,7 +382,7 @@ public class XASessionImpl extends SessionImpl
      * @return <code>true</code> if this resource is associated
      *         with a transaction; otherwise <code>false</code>
      */
-    private boolean isAssociated() {
+    boolean isAssociated() {
         return tx != null;
     }
 
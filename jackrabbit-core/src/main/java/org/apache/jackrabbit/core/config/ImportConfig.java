@@ -36,6 +36,18 @@ public class ImportConfig {
 
     private final List<BeanConfig> protectedItemImporters;
 
+    /**
+     * Number of nodes after which a workspace import persists the imported
+     * items, or zero to persist the whole import at once.
+     */
+    private int batchSize;
+
+    /**
+     * Number of threads that decode imported binary values while the
+     * document is parsed, or zero to decode them on the importing thread.
+     */
+    private int binaryThreads;
+
     public ImportConfig() {
         protectedItemImporters = Collections.emptyList();
     }
@@ -56,4 +68,35 @@ public class ImportConfig {
         return piis;
     }
 
+    /**
+     * Returns the number of nodes after which a workspace import persists
+     * the imported items. A batched import keeps the heap usage bounded,
+     * but it is not atomic: if it fails, the batches that were already
+     * persisted remain in the workspace.
+     *
+     * @return the batch size or zero if the import is persisted at once.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the number of threads that decode the binary values of a
+     * system view document while it is parsed.
+     *
+     * @return the number of threads or zero if binaries are decoded on the
+     *         importing thread.
+     */
+    public int getBinaryThreads() {
+        return binaryThreads;
+    }
+
+    public void setBinaryThreads(int binaryThreads) {
+        this.binaryThreads = binaryThreads;
+    }
+
 }
\ No newline at end of file
@@ -729,6 +729,8 @@ public class RepositoryConfigurationParser extends ConfigurationParser {
      * the following format:
      * <pre>
      *   &lt;Import&gt;
+     *     &lt;param name="batchSize" value="..." (optional)&gt;
+     *     &lt;param name="binaryThreads" value="..." (optional)&gt;
      *     &lt;ProtectedNodeImporter class="..." (optional)&gt;
      *     &lt;ProtectedNodeImporter class="..." (optional)&gt;
      *     ...
@@ -758,11 +760,41 @@ public class RepositoryConfigurationParser extends ConfigurationParser {
                     } // else: some other entry -> ignore.
                 }
             }
-            return new ImportConfig(protectedItemImporters);
+            ImportConfig config = new ImportConfig(protectedItemImporters);
+            Properties parameters = parseParameters(element);
+            config.setBatchSize(getIntParameter(
+                    parameters, "batchSize", config.getBatchSize()));
+            config.setBinaryThreads(getIntParameter(
+                    parameters, "binaryThreads", config.getBinaryThreads()));
+            return config;
         }
         return null;
     }
 
+    /**
+     * Returns the value of an integer parameter.
+     *
+     * @param parameters parsed parameters
+     * @param name parameter name
+     * @param defaultValue value returned if the parameter is not set
+     * @return parameter value
+     * @throws ConfigurationException if the value is not an integer
+     */
+    private static int getIntParameter(
+            Properties parameters, String name, int defaultValue)
+            throws ConfigurationException {
+        String value = parameters.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigurationException(
+                    "Invalid value of parameter " + name + ": " + value, e);
+        }
+    }
+
     /**
      * Returns an ISM locking factory that creates {@link ISMLocking} instances
      * based on the given configuration. ISM locking configuration uses the
@@ -21,12 +21,15 @@ import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.jackrabbit.api.stats.RepositoryStatistics;
 import org.apache.jackrabbit.core.util.XAReentrantWriterPreferenceReadWriteLock;
 import org.apache.jackrabbit.core.version.InternalVersionManagerImpl;
 import org.apache.jackrabbit.core.version.VersioningLock;
 import org.apache.jackrabbit.spi.commons.conversion.DefaultNamePathResolver;
 import org.apache.jackrabbit.spi.commons.conversion.NamePathResolver;
 import org.apache.jackrabbit.spi.commons.namespace.NamespaceResolver;
+import org.apache.jackrabbit.stats.LatencyHistogramRecorder;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -90,6 +93,11 @@ public abstract class AbstractJournal implements Journal {
      */
     private InternalVersionManagerImpl internalVersionManager;
 
+    /**
+     * Latencies of appended records, or <code>null</code> if not recorded.
+     */
+    private LatencyHistogramRecorder appendLatency;
+
     /**
      * {@inheritDoc}
      */
@@ -213,7 +221,7 @@ public abstract class AbstractJournal implements Journal {
 
     private void internalSync(boolean startup) throws JournalException {
         try {
-            rwLock.readLock().acquire();
+            rwLock.readLock().lockInterruptibly();
         } catch (InterruptedException e) {
             String msg = "Unable to acquire read lock.";
             throw new JournalException(msg, e);
@@ -221,7 +229,7 @@ public abstract class AbstractJournal implements Journal {
         try {
             doSync(getMinimalRevision(), startup);
         } finally {
-            rwLock.readLock().release();
+            rwLock.readLock().unlock();
         }
     }
 
@@ -304,7 +312,7 @@ public abstract class AbstractJournal implements Journal {
 
     private void internalLockAndSync() throws JournalException {
         try {
-            rwLock.writeLock().acquire();
+            rwLock.writeLock().lockInterruptibly();
         } catch (InterruptedException e) {
             String msg = "Unable to acquire write lock.";
             throw new JournalException(msg, e);
@@ -326,7 +334,7 @@ public abstract class AbstractJournal implements Journal {
             }
         } finally {
             if (!succeeded) {
-                rwLock.writeLock().release();
+                rwLock.writeLock().unlock();
             }
         }
     }
@@ -343,7 +351,7 @@ public abstract class AbstractJournal implements Journal {
     	} finally {
     		//Should not happen that a RuntimeException will be thrown in subCode, but it's safer
     		//to release the rwLock in finally block.
-            rwLock.writeLock().release();
+            rwLock.writeLock().unlock();
     	}
     }
 
@@ -378,6 +386,18 @@ public abstract class AbstractJournal implements Journal {
     protected abstract void append(AppendRecord record, InputStream in, int length)
             throws JournalException;
 
+    /**
+     * Notification method called by an appended record after it has been
+     * successfully appended.
+     *
+     * @param time time spent appending the record in nano seconds
+     */
+    void appended(long time) {
+        if (appendLatency != null) {
+            appendLatency.recordValue(time);
+        }
+    }
+
     /**
      * Unlock the journal revision. Subclass responsibility.
      *
@@ -430,6 +450,17 @@ public abstract class AbstractJournal implements Journal {
         this.internalVersionManager = internalVersionManager;
     }
 
+    /**
+     * Set the repository statistics, which record the latencies of the
+     * appended records.
+     *
+     * @param stats repository statistics
+     */
+    public void setRepositoryStatistics(RepositoryStatisticsImpl stats) {
+        this.appendLatency = stats.getLatencyRecorder(
+                RepositoryStatistics.LatencyType.JOURNAL_APPEND);
+    }
+
     /**
      * Return the repository home.
      *
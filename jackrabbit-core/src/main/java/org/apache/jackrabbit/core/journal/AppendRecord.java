@@ -263,7 +263,9 @@ public class AppendRecord extends AbstractRecord {
             InputStream in = openInput();
 
             try {
+                long time = System.nanoTime();
                 journal.append(this, in, length);
+                journal.appended(System.nanoTime() - time);
                 succeeded = true;
                 return length;
             } finally {
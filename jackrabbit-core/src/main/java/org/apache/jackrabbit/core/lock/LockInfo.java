@@ -66,17 +66,17 @@ public abstract class LockInfo {
      * Time (in milliseconds since the epoch) when this lock will timeout. Set to
      * {@link Long#MAX_VALUE} if this lock will not timeout.
      */
-    private long timeoutTime;
+    private volatile long timeoutTime;
 
     /**
      * Flag indicating whether this lock is live. See also {@link #timeoutTime}.
      */
-    private boolean live;
+    private volatile boolean live;
 
     /**
      * Session currently holding lock
      */
-    private SessionImpl lockHolder;
+    private volatile SessionImpl lockHolder;
 
     /**
      * Create a new instance of this class.
@@ -23,9 +23,12 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.PropertyType;
@@ -69,6 +72,13 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Provides the functionality needed for locking and unlocking nodes.
+ * <p>
+ * Locks are kept in a path map, which is only modified while holding the
+ * lock map lock and is used to relocate locks when nodes are added, moved
+ * or removed. In addition every live lock is indexed by the path and id of
+ * its node in concurrent maps. Lock checks, which are executed for every
+ * modified node on save, only read these maps and never wait for the lock
+ * map lock.
  */
 public class LockManagerImpl
         implements LockManager, SynchronousEventListener, LockEventListener {
@@ -88,6 +98,24 @@ public class LockManagerImpl
      */
     private final PathMap<LockInfo> lockMap = new PathMap<LockInfo>();
 
+    /**
+     * Live locks by the path of the locked node.
+     */
+    private final ConcurrentMap<Path, LockInfo> locksByPath =
+            new ConcurrentHashMap<Path, LockInfo>();
+
+    /**
+     * Paths of the locked nodes by the id of the locked node.
+     */
+    private final ConcurrentMap<NodeId, Path> lockPaths =
+            new ConcurrentHashMap<NodeId, Path>();
+
+    /**
+     * Number of deep locks in {@link #lockPaths}. Ancestors of a node only
+     * need to be checked for deep locks if there are any.
+     */
+    private final AtomicInteger deepLocks = new AtomicInteger();
+
     /**
      * XA/Thread aware lock to path map.
      */
@@ -171,31 +199,30 @@ public class LockManagerImpl
      *      JSR 283: Locking
      */
     private class TimeoutHandler implements Runnable {
-        private final TimeoutHandlerVisitor visitor = new TimeoutHandlerVisitor();
 
         public void run() {
-            lockMap.traverse(visitor, false);
+            // iterates over the concurrent lock index, hence does not
+            // block lock operations
+            for (LockInfo info : locksByPath.values()) {
+                if (info.isLive() && info.isExpired()) {
+                    expire(info);
+                }
+            }
         }
-    }
 
-    private class TimeoutHandlerVisitor implements
-            PathMap.ElementVisitor<LockInfo> {
-        public void elementVisited(PathMap.Element<LockInfo> element) {
-            LockInfo info = element.get();
-            if (info != null && info.isLive() && info.isExpired()) {
-                NodeId id = info.getId();
-                SessionImpl holder = info.getLockHolder();
-                if (holder == null) {
-                    info.setLockHolder(sysSession);
-                    holder = sysSession;
-                }
-                try {
-                    // FIXME: This session access is not thread-safe!
-                    log.debug("Try to unlock expired lock. NodeId {}", id);
-                    unlock(holder.getNodeById(id));
-                } catch (RepositoryException e) {
-                    log.warn("Unable to expire the lock. NodeId " + id, e);
-                }
+        private void expire(LockInfo info) {
+            NodeId id = info.getId();
+            SessionImpl holder = info.getLockHolder();
+            if (holder == null) {
+                info.setLockHolder(sysSession);
+                holder = sysSession;
+            }
+            try {
+                // FIXME: This session access is not thread-safe!
+                log.debug("Try to unlock expired lock. NodeId {}", id);
+                unlock(holder.getNodeById(id));
+            } catch (RepositoryException e) {
+                log.warn("Unable to expire the lock. NodeId " + id, e);
             }
         }
     }
@@ -254,7 +281,7 @@ public class LockManagerImpl
                     node.getProperty(NameConstants.JCR_LOCKOWNER).getString(),
                     timeoutHint);
             info.setLive(true);
-            lockMap.put(path, info);
+            putLock(path, info);
         } catch (RepositoryException e) {
             log.warn("Unable to recreate lock '" + token + "': " + e.getMessage());
             log.debug("Root cause: ", e);
@@ -377,7 +404,7 @@ public class LockManagerImpl
             if (!info.isSessionScoped()) {
                 getSessionLockManager(session).lockTokenAdded(info.getLockToken());
             }
-            lockMap.put(path, info);
+            putLock(path, info);
 
             if (!info.isSessionScoped()) {
                 save();
@@ -428,6 +455,7 @@ public class LockManagerImpl
             getSessionLockManager(session).lockTokenRemoved(info.getLockToken());
 
             element.set(null);
+            removeLock(info);
             info.setLive(false);
 
             if (!info.isSessionScoped()) {
@@ -450,16 +478,13 @@ public class LockManagerImpl
      * @param session session
      * @return an array of <code>AbstractLockInfo</code>s
      */
-    LockInfo[] getLockInfos(final SessionImpl session) {
-        final ArrayList<LockInfo> infos = new ArrayList<LockInfo>();
-        lockMap.traverse(new PathMap.ElementVisitor<LockInfo>() {
-            public void elementVisited(PathMap.Element<LockInfo> element) {
-                LockInfo info = element.get();
-                if (info.isLive() && info.isLockHolder(session)) {
-                    infos.add(info);
-                }
+    LockInfo[] getLockInfos(SessionImpl session) {
+        ArrayList<LockInfo> infos = new ArrayList<LockInfo>();
+        for (LockInfo info : locksByPath.values()) {
+            if (info.isLive() && info.isLockHolder(session)) {
+                infos.add(info);
             }
-        }, false);
+        }
         return infos.toArray(new LockInfo[infos.size()]);
     }
 
@@ -478,7 +503,7 @@ public class LockManagerImpl
                 LockInfo info = element.get();
                 if (info.isLive() && !info.isSessionScoped()) {
                     try {
-                        lockMap.put(element.getPath(), info);
+                        putLock(element.getPath(), info);
                     } catch (MalformedPathException e) {
                         log.warn("Ignoring invalid lock path: " + info, e);
                     }
@@ -502,19 +527,7 @@ public class LockManagerImpl
             return null;
         }
 
-        acquire();
-        try {
-            PathMap.Element<LockInfo> element = lockMap.map(path, false);
-            LockInfo info = element.get();
-            if (info != null) {
-                if (element.hasPath(path) || info.isDeep()) {
-                    return info;
-                }
-            }
-            return null;
-        } finally {
-            release();
-        }
+        return findLock(path);
     }
 
     //----------------------------------------------------------< LockManager >
@@ -541,15 +554,12 @@ public class LockManagerImpl
     public Lock getLock(NodeImpl node)
             throws LockException, RepositoryException {
 
-        acquire();
-
         try {
             SessionImpl session = (SessionImpl) node.getSession();
             Path path = getPath(session, node.getId());
 
-            PathMap.Element<LockInfo> element = lockMap.map(path, false);
-            LockInfo info = element.get();
-            if (info != null && (element.hasPath(path) || info.isDeep())) {
+            LockInfo info = findLock(path);
+            if (info != null) {
                 NodeImpl lockHolder = (NodeImpl)
                     session.getItemManager().getItem(info.getId());
                 return new LockImpl(info, lockHolder);
@@ -558,8 +568,6 @@ public class LockManagerImpl
             }
         } catch (ItemNotFoundException e) {
             throw new LockException("Node not locked: " + node);
-        } finally {
-            release();
         }
     }
 
@@ -601,47 +609,23 @@ public class LockManagerImpl
      * {@inheritDoc}
      */
     public boolean holdsLock(NodeImpl node) throws RepositoryException {
-        acquire();
-
-        try {
-            SessionImpl session = (SessionImpl) node.getSession();
-            PathMap.Element<LockInfo> element =
-                lockMap.map(getPath(session, node.getId()), true);
-            if (element == null) {
-                return false;
-            }
-            return element.get() != null;
-        } catch (ItemNotFoundException e) {
-            return false;
-        } finally {
-            release();
-        }
+        return lockPaths.containsKey(node.getNodeId());
     }
 
     /**
      * {@inheritDoc}
      */
     public boolean isLocked(NodeImpl node) throws RepositoryException {
-        acquire();
-
+        if (lockPaths.containsKey(node.getNodeId())) {
+            return true;
+        } else if (deepLocks.get() == 0) {
+            return false;
+        }
         try {
             SessionImpl session = (SessionImpl) node.getSession();
-            Path path = getPath(session, node.getId());
-
-            PathMap.Element<LockInfo> element = lockMap.map(path, false);
-            LockInfo info = element.get();
-            if (info == null) {
-                return false;
-            }
-            if (element.hasPath(path)) {
-                return true;
-            } else {
-                return info.isDeep();
-            }
+            return findLock(getPath(session, node.getId())) != null;
         } catch (ItemNotFoundException e) {
             return false;
-        } finally {
-            release();
         }
     }
 
@@ -651,6 +635,10 @@ public class LockManagerImpl
     public void checkLock(NodeImpl node)
             throws LockException, RepositoryException {
 
+        if (lockPaths.isEmpty()) {
+            // nothing locked, no need to resolve the path
+            return;
+        }
         SessionImpl session = (SessionImpl) node.getSession();
         checkLock(getPath(session, node.getId()), session);
     }
@@ -661,17 +649,9 @@ public class LockManagerImpl
     public void checkLock(Path path, Session session)
             throws LockException, RepositoryException {
 
-        acquire();
-        try {
-            PathMap.Element<LockInfo> element = lockMap.map(path, false);
-            LockInfo info = element.get();
-            if (info != null) {
-                if (element.hasPath(path) || info.isDeep()) {
-                    checkLock(info, session);
-                }
-            }
-        } finally {
-            release();
+        LockInfo info = findLock(path);
+        if (info != null) {
+            checkLock(info, session);
         }
     }
 
@@ -700,23 +680,13 @@ public class LockManagerImpl
      */
     public void checkUnlock(Session session, NodeImpl node)
             throws LockException, RepositoryException {
-        acquire();
-        
-        try {
-            // check whether node is locked by this session
-            PathMap.Element<LockInfo> element =
-                lockMap.map(getPath((SessionImpl) session, node.getId()), true);
-            if (element == null) {
-                throw new LockException("Node not locked: " + node);
-            }
-            LockInfo info = element.get();
-            if (info == null) {
-                throw new LockException("Node not locked: " + node);
-            }
-            checkUnlock(info, session);
-        } finally {
-            release();
+        // check whether node is locked by this session
+        Path path = lockPaths.get(node.getNodeId());
+        LockInfo info = (path != null) ? locksByPath.get(path) : null;
+        if (info == null || !info.getId().equals(node.getNodeId())) {
+            throw new LockException("Node not locked: " + node);
         }
+        checkUnlock(info, session);
     }
 
     /**
@@ -815,6 +785,92 @@ public class LockManagerImpl
         }
     }
 
+    /**
+     * Returns the lock that applies to the node at the given path, i.e. a
+     * lock of the node itself or a deep lock of one of its ancestors. Only
+     * reads the concurrent lock index.
+     *
+     * @param path path of a node
+     * @return lock info or <code>null</code> if the node is not locked
+     * @throws RepositoryException if an ancestor path cannot be computed
+     */
+    private LockInfo findLock(Path path) throws RepositoryException {
+        if (lockPaths.isEmpty()) {
+            return null;
+        }
+        if (!path.isNormalized()) {
+            path = path.getNormalizedPath();
+        }
+        LockInfo info = locksByPath.get(path);
+        if (info != null) {
+            return info;
+        }
+        if (deepLocks.get() > 0) {
+            for (int i = 1; i <= path.getDepth(); i++) {
+                info = locksByPath.get(path.getAncestor(i));
+                if (info != null) {
+                    // a lock below a deep lock is never allowed, hence
+                    // only the closest lock of an ancestor is relevant
+                    return info.isDeep() ? info : null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a lock to the path map and the lock index. The caller must hold
+     * the lock map lock.
+     *
+     * @param path path of the locked node
+     * @param info lock info
+     */
+    private void putLock(Path path, LockInfo info) {
+        lockMap.put(path, info);
+        indexLock(path, info);
+    }
+
+    /**
+     * Adds or relocates a lock in the lock index. The new path is added
+     * before the old path is removed, so that concurrent lock checks never
+     * miss a lock that is moved.
+     *
+     * @param path path of the locked node
+     * @param info lock info
+     */
+    private void indexLock(Path path, LockInfo info) {
+        LockInfo previous = locksByPath.put(path, info);
+        if (previous != null && previous != info) {
+            if (lockPaths.remove(previous.getId(), path) && previous.isDeep()) {
+                deepLocks.decrementAndGet();
+            }
+        }
+        Path oldPath = lockPaths.put(info.getId(), path);
+        if (oldPath == null) {
+            if (info.isDeep()) {
+                deepLocks.incrementAndGet();
+            }
+        } else if (!oldPath.equals(path)) {
+            locksByPath.remove(oldPath, info);
+        }
+    }
+
+    /**
+     * Removes a lock from the lock index. The caller must hold the lock map
+     * lock and remove the lock from the path map.
+     *
+     * @param info lock info
+     */
+    private void removeLock(LockInfo info) {
+        Path path = lockPaths.remove(info.getId());
+        if (path != null) {
+            locksByPath.remove(path, info);
+            if (info.isDeep()) {
+                deepLocks.decrementAndGet();
+            }
+        }
+    }
+
     /**
      * Return the path of an item given its id. This method will lookup the
      * item inside the system session.
@@ -827,42 +883,28 @@ public class LockManagerImpl
      * Acquire lock on the lock map.
      */
     private void acquire() {
-        for (;;) {
-            try {
-           		lockMapLock.acquire();
-                break;
-            } catch (InterruptedException e) {
-                // ignore
-            }
-        }
+        lockMapLock.lock();
     }
 
     /**
      * Release lock on the lock map.
      */
     private void release() {
-   		lockMapLock.release();
+        lockMapLock.unlock();
     }
 
     /**
      * Acquire lock for modifying lock properties
      */
     private void acquireLockPropertiesLock() {
-        for (;;) {
-            try {
-                lockPropertiesLock.acquire();
-                break;
-            } catch (InterruptedException e) {
-                // ignore
-            }
-        }
+        lockPropertiesLock.lock();
     }
 
     /**
      * Release lock on the lockPropertiesLock.
      */
     private void releaseLockPropertiesLock() {
-        lockPropertiesLock.release();
+        lockPropertiesLock.unlock();
     }
 
     /**
@@ -1175,8 +1217,9 @@ public class LockManagerImpl
             	
                 NodeImpl node = (NodeImpl) sysSession.getItemManager().getItem(
                         info.getId());
-                lockMap.put(node.getPrimaryPath(), info);
+                putLock(node.getPrimaryPath(), info);
             } catch (RepositoryException e) {
+                removeLock(info);
                 info.setLive(false);
                 if (!info.isSessionScoped()) {
                     needsSave = true;
@@ -1354,7 +1397,7 @@ public class LockManagerImpl
             InternalLockInfo info = new InternalLockInfo(
                     nodeId, false, isDeep, lockOwner, Long.MAX_VALUE);
             info.setLive(true);
-            lockMap.put(path, info);
+            putLock(path, info);
 
             save();
         } finally {
@@ -1379,6 +1422,7 @@ public class LockManagerImpl
                 throw new LockException("Node not locked: " + path.toString());
             }
             element.set(null);
+            removeLock(info);
             info.setLive(false);
 
             save();
@@ -19,16 +19,23 @@ package org.apache.jackrabbit.core.nodetype;
 import org.apache.jackrabbit.core.nodetype.EffectiveNodeTypeCache.Key;
 import org.apache.jackrabbit.spi.Name;
 
-import java.util.TreeSet;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.ArrayList;
-
-import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Implements an effective node type cache that uses a bit set for storing the
  * information about participating node types in a set.
+ * <p>
+ * The cached effective node types are kept in an immutable snapshot, which
+ * is read without locking and replaced when effective node types are added
+ * or invalidated. The keys of cached effective node types can be found by
+ * the names of their node types, so that {@link #getKey(Name[])} and
+ * {@link #getKey(Name, Set)} return the cached key instead of creating a new
+ * one.
  */
 public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
 
@@ -48,14 +55,15 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
     }
 
     /**
-     * An ordered set of the keys. This is used for {@link #findBest(Key)}.
+     * The current snapshot of the pre-built aggregations of node types.
      */
-    private final TreeSet<Key> sortedKeys;
+    private volatile Aggregates aggregates = Aggregates.EMPTY;
 
     /**
-     * cache of pre-built aggregations of node types
+     * Lock that serializes the modifications of the {@link #aggregates} and
+     * the assignment of new bit numbers.
      */
-    private final HashMap<Key, EffectiveNodeType> aggregates;
+    private final ReentrantLock writeLock = new ReentrantLock();
 
     /**
      * A lookup table for bit numbers for a given name.
@@ -64,25 +72,76 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
      * be stored in the node type registry since only registered node type names
      * are allowed in the keys.
      */
-    private final ConcurrentReaderHashMap nameIndex = new ConcurrentReaderHashMap();
+    private final ConcurrentHashMap<Name, Integer> nameIndex =
+        new ConcurrentHashMap<Name, Integer>();
 
     /**
      * The reverse lookup table for bit numbers to names
      */
-    private Name[] names = new Name[1024];
+    private volatile Name[] names = new Name[1024];
 
     /**
      * Creates a new bitset effective node type cache
      */
     BitSetENTCacheImpl() {
-        sortedKeys = new TreeSet<Key>();
-        aggregates = new HashMap<Key, EffectiveNodeType>();
     }
 
     /**
      * {@inheritDoc}
      */
     public Key getKey(Name[] ntNames) {
+        long fingerprint = 0;
+        for (Name name : ntNames) {
+            Integer n = nameIndex.get(name);
+            if (n == null) {
+                return new BitSetKey(ntNames, nameIndex.size() + ntNames.length);
+            }
+            fingerprint += fingerprint(n);
+        }
+        Aggregates current = aggregates;
+        for (int i = current.slot(fingerprint); current.keys[i] != null; i = current.next(i)) {
+            BitSetKey key = current.keys[i];
+            if (key.fingerprint == fingerprint
+                    && key.names.length == ntNames.length
+                    && includesAll(key, ntNames)) {
+                return key;
+            }
+        }
+        return new BitSetKey(ntNames, nameIndex.size() + ntNames.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Key getKey(Name primary, Set<Name> mixins) {
+        Integer n = nameIndex.get(primary);
+        boolean known = n != null;
+        long fingerprint = known ? fingerprint(n) : 0;
+        if (known && !mixins.isEmpty()) {
+            for (Name mixin : mixins) {
+                n = nameIndex.get(mixin);
+                if (n == null) {
+                    known = false;
+                    break;
+                }
+                fingerprint += fingerprint(n);
+            }
+        }
+        if (known) {
+            Aggregates current = aggregates;
+            for (int i = current.slot(fingerprint); current.keys[i] != null; i = current.next(i)) {
+                BitSetKey key = current.keys[i];
+                if (key.fingerprint == fingerprint
+                        && key.names.length == mixins.size() + 1
+                        && includes(key, primary)
+                        && (mixins.isEmpty() || includesAll(key, mixins))) {
+                    return key;
+                }
+            }
+        }
+        Name[] ntNames = new Name[mixins.size() + 1];
+        mixins.toArray(ntNames);
+        ntNames[ntNames.length - 1] = primary;
         return new BitSetKey(ntNames, nameIndex.size() + ntNames.length);
     }
 
@@ -97,8 +156,12 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
      * {@inheritDoc}
      */
     public void put(Key key, EffectiveNodeType ent) {
-        aggregates.put(key, ent);
-        sortedKeys.add(key);
+        writeLock.lock();
+        try {
+            aggregates = aggregates.put((BitSetKey) key, ent);
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     /**
@@ -109,11 +172,8 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
         if (contains(key)) {
             return key;
         }
-        // clone TreeSet first to prevent ConcurrentModificationException
-        TreeSet<Key> keys = (TreeSet<Key>) sortedKeys.clone();
-        Iterator<Key> iter = keys.iterator();
-        while (iter.hasNext()) {
-            Key k = iter.next();
+        // the sorted keys of a snapshot never change
+        for (BitSetKey k : aggregates.sorted) {
             if (key.contains(k)) {
                 return k;
             }
@@ -125,17 +185,25 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
      * {@inheritDoc}
      */
     public void invalidate(Name name) {
-        /**
-         * remove all affected effective node types from aggregates cache
-         * (copy keys first to prevent ConcurrentModificationException)
-         */
-        ArrayList<Key> keys = new ArrayList<Key>(aggregates.keySet());
-        for (Iterator<Key> keysIter = keys.iterator(); keysIter.hasNext();) {
-            Key k = keysIter.next();
-            EffectiveNodeType ent = get(k);
-            if (ent.includesNodeType(name)) {
-                remove(k);
+        writeLock.lock();
+        try {
+            // remove all affected effective node types from aggregates cache
+            Aggregates current = aggregates;
+            List<BitSetKey> keys = new ArrayList<BitSetKey>();
+            List<EffectiveNodeType> types = new ArrayList<EffectiveNodeType>();
+            for (int i = 0; i < current.sorted.length; i++) {
+                if (!current.sortedTypes[i].includesNodeType(name)) {
+                    keys.add(current.sorted[i]);
+                    types.add(current.sortedTypes[i]);
+                }
+            }
+            if (keys.size() < current.sorted.length) {
+                aggregates = new Aggregates(
+                        keys.toArray(new BitSetKey[keys.size()]),
+                        types.toArray(new EffectiveNodeType[types.size()]));
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -143,14 +211,14 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
      * {@inheritDoc}
      */
     public boolean contains(Key key) {
-        return aggregates.containsKey(key);
+        return get(key) != null;
     }
 
     /**
      * {@inheritDoc}
      */
     public EffectiveNodeType get(Key key) {
-        return aggregates.get(key);
+        return aggregates.get((BitSetKey) key);
     }
 
     /**
@@ -161,24 +229,30 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
      * @return the bit number for the given name
      */
     private int getBitNumber(Name name) {
-        Integer i = (Integer) nameIndex.get(name);
+        Integer i = nameIndex.get(name);
         if (i == null) {
-            synchronized (nameIndex) {
-                i = (Integer) nameIndex.get(name);
+            writeLock.lock();
+            try {
+                i = nameIndex.get(name);
                 if (i == null) {
                     int idx = nameIndex.size();
-                    i = new Integer(idx);
-                    nameIndex.put(name, i);
+                    i = idx;
                     if (idx >= names.length) {
                         Name[] newNames = new Name[names.length * 2];
                         System.arraycopy(names, 0, newNames, 0, names.length);
+                        newNames[idx] = name;
                         names = newNames;
+                    } else {
+                        names[idx] = name;
                     }
-                    names[idx] = name;
+                    // publish the bit number after the name
+                    nameIndex.put(name, i);
                 }
+            } finally {
+                writeLock.unlock();
             }
         }
-        return i.intValue();
+        return i;
     }
 
     /**
@@ -191,21 +265,42 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
     }
 
     /**
-     * Removes the effective node type for the given key from the cache.
-     *
-     * @param key the key of the effective node type to remove
-     * @return the removed effective node type or <code>null</code> if it was
-     *         never cached.
+     * Checks whether the given node type is part of the key.
      */
-    private EffectiveNodeType remove(Key key) {
-        EffectiveNodeType removed = aggregates.remove(key);
-        if (removed != null) {
-            // other than the original implementation, the weights in the
-            // treeset are now the same as in the given keys. so we can use
-            // the normal remove method
-            sortedKeys.remove(key);
+    private boolean includes(BitSetKey key, Name name) {
+        Integer n = nameIndex.get(name);
+        return n != null && key.hasBit(n);
+    }
+
+    private boolean includesAll(BitSetKey key, Name[] ntNames) {
+        for (Name name : ntNames) {
+            if (!includes(key, name)) {
+                return false;
+            }
         }
-        return removed;
+        return true;
+    }
+
+    private boolean includesAll(BitSetKey key, Set<Name> ntNames) {
+        for (Name name : ntNames) {
+            if (!includes(key, name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the contribution of a bit number to the fingerprint of a key.
+     * The fingerprint of a key is the sum of the contributions of its bits,
+     * so that it can be calculated from node type names in any order.
+     *
+     * @param n the bit number
+     * @return the contribution to the fingerprint
+     */
+    private static long fingerprint(int n) {
+        long h = (n + 1L) * 0x9e3779b97f4a7c15L;
+        return h ^ (h >>> 29);
     }
 
     /**
@@ -213,10 +308,9 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
      */
     public Object clone() {
         BitSetENTCacheImpl clone = new BitSetENTCacheImpl();
-        clone.sortedKeys.addAll(sortedKeys);
-        clone.aggregates.putAll(aggregates);
-        clone.names = new Name[names.length];
-        System.arraycopy(names, 0, clone.names, 0, names.length);
+        // the snapshot is immutable and can be shared
+        clone.aggregates = aggregates;
+        clone.names = names.clone();
         clone.nameIndex.putAll(nameIndex);
         return clone;
     }
@@ -228,13 +322,106 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
         StringBuilder builder = new StringBuilder();
         builder.append("BitSetENTCacheImpl (" + super.toString() + ")\n");
         builder.append("EffectiveNodeTypes in cache:\n");
-        for (Key key : sortedKeys) {
+        for (Key key : aggregates.sorted) {
             builder.append(key);
             builder.append("\n");
         }
         return builder.toString();
     }
 
+    /**
+     * An immutable snapshot of the cached effective node types. The keys
+     * are kept in the order used by {@link #findBest(Key)}, and in a hash
+     * table with linear probing that is at most half full, indexed by the
+     * fingerprints of the keys.
+     */
+    private static final class Aggregates {
+
+        static final Aggregates EMPTY =
+            new Aggregates(new BitSetKey[0], new EffectiveNodeType[0]);
+
+        /**
+         * The keys, ordered by {@link BitSetKey#compareTo(Key)}.
+         */
+        final BitSetKey[] sorted;
+
+        /**
+         * The effective node types of the {@link #sorted} keys.
+         */
+        final EffectiveNodeType[] sortedTypes;
+
+        /**
+         * The hash table of the keys.
+         */
+        final BitSetKey[] keys;
+
+        /**
+         * The effective node types of the {@link #keys}.
+         */
+        final EffectiveNodeType[] types;
+
+        Aggregates(BitSetKey[] sorted, EffectiveNodeType[] sortedTypes) {
+            this.sorted = sorted;
+            this.sortedTypes = sortedTypes;
+            int capacity = 16;
+            while (capacity < sorted.length * 2) {
+                capacity <<= 1;
+            }
+            keys = new BitSetKey[capacity];
+            types = new EffectiveNodeType[capacity];
+            for (int i = 0; i < sorted.length; i++) {
+                int j = slot(sorted[i].fingerprint);
+                while (keys[j] != null) {
+                    j = next(j);
+                }
+                keys[j] = sorted[i];
+                types[j] = sortedTypes[i];
+            }
+        }
+
+        int slot(long fingerprint) {
+            return (int) (fingerprint ^ (fingerprint >>> 32)) & (keys.length - 1);
+        }
+
+        int next(int slot) {
+            return (slot + 1) & (keys.length - 1);
+        }
+
+        EffectiveNodeType get(BitSetKey key) {
+            for (int i = slot(key.fingerprint); keys[i] != null; i = next(i)) {
+                BitSetKey k = keys[i];
+                if (k == key || (k.fingerprint == key.fingerprint && k.equals(key))) {
+                    return types[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns a copy of this snapshot that maps the given key to the
+         * given effective node type.
+         */
+        Aggregates put(BitSetKey key, EffectiveNodeType ent) {
+            int i = Arrays.binarySearch(sorted, key);
+            if (i >= 0) {
+                EffectiveNodeType[] newTypes = sortedTypes.clone();
+                newTypes[i] = ent;
+                return new Aggregates(sorted, newTypes);
+            }
+            i = -(i + 1);
+            BitSetKey[] newSorted = new BitSetKey[sorted.length + 1];
+            EffectiveNodeType[] newTypes = new EffectiveNodeType[sorted.length + 1];
+            System.arraycopy(sorted, 0, newSorted, 0, i);
+            System.arraycopy(sortedTypes, 0, newTypes, 0, i);
+            newSorted[i] = key;
+            newTypes[i] = ent;
+            System.arraycopy(sorted, i, newSorted, i + 1, sorted.length - i);
+            System.arraycopy(sortedTypes, i, newTypes, i + 1, sorted.length - i);
+            return new Aggregates(newSorted, newTypes);
+        }
+
+    }
+
     /**
      * Implements a {@link Key} by storing the node type aggregate information
      * in a bit set. We do not use the {@link java.util.BitSet} because it
@@ -258,6 +445,11 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
          */
         private final int hashCode;
 
+        /**
+         * The fingerprint, see {@link BitSetENTCacheImpl#fingerprint(int)}.
+         */
+        private final long fingerprint;
+
         /**
          * Creates a new bit set key.
          * @param names the node type names
@@ -272,6 +464,7 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
                 bits[n / BPW] |= OR_MASK[n % BPW];
             }
             hashCode = calcHashCode();
+            fingerprint = calcFingerprint();
         }
 
         /**
@@ -289,6 +482,7 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
                 i = nextSetBit(i + 1);
             }
             hashCode = calcHashCode();
+            fingerprint = calcFingerprint();
         }
 
         /**
@@ -346,6 +540,17 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
             return new BitSetKey(newBits, numBits);
         }
 
+        /**
+         * Checks whether the given bit is set.
+         *
+         * @param n the bit number
+         * @return <code>true</code> if the bit is set
+         */
+        private boolean hasBit(int n) {
+            int addr = n / BPW;
+            return addr < bits.length && (bits[addr] & OR_MASK[n % BPW]) != 0;
+        }
+
         /**
          * Returns the bit number of the next bit that is set, starting at
          * <code>fromIndex</code> inclusive.
@@ -471,6 +676,20 @@ public class BitSetENTCacheImpl implements EffectiveNodeTypeCache {
             return (int) ((h >> 32) ^ h);
         }
 
+        /**
+         * Calculates the fingerprint.
+         * @return the calculated fingerprint
+         */
+        private long calcFingerprint() {
+            long f = 0;
+            int i = nextSetBit(0);
+            while (i >= 0) {
+                f += fingerprint(i);
+                i = nextSetBit(i + 1);
+            }
+            return f;
+        }
+
         /**
          * {@inheritDoc}
          */
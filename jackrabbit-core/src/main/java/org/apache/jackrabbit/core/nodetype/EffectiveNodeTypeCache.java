@@ -16,6 +16,8 @@
  */
 package org.apache.jackrabbit.core.nodetype;
 
+import java.util.Set;
+
 import org.apache.jackrabbit.spi.Name;
 
 /**
@@ -62,6 +64,18 @@ public interface EffectiveNodeTypeCache extends Cloneable {
      */
     Key getKey(Name[] ntNames);
 
+    /**
+     * Returns a key for the effective node type of a node with the given
+     * primary and mixin types. This is the same key as returned by
+     * {@link #getKey(Name[])} for the mixin types and the primary type, but
+     * implementations may return an existing key without creating an array
+     * of the names.
+     * @param primary the primary node type name
+     * @param mixins the mixin node type names
+     * @return the key to an effective node type.
+     */
+    Key getKey(Name primary, Set<Name> mixins);
+
     /**
      * Removes all effective node types that are aggregated with the node type
      * of the given name.
@@ -58,6 +58,16 @@ public class EffectiveNodeTypeCacheImpl implements EffectiveNodeTypeCache {
         return new WeightedKey(ntNames);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Key getKey(Name primary, Set<Name> mixins) {
+        Name[] ntNames = new Name[mixins.size() + 1];
+        mixins.toArray(ntNames);
+        ntNames[ntNames.length - 1] = primary;
+        return getKey(ntNames);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -32,6 +32,7 @@ import java.util.Stack;
 import java.util.TreeSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.jcr.NamespaceRegistry;
 import javax.jcr.PropertyType;
@@ -61,8 +62,6 @@ import org.apache.jackrabbit.spi.commons.QNodeTypeDefinitionImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import EDU.oswego.cs.dl.util.concurrent.ConcurrentReaderHashMap;
-
 /**
  * A <code>NodeTypeRegistry</code> ...
  */
@@ -101,8 +100,9 @@ public class NodeTypeRegistry implements NodeTypeEventListener {
     private final NodeTypeDefStore builtInNTDefs;
     private final NodeTypeDefStore customNTDefs;
 
-    // cache of pre-built aggregations of node types
-    private EffectiveNodeTypeCache entCache;
+    // cache of pre-built aggregations of node types, replaced when node
+    // types are registered
+    private volatile EffectiveNodeTypeCache entCache;
 
     // map of node type names and node type definitions
     private final Map<Name, QNodeTypeDefinition> registeredNTDefs;
@@ -487,10 +487,17 @@ public class NodeTypeRegistry implements NodeTypeEventListener {
         if (mixins.isEmpty()) {
             return getEffectiveNodeType(primary);
         } else {
+            // look up an already built effective node type without
+            // creating an array of the names
+            EffectiveNodeTypeCache cache = entCache;
+            EffectiveNodeType ent = cache.get(cache.getKey(primary, mixins));
+            if (ent != null) {
+                return ent;
+            }
             Name[] names = new Name[mixins.size() + 1];
             mixins.toArray(names);
             names[names.length - 1] = primary;
-            return getEffectiveNodeType(names, entCache, registeredNTDefs);
+            return getEffectiveNodeType(names, cache, registeredNTDefs);
         }
     }
 
@@ -734,7 +741,7 @@ public class NodeTypeRegistry implements NodeTypeEventListener {
         // (replace with: entCache = new EffectiveNodeTypeCacheImpl();
         // for the old one)
         entCache = new BitSetENTCacheImpl();
-        registeredNTDefs = new ConcurrentReaderHashMap();
+        registeredNTDefs = new ConcurrentHashMap<Name, QNodeTypeDefinition>();
 
         // setup definition of root node
         rootNodeDef = createRootNodeDef();
@@ -1025,7 +1032,8 @@ public class NodeTypeRegistry implements NodeTypeEventListener {
                                                   Map<Name, QNodeTypeDefinition> ntdCache)
             throws NoSuchNodeTypeException {
         // 1. check if effective node type has already been built
-        EffectiveNodeTypeCache.Key key = entCache.getKey(new Name[]{ntName});
+        EffectiveNodeTypeCache.Key key =
+                entCache.getKey(ntName, Collections.<Name>emptySet());
         EffectiveNodeType ent = entCache.get(key);
         if (ent != null) {
             return ent;
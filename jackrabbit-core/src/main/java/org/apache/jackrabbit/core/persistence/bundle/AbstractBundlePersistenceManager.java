@@ -20,9 +20,11 @@ import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_MIXINTYPE
 import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_PRIMARYTYPE;
 import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_UUID;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
@@ -51,6 +53,8 @@ import org.apache.jackrabbit.core.persistence.util.BLOBStore;
 import org.apache.jackrabbit.core.persistence.util.FileBasedIndex;
 import org.apache.jackrabbit.core.persistence.util.NodeInfo;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodeEntry;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodePage;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle.PropertyEntry;
 import org.apache.jackrabbit.core.state.ChangeLog;
 import org.apache.jackrabbit.core.state.ItemState;
@@ -59,6 +63,7 @@ import org.apache.jackrabbit.core.state.NoSuchItemStateException;
 import org.apache.jackrabbit.core.state.NodeReferences;
 import org.apache.jackrabbit.core.state.NodeState;
 import org.apache.jackrabbit.core.state.PropertyState;
+import org.apache.jackrabbit.stats.LatencyHistogramRecorder;
 import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 import org.apache.jackrabbit.core.util.StringIndex;
 import org.apache.jackrabbit.core.value.InternalValue;
@@ -79,6 +84,16 @@ import org.slf4j.LoggerFactory;
  * separate indexes. only the index number is serialized to the records which
  * reduces the amount of memory used.
  * <p>
+ * The child node entries of nodes with many child nodes are stored in separate
+ * page bundles that are referenced from the bundle of the node. Page boundaries
+ * are derived from the ids of the child nodes, so that adding or removing a
+ * child node only replaces the affected page and rewrites the small bundle of
+ * the parent node. Pages are loaded together with the bundle of the parent.
+ * Pages are not nodes: they are neither loaded by {@link #load(NodeId)} nor
+ * reported by {@link #getAllNodeIds(NodeId, int)}. Page references are only
+ * written with bundle serialization version 4, which earlier versions of
+ * Jackrabbit cannot read, so the upgrade to this format is one-way.
+ * <p>
  * Special treatment is performed for the properties "jcr:uuid", "jcr:primaryType"
  * and "jcr:mixinTypes". As they are also stored in the node state they are not
  * included in the bundle but generated when required.
@@ -92,6 +107,7 @@ import org.slf4j.LoggerFactory;
  * Configuration:<br>
  * <ul>
  * <li>&lt;param name="{@link #setBundleCacheSize(String) bundleCacheSize}" value="8"/&gt;
+ * <li>&lt;param name="{@link #setChildNodePageSize(String) childNodePageSize}" value="1024"/&gt;
  * </ul>
  */
 public abstract class AbstractBundlePersistenceManager implements
@@ -154,6 +170,9 @@ public abstract class AbstractBundlePersistenceManager implements
     /** default size of the bundle cache */
     private long bundleCacheSize = 8 * 1024 * 1024;
 
+    /** average number of child node entries per page, 0 disables paging */
+    private int childNodePageSize = 1024;
+
     /** Counter of read operations. */
     private AtomicLong readCounter;
 
@@ -175,6 +194,21 @@ public abstract class AbstractBundlePersistenceManager implements
     /** Counter of bundle cache size. */
     private AtomicLong cacheSizeCounter;
 
+    /**
+     * One in this number of bundle reads is timed if it hits the cache.
+     * Must be a power of two.
+     */
+    private static final int READ_LATENCY_SAMPLE_RATE = 64;
+
+    /** Latencies of bundle read operations. */
+    private LatencyHistogramRecorder readLatency;
+
+    /** Latencies of bundle write operations. */
+    private LatencyHistogramRecorder writeLatency;
+
+    /** Latencies of bundle reads that miss the cache. */
+    private LatencyHistogramRecorder cacheMissLatency;
+
     /** The update event channel to use by the consistency checker when fixing inconsistencies */
     private UpdateEventChannel eventChannel;
 
@@ -196,6 +230,27 @@ public abstract class AbstractBundlePersistenceManager implements
         this.bundleCacheSize = Long.parseLong(bundleCacheSize) * 1024 * 1024;
     }
 
+    /**
+     * Returns the average number of child node entries per page.
+     * @return the average number of child node entries per page.
+     */
+    public String getChildNodePageSize() {
+        return String.valueOf(childNodePageSize);
+    }
+
+    /**
+     * Sets the average number of child node entries per page. The child node
+     * entries of nodes with more child nodes are stored in separate pages.
+     * The size is rounded up to a power of two, 0 stores all child node
+     * entries in the bundle of their parent node. The default is 1024.
+     *
+     * @param childNodePageSize the average number of child node entries per page.
+     */
+    public void setChildNodePageSize(String childNodePageSize) {
+        int size = Integer.parseInt(childNodePageSize);
+        this.childNodePageSize = size <= 1 ? Math.max(size, 0) : Integer.highestOneBit(size - 1) << 1;
+    }
+
     /**
      * Creates the folder path for the given node id that is suitable for
      * storing states in a filesystem.
@@ -376,14 +431,71 @@ public abstract class AbstractBundlePersistenceManager implements
     public Map<NodeId, NodeInfo> getAllNodeInfos(NodeId after, int maxCount)
             throws ItemStateException, RepositoryException {
         Map<NodeId, NodeInfo> infos = new LinkedHashMap<NodeId, NodeInfo>();
-        for (NodeId nodeId : getAllNodeIds(after, maxCount)) {
-            infos.put(nodeId, new NodeInfo(loadBundle(nodeId)));
+        List<NodeId> ids = getAllNodeIds(after, maxCount);
+        while (!ids.isEmpty()) {
+            NodeId lastId = null;
+            for (NodeId nodeId : ids) {
+                lastId = nodeId;
+                // child node pages are skipped
+                NodePropBundle bundle = loadNodeBundle(nodeId);
+                if (bundle != null) {
+                    infos.put(nodeId, new NodeInfo(bundle));
+                    if (infos.size() == maxCount) {
+                        return infos;
+                    }
+                }
+            }
+            if (maxCount == 0) {
+                break;
+            }
+            ids = getAllNodeIds(lastId, maxCount - infos.size());
         }
         return infos;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The ids of child node pages are not reported.
+     */
+    public List<NodeId> getAllNodeIds(NodeId after, int maxCount)
+            throws ItemStateException, RepositoryException {
+        List<NodeId> result = new ArrayList<NodeId>();
+        int count = maxCount;
+        List<NodeId> ids = getAllBundleIds(after, count);
+        while (!ids.isEmpty()) {
+            for (NodeId id : ids) {
+                if (!isChildNodePage(id)) {
+                    result.add(id);
+                }
+            }
+            if (maxCount == 0 || ids.size() < count || result.size() >= maxCount) {
+                break;
+            }
+            // child node pages were skipped, fill up the result
+            count = maxCount - result.size();
+            ids = getAllBundleIds(ids.get(ids.size() - 1), count);
+        }
+        return result;
+    }
+
     //----------------------------------------------------------------< spi >---
 
+    /**
+     * Returns the ids of the stored bundles, including the ids of child node
+     * pages, in ascending order.
+     *
+     * @param after the lower limit (exclusive), or <code>null</code> to start
+     *              with the lowest id
+     * @param maxCount the maximum number of ids to return, or 0 for no limit
+     * @return the bundle ids
+     * @throws ItemStateException if an error while loading occurs.
+     * @throws RepositoryException if a repository exception occurs.
+     * @see #getAllNodeIds(NodeId, int)
+     */
+    protected abstract List<NodeId> getAllBundleIds(NodeId after, int maxCount)
+            throws ItemStateException, RepositoryException;
+
     /**
      * Loads a bundle from the underlying system.
      *
@@ -414,6 +526,168 @@ public abstract class AbstractBundlePersistenceManager implements
     protected abstract void destroyBundle(NodePropBundle bundle)
             throws ItemStateException;
 
+    /**
+     * Loads the bundle of a node including the child node entries that are
+     * stored in separate pages.
+     *
+     * @param id the node id of the bundle
+     * @return the loaded bundle or <code>null</code> if the bundle does not
+     *         exist or is a child node page.
+     * @throws ItemStateException if an error while loading occurs.
+     */
+    protected NodePropBundle loadNodeBundle(NodeId id)
+            throws ItemStateException {
+        NodePropBundle bundle = loadBundle(id);
+        if (bundle != null) {
+            bundle = loadChildNodePages(bundle);
+        }
+        return bundle;
+    }
+
+    /**
+     * Checks whether the bundle with the given id is a child node page. Only
+     * bundles with a page id are loaded.
+     *
+     * @param id the id of a bundle
+     * @return <code>true</code> if the bundle is a child node page.
+     * @throws ItemStateException if an error while loading occurs.
+     */
+    protected boolean isChildNodePage(NodeId id) throws ItemStateException {
+        if (!NodePropBundle.isChildNodePageId(id)) {
+            return false;
+        }
+        NodePropBundle bundle = loadBundle(id);
+        return bundle != null && bundle.isChildNodePage();
+    }
+
+    /**
+     * Adds the child node entries that are stored in separate pages to a
+     * bundle loaded from the underlying system.
+     *
+     * @param bundle the loaded bundle
+     * @return the bundle or <code>null</code> if it is a child node page.
+     * @throws ItemStateException if a page cannot be loaded.
+     */
+    protected NodePropBundle loadChildNodePages(NodePropBundle bundle)
+            throws ItemStateException {
+        if (bundle.isChildNodePage()) {
+            return null;
+        }
+        List<ChildNodePage> pages = bundle.getChildNodePages();
+        if (pages != null) {
+            for (ChildNodePage page : pages) {
+                NodePropBundle entries = loadBundle(page.getId());
+                if (entries == null || !entries.isChildNodePage()) {
+                    throw new ItemStateException("Child node page " + page.getId()
+                            + " of node " + bundle.getId() + " is missing");
+                }
+                page.setEntries(entries.getChildNodeEntries());
+                bundle.getChildNodeEntries().addAll(entries.getChildNodeEntries());
+            }
+        }
+        return bundle;
+    }
+
+    /**
+     * Stores the bundle of a node. If the node has many child nodes, its
+     * child node entries are stored in separate pages. Pages whose entries
+     * did not change are kept, all others are replaced.
+     *
+     * @param bundle the bundle to store
+     * @throws ItemStateException if an error while storing occurs.
+     */
+    protected void storeNodeBundle(NodePropBundle bundle)
+            throws ItemStateException {
+        List<ChildNodePage> obsolete = bundle.getChildNodePages();
+        List<ChildNodeEntry> entries = bundle.getChildNodeEntries();
+        List<ChildNodePage> pages = null;
+        if (childNodePageSize > 0 && entries.size() > childNodePageSize) {
+            Map<List<ChildNodeEntry>, ChildNodePage> existing =
+                    new HashMap<List<ChildNodeEntry>, ChildNodePage>();
+            List<ChildNodePage> unknown = new ArrayList<ChildNodePage>();
+            if (obsolete != null) {
+                for (ChildNodePage page : obsolete) {
+                    if (page.getEntries() != null) {
+                        existing.put(page.getEntries(), page);
+                    } else {
+                        unknown.add(page);
+                    }
+                }
+            }
+            pages = new ArrayList<ChildNodePage>();
+            for (List<ChildNodeEntry> chunk : splitChildNodeEntries(entries)) {
+                ChildNodePage page = existing.remove(chunk);
+                if (page == null) {
+                    page = new ChildNodePage(
+                            NodePropBundle.createChildNodePageId(), chunk);
+                    storeBundle(NodePropBundle.createChildNodePage(
+                            page.getId(), bundle.getId(), chunk));
+                }
+                pages.add(page);
+            }
+            obsolete = unknown;
+            obsolete.addAll(existing.values());
+        }
+        bundle.setChildNodePages(pages);
+        storeBundle(bundle);
+        if (obsolete != null) {
+            for (ChildNodePage page : obsolete) {
+                destroyBundle(new NodePropBundle(page.getId()));
+            }
+        }
+    }
+
+    /**
+     * Deletes the bundle of a node and its child node pages.
+     *
+     * @param bundle the bundle to destroy
+     * @throws ItemStateException if an error while destroying occurs.
+     */
+    protected void destroyNodeBundle(NodePropBundle bundle)
+            throws ItemStateException {
+        destroyBundle(bundle);
+        List<ChildNodePage> pages = bundle.getChildNodePages();
+        if (pages != null) {
+            for (ChildNodePage page : pages) {
+                destroyBundle(new NodePropBundle(page.getId()));
+            }
+            bundle.setChildNodePages(null);
+        }
+    }
+
+    /**
+     * Splits child node entries into pages. A page ends after an entry whose
+     * id hashes to a multiple of the page size, so the boundaries do not move
+     * when entries are added or removed elsewhere. Pages are at least a
+     * quarter and at most four times as large as the page size.
+     *
+     * @param entries the child node entries
+     * @return the pages
+     */
+    private List<List<ChildNodeEntry>> splitChildNodeEntries(
+            List<ChildNodeEntry> entries) {
+        int mask = childNodePageSize - 1;
+        int min = Math.max(1, childNodePageSize / 4);
+        int max = childNodePageSize * 4;
+        List<List<ChildNodeEntry>> chunks = new ArrayList<List<ChildNodeEntry>>();
+        List<ChildNodeEntry> chunk = new ArrayList<ChildNodeEntry>();
+        for (ChildNodeEntry entry : entries) {
+            chunk.add(entry);
+            NodeId id = entry.getId();
+            long hash = (id.getMostSignificantBits() ^ id.getLeastSignificantBits())
+                    * 0x9e3779b97f4a7c15L;
+            if (chunk.size() >= max
+                    || (chunk.size() >= min && ((int) (hash >>> 32) & mask) == 0)) {
+                chunks.add(chunk);
+                chunk = new ArrayList<ChildNodeEntry>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
     /**
      * Deletes the node references from the underlying system.
      *
@@ -469,6 +743,12 @@ public abstract class AbstractBundlePersistenceManager implements
                 RepositoryStatistics.Type.BUNDLE_CACHE_MISS_COUNTER);
         cacheMissDuration = stats.getCounter(
                 RepositoryStatistics.Type.BUNDLE_CACHE_MISS_DURATION);
+        readLatency = stats.getLatencyRecorder(
+                RepositoryStatistics.LatencyType.BUNDLE_READ);
+        writeLatency = stats.getLatencyRecorder(
+                RepositoryStatistics.LatencyType.BUNDLE_WRITE);
+        cacheMissLatency = stats.getLatencyRecorder(
+                RepositoryStatistics.LatencyType.BUNDLE_CACHE_MISS);
     }
 
     /**
@@ -505,6 +785,7 @@ public abstract class AbstractBundlePersistenceManager implements
             PropertyState state = createNew(id);
             PropertyEntry p = bundle.getPropertyEntry(id.getName());
             if (p != null) {
+                p.decode();
                 state.setMultiValued(p.isMultiValued());
                 state.setType(p.getType());
                 state.setValues(p.getValues());
@@ -738,16 +1019,30 @@ public abstract class AbstractBundlePersistenceManager implements
      * @throws ItemStateException if an error occurs.
      */
     private NodePropBundle getBundle(NodeId id) throws ItemStateException {
+        // most reads are cheap cache hits, so only a sample of them is timed
+        boolean sample = (readCounter.incrementAndGet()
+                & (READ_LATENCY_SAMPLE_RATE - 1)) == 0;
+        long time = sample ? System.nanoTime() : 0;
         NodePropBundle bundle = bundles.get(id);
-        readCounter.incrementAndGet();
+        if (bundle == null) {
+            // cache miss, always timed
+            if (!sample) {
+                time = System.nanoTime();
+            }
+            try {
+                return getBundleCacheMiss(id);
+            } finally {
+                readLatency.recordValue(System.nanoTime() - time);
+            }
+        }
+        if (sample) {
+            readLatency.recordValue(
+                    System.nanoTime() - time, READ_LATENCY_SAMPLE_RATE);
+        }
         if (bundle == MISSING) {
             return null;
         }
-        if (bundle != null) {
-            return bundle;
-        }
-        // cache miss
-        return getBundleCacheMiss(id);
+        return bundle;
     }
 
     /**
@@ -764,8 +1059,10 @@ public abstract class AbstractBundlePersistenceManager implements
             throws ItemStateException {
         long time = System.nanoTime();
         log.debug("Loading bundle {}", id);
-        NodePropBundle bundle = loadBundle(id);
-        cacheMissDuration.addAndGet(System.nanoTime() - time);
+        NodePropBundle bundle = loadNodeBundle(id);
+        time = System.nanoTime() - time;
+        cacheMissDuration.addAndGet(time);
+        cacheMissLatency.recordValue(time);
         cacheMissCounter.incrementAndGet();
         if (bundle != null) {
             bundle.markOld();
@@ -783,7 +1080,7 @@ public abstract class AbstractBundlePersistenceManager implements
      * @throws ItemStateException if an error occurs
      */
     private void deleteBundle(NodePropBundle bundle) throws ItemStateException {
-        destroyBundle(bundle);
+        destroyNodeBundle(bundle);
         bundle.removeAllProperties(getBlobStore());
         bundles.put(bundle.getId(), MISSING, MISSING_SIZE_ESTIMATE);
     }
@@ -797,11 +1094,13 @@ public abstract class AbstractBundlePersistenceManager implements
     private void putBundle(NodePropBundle bundle) throws ItemStateException {
         long time = System.nanoTime();
         log.debug("Storing bundle {}", bundle.getId());
-        storeBundle(bundle);
+        storeNodeBundle(bundle);
         if (auditLogger.isDebugEnabled()) {
         	auditLogger.debug("{} ({})", bundle.getId(), bundle.getSize());
         }
-        writeDuration.addAndGet(System.nanoTime() - time);
+        time = System.nanoTime() - time;
+        writeDuration.addAndGet(time);
+        writeLatency.recordValue(time);
         writeCounter.incrementAndGet();
 
         bundle.markOld();
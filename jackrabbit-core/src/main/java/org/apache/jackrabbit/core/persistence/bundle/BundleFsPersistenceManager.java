@@ -483,7 +483,7 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
     /**
      * {@inheritDoc}
      */
-    public List<NodeId> getAllNodeIds(NodeId bigger, int maxCount)
+    protected List<NodeId> getAllBundleIds(NodeId bigger, int maxCount)
             throws ItemStateException {
         ArrayList<NodeId> list = new ArrayList<NodeId>();
         try {
@@ -199,7 +199,7 @@ public class ConsistencyCheckerImpl {
         if (lostNFoundId != null) {
             // do we have a "lost+found" node?
             try {
-                NodePropBundle lfBundle = pm.loadBundle(lostNFoundId);
+                NodePropBundle lfBundle = pm.loadNodeBundle(lostNFoundId);
                 if (lfBundle == null) {
                     error(lostNFoundId.toString(), "Specified 'lost+found' node does not exist");
                     lostNFoundId = null;
@@ -272,13 +272,23 @@ public class ConsistencyCheckerImpl {
             for (int i = 0; i < idList.size(); i++) {
                 NodeId id = idList.get(i);
                 try {
-                    final NodePropBundle bundle = pm.loadBundle(id);
+                    final NodePropBundle bundle = pm.loadNodeBundle(id);
                     if (bundle == null) {
-                        if (!isVirtualNode(id)) {
+                        if (pm.isChildNodePage(id)) {
+                            info(id.toString(), "Skipping child node page '" + id + "'");
+                        } else if (!isVirtualNode(id)) {
                             error(id.toString(), "No bundle found for id '" + id + "'");
                         }
                     } else {
-                        checkBundleConsistency(id, new NodeInfo(bundle), Collections.<NodeId, NodeInfo>emptyMap());
+                        // creating the node info decodes all properties
+                        NodeInfo nodeInfo;
+                        try {
+                            nodeInfo = new NodeInfo(bundle);
+                        } catch (ItemStateException e) {
+                            error(id.toString(), "Unable to decode the properties of bundle '" + id + "'", e);
+                            continue;
+                        }
+                        checkBundleConsistency(id, nodeInfo, Collections.<NodeId, NodeInfo>emptyMap());
 
                         if (recursive) {
                             for (NodePropBundle.ChildNodeEntry entry : bundle.getChildNodeEntries()) {
@@ -411,7 +421,7 @@ public class ConsistencyCheckerImpl {
         try {
             bundle.markOld();
             bundle.setModCount((short) (bundle.getModCount()+1));
-            pm.storeBundle(bundle);
+            pm.storeNodeBundle(bundle);
             pm.evictBundle(bundle.getId());
         } catch (ItemStateException e) {
             log.error(pm + ": Error storing fixed bundle: " + e);
@@ -422,7 +432,7 @@ public class ConsistencyCheckerImpl {
         if (bundles.containsKey(nodeId)) {
             return bundles.get(nodeId);
         }
-        return pm.loadBundle(nodeId);
+        return pm.loadNodeBundle(nodeId);
     }
 
     private void saveBundle(NodePropBundle bundle) {
@@ -470,9 +480,9 @@ public class ConsistencyCheckerImpl {
 
         @Override
         boolean doubleCheck() throws ItemStateException {
-            final NodePropBundle childBundle = pm.loadBundle(childNodeId);
+            final NodePropBundle childBundle = pm.loadNodeBundle(childNodeId);
             if (childBundle == null) {
-                final NodePropBundle bundle = pm.loadBundle(nodeId);
+                final NodePropBundle bundle = pm.loadNodeBundle(nodeId);
                 if (bundle != null) {
                     for (NodePropBundle.ChildNodeEntry entry : bundle.getChildNodeEntries()) {
                         if (entry.getId().equals(childNodeId)) {
@@ -527,9 +537,9 @@ public class ConsistencyCheckerImpl {
 
         @Override
         boolean doubleCheck() throws ItemStateException {
-            final NodePropBundle childBundle = pm.loadBundle(childNodeId);
+            final NodePropBundle childBundle = pm.loadNodeBundle(childNodeId);
             if (childBundle != null && !childBundle.getParentId().equals(nodeId)) {
-                final NodePropBundle bundle = pm.loadBundle(nodeId);
+                final NodePropBundle bundle = pm.loadNodeBundle(nodeId);
                 if (bundle != null) {
                     // double check if the child node entry is still there
                     for (NodePropBundle.ChildNodeEntry entry : bundle.getChildNodeEntries()) {
@@ -589,9 +599,9 @@ public class ConsistencyCheckerImpl {
 
         @Override
         boolean doubleCheck() throws ItemStateException {
-            final NodePropBundle parentBundle = pm.loadBundle(parentNodeId);
+            final NodePropBundle parentBundle = pm.loadNodeBundle(parentNodeId);
             if (parentBundle == null) {
-                final NodePropBundle bundle = pm.loadBundle(nodeId);
+                final NodePropBundle bundle = pm.loadNodeBundle(nodeId);
                 if (bundle != null) {
                     if (parentNodeId.equals(bundle.getParentId())) {
                         return true;
@@ -650,7 +660,7 @@ public class ConsistencyCheckerImpl {
 
         @Override
         boolean doubleCheck() throws ItemStateException {
-            final NodePropBundle parentBundle = pm.loadBundle(parentNodeId);
+            final NodePropBundle parentBundle = pm.loadNodeBundle(parentNodeId);
             if (parentBundle != null) {
                 for (NodePropBundle.ChildNodeEntry entry : parentBundle.getChildNodeEntries()) {
                     if (entry.getId().equals(nodeId)) {
@@ -658,7 +668,7 @@ public class ConsistencyCheckerImpl {
                     }
                 }
             }
-            final NodePropBundle bundle = pm.loadBundle(nodeId);
+            final NodePropBundle bundle = pm.loadNodeBundle(nodeId);
             if (bundle != null) {
                 if (parentNodeId.equals(bundle.getParentId())) {
                     return true;
@@ -493,7 +493,7 @@ public class InMemBundlePersistenceManager extends AbstractBundlePersistenceMana
     /**
      * {@inheritDoc}
      */
-    public List<NodeId> getAllNodeIds(NodeId after, int maxCount) throws ItemStateException, RepositoryException {
+    protected List<NodeId> getAllBundleIds(NodeId after, int maxCount) throws ItemStateException, RepositoryException {
         final List<NodeId> result = new ArrayList<NodeId>();
         boolean add = after == null;
         int count = 0;
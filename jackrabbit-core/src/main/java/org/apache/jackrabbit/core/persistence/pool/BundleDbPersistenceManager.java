@@ -72,6 +72,7 @@ import org.slf4j.LoggerFactory;
  * <li>&lt;param name="{@link #setConsistencyCheck(String) consistencyCheck}" value="false"/&gt;
  * <li>&lt;param name="{@link #setConsistencyFix(String) consistencyFix}" value="false"/&gt;
  * <li>&lt;param name="{@link #setMinBlobSize(String) minBlobSize}" value="4096"/&gt;
+ * <li>&lt;param name="{@link #setBundleCompressionThreshold(String) bundleCompressionThreshold}" value="0"/&gt;
  * <li>&lt;param name="{@link #setDriver(String) driver}" value=""/&gt;
  * <li>&lt;param name="{@link #setUrl(String) url}" value=""/&gt;
  * <li>&lt;param name="{@link #setUser(String) user}" value=""/&gt;
@@ -165,6 +166,13 @@ public class BundleDbPersistenceManager
      */
     private int minBlobSize = 0x1000;
 
+    /**
+     * the minimum size of a bundle until it gets compressed, 0 disables
+     * compression
+     * @see #setBundleCompressionThreshold(String)
+     */
+    private int bundleCompressionThreshold = 0;
+
     /**
      * flag for error handling
      */
@@ -409,6 +417,30 @@ public class BundleDbPersistenceManager
         this.minBlobSize = Integer.decode(minBlobSize).intValue();
     }
 
+    /**
+     * Returns the minimum size of bundles to compress in bytes.
+     * @return the minimum size of bundles to compress in bytes.
+     */
+    public String getBundleCompressionThreshold() {
+        return String.valueOf(bundleCompressionThreshold);
+    }
+
+    /**
+     * Sets the minimum size of bundles to compress. Bundles of this size or
+     * larger are stored compressed with the deflate algorithm, which reduces
+     * the size of the bundle table and the amount of data transferred for
+     * nodes with large inlined values at the cost of some CPU time. The
+     * compression ratio and the time spent are recorded in the repository
+     * statistics. Compressed bundles are always read, so compression can be
+     * turned off again later. The default is 0, which disables compression.
+     *
+     * @param bundleCompressionThreshold the compression threshold in bytes.
+     */
+    public void setBundleCompressionThreshold(String bundleCompressionThreshold) {
+        this.bundleCompressionThreshold =
+            Integer.decode(bundleCompressionThreshold).intValue();
+    }
+
     /**
      * Sets the error handling behaviour of this manager. See {@link ErrorHandling}
      * for details about the flags.
@@ -554,6 +586,8 @@ public class BundleDbPersistenceManager
         // load namespaces
         binding = new BundleBinding(errorHandling, blobStore, getNsIndex(), getNameIndex(), context.getDataStore());
         binding.setMinBlobSize(minBlobSize);
+        binding.setCompressionThreshold(bundleCompressionThreshold);
+        binding.setRepositoryStatistics(context.getRepositoryStatistics());
 
         initialized = true;
 
@@ -774,7 +808,7 @@ public class BundleDbPersistenceManager
     /**
      * {@inheritDoc}
      */
-    public synchronized List<NodeId> getAllNodeIds(NodeId bigger, int maxCount)
+    protected synchronized List<NodeId> getAllBundleIds(NodeId bigger, int maxCount)
             throws ItemStateException, RepositoryException {
         ResultSet rs = null;
         try {
@@ -828,6 +862,40 @@ public class BundleDbPersistenceManager
      */
     @Override
     public synchronized Map<NodeId, NodeInfo> getAllNodeInfos(NodeId bigger, int maxCount) throws ItemStateException {
+        Map<NodeId, NodeInfo> result = new LinkedHashMap<NodeId, NodeInfo>(maxCount);
+        List<NodePropBundle> bundles = getAllBundles(bigger, maxCount);
+        while (!bundles.isEmpty()) {
+            NodeId lastId = null;
+            for (NodePropBundle bundle : bundles) {
+                lastId = bundle.getId();
+                // child node pages are skipped
+                bundle = loadChildNodePages(bundle);
+                if (bundle != null) {
+                    NodeInfo nodeInfo = new NodeInfo(bundle);
+                    result.put(nodeInfo.getId(), nodeInfo);
+                    if (result.size() == maxCount) {
+                        return result;
+                    }
+                }
+            }
+            if (maxCount == 0) {
+                break;
+            }
+            bundles = getAllBundles(lastId, maxCount - result.size());
+        }
+        return result;
+    }
+
+    /**
+     * Reads the bundles with ids bigger than the given id, in the order of
+     * their ids.
+     *
+     * @param bigger the id after which to start or <code>null</code>
+     * @param maxCount the maximum number of bundles or 0 for all
+     * @return the bundles as stored, without the entries of child node pages
+     * @throws ItemStateException if the bundles cannot be read
+     */
+    private List<NodePropBundle> getAllBundles(NodeId bigger, int maxCount) throws ItemStateException {
         ResultSet rs = null;
         try {
             String sql = bundleSelectAllBundlesSQL;
@@ -846,7 +914,7 @@ public class BundleDbPersistenceManager
                 maxCount += 10;
             }
             rs = conHelper.exec(sql, keys, false, maxCount);
-            Map<NodeId, NodeInfo> result = new LinkedHashMap<NodeId, NodeInfo>(maxCount);
+            List<NodePropBundle> result = new ArrayList<NodePropBundle>();
             while ((maxCount == 0 || result.size() < maxCount) && rs.next()) {
                 NodeId current;
                 if (getStorageModel() == SM_BINARY_KEYS) {
@@ -862,9 +930,7 @@ public class BundleDbPersistenceManager
                         continue;
                     }
                 }
-                NodePropBundle bundle = readBundle(current, rs, getStorageModel() == SM_LONGLONG_KEYS ? 3 : 2);
-                NodeInfo nodeInfo = new NodeInfo(bundle);
-                result.put(nodeInfo.getId(), nodeInfo);
+                result.add(readBundle(current, rs, getStorageModel() == SM_LONGLONG_KEYS ? 3 : 2));
             }
             return result;
         } catch (SQLException e) {
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.segment;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+/**
+ * Hash table that maps node ids to record locations. The table is kept in a
+ * direct buffer outside of the Java heap, so that an index of millions of
+ * nodes neither needs millions of objects nor adds to garbage collection
+ * pauses. The table uses open addressing with linear probing; each slot
+ * holds the two halves of the node id and the location, where location
+ * <code>0</code> marks a free slot.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class OffHeapIndex {
+
+    /**
+     * Size of a slot in bytes.
+     */
+    private static final int SLOT_SIZE = 24;
+
+    /**
+     * Maximum number of slots a single direct buffer can hold.
+     */
+    private static final int MAX_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE / SLOT_SIZE);
+
+    private ByteBuffer table;
+
+    /**
+     * Number of slots, always a power of two.
+     */
+    private int capacity;
+
+    private int size;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param initialCapacity the expected number of entries
+     */
+    OffHeapIndex(int initialCapacity) {
+        int slots = 16;
+        while (slots < MAX_CAPACITY && slots * 3L < initialCapacity * 4L) {
+            slots <<= 1;
+        }
+        allocate(slots);
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the location of the given id.
+     *
+     * @param id the node id
+     * @return the location, or <code>0</code> if the id is not mapped.
+     */
+    long get(NodeId id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int mask = capacity - 1;
+        for (int i = hash(msb, lsb) & mask; ; i = (i + 1) & mask) {
+            int offset = i * SLOT_SIZE;
+            long location = table.getLong(offset + 16);
+            if (location == 0) {
+                return 0;
+            } else if (table.getLong(offset) == msb
+                    && table.getLong(offset + 8) == lsb) {
+                return location;
+            }
+        }
+    }
+
+    /**
+     * Maps the given id to the given location.
+     *
+     * @param id the node id
+     * @param location the location, not <code>0</code>
+     * @return the previous location, or <code>0</code> if the id was not
+     *         mapped.
+     */
+    long put(NodeId id, long location) {
+        if (location == 0) {
+            throw new IllegalArgumentException("invalid location");
+        }
+        if ((size + 1) * 4L > capacity * 3L) {
+            if (capacity == MAX_CAPACITY) {
+                throw new IllegalStateException(
+                        "index is full: " + size + " entries");
+            }
+            resize(capacity << 1);
+        }
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int mask = capacity - 1;
+        for (int i = hash(msb, lsb) & mask; ; i = (i + 1) & mask) {
+            int offset = i * SLOT_SIZE;
+            long previous = table.getLong(offset + 16);
+            if (previous == 0) {
+                table.putLong(offset, msb);
+                table.putLong(offset + 8, lsb);
+                table.putLong(offset + 16, location);
+                size++;
+                return 0;
+            } else if (table.getLong(offset) == msb
+                    && table.getLong(offset + 8) == lsb) {
+                table.putLong(offset + 16, location);
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Removes the given id. The following slots of the probe sequence are
+     * shifted back, so no deleted markers are needed.
+     *
+     * @param id the node id
+     * @return the previous location, or <code>0</code> if the id was not
+     *         mapped.
+     */
+    long remove(NodeId id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int mask = capacity - 1;
+        int i = hash(msb, lsb) & mask;
+        long previous;
+        while (true) {
+            int offset = i * SLOT_SIZE;
+            previous = table.getLong(offset + 16);
+            if (previous == 0) {
+                return 0;
+            } else if (table.getLong(offset) == msb
+                    && table.getLong(offset + 8) == lsb) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        int free = i;
+        for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+            int offset = j * SLOT_SIZE;
+            long location = table.getLong(offset + 16);
+            if (location == 0) {
+                break;
+            }
+            int home = hash(table.getLong(offset), table.getLong(offset + 8)) & mask;
+            // move the entry if its home slot is not between the free slot
+            // and its current slot (in probe order)
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                copySlot(j, free);
+                free = j;
+            }
+        }
+        table.putLong(free * SLOT_SIZE + 16, 0);
+        size--;
+        return previous;
+    }
+
+    /**
+     * Returns the id stored in the given slot.
+     *
+     * @param slot the slot number
+     * @return the id, or <code>null</code> if the slot is free.
+     */
+    NodeId getId(int slot) {
+        int offset = slot * SLOT_SIZE;
+        if (table.getLong(offset + 16) == 0) {
+            return null;
+        }
+        return new NodeId(table.getLong(offset), table.getLong(offset + 8));
+    }
+
+    /**
+     * Returns the ids of this index in slot order, starting after the slot
+     * that holds the given id, so that iterating over all ids in batches
+     * reads every slot once. If the given id is not mapped, for example
+     * because it was removed since the previous batch, the ids are returned
+     * from the home slot of the given id on. Ids may be skipped or returned
+     * twice if the index is modified between batches.
+     *
+     * @param after the id after which to start, or <code>null</code>
+     * @param maxCount the maximum number of ids, or <code>0</code> for all
+     * @return the ids, in slot order
+     */
+    List<NodeId> getIds(NodeId after, int maxCount) {
+        int start = 0;
+        if (after != null) {
+            long msb = after.getMostSignificantBits();
+            long lsb = after.getLeastSignificantBits();
+            int mask = capacity - 1;
+            int i = hash(msb, lsb) & mask;
+            start = i;
+            for (; table.getLong(i * SLOT_SIZE + 16) != 0; i = (i + 1) & mask) {
+                if (table.getLong(i * SLOT_SIZE) == msb
+                        && table.getLong(i * SLOT_SIZE + 8) == lsb) {
+                    start = i + 1;
+                    break;
+                }
+            }
+        }
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = start; i < capacity && (maxCount <= 0 || ids.size() < maxCount); i++) {
+            NodeId id = getId(i);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the number of slots, to iterate with {@link #getId(int)}.
+     *
+     * @return the number of slots.
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    //-------------------------------------------------------------< internal >
+
+    private void allocate(int slots) {
+        table = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+        table.order(ByteOrder.nativeOrder());
+        capacity = slots;
+    }
+
+    private void resize(int slots) {
+        ByteBuffer old = table;
+        int oldCapacity = capacity;
+        allocate(slots);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            int offset = i * SLOT_SIZE;
+            long location = old.getLong(offset + 16);
+            if (location != 0) {
+                long msb = old.getLong(offset);
+                long lsb = old.getLong(offset + 8);
+                int j = hash(msb, lsb) & mask;
+                while (table.getLong(j * SLOT_SIZE + 16) != 0) {
+                    j = (j + 1) & mask;
+                }
+                int target = j * SLOT_SIZE;
+                table.putLong(target, msb);
+                table.putLong(target + 8, lsb);
+                table.putLong(target + 16, location);
+            }
+        }
+    }
+
+    private void copySlot(int from, int to) {
+        int source = from * SLOT_SIZE;
+        int target = to * SLOT_SIZE;
+        table.putLong(target, table.getLong(source));
+        table.putLong(target + 8, table.getLong(source + 8));
+        table.putLong(target + 16, table.getLong(source + 16));
+    }
+
+    /**
+     * Mixes both halves of the id, as not all node ids are random.
+     */
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
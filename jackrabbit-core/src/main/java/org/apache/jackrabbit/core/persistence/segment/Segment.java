@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+/**
+ * An append-only segment file that is mapped into memory. A segment starts
+ * with a header and contains a sequence of records, each consisting of
+ * <ul>
+ * <li>the length of the data (int)</li>
+ * <li>the record type (byte)</li>
+ * <li>the node id (two longs)</li>
+ * <li>the data</li>
+ * <li>a CRC32 checksum of type, id and data (int)</li>
+ * </ul>
+ * The file is created with its full size, the unused remainder is zero. A
+ * record type of <code>0</code> marks the end of the records.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class Segment {
+
+    /** magic number at the start of a segment file: "JRSG" */
+    static final int MAGIC = 0x4a525347;
+
+    /** the format version */
+    static final int VERSION = 1;
+
+    /** size of the segment header */
+    static final int HEADER_SIZE = 8;
+
+    /** size of the record header and checksum */
+    static final int RECORD_OVERHEAD = 25;
+
+    /** record type of a stored bundle */
+    static final byte BUNDLE = 1;
+
+    /** record type of a deleted bundle */
+    static final byte DELETED_BUNDLE = 2;
+
+    /** record type of stored references */
+    static final byte REFERENCES = 3;
+
+    /** record type of deleted references */
+    static final byte DELETED_REFERENCES = 4;
+
+    /** record type that commits all records since the previous commit */
+    static final byte COMMIT = 5;
+
+    private final int number;
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The end of the records.
+     */
+    private int size;
+
+    /**
+     * The number of bytes of records that are referenced from the index.
+     */
+    private long live;
+
+    private Segment(int number, File file, RandomAccessFile raf,
+            MappedByteBuffer buffer) {
+        this.number = number;
+        this.file = file;
+        this.raf = raf;
+        this.buffer = buffer;
+        this.size = HEADER_SIZE;
+    }
+
+    /**
+     * Creates a new segment file.
+     *
+     * @param number the segment number
+     * @param file the file, which must not exist
+     * @param capacity the size of the file
+     * @return the segment
+     * @throws IOException if the file cannot be created
+     */
+    static Segment create(int number, File file, int capacity)
+            throws IOException {
+        if (file.exists()) {
+            throw new IOException("Segment file already exists: " + file);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            Segment segment = new Segment(number, file, raf, raf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, capacity));
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, VERSION);
+            segment.force();
+            return segment;
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing segment file. The records are not read.
+     *
+     * @param number the segment number
+     * @param file the file
+     * @return the segment, or <code>null</code> if the file does not start
+     *         with a valid header, which is the case for segments whose
+     *         deletion did not complete
+     * @throws IOException if the file cannot be opened or has an
+     *         unsupported version
+     */
+    static Segment open(int number, File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long length = raf.length();
+            if (length < HEADER_SIZE) {
+                raf.close();
+                return null;
+            } else if (length > Integer.MAX_VALUE) {
+                throw new IOException("Segment file too large: " + file);
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, length);
+            if (buffer.getInt(0) != MAGIC) {
+                raf.close();
+                return null;
+            } else if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported segment version "
+                        + buffer.getInt(4) + ": " + file);
+            }
+            return new Segment(number, file, raf, buffer);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the size of a record with the given data length.
+     *
+     * @param length the length of the data
+     * @return the record size
+     */
+    static int sizeOf(int length) {
+        return RECORD_OVERHEAD + length;
+    }
+
+    int getNumber() {
+        return number;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns the end of the records, where the next record is appended.
+     *
+     * @return the end of the records
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Sets the end of the records, after they have been read.
+     *
+     * @param size the end of the records
+     */
+    void setSize(int size) {
+        this.size = size;
+    }
+
+    long getLive() {
+        return live;
+    }
+
+    void addLive(long bytes) {
+        live += bytes;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param type the record type
+     * @param id the node id or <code>null</code>
+     * @param data the data
+     * @return the offset of the record, or <code>-1</code> if the record
+     *         does not fit into this segment
+     */
+    int append(byte type, NodeId id, byte[] data) {
+        int recordSize = sizeOf(data.length);
+        if (recordSize > buffer.capacity() - size) {
+            return -1;
+        }
+        long msb = id != null ? id.getMostSignificantBits() : 0;
+        long lsb = id != null ? id.getLeastSignificantBits() : 0;
+        int offset = size;
+        ByteBuffer b = buffer.duplicate();
+        b.position(offset);
+        b.putInt(data.length);
+        b.put(type);
+        b.putLong(msb);
+        b.putLong(lsb);
+        b.put(data);
+        b.putInt(checksum(type, msb, lsb, data));
+        size += recordSize;
+        return offset;
+    }
+
+    /**
+     * Checks whether a valid record starts at the given offset.
+     *
+     * @param offset the offset
+     * @return <code>true</code> if the record is complete and its checksum
+     *         matches; <code>false</code> at the end of the records or if
+     *         the record is corrupt
+     */
+    boolean isValid(int offset) {
+        if (offset > buffer.capacity() - RECORD_OVERHEAD) {
+            return false;
+        }
+        int length = buffer.getInt(offset);
+        byte type = buffer.get(offset + 4);
+        if (type < BUNDLE || type > COMMIT || length < 0
+                || length > buffer.capacity() - offset - RECORD_OVERHEAD) {
+            return false;
+        }
+        byte[] data = getData(offset);
+        int expected = buffer.getInt(offset + RECORD_OVERHEAD - 4 + length);
+        return expected == checksum(type, buffer.getLong(offset + 5),
+                buffer.getLong(offset + 13), data);
+    }
+
+    /**
+     * Checks whether the records end at the given offset, that is whether
+     * the remainder of the segment is unused.
+     *
+     * @param offset the offset
+     * @return <code>true</code> if there is no record at the offset
+     */
+    boolean isEnd(int offset) {
+        return offset > buffer.capacity() - 5
+                || (buffer.getInt(offset) == 0 && buffer.get(offset + 4) == 0);
+    }
+
+    byte getType(int offset) {
+        return buffer.get(offset + 4);
+    }
+
+    NodeId getId(int offset) {
+        return new NodeId(buffer.getLong(offset + 5), buffer.getLong(offset + 13));
+    }
+
+    int getRecordSize(int offset) {
+        return sizeOf(buffer.getInt(offset));
+    }
+
+    /**
+     * Returns a copy of the data of the record at the given offset.
+     *
+     * @param offset the offset
+     * @return the data
+     */
+    byte[] getData(int offset) {
+        byte[] data = new byte[buffer.getInt(offset)];
+        ByteBuffer b = buffer.duplicate();
+        b.position(offset + RECORD_OVERHEAD - 4);
+        b.get(data);
+        return data;
+    }
+
+    /**
+     * Discards all records starting at the given offset. The discarded
+     * range is overwritten with zeros, so that it is not read again.
+     *
+     * @param offset the new end of the records
+     */
+    void truncate(int offset) {
+        byte[] zeros = new byte[Math.min(size - offset, 0x10000)];
+        ByteBuffer b = buffer.duplicate();
+        b.position(offset);
+        while (b.position() < size) {
+            b.put(zeros, 0, Math.min(zeros.length, size - b.position()));
+        }
+        size = offset;
+    }
+
+    /**
+     * Writes modifications of this segment to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Closes the file. The memory mapping is released when the buffer is
+     * garbage collected.
+     *
+     * @throws IOException if closing fails
+     */
+    void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * Invalidates the header, closes and deletes the file. If the file
+     * cannot be deleted, it is ignored when it is opened again.
+     *
+     * @return <code>true</code> if the file was deleted
+     * @throws IOException if closing fails
+     */
+    boolean delete() throws IOException {
+        buffer.putInt(0, 0);
+        force();
+        close();
+        return file.delete();
+    }
+
+    private static int checksum(byte type, long msb, long lsb, byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (msb >>> i));
+        }
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (lsb >>> i));
+        }
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+}
@@ -0,0 +1,895 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.segment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.core.fs.local.LocalFileSystem;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.persistence.PMContext;
+import org.apache.jackrabbit.core.persistence.bundle.AbstractBundlePersistenceManager;
+import org.apache.jackrabbit.core.persistence.util.BLOBStore;
+import org.apache.jackrabbit.core.persistence.util.BundleBinding;
+import org.apache.jackrabbit.core.persistence.util.ErrorHandling;
+import org.apache.jackrabbit.core.persistence.util.FileSystemBLOBStore;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle;
+import org.apache.jackrabbit.core.persistence.util.Serializer;
+import org.apache.jackrabbit.core.state.ChangeLog;
+import org.apache.jackrabbit.core.state.ItemStateException;
+import org.apache.jackrabbit.core.state.NoSuchItemStateException;
+import org.apache.jackrabbit.core.state.NodeReferences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistence manager that stores the {@link NodePropBundle}s and node
+ * references in append-only segment files, which are mapped into memory.
+ * <p>
+ * Every modification appends a record to the active segment; when it is
+ * full, a new segment is started. The location of the current record of
+ * each node is kept in an index outside of the Java heap, which is rebuilt
+ * on startup by replaying the records of all segments in order. All records
+ * of a change log are followed by a commit record, and only committed
+ * records are replayed, so that a change log is either applied completely
+ * or not at all after a crash. Records after the last commit or after a
+ * corrupt record are discarded.
+ * <p>
+ * Replaced and deleted records remain in the segments until the segment is
+ * compacted: a background task copies the records that are still current
+ * from segments with few of them to the active segment and then deletes
+ * the segment file.
+ * <p>
+ * Binary values larger than the minimum blob size are stored in the local
+ * file system, in the "blobs" directory of the workspace.
+ * <p>
+ * Configuration:<br>
+ * <ul>
+ * <li>&lt;param name="{@link #setSegmentSize(String) segmentSize}" value="67108864"/&gt;
+ * <li>&lt;param name="{@link #setSyncOnCommit(String) syncOnCommit}" value="true"/&gt;
+ * <li>&lt;param name="{@link #setCompactionThreshold(String) compactionThreshold}" value="50"/&gt;
+ * <li>&lt;param name="{@link #setCompactionInterval(String) compactionInterval}" value="60"/&gt;
+ * <li>&lt;param name="{@link #setMinBlobSize(String) minBlobSize}" value="4096"/&gt;
+ * <li>&lt;param name="{@link #setErrorHandling(String) errorHandling}" value=""/&gt;
+ * </ul>
+ */
+public class SegmentPersistenceManager extends AbstractBundlePersistenceManager {
+
+    /** the default logger */
+    private static Logger log = LoggerFactory.getLogger(SegmentPersistenceManager.class);
+
+    /** name of the directory that contains the segment files */
+    private static final String SEGMENT_DIRECTORY = "segments";
+
+    /** file name extension of segment files */
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /** number of records that are copied while compaction holds the lock */
+    private static final int COMPACTION_BATCH_SIZE = 1000;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /** flag indicating if this manager was initialized */
+    protected boolean initialized;
+
+    /**
+     * the size of a segment file
+     * @see #setSegmentSize(String)
+     */
+    private int segmentSize = 0x4000000;
+
+    /**
+     * whether segments are written to disk on commit
+     * @see #setSyncOnCommit(String)
+     */
+    private boolean syncOnCommit = true;
+
+    /**
+     * percentage of current records below which a segment is compacted
+     * @see #setCompactionThreshold(String)
+     */
+    private int compactionThreshold = 50;
+
+    /**
+     * seconds between two compaction runs, 0 to disable background compaction
+     * @see #setCompactionInterval(String)
+     */
+    private int compactionInterval = 60;
+
+    /**
+     * the minimum size of a property until it gets written to the blob store
+     * @see #setMinBlobSize(String)
+     */
+    private int minBlobSize = 0x1000;
+
+    /**
+     * flag for error handling
+     */
+    protected ErrorHandling errorHandling = new ErrorHandling();
+
+    /**
+     * the bundle binding
+     */
+    protected BundleBinding binding;
+
+    /**
+     * the file system where the blobs are stored
+     */
+    private LocalFileSystem blobFS;
+
+    /**
+     * the blob store
+     */
+    private BLOBStore blobStore;
+
+    /**
+     * the directory of the segment files
+     */
+    private File directory;
+
+    /**
+     * the segments, by segment number
+     */
+    private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+
+    /**
+     * the segment where records are appended
+     */
+    private Segment active;
+
+    /**
+     * locations of the committed bundle records
+     */
+    private OffHeapIndex bundleIndex;
+
+    /**
+     * locations of the committed references records
+     */
+    private OffHeapIndex referencesIndex;
+
+    /**
+     * locations of the bundle records of the current batch, 0 for deleted
+     */
+    private final Map<NodeId, Long> pendingBundles = new HashMap<NodeId, Long>();
+
+    /**
+     * locations of the references records of the current batch, 0 for deleted
+     */
+    private final Map<NodeId, Long> pendingReferences = new HashMap<NodeId, Long>();
+
+    /**
+     * whether a batch of records is being written
+     */
+    private boolean inBatch;
+
+    /**
+     * the segment number and offset where the current batch starts
+     */
+    private int batchSegment;
+
+    private int batchOffset;
+
+    /**
+     * executor of the background compaction, or <code>null</code>
+     */
+    private ScheduledExecutorService compactionExecutor;
+
+    /**
+     * the name of this persistence manager
+     */
+    private String name = super.toString();
+
+    /**
+     * Returns the size of the segment files.
+     * @return the segment size in bytes.
+     */
+    public String getSegmentSize() {
+        return String.valueOf(segmentSize);
+    }
+
+    /**
+     * Sets the size of the segment files. Records that are larger than a
+     * segment are stored in a segment of their own. Changing the size does
+     * not affect existing segments.
+     *
+     * @param segmentSize the segment size in bytes
+     */
+    public void setSegmentSize(String segmentSize) {
+        this.segmentSize = Integer.decode(segmentSize).intValue();
+    }
+
+    /**
+     * Returns whether segments are written to disk on commit.
+     * @return <code>true</code> if segments are written to disk on commit.
+     */
+    public String getSyncOnCommit() {
+        return String.valueOf(syncOnCommit);
+    }
+
+    /**
+     * Sets whether the segments are written to disk when a change log is
+     * committed. If disabled, the operating system writes the mapped
+     * segments at its own discretion, and the most recent changes may be
+     * lost if the system crashes. The segments are still consistent after a
+     * crash.
+     *
+     * @param syncOnCommit <code>true</code> to write segments on commit
+     */
+    public void setSyncOnCommit(String syncOnCommit) {
+        this.syncOnCommit = Boolean.valueOf(syncOnCommit).booleanValue();
+    }
+
+    /**
+     * Returns the compaction threshold.
+     * @return the compaction threshold in percent.
+     */
+    public String getCompactionThreshold() {
+        return String.valueOf(compactionThreshold);
+    }
+
+    /**
+     * Sets the compaction threshold. A segment is compacted if less than
+     * the given percentage of its size are current records.
+     *
+     * @param compactionThreshold the compaction threshold in percent
+     */
+    public void setCompactionThreshold(String compactionThreshold) {
+        this.compactionThreshold = Integer.parseInt(compactionThreshold);
+    }
+
+    /**
+     * Returns the compaction interval.
+     * @return the compaction interval in seconds.
+     */
+    public String getCompactionInterval() {
+        return String.valueOf(compactionInterval);
+    }
+
+    /**
+     * Sets the number of seconds between two background compaction runs.
+     * If <code>0</code>, segments are only compacted by calls to
+     * {@link #compact()}.
+     *
+     * @param compactionInterval the compaction interval in seconds
+     */
+    public void setCompactionInterval(String compactionInterval) {
+        this.compactionInterval = Integer.parseInt(compactionInterval);
+    }
+
+    /**
+     * Returns the mininum blob size.
+     * @return the mininum blob size.
+     */
+    public String getMinBlobSize() {
+        return String.valueOf(minBlobSize);
+    }
+
+    /**
+     * Sets the minimum blob size. This size defines the threshold of which
+     * size a property is included in the bundle or is stored in the blob store.
+     *
+     * @param minBlobSize
+     */
+    public void setMinBlobSize(String minBlobSize) {
+        this.minBlobSize = Integer.decode(minBlobSize).intValue();
+    }
+
+    /**
+     * Sets the error handling behaviour of this manager. See {@link ErrorHandling}
+     * for details about the flags.
+     *
+     * @param errorHandling
+     */
+    public void setErrorHandling(String errorHandling) {
+        this.errorHandling = new ErrorHandling(errorHandling);
+    }
+
+    /**
+     * Returns the error handling configuration of this manager
+     * @return the error handling configuration of this manager
+     */
+    public String getErrorHandling() {
+        return errorHandling.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void init(PMContext context) throws Exception {
+        if (initialized) {
+            throw new IllegalStateException("already initialized");
+        }
+        super.init(context);
+
+        this.name = context.getHomeDir().getName();
+
+        blobFS = new LocalFileSystem();
+        blobFS.setRoot(new File(context.getHomeDir(), "blobs"));
+        blobFS.init();
+        blobStore = new FileSystemBLOBStore(blobFS);
+
+        binding = new BundleBinding(errorHandling, blobStore, getNsIndex(), getNameIndex(), context.getDataStore());
+        binding.setMinBlobSize(minBlobSize);
+
+        directory = new File(context.getHomeDir(), SEGMENT_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        bundleIndex = new OffHeapIndex(1024);
+        referencesIndex = new OffHeapIndex(1024);
+        try {
+            recover();
+        } catch (Exception e) {
+            closeSegments();
+            blobFS.close();
+            throw e;
+        }
+
+        initialized = true;
+
+        if (compactionInterval > 0) {
+            compactionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SegmentPersistenceManager compaction: " + name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            compactionExecutor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        compact();
+                    } catch (Exception e) {
+                        log.warn("Segment compaction failed", e);
+                    }
+                }
+            }, compactionInterval, compactionInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected BLOBStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void close() throws Exception {
+        if (!initialized) {
+            throw new IllegalStateException("not initialized");
+        }
+
+        try {
+            if (compactionExecutor != null) {
+                compactionExecutor.shutdown();
+                compactionExecutor = null;
+            }
+            closeSegments();
+            bundleIndex = null;
+            referencesIndex = null;
+            blobFS.close();
+            blobFS = null;
+            super.close();
+        } finally {
+            initialized = false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Appends a commit record after the records of the change log, or
+     * discards them if the change log cannot be stored.
+     */
+    public synchronized void store(ChangeLog changeLog) throws ItemStateException {
+        beginBatch();
+        boolean success = false;
+        try {
+            super.store(changeLog);
+            commitBatch();
+            success = true;
+        } finally {
+            if (!success) {
+                abortBatch();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected synchronized NodePropBundle loadBundle(NodeId id) throws ItemStateException {
+        long location = getLocation(bundleIndex, pendingBundles, id);
+        if (location == 0) {
+            return null;
+        }
+        try {
+            return binding.readBundle(new ByteArrayInputStream(getData(location)), id);
+        } catch (Exception e) {
+            String msg = "failed to read bundle: " + id + ": " + e;
+            log.error(msg);
+            throw new ItemStateException(msg, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected synchronized void storeBundle(NodePropBundle bundle) throws ItemStateException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            binding.writeBundle(out, bundle);
+        } catch (IOException e) {
+            String msg = "failed to write bundle: " + bundle.getId();
+            log.error(msg, e);
+            throw new ItemStateException(msg, e);
+        }
+        write(Segment.BUNDLE, bundle.getId(), out.toByteArray());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected synchronized void destroyBundle(NodePropBundle bundle) throws ItemStateException {
+        write(Segment.DELETED_BUNDLE, bundle.getId(), EMPTY);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized NodeReferences loadReferencesTo(NodeId targetId)
+            throws NoSuchItemStateException, ItemStateException {
+        if (!initialized) {
+            throw new IllegalStateException("not initialized");
+        }
+        long location = getLocation(referencesIndex, pendingReferences, targetId);
+        if (location == 0) {
+            throw new NoSuchItemStateException(targetId.toString());
+        }
+        try {
+            NodeReferences refs = new NodeReferences(targetId);
+            Serializer.deserialize(refs, new ByteArrayInputStream(getData(location)));
+            return refs;
+        } catch (Exception e) {
+            String msg = "failed to read references: " + targetId;
+            log.error(msg, e);
+            throw new ItemStateException(msg, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void store(NodeReferences refs) throws ItemStateException {
+        if (!initialized) {
+            throw new IllegalStateException("not initialized");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            Serializer.serialize(refs, out);
+        } catch (Exception e) {
+            String msg = "failed to write " + refs;
+            log.error(msg, e);
+            throw new ItemStateException(msg, e);
+        }
+        write(Segment.REFERENCES, refs.getTargetId(), out.toByteArray());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void destroy(NodeReferences refs) throws ItemStateException {
+        if (!initialized) {
+            throw new IllegalStateException("not initialized");
+        }
+        write(Segment.DELETED_REFERENCES, refs.getTargetId(), EMPTY);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized boolean existsReferencesTo(NodeId targetId) throws ItemStateException {
+        if (!initialized) {
+            throw new IllegalStateException("not initialized");
+        }
+        return getLocation(referencesIndex, pendingReferences, targetId) != 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The ids are returned in the slot order of the bundle index, which is
+     * a hash table, and each batch continues after the slot of the given id.
+     * Iterating over all ids therefore reads every slot once.
+     */
+    protected synchronized List<NodeId> getAllBundleIds(NodeId after, int maxCount)
+            throws ItemStateException {
+        if (!initialized) {
+            throw new IllegalStateException("not initialized");
+        }
+        return bundleIndex.getIds(after, maxCount);
+    }
+
+    /**
+     * Compacts all segments, except the active one, in which less than the
+     * compaction threshold are current records. The current records are
+     * copied to the active segment, then the segment file is deleted. The
+     * lock of this persistence manager is released after every few records,
+     * so that compaction runs concurrently with other operations.
+     *
+     * @throws ItemStateException if compaction fails
+     */
+    public void compact() throws ItemStateException {
+        List<Integer> candidates = new ArrayList<Integer>();
+        synchronized (this) {
+            if (!initialized) {
+                return;
+            }
+            for (Segment segment : segments.values()) {
+                if (segment != active && segment.getLive() * 100
+                        < (long) segment.getSize() * compactionThreshold) {
+                    candidates.add(segment.getNumber());
+                }
+            }
+        }
+        for (Integer number : candidates) {
+            int offset = Segment.HEADER_SIZE;
+            while (offset >= 0) {
+                offset = compact(number, offset);
+            }
+        }
+    }
+
+    /**
+     * Copies the current records of a segment, starting at the given
+     * offset. Deletes the segment when all records have been copied.
+     *
+     * @param number the segment number
+     * @param offset the offset of the first record to copy
+     * @return the offset of the next record to copy, or <code>-1</code> if
+     *         the segment was deleted or this persistence manager was closed.
+     * @throws ItemStateException if compaction fails
+     */
+    private synchronized int compact(int number, int offset) throws ItemStateException {
+        Segment segment = segments.get(number);
+        if (!initialized || segment == null || segment == active) {
+            return -1;
+        }
+        boolean oldest = segments.firstKey().intValue() == number;
+        beginBatch();
+        boolean success = false;
+        try {
+            for (int i = 0; i < COMPACTION_BATCH_SIZE && offset < segment.getSize(); i++) {
+                byte type = segment.getType(offset);
+                NodeId id = segment.getId(offset);
+                long location = getLocation(number, offset);
+                if ((type == Segment.BUNDLE && bundleIndex.get(id) == location)
+                        || (type == Segment.REFERENCES && referencesIndex.get(id) == location)) {
+                    write(type, id, segment.getData(offset));
+                } else if ((type == Segment.DELETED_BUNDLE && !oldest && bundleIndex.get(id) == 0)
+                        || (type == Segment.DELETED_REFERENCES && !oldest && referencesIndex.get(id) == 0)) {
+                    // older segments may still contain a record of the id
+                    write(type, id, EMPTY);
+                }
+                offset += segment.getRecordSize(offset);
+            }
+            commitBatch();
+            success = true;
+        } finally {
+            if (!success) {
+                abortBatch();
+            }
+        }
+        if (offset < segment.getSize()) {
+            return offset;
+        }
+        try {
+            // the copies must be on disk before the originals are deleted
+            active.force();
+            segments.remove(number);
+            if (!segment.delete()) {
+                log.warn("Unable to delete compacted segment " + segment.getFile());
+            }
+            log.debug("Compacted segment " + segment.getFile());
+        } catch (IOException e) {
+            String msg = "failed to delete segment " + segment.getFile();
+            log.error(msg, e);
+            throw new ItemStateException(msg, e);
+        }
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+        return name;
+    }
+
+    //-------------------------------------------------------------< internal >
+
+    private static long getLocation(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    /**
+     * Returns the location of the current record of the given id, taking
+     * the records of the current batch into account.
+     */
+    private long getLocation(OffHeapIndex index, Map<NodeId, Long> pending, NodeId id) {
+        if (inBatch) {
+            Long location = pending.get(id);
+            if (location != null) {
+                return location.longValue();
+            }
+        }
+        return index.get(id);
+    }
+
+    private byte[] getData(long location) {
+        return segments.get((int) (location >>> 32)).getData((int) location);
+    }
+
+    /**
+     * Appends a record to the current batch. If no batch is active, the
+     * record is committed immediately.
+     */
+    private void write(byte type, NodeId id, byte[] data) throws ItemStateException {
+        boolean autoCommit = !inBatch;
+        if (autoCommit) {
+            beginBatch();
+        }
+        boolean success = false;
+        try {
+            long location = append(type, id, data);
+            if (type == Segment.BUNDLE || type == Segment.DELETED_BUNDLE) {
+                pendingBundles.put(id, type == Segment.BUNDLE ? location : 0L);
+            } else {
+                pendingReferences.put(id, type == Segment.REFERENCES ? location : 0L);
+            }
+            if (autoCommit) {
+                commitBatch();
+            }
+            success = true;
+        } catch (IOException e) {
+            String msg = "failed to write record of " + id;
+            log.error(msg, e);
+            throw new ItemStateException(msg, e);
+        } finally {
+            if (autoCommit && !success) {
+                abortBatch();
+            }
+        }
+    }
+
+    /**
+     * Appends a record to the active segment, or to a new segment if it does
+     * not fit.
+     */
+    private long append(byte type, NodeId id, byte[] data) throws IOException {
+        int offset = active.append(type, id, data);
+        if (offset < 0) {
+            active.force();
+            int capacity = Math.max(segmentSize,
+                    Segment.HEADER_SIZE + Segment.sizeOf(data.length));
+            active = createSegment(active.getNumber() + 1, capacity);
+            offset = active.append(type, id, data);
+        }
+        return getLocation(active.getNumber(), offset);
+    }
+
+    private void beginBatch() {
+        if (inBatch) {
+            throw new IllegalStateException("batch already started");
+        }
+        inBatch = true;
+        batchSegment = active.getNumber();
+        batchOffset = active.getSize();
+    }
+
+    /**
+     * Appends the commit record and applies the records of the batch to
+     * the index.
+     */
+    private void commitBatch() throws ItemStateException {
+        try {
+            append(Segment.COMMIT, null, EMPTY);
+            if (syncOnCommit) {
+                active.force();
+            }
+        } catch (IOException e) {
+            String msg = "failed to commit records";
+            log.error(msg, e);
+            throw new ItemStateException(msg, e);
+        }
+        apply(bundleIndex, pendingBundles);
+        apply(referencesIndex, pendingReferences);
+        inBatch = false;
+    }
+
+    /**
+     * Discards the records of the current batch.
+     */
+    private void abortBatch() {
+        pendingBundles.clear();
+        pendingReferences.clear();
+        inBatch = false;
+        while (active.getNumber() > batchSegment) {
+            Segment segment = segments.remove(active.getNumber());
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                log.warn("Unable to delete segment " + segment.getFile(), e);
+            }
+            active = segments.get(segments.lastKey());
+        }
+        active.truncate(batchOffset);
+        if (syncOnCommit) {
+            active.force();
+        }
+    }
+
+    /**
+     * Applies the given record locations to the index and updates the number
+     * of current record bytes of the affected segments.
+     */
+    private void apply(OffHeapIndex index, Map<NodeId, Long> pending) {
+        for (Map.Entry<NodeId, Long> entry : pending.entrySet()) {
+            long location = entry.getValue().longValue();
+            long previous;
+            if (location == 0) {
+                previous = index.remove(entry.getKey());
+            } else {
+                previous = index.put(entry.getKey(), location);
+                Segment segment = segments.get((int) (location >>> 32));
+                segment.addLive(segment.getRecordSize((int) location));
+            }
+            if (previous != 0) {
+                Segment segment = segments.get((int) (previous >>> 32));
+                segment.addLive(-segment.getRecordSize((int) previous));
+            }
+        }
+        pending.clear();
+    }
+
+    private Segment createSegment(int number, int capacity) throws IOException {
+        Segment segment = Segment.create(number, getSegmentFile(number), capacity);
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private File getSegmentFile(int number) {
+        return new File(directory, String.format("%08d", number) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Opens the segment files and replays their committed records.
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+        TreeMap<Integer, File> found = new TreeMap<Integer, File>();
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+                if (fileName.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        found.put(Integer.valueOf(fileName.substring(
+                                0, fileName.length() - SEGMENT_SUFFIX.length())), file);
+                    } catch (NumberFormatException e) {
+                        log.warn("Ignoring unexpected file " + file);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Integer, File> entry : found.entrySet()) {
+            Segment segment = Segment.open(entry.getKey().intValue(), entry.getValue());
+            if (segment != null) {
+                segments.put(segment.getNumber(), segment);
+            } else if (!entry.getValue().delete()) {
+                log.warn("Unable to delete invalid segment " + entry.getValue());
+            }
+        }
+        if (segments.isEmpty()) {
+            active = createSegment(1, segmentSize);
+            return;
+        }
+
+        // the position after the last commit record
+        int commitSegment = segments.firstKey().intValue();
+        int commitOffset = Segment.HEADER_SIZE;
+        inBatch = true;
+        for (Segment segment : segments.values()) {
+            int offset = Segment.HEADER_SIZE;
+            while (segment.isValid(offset)) {
+                byte type = segment.getType(offset);
+                long location = getLocation(segment.getNumber(), offset);
+                if (type == Segment.COMMIT) {
+                    apply(bundleIndex, pendingBundles);
+                    apply(referencesIndex, pendingReferences);
+                    commitSegment = segment.getNumber();
+                    commitOffset = offset + segment.getRecordSize(offset);
+                } else if (type == Segment.BUNDLE || type == Segment.DELETED_BUNDLE) {
+                    pendingBundles.put(segment.getId(offset),
+                            type == Segment.BUNDLE ? location : 0L);
+                } else {
+                    pendingReferences.put(segment.getId(offset),
+                            type == Segment.REFERENCES ? location : 0L);
+                }
+                offset += segment.getRecordSize(offset);
+            }
+            if (segment.isEnd(offset)) {
+                segment.setSize(offset);
+            } else {
+                log.error("Segment " + segment.getFile() + " is corrupt at offset "
+                        + offset + ", discarding all following records");
+                segment.setSize(segment.getCapacity());
+                break;
+            }
+        }
+        inBatch = false;
+
+        // discard the records after the last commit
+        if (!pendingBundles.isEmpty() || !pendingReferences.isEmpty()) {
+            log.warn("Discarding uncommitted records of " + (pendingBundles.size()
+                    + pendingReferences.size()) + " items");
+            pendingBundles.clear();
+            pendingReferences.clear();
+        }
+        while (segments.lastKey().intValue() > commitSegment) {
+            Segment segment = segments.remove(segments.lastKey());
+            if (!segment.delete()) {
+                log.warn("Unable to delete segment " + segment.getFile());
+            }
+        }
+        active = segments.get(commitSegment);
+        if (active.getSize() > commitOffset) {
+            active.truncate(commitOffset);
+            active.force();
+        }
+        log.info(name + ": " + bundleIndex.size() + " bundles in "
+                + segments.size() + " segments");
+    }
+
+    private void closeSegments() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.force();
+                segment.close();
+            } catch (IOException e) {
+                log.warn("Unable to close segment " + segment.getFile(), e);
+            }
+        }
+        segments.clear();
+        active = null;
+    }
+
+}
@@ -16,13 +16,25 @@
  */
 package org.apache.jackrabbit.core.persistence.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.api.stats.RepositoryStatistics;
 import org.apache.jackrabbit.core.data.DataStore;
 import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
 import org.apache.jackrabbit.core.util.StringIndex;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 
 /**
  * This Class implements efficient serialization methods for item states.
@@ -57,10 +69,23 @@ public class BundleBinding {
      */
     static final int VERSION_3 = 3;
 
+    /**
+     * serialization version 4, properties are length prefixed so that they
+     * can be decoded lazily and child node entries may be stored in separate
+     * child node pages
+     */
+    static final int VERSION_4 = 4;
+
     /**
      * current version
      */
-    static final int VERSION_CURRENT = VERSION_3;
+    static final int VERSION_CURRENT = VERSION_4;
+
+    /**
+     * Flag in the version byte of a bundle whose serialization after the
+     * version byte is compressed with the deflate algorithm.
+     */
+    static final int COMPRESSED = 0x80;
 
     /**
      * the namespace index
@@ -82,6 +107,26 @@ public class BundleBinding {
      */
     protected long minBlobSize = 0x4000; // 16k
 
+    /**
+     * minimum size of bundles to compress, 0 disables compression
+     */
+    protected int compressionThreshold = 0;
+
+    /**
+     * compression statistics, or <code>null</code>
+     */
+    private AtomicLong compressionCounter;
+
+    private AtomicLong compressionDuration;
+
+    private AtomicLong decompressionCounter;
+
+    private AtomicLong decompressionDuration;
+
+    private AtomicLong uncompressedSize;
+
+    private AtomicLong compressedSize;
+
     /**
      * the error handling
      */
@@ -131,6 +176,49 @@ public class BundleBinding {
         this.minBlobSize = minBlobSize;
     }
 
+    /**
+     * Returns the minimum size of bundles to compress.
+     * @see #setCompressionThreshold(int)
+     * @return the compression threshold in bytes
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the minimum size of bundles to compress. Bundles whose
+     * serialization is at least this size are compressed with the deflate
+     * algorithm, unless that does not make them smaller. Compressed bundles
+     * are always read, whatever the threshold. The default is 0, which
+     * disables compression.
+     *
+     * @param compressionThreshold the compression threshold in bytes
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Records the time spent compressing and decompressing bundles and the
+     * size of the compressed bundles in the given statistics.
+     *
+     * @param stats the repository statistics
+     */
+    public void setRepositoryStatistics(RepositoryStatisticsImpl stats) {
+        compressionCounter = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_COMPRESSION_COUNTER);
+        compressionDuration = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_COMPRESSION_DURATION);
+        decompressionCounter = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_DECOMPRESSION_COUNTER);
+        decompressionDuration = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_DECOMPRESSION_DURATION);
+        uncompressedSize = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_UNCOMPRESSED_SIZE_COUNTER);
+        compressedSize = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_COMPRESSED_SIZE_COUNTER);
+    }
+
     /**
      * Returns the blob store that is associated with this binding.
      * @return the blob store
@@ -149,7 +237,49 @@ public class BundleBinding {
      */
     public NodePropBundle readBundle(InputStream in, NodeId id)
             throws IOException {
-        return new BundleReader(this, in).readBundle(id);
+        int version = in.read();
+        if (version == -1) {
+            throw new EOFException();
+        } else if ((version & COMPRESSED) == 0) {
+            return new BundleReader(this, in, version).readBundle(id);
+        }
+
+        // decompress completely to measure the cost
+        long start = System.nanoTime();
+        byte[] data;
+        Inflater inflater = new Inflater();
+        try {
+            data = IOUtils.toByteArray(new InflaterInputStream(in, inflater));
+        } finally {
+            inflater.end();
+        }
+        if (decompressionCounter != null) {
+            decompressionDuration.addAndGet(System.nanoTime() - start);
+            decompressionCounter.incrementAndGet();
+        }
+        return new BundleReader(this, new ByteArrayInputStream(data),
+                version & ~COMPRESSED).readBundle(id);
+    }
+
+    /**
+     * Deserializes the type, mod count and values of a property that were
+     * serialized separately by the current serialization version.
+     *
+     * @param data the serialized property
+     * @param id the property id for the new property entry
+     * @return the property entry
+     * @throws IOException if an I/O error occurs or if the data is not
+     *                     exactly one serialized property
+     */
+    NodePropBundle.PropertyEntry readPropertyEntry(byte[] data, PropertyId id)
+            throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(data);
+        NodePropBundle.PropertyEntry entry =
+            new BundleReader(this, in, VERSION_4).readPropertyEntry(id);
+        if (in.available() > 0) {
+            throw new IOException("Trailing data in property record: " + id);
+        }
+        return entry;
     }
 
     /**
@@ -161,7 +291,40 @@ public class BundleBinding {
      */
     public void writeBundle(OutputStream out, NodePropBundle bundle)
             throws IOException {
-        new BundleWriter(this, out).writeBundle(bundle);
+        if (compressionThreshold <= 0) {
+            new BundleWriter(this, out).writeBundle(bundle);
+            return;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new BundleWriter(this, buffer).writeBundle(bundle);
+        byte[] data = buffer.toByteArray();
+        if (data.length >= compressionThreshold) {
+            long start = System.nanoTime();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2);
+            compressed.write(data[0] | COMPRESSED);
+            Deflater deflater = new Deflater();
+            try {
+                DeflaterOutputStream dout = new DeflaterOutputStream(compressed, deflater);
+                dout.write(data, 1, data.length - 1);
+                dout.finish();
+            } finally {
+                deflater.end();
+            }
+            if (compressionCounter != null) {
+                compressionDuration.addAndGet(System.nanoTime() - start);
+                compressionCounter.incrementAndGet();
+            }
+            if (compressed.size() < data.length) {
+                if (compressionCounter != null) {
+                    uncompressedSize.addAndGet(data.length);
+                    compressedSize.addAndGet(compressed.size());
+                }
+                compressed.writeTo(out);
+                return;
+            }
+        }
+        out.write(data);
     }
 
 }
@@ -21,10 +21,12 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.zip.InflaterInputStream;
 
 /**
  * This utility class can dump the contents of a node bundle. This class is
@@ -38,6 +40,7 @@ public class BundleDumper {
     private static final int VERSION_1 = 1;
     private static final int VERSION_2 = 2;
     private static final int VERSION_3 = 3;
+    private static final int VERSION_4 = 4;
 
     private static final int BINARY_IN_BLOB_STORE = -1;
     private static final int BINARY_IN_DATA_STORE = -2;
@@ -127,7 +130,12 @@ public class BundleDumper {
             ByteArrayInputStream bin = new ByteArrayInputStream(bundle);
             this.in = new DataInputStream(bin);
             version = in.readUnsignedByte();
-            buffer.append("version: ").append(version).append("\n");
+            buffer.append("version: ").append(version & 0x7f).append("\n");
+            if ((version & 0x80) != 0) {
+                buffer.append("compressed\n");
+                version &= 0x7f;
+                this.in = new DataInputStream(new InflaterInputStream(bin));
+            }
             if (version >= VERSION_3) {
                 readBundleNew();
             } else {
@@ -173,7 +181,16 @@ public class BundleDumper {
         int pn = readVarInt((b >> 4) & 7, 7);
         for (int i = 0; i < pn; i++) {
             buffer.append("property: ").append(readName()).append("\n");
-            readPropertyEntry();
+            if (version >= VERSION_4) {
+                buffer.append("  length: ").append(readVarInt()).append("\n");
+                // the property is serialized with its own namespace table
+                String[] bundleNamespaces = namespaces.clone();
+                Arrays.fill(namespaces, 1, namespaces.length, null);
+                readPropertyEntry();
+                System.arraycopy(bundleNamespaces, 0, namespaces, 0, namespaces.length);
+            } else {
+                readPropertyEntry();
+            }
         }
 
         // child nodes (list of name/uuid pairs)
@@ -132,6 +132,21 @@ class BundleReader {
         this.version = in.readUnsignedByte();
     }
 
+    /**
+     * Creates a new deserializer for data of the given serialization
+     * version that is not preceded by a version byte.
+     *
+     * @param binding bundle binding
+     * @param stream stream from which the data is read
+     * @param version serialization version of the data
+     */
+    BundleReader(BundleBinding binding, InputStream stream, int version) {
+        this.binding = binding;
+        this.cin = new CountingInputStream(stream);
+        this.in = new DataInputStream(cin);
+        this.version = version;
+    }
+
     /**
      * Deserializes a <code>NodePropBundle</code> from a data input stream.
      *
@@ -186,7 +201,25 @@ class BundleReader {
         int pn = readVarInt((b >> 4) & 7, 7);
         for (int i = 0; i < pn; i++) {
             PropertyId id = new PropertyId(bundle.getId(), readName());
-            bundle.addProperty(readPropertyEntry(id));
+            if (version >= BundleBinding.VERSION_4) {
+                byte[] data = readBytes(0, 0);
+                // check the framing of the record, its values are only
+                // checked when the entry is decoded
+                int type = data.length > 0 ? data[0] & 0x0f : 0;
+                if (type < PropertyType.STRING || type > PropertyType.DECIMAL) {
+                    throw new IOException("Invalid property record: " + id);
+                }
+                if (type == PropertyType.BINARY) {
+                    // binaries are decoded right away so that missing
+                    // blobs are reported when the bundle is loaded
+                    bundle.addProperty(binding.readPropertyEntry(data, id));
+                } else {
+                    bundle.addProperty(
+                            new NodePropBundle.PropertyEntry(id, binding, data));
+                }
+            } else {
+                bundle.addProperty(readPropertyEntry(id));
+            }
         }
 
         // child nodes (list of name/uuid pairs)
@@ -194,7 +227,13 @@ class BundleReader {
         for (int i = 0; i < nn; i++) {
             Name name = readQName();
             NodeId id = readNodeId();
-            bundle.addChildNodeEntry(name, id);
+            if (version >= BundleBinding.VERSION_4
+                    && NodePropBundle.CHILD_NODE_PAGE.equals(name)) {
+                // entries stored in a separate page bundle
+                bundle.addChildNodePage(id);
+            } else {
+                bundle.addChildNodeEntry(name, id);
+            }
         }
 
         // read shared set
@@ -295,7 +334,7 @@ class BundleReader {
      * @return the property entry
      * @throws IOException if an I/O error occurs.
      */
-    private NodePropBundle.PropertyEntry readPropertyEntry(PropertyId id)
+    NodePropBundle.PropertyEntry readPropertyEntry(PropertyId id)
             throws IOException {
         NodePropBundle.PropertyEntry entry = new NodePropBundle.PropertyEntry(id);
 
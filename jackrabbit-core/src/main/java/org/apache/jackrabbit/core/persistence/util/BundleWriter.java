@@ -16,15 +16,18 @@
  */
 package org.apache.jackrabbit.core.persistence.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
@@ -34,6 +37,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodeEntry;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodePage;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle.PropertyEntry;
 import org.apache.jackrabbit.spi.Name;
 import org.slf4j.Logger;
@@ -53,6 +57,11 @@ class BundleWriter {
 
     private final DataOutputStream out;
 
+    /**
+     * The serialization version.
+     */
+    private final int version;
+
     /**
      * The default namespace and the first six other namespaces used in this
      * bundle. Used by the {@link #writeName(Name)} method to keep track of
@@ -71,10 +80,34 @@ class BundleWriter {
      */
     public BundleWriter(BundleBinding binding, OutputStream stream)
             throws IOException {
+        this(binding, stream, BundleBinding.VERSION_CURRENT);
+    }
+
+    /**
+     * Creates a new bundle serializer that writes the given serialization
+     * version, which must be {@link BundleBinding#VERSION_3} or later.
+     *
+     * @param binding bundle binding
+     * @param stream stream to which the bundle will be written
+     * @param version serialization version
+     * @throws IOException if an I/O error occurs.
+     */
+    BundleWriter(BundleBinding binding, OutputStream stream, int version)
+            throws IOException {
+        this(binding, new DataOutputStream(stream), version);
+        this.out.writeByte(version);
+    }
+
+    /**
+     * Creates a serializer that writes to the given stream without a
+     * version byte.
+     */
+    private BundleWriter(
+            BundleBinding binding, DataOutputStream out, int version) {
         assert namespaces.length == 7;
         this.binding = binding;
-        this.out = new DataOutputStream(stream);
-        this.out.writeByte(BundleBinding.VERSION_CURRENT);
+        this.out = out;
+        this.version = version;
     }
 
     /**
@@ -103,6 +136,16 @@ class BundleWriter {
         Collection<Name> mixins = bundle.getMixinTypeNames();
         Collection<PropertyEntry> properties = bundle.getPropertyEntries();
         Collection<ChildNodeEntry> nodes = bundle.getChildNodeEntries();
+        List<ChildNodePage> pages = bundle.getChildNodePages();
+        if (pages != null && version >= BundleBinding.VERSION_4) {
+            // the child node entries are stored in separate page bundles,
+            // refer to them with entries of a reserved name
+            nodes = new ArrayList<ChildNodeEntry>(pages.size());
+            for (ChildNodePage page : pages) {
+                nodes.add(new ChildNodeEntry(
+                        NodePropBundle.CHILD_NODE_PAGE, page.getId()));
+            }
+        }
         Collection<NodeId> shared = bundle.getSharedSet();
 
         int mn = mixins.size();
@@ -151,8 +194,18 @@ class BundleWriter {
 
     /**
      * Serializes a property entry. The serialization begins with the
-     * property name followed by a single byte that encodes the type and
-     * multi-valuedness of the property:
+     * property name.
+     * <p>
+     * Since version 4 the name is followed by the length of the remaining
+     * serialization as a variable-length integer, so that a reader can skip
+     * the property and decode it later. The remaining serialization is
+     * written with a separate namespace table (see {@link #writeName(Name)}),
+     * so it can be decoded without the preceding parts of the bundle.
+     * Entries that have not been decoded since they were read are written
+     * as is.
+     * <p>
+     * The remaining serialization starts with a single byte that encodes
+     * the type and multi-valuedness of the property:
      * <pre>
      * +-------------------------------+
      * |   mv count    |     type      |
@@ -182,6 +235,29 @@ class BundleWriter {
             throws IOException {
         writeName(state.getName());
 
+        if (version >= BundleBinding.VERSION_4) {
+            byte[] data = state.getData();
+            if (data == null) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                new BundleWriter(binding, new DataOutputStream(buffer), version)
+                        .writeValues(state);
+                data = buffer.toByteArray();
+            }
+            writeVarInt(data.length);
+            out.write(data);
+        } else {
+            writeValues(state);
+        }
+    }
+
+    /**
+     * Serializes the type, mod count and values of a property entry.
+     *
+     * @param state the property entry to store
+     * @throws IOException if an I/O error occurs.
+     */
+    private void writeValues(NodePropBundle.PropertyEntry state)
+            throws IOException {
         InternalValue[] values = state.getValues();
 
         int type = state.getType();
@@ -27,6 +27,7 @@ import java.util.concurrent.ConcurrentMap;
 import javax.jcr.PropertyType;
 
 import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.jackrabbit.spi.Name;
 
@@ -76,8 +77,9 @@ public final class NodeInfo {
      * Create a new NodeInfo object from a bundle
      *
      * @param bundle the node bundle
+     * @throws ItemStateException if a property of the bundle can not be decoded
      */
-    public NodeInfo(final NodePropBundle bundle) {
+    public NodeInfo(final NodePropBundle bundle) throws ItemStateException {
         nodeId = getNodeId(bundle.getId());
         parentId = getNodeId(bundle.getParentId());
 
@@ -92,6 +94,8 @@ public final class NodeInfo {
         }
 
         for (NodePropBundle.PropertyEntry entry : bundle.getPropertyEntries()) {
+            // decodes every property, so that corrupt records are reported
+            entry.decode();
             if (entry.getType() == PropertyType.REFERENCE) {
                 if (references == null) {
                     references = new HashMap<Name, List<NodeId>>(4);
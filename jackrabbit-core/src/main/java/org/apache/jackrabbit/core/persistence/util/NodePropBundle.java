@@ -16,8 +16,11 @@
  */
 package org.apache.jackrabbit.core.persistence.util;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -30,10 +33,12 @@ import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
 import org.apache.jackrabbit.core.persistence.PersistenceManager;
 import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.state.PropertyState;
 import org.apache.jackrabbit.core.state.NodeState;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +53,14 @@ public class NodePropBundle {
      */
     private static Logger log = LoggerFactory.getLogger(NodePropBundle.class);
 
+    /**
+     * Node type name of child node pages and name of the serialized child
+     * node entries that refer to them. The brackets make it an invalid JCR
+     * name, so it cannot clash with the name of an actual child node.
+     */
+    static final Name CHILD_NODE_PAGE =
+        NameFactoryImpl.getInstance().create(Name.NS_REP_URI, "[childNodePage]");
+
     /**
      * the node id
      */
@@ -73,6 +86,12 @@ public class NodePropBundle {
      */
     private LinkedList<NodePropBundle.ChildNodeEntry> childNodeEntries = new LinkedList<NodePropBundle.ChildNodeEntry>();
 
+    /**
+     * the pages in which the child node entries are stored or
+     * <code>null</code> if they are stored in this bundle
+     */
+    private List<ChildNodePage> childNodePages;
+
     /**
      * the properties
      */
@@ -300,6 +319,90 @@ public class NodePropBundle {
         childNodeEntries.add(new ChildNodeEntry(name, id));
     }
 
+    /**
+     * Returns the pages in which the child node entries of this bundle are
+     * stored.
+     * @return the child node pages or <code>null</code> if the child node
+     *         entries are stored in this bundle.
+     */
+    public List<ChildNodePage> getChildNodePages() {
+        return childNodePages;
+    }
+
+    /**
+     * Sets the pages in which the child node entries of this bundle are
+     * stored.
+     * @param childNodePages the child node pages or <code>null</code> if the
+     *                       child node entries are stored in this bundle.
+     */
+    public void setChildNodePages(List<ChildNodePage> childNodePages) {
+        this.childNodePages = childNodePages;
+    }
+
+    /**
+     * Adds a reference to a child node page.
+     * @param id the id of the page
+     */
+    public void addChildNodePage(NodeId id) {
+        if (childNodePages == null) {
+            childNodePages = new ArrayList<ChildNodePage>();
+        }
+        childNodePages.add(new ChildNodePage(id));
+    }
+
+    /**
+     * Checks if this bundle is a page of child node entries of another
+     * bundle rather than the bundle of a node.
+     * @return <code>true</code> if this bundle is a child node page.
+     */
+    public boolean isChildNodePage() {
+        return CHILD_NODE_PAGE.equals(nodeTypeName);
+    }
+
+    /**
+     * Creates a random id for a child node page. The variant field of the
+     * id is set to the value that RFC 4122 reserves for future definition,
+     * which distinguishes page ids from the ids of nodes created by the
+     * repository, see {@link #isChildNodePageId(NodeId)}.
+     * @return a new child node page id
+     */
+    public static NodeId createChildNodePageId() {
+        NodeId id = NodeId.randomId();
+        return new NodeId(id.getMostSignificantBits(),
+                id.getLeastSignificantBits() & 0x1fffFfffFfffFfffL | 0xe000000000000000L);
+    }
+
+    /**
+     * Checks if the given id may be the id of a child node page. Node ids
+     * that were imported may have the same variant field, so the bundle
+     * has to be loaded to tell whether it actually is a page.
+     * @param id a bundle id
+     * @return <code>true</code> if the id has the variant field of child
+     *         node page ids.
+     */
+    public static boolean isChildNodePageId(NodeId id) {
+        return (id.getLeastSignificantBits() & 0xe000000000000000L) == 0xe000000000000000L;
+    }
+
+    /**
+     * Creates a bundle that holds a page of the child node entries of
+     * another bundle.
+     * @param id the id of the page
+     * @param parentId the id of the bundle the child node entries belong to
+     * @param entries the child node entries
+     * @return the new page bundle
+     */
+    public static NodePropBundle createChildNodePage(
+            NodeId id, NodeId parentId, List<ChildNodeEntry> entries) {
+        NodePropBundle page = new NodePropBundle(id);
+        page.setParentId(parentId);
+        page.setNodeTypeName(CHILD_NODE_PAGE);
+        page.setMixinTypeNames(Collections.<Name>emptySet());
+        page.setSharedSet(Collections.<NodeId>emptySet());
+        page.childNodeEntries.addAll(entries);
+        return page;
+    }
+
     /**
      * Adds a new property entry
      * @param entry the enrty to add
@@ -540,6 +643,82 @@ public class NodePropBundle {
             }
         }
 
+        public int hashCode() {
+            return name.hashCode() ^ id.hashCode();
+        }
+
+    }
+
+    //------------------------------------------------------< ChildNodePage >---
+
+    /**
+     * Helper class for a page of child node entries that is stored in a
+     * separate bundle. Pages are never modified: a page whose entries change
+     * is replaced by a new page. The entries are kept to find the pages that
+     * can be kept when the child node entries are stored again.
+     */
+    public static class ChildNodePage {
+
+        /**
+         * the id of the page bundle
+         */
+        private final NodeId id;
+
+        /**
+         * the entries of the page or <code>null</code> if they have not been
+         * loaded yet
+         */
+        private List<ChildNodeEntry> entries;
+
+        /**
+         * Creates a reference to the page with the given id, whose entries
+         * have not been loaded yet.
+         * @param id the id of the page
+         */
+        public ChildNodePage(NodeId id) {
+            this.id = id;
+        }
+
+        /**
+         * Creates a reference to the page with the given id and entries.
+         * @param id the id of the page
+         * @param entries the entries of the page
+         */
+        public ChildNodePage(NodeId id, List<ChildNodeEntry> entries) {
+            this.id = id;
+            setEntries(entries);
+        }
+
+        /**
+         * Returns the id of the page bundle.
+         * @return the id of the page bundle.
+         */
+        public NodeId getId() {
+            return id;
+        }
+
+        /**
+         * Returns the entries of this page.
+         * @return the entries of this page or <code>null</code> if they have
+         *         not been loaded yet.
+         */
+        public List<ChildNodeEntry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Sets the entries of this page, once they have been loaded.
+         * @param entries the entries of this page
+         */
+        public void setEntries(List<ChildNodeEntry> entries) {
+            this.entries = entries;
+        }
+
+        //----------------------------------------------------------< Object >
+
+        public String toString() {
+            return id + "(" + (entries == null ? "?" : entries.size()) + ")";
+        }
     }
 
     //------------------------------------------------------< PropertyEntry >---
@@ -579,6 +758,17 @@ public class NodePropBundle {
          */
         private short modCount;
 
+        /**
+         * The serialized type, mod count and values of a property that has
+         * not been decoded yet, or <code>null</code>.
+         */
+        private volatile byte[] data;
+
+        /**
+         * The binding used to decode the serialized data.
+         */
+        private BundleBinding binding;
+
         /**
          * Creates a new property entry with the given id.
          * @param id the id
@@ -587,6 +777,19 @@ public class NodePropBundle {
             this.id = id;
         }
 
+        /**
+         * Creates a new property entry that is decoded from the given data
+         * on first access.
+         * @param id the id
+         * @param binding the binding used to decode the data
+         * @param data the serialized type, mod count and values
+         */
+        PropertyEntry(PropertyId id, BundleBinding binding, byte[] data) {
+            this.id = id;
+            this.binding = binding;
+            this.data = data;
+        }
+
         /**
          * Creates a new property entry and initialized it with values from
          * the given property state.
@@ -627,6 +830,7 @@ public class NodePropBundle {
          * @return the internal values
          */
         public InternalValue[] getValues() {
+            decodeData();
             return values;
         }
 
@@ -635,6 +839,7 @@ public class NodePropBundle {
          * @param values the internal values.
          */
         public void setValues(InternalValue[] values) {
+            decodeData();
             this.values = values;
         }
 
@@ -643,6 +848,7 @@ public class NodePropBundle {
          * @return the type.
          */
         public int getType() {
+            decodeData();
             return type;
         }
 
@@ -651,6 +857,7 @@ public class NodePropBundle {
          * @param type the type
          */
         public void setType(int type) {
+            decodeData();
             this.type = type;
         }
 
@@ -659,6 +866,7 @@ public class NodePropBundle {
          * @return the multivalued flag.
          */
         public boolean isMultiValued() {
+            decodeData();
             return multiValued;
         }
 
@@ -667,6 +875,7 @@ public class NodePropBundle {
          * @param multiValued the multivalued flag
          */
         public void setMultiValued(boolean multiValued) {
+            decodeData();
             this.multiValued = multiValued;
         }
 
@@ -676,6 +885,7 @@ public class NodePropBundle {
          * @return the blob id
          */
         public String getBlobId(int n) {
+            decodeData();
             return blobIds[n];
         }
 
@@ -684,6 +894,7 @@ public class NodePropBundle {
          * @param blobIds the blobids
          */
         public void setBlobIds(String[] blobIds) {
+            decodeData();
             this.blobIds = blobIds;
         }
 
@@ -693,6 +904,7 @@ public class NodePropBundle {
          * @param n the index of the blob id
          */
         public void setBlobId(String blobId, int n) {
+            decodeData();
             blobIds[n] = blobId;
         }
 
@@ -701,6 +913,7 @@ public class NodePropBundle {
          * @return the mod count.
          */
         public short getModCount() {
+            decodeData();
             return modCount;
         }
 
@@ -709,9 +922,62 @@ public class NodePropBundle {
          * @param modCount the mod count
          */
         public void setModCount(short modCount) {
+            decodeData();
             this.modCount = modCount;
         }
 
+        /**
+         * Returns the serialized type, mod count and values of this entry if
+         * it has not been decoded yet.
+         * @return the serialized data or <code>null</code>.
+         */
+        byte[] getData() {
+            return data;
+        }
+
+        /**
+         * Decodes the serialized data of this entry if needed. Persistence
+         * managers call this before they access a loaded entry, so that a
+         * corrupt record is reported as an item state exception.
+         *
+         * @throws ItemStateException if the data can not be decoded
+         */
+        public void decode() throws ItemStateException {
+            if (data != null) {
+                synchronized (this) {
+                    if (data != null) {
+                        PropertyEntry entry;
+                        try {
+                            entry = binding.readPropertyEntry(data, id);
+                        } catch (IOException e) {
+                            String msg = "failed to decode property: " + id + ": " + e;
+                            log.error(msg);
+                            throw new ItemStateException(msg, e);
+                        }
+                        values = entry.values;
+                        type = entry.type;
+                        multiValued = entry.multiValued;
+                        blobIds = entry.blobIds;
+                        modCount = entry.modCount;
+                        binding = null;
+                        data = null;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Decodes the serialized data of this entry if needed, for accessors
+         * that can not throw a checked exception.
+         */
+        private void decodeData() {
+            try {
+                decode();
+            } catch (ItemStateException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
         /**
          * Destroys this property state and deletes temporary blob file values.
          * @param blobStore the blobstore that will destroy the blobs
@@ -733,6 +999,7 @@ public class NodePropBundle {
         //----------------------------------------------------------< Object >
 
         public String toString() {
+            decodeData();
             StringBuilder builder = new StringBuilder();
             builder.append(id);
             builder.append("(");
@@ -748,6 +1015,8 @@ public class NodePropBundle {
         public boolean equals(Object object) {
             if (object instanceof PropertyEntry) {
                 PropertyEntry that = (PropertyEntry) object;
+                decodeData();
+                that.decodeData();
                 return id.equals(that.id)
                     && type == that.type
                     && multiValued == that.multiValued
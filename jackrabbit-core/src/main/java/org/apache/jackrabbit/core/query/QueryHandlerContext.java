@@ -28,6 +28,8 @@ import org.apache.jackrabbit.core.nodetype.NodeTypeRegistry;
 import org.apache.jackrabbit.core.persistence.PersistenceManager;
 import org.apache.jackrabbit.core.state.ItemStateManager;
 import org.apache.jackrabbit.core.state.SharedItemStateManager;
+import org.apache.jackrabbit.stats.QueryStatCore;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 
 /**
  * Acts as an argument for the {@link QueryHandler} to keep the interface
@@ -107,6 +109,7 @@ public class QueryHandlerContext {
         this.repositoryContext = repositoryContext;
         this.stateMgr = stateMgr;
         this.hmgr = new CachingHierarchyManager(rootId, stateMgr);
+        this.hmgr.setSharedPathCache(stateMgr.getPathCache());
         this.stateMgr.addListener(hmgr);
         this.pm = pm;
         this.rootId = rootId;
@@ -211,6 +214,24 @@ public class QueryHandlerContext {
         return repositoryContext.getExecutor();
     }
 
+    /**
+     * Returns the query statistics of the repository.
+     *
+     * @return query statistics
+     */
+    public QueryStatCore getQueryStat() {
+        return repositoryContext.getStatManager().getQueryStat();
+    }
+
+    /**
+     * Returns the statistics of the repository.
+     *
+     * @return repository statistics
+     */
+    public RepositoryStatisticsImpl getRepositoryStatistics() {
+        return repositoryContext.getRepositoryStatistics();
+    }
+
     /**
      * Returns the cluster node instance of this repository, or
      * <code>null</code> if clustering is not enabled.
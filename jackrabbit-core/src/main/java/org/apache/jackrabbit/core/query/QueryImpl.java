@@ -33,6 +33,7 @@ import javax.jcr.query.InvalidQueryException;
 import javax.jcr.query.QueryResult;
 import javax.jcr.version.VersionException;
 
+import org.apache.jackrabbit.api.stats.RepositoryStatistics.LatencyType;
 import org.apache.jackrabbit.api.stats.RepositoryStatistics.Type;
 import org.apache.jackrabbit.core.session.SessionContext;
 import org.apache.jackrabbit.core.session.SessionOperation;
@@ -143,6 +144,7 @@ public class QueryImpl extends AbstractQueryImpl {
                 .getRepositoryContext().getRepositoryStatistics();
         statistics.getCounter(Type.QUERY_COUNT).incrementAndGet();
         statistics.getCounter(Type.QUERY_DURATION).addAndGet(timeMs);
+        statistics.getLatencyRecorder(LatencyType.QUERY).recordValue(time);
         sessionContext.getRepositoryContext().getStatManager().getQueryStat()
                 .logQuery(language, statement, timeMs);
         return result;
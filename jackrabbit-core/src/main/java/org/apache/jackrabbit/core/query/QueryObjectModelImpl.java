@@ -30,6 +30,7 @@ import javax.jcr.query.qom.Ordering;
 import javax.jcr.query.qom.QueryObjectModel;
 import javax.jcr.query.qom.Source;
 
+import org.apache.jackrabbit.api.stats.RepositoryStatistics.LatencyType;
 import org.apache.jackrabbit.api.stats.RepositoryStatistics.Type;
 import org.apache.jackrabbit.commons.query.QueryObjectModelBuilderRegistry;
 import org.apache.jackrabbit.core.query.lucene.LuceneQueryFactory;
@@ -141,6 +142,7 @@ public class QueryObjectModelImpl extends QueryImpl implements QueryObjectModel
                 .getRepositoryContext().getRepositoryStatistics();
         statistics.getCounter(Type.QUERY_COUNT).incrementAndGet();
         statistics.getCounter(Type.QUERY_DURATION).addAndGet(timeMs);
+        statistics.getLatencyRecorder(LatencyType.QUERY).recordValue(time);
         sessionContext.getRepositoryContext().getStatManager().getQueryStat()
                 .logQuery(language, statement, timeMs);
         return result;
@@ -21,6 +21,7 @@ import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.query.lucene.hits.AbstractHitCollector;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
@@ -75,6 +76,11 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
      */
     private final int minLevels;
 
+    /**
+     * The index format version.
+     */
+    private final IndexFormatVersion version;
+
     /**
      * The scorer of the sub query to filter
      */
@@ -90,9 +96,11 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
      * @param includeSelf if <code>true</code> this query acts like a
      *                    descendant-or-self axis. If <code>false</code> this
      *                    query acts like a descendant axis.
+     * @param version     the index format version.
      */
-    public DescendantSelfAxisQuery(Query context, boolean includeSelf) {
-        this(context, new MatchAllDocsQuery(), includeSelf);
+    public DescendantSelfAxisQuery(Query context, boolean includeSelf,
+                                   IndexFormatVersion version) {
+        this(context, new MatchAllDocsQuery(), includeSelf, version);
     }
 
     /**
@@ -101,9 +109,11 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
      *
      * @param context the context for this query.
      * @param sub     the sub query.
+     * @param version the index format version.
      */
-    public DescendantSelfAxisQuery(Query context, Query sub) {
-        this(context, sub, true);
+    public DescendantSelfAxisQuery(Query context, Query sub,
+                                   IndexFormatVersion version) {
+        this(context, sub, true, version);
     }
 
     /**
@@ -115,9 +125,11 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
      * @param includeSelf if <code>true</code> this query acts like a
      *                    descendant-or-self axis. If <code>false</code> this query acts like
      *                    a descendant axis.
+     * @param version     the index format version.
      */
-    public DescendantSelfAxisQuery(Query context, Query sub, boolean includeSelf) {
-        this(context, sub, includeSelf ? 0 : 1);
+    public DescendantSelfAxisQuery(Query context, Query sub, boolean includeSelf,
+                                   IndexFormatVersion version) {
+        this(context, sub, includeSelf ? 0 : 1, version);
     }
 
     /**
@@ -128,11 +140,14 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
      * @param sub       the sub query.
      * @param minLevels the minimal levels required between context and sub
      *                  nodes for a sub node to match.
+     * @param version   the index format version.
      */
-    public DescendantSelfAxisQuery(Query context, Query sub, int minLevels) {
+    public DescendantSelfAxisQuery(Query context, Query sub, int minLevels,
+                                   IndexFormatVersion version) {
         this.contextQuery = context;
         this.subQuery = sub;
         this.minLevels = minLevels;
+        this.version = version;
     }
 
     /**
@@ -212,13 +227,14 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
             DescendantSelfAxisQuery dsaq = (DescendantSelfAxisQuery) contextQuery;
             if (dsaq.subQueryMatchesAll()) {
                 return new DescendantSelfAxisQuery(dsaq.getContextQuery(),
-                        sQuery, dsaq.getMinLevels() + getMinLevels()).rewrite(reader);
+                        sQuery, dsaq.getMinLevels() + getMinLevels(),
+                        version).rewrite(reader);
             }
         }
         if (cQuery == contextQuery && sQuery == subQuery) {
             return this;
         } else {
-            return new DescendantSelfAxisQuery(cQuery, sQuery, minLevels);
+            return new DescendantSelfAxisQuery(cQuery, sQuery, minLevels, version);
         }
     }
 
@@ -230,7 +246,8 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
     public QueryHits execute(final JackrabbitIndexSearcher searcher,
                              final SessionImpl session,
                              final Sort sort) throws IOException {
-        if (sort.getSort().length == 0 && subQueryMatchesAll()) {
+        if (sort.getSort().length == 0 && subQueryMatchesAll()
+                && !version.isAtLeast(IndexFormatVersion.V4)) {
             // maps path String to ScoreNode
             Map<String, ScoreNode> startingPoints = new TreeMap<String, ScoreNode>();
             QueryHits result = searcher.evaluate(getContextQuery());
@@ -413,6 +430,11 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
      */
     private class DescendantSelfAxisScorer extends Scorer {
 
+        /**
+         * The index reader.
+         */
+        private final IndexReader reader;
+
         /**
          * The <code>HierarchyResolver</code> of the index.
          */
@@ -423,6 +445,12 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
          */
         private final BitSet contextHits;
 
+        /**
+         * BitSet storing the id's of the descendants of the selected documents
+         * or <code>null</code> if the index does not contain ancestors.
+         */
+        private BitSet descendants;
+
         /**
          * Set <code>true</code> once the context hits have been calculated.
          */
@@ -459,6 +487,7 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
                                            IndexReader reader,
                                            HierarchyResolver hResolver) {
             super(similarity);
+            this.reader = reader;
             this.hResolver = hResolver;
             // todo reuse BitSets?
             this.contextHits = new BitSet(reader.maxDoc());
@@ -537,6 +566,9 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
                         }
                     }); // find all
                 }
+                if (version.isAtLeast(IndexFormatVersion.V4)) {
+                    descendants = collectDescendants();
+                }
                 contextHitsCalculated = true;
                 time = System.currentTimeMillis() - time;
                 if (log.isDebugEnabled()) {
@@ -550,6 +582,38 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
             }
         }
 
+        /**
+         * Collects the descendants of all context hits with a lookup of the
+         * {@link FieldNames#ANCESTORS} field. Requires an index with format
+         * {@link IndexFormatVersion#V4}.
+         *
+         * @return the descendants of the context hits.
+         * @throws IOException if an error occurs while reading from the index.
+         */
+        private BitSet collectDescendants() throws IOException {
+            BitSet result = new BitSet(reader.maxDoc());
+            Term ancestor = new Term(FieldNames.ANCESTORS, "");
+            TermDocs tDocs = reader.termDocs();
+            try {
+                for (int doc = contextHits.nextSetBit(0);
+                     doc >= 0; doc = contextHits.nextSetBit(doc + 1)) {
+                    if (result.get(doc)) {
+                        // descendants already collected with an ancestor
+                        continue;
+                    }
+                    String uuid = reader.document(
+                            doc, FieldSelectors.UUID).get(FieldNames.UUID);
+                    tDocs.seek(ancestor.createTerm(uuid));
+                    while (tDocs.next()) {
+                        result.set(tDocs.doc());
+                    }
+                }
+            } finally {
+                tDocs.close();
+            }
+            return result;
+        }
+
         /**
          * Returns <code>true</code> if <code>doc</code> is a valid match from
          * the sub scorer against the context hits. The caller must ensure
@@ -565,6 +629,15 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
                 return true;
             }
 
+            if (descendants != null) {
+                if (!descendants.get(doc)) {
+                    return false;
+                } else if (minLevels <= 1) {
+                    return true;
+                }
+                // otherwise traverse the parents to check the minimal levels
+            }
+
             // check if doc is a descendant of one of the context nodes
             pDocs = hResolver.getParents(doc, pDocs);
 
@@ -116,6 +116,13 @@ public class FieldNames {
      */
     public static final String WEAK_REFS = "_:WEAK_REFS".intern();
 
+    /**
+     * Name of the field that contains the UUIDs of all ancestors of a node.
+     * Terms are not tokenized and not stored, only indexed. This field is
+     * only present in an index with format {@link IndexFormatVersion#V4}.
+     */
+    public static final String ANCESTORS = "_:ANCESTORS".intern();
+
     /**
      * Returns a named length for use as a term in the index. The named length
      * is of the form: <code>propertyName</code> + '[' +
@@ -16,9 +16,13 @@
  */
 package org.apache.jackrabbit.core.query.lucene;
 
+import java.io.IOException;
 import java.util.Collection;
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.ReaderUtil;
 
 /**
@@ -35,7 +39,18 @@ import org.apache.lucene.util.ReaderUtil;
  * fields <code>PROPERTY_LENGTHS</code>, <code>LOCAL_NAME</code> and
  * <code>NAMESPACE_URI</code>. Furthermore a Payload is added to
  * <code>PROPERTIES</code> fields to indicate the property type.</li>
+ * <li><b>Version 4</b> is an optional index format, which is used for new
+ * indexes when {@link SearchIndex#setIndexAncestors(boolean)} is enabled. It
+ * adds an <code>ANCESTORS</code> field, which contains the UUIDs of all
+ * ancestors of a node. This allows to evaluate descendant axis constraints
+ * with term lookups instead of resolving the parent of each candidate
+ * node.</li>
  * </ul>
+ * Version 4 cannot be recognized from the fields of an index that contains
+ * only the root node, so the version of a new index is stored in the file
+ * {@value #FILE_NAME}. Indexes without that file fall back to recognizing the
+ * version from their fields.
+ * <p>
  * Please note that existing indexes are not automatically upgraded to a newer
  * version! If you want to take advantage of a certain 'feature' in an index
  * format version you need to re-index the repository.
@@ -57,6 +72,16 @@ public class IndexFormatVersion {
      */
     public static final IndexFormatVersion V3 = new IndexFormatVersion(3);
 
+    /**
+     * V4 is the index format with an additional ancestors field
+     */
+    public static final IndexFormatVersion V4 = new IndexFormatVersion(4);
+
+    /**
+     * Name of the file in the index directory that stores the version.
+     */
+    static final String FILE_NAME = "formatVersion";
+
     /**
      * The used version of the index format
      */
@@ -98,13 +123,57 @@ public class IndexFormatVersion {
         return String.valueOf(getVersion());
     }
 
+    /**
+     * Reads the index format version stored in the given directory.
+     *
+     * @param directory the index directory.
+     * @return the stored version, or <code>null</code> if the directory does
+     *         not contain a stored version.
+     * @throws IOException if the version cannot be read.
+     */
+    public static IndexFormatVersion read(Directory directory)
+            throws IOException {
+        if (!directory.fileExists(FILE_NAME)) {
+            return null;
+        }
+        IndexInput in = directory.openInput(FILE_NAME);
+        try {
+            int version = in.readInt();
+            for (IndexFormatVersion v : new IndexFormatVersion[] {V1, V2, V3, V4}) {
+                if (v.getVersion() == version) {
+                    return v;
+                }
+            }
+            throw new IOException("Unknown index format version: " + version);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Stores this index format version in the given directory.
+     *
+     * @param directory the index directory.
+     * @throws IOException if the version cannot be written.
+     */
+    public void write(Directory directory) throws IOException {
+        IndexOutput out = directory.createOutput(FILE_NAME);
+        try {
+            out.writeInt(version);
+        } finally {
+            out.close();
+        }
+    }
+
     /**
      * @return the index format version of the index used by the given
      * index reader.
      */
     public static IndexFormatVersion getVersion(IndexReader indexReader) {
         Collection<String> fields = ReaderUtil.getIndexedFields(indexReader);
-        if (fields.contains(FieldNames.LOCAL_NAME) || indexReader.numDocs() == 0) {
+        if (fields.contains(FieldNames.ANCESTORS)) {
+            return IndexFormatVersion.V4;
+        } else if (fields.contains(FieldNames.LOCAL_NAME) || indexReader.numDocs() == 0) {
             return IndexFormatVersion.V3;
         } else if (fields.contains(FieldNames.PROPERTIES_SET)) {
             return IndexFormatVersion.V2;
@@ -17,16 +17,38 @@
 package org.apache.jackrabbit.core.query.lucene;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.query.lucene.constraint.EvaluationContext;
 import org.apache.jackrabbit.core.state.ItemStateManager;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.Weight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * <code>JackrabbitIndexSearcher</code> implements an index searcher with
@@ -36,6 +58,17 @@ public class JackrabbitIndexSearcher
         extends IndexSearcher
         implements EvaluationContext {
 
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log = LoggerFactory.getLogger(JackrabbitIndexSearcher.class);
+
+    /**
+     * The minimum number of documents in a range that is scored in parallel.
+     * Smaller indexes are always scored on the calling thread.
+     */
+    static final int MIN_PARALLEL_RANGE_SIZE = 10000;
+
     /**
      * The session that executes the query.
      */
@@ -51,6 +84,29 @@ public class JackrabbitIndexSearcher
      */
     private final ItemStateManager ism;
 
+    /**
+     * The executor for parallel scoring or <code>null</code> if queries are
+     * only scored on the calling thread.
+     */
+    private Executor executor;
+
+    /**
+     * The maximum number of document ranges scored in parallel for a single
+     * query.
+     */
+    private int parallelism = 1;
+
+    /**
+     * The minimum number of documents in a range that is scored in parallel.
+     */
+    private int minRangeSize = MIN_PARALLEL_RANGE_SIZE;
+
+    /**
+     * Set to <code>true</code> when a query was evaluated by a
+     * {@link JackrabbitQuery}, which may read from the session.
+     */
+    private boolean sessionScoped;
+
     /**
      * Creates a new jackrabbit index searcher.
      *
@@ -101,10 +157,18 @@ public class JackrabbitIndexSearcher
         QueryHits hits = null;
         if (query instanceof JackrabbitQuery) {
             hits = ((JackrabbitQuery) query).execute(this, session, sort);
+            if (hits != null) {
+                sessionScoped = true;
+            }
         }
         if (hits == null) {
             if (sort.getSort().length == 0) {
-                hits = new LuceneQueryHits(reader, this, query);
+                int[] ranges = getParallelRanges(query);
+                if (ranges != null) {
+                    hits = new DocOrderHits(collectParallel(query, ranges));
+                } else {
+                    hits = new LuceneQueryHits(reader, this, query);
+                }
             } else {
                 hits = new SortedLuceneQueryHits(this, query, sort,
                         resultFetchHint);
@@ -113,6 +177,445 @@ public class JackrabbitIndexSearcher
         return hits;
     }
 
+    /**
+     * Enables parallel scoring of queries. The documents of the index are
+     * split into at most <code>parallelism</code> ranges at index segment
+     * boundaries, which are scored concurrently by tasks on the
+     * <code>executor</code> and the calling thread. Only term queries and
+     * boolean combinations of them are scored in parallel, see
+     * {@link #isParallelizable(Query)}. All other queries are scored on the
+     * calling thread.
+     *
+     * @param executor    the executor for scoring tasks or <code>null</code>
+     *                    to disable parallel scoring.
+     * @param parallelism the maximum number of ranges scored in parallel for
+     *                    a single query.
+     */
+    public void setParallelism(Executor executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns <code>true</code> if any of the queries evaluated with this
+     * searcher returned hits that depend on the session, e.g. because
+     * the hits were collected by traversing the nodes of the session.
+     *
+     * @return whether hits depend on the session executing the query.
+     */
+    public boolean isSessionScoped() {
+        return sessionScoped;
+    }
+
+    /**
+     * Sets the minimum number of documents in a range that is scored in
+     * parallel. Defaults to {@link #MIN_PARALLEL_RANGE_SIZE}.
+     *
+     * @param minRangeSize the minimum range size.
+     */
+    void setMinParallelRangeSize(int minRangeSize) {
+        this.minRangeSize = minRangeSize;
+    }
+
+    /**
+     * Collects the top <code>numHits</code> hits of the <code>query</code>
+     * in the given <code>sort</code> order. The returned
+     * <code>TopDocs</code> contain the total number of matching documents.
+     *
+     * @param query   the query to execute.
+     * @param sort    the sort criteria.
+     * @param numHits the number of top hits to collect.
+     * @return the top hits.
+     * @throws IOException if an error occurs while executing the query.
+     */
+    public TopDocs collectSorted(Query query, Sort sort, int numHits)
+            throws IOException {
+        int[] ranges = getParallelRanges(query);
+        if (ranges == null) {
+            TopFieldCollector collector = createCollector(sort, numHits);
+            search(query, collector);
+            return collector.topDocs();
+        }
+
+        Collector[] collectors = new Collector[ranges.length - 1];
+        for (int i = 0; i < collectors.length; i++) {
+            collectors[i] = createCollector(sort, numHits);
+        }
+        collectParallel(query, ranges, collectors);
+
+        // merge the top hits of all ranges in document order
+        int totalHits = 0;
+        List<ScoreDoc> candidates = new ArrayList<ScoreDoc>();
+        for (Collector c : collectors) {
+            TopFieldCollector collector = (TopFieldCollector) c;
+            totalHits += collector.getTotalHits();
+            candidates.addAll(Arrays.asList(collector.topDocs().scoreDocs));
+        }
+        ScoreDoc[] docs = candidates.toArray(new ScoreDoc[candidates.size()]);
+        Arrays.sort(docs, new Comparator<ScoreDoc>() {
+            public int compare(ScoreDoc d1, ScoreDoc d2) {
+                return d1.doc < d2.doc ? -1 : (d1.doc == d2.doc ? 0 : 1);
+            }
+        });
+        TopFieldCollector merged = createCollector(sort, numHits);
+        MergeScorer scorer = new MergeScorer(docs);
+        merged.setScorer(scorer);
+        merged.setNextReader(reader, 0);
+        int doc;
+        while ((doc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            merged.collect(doc);
+        }
+        TopDocs topDocs = merged.topDocs();
+        topDocs.totalHits = totalHits;
+        return topDocs;
+    }
+
+    //-------------------------------< internal >-------------------------------
+
+    /**
+     * Creates a collector for the top hits in the given sort order.
+     *
+     * @param sort    the sort criteria.
+     * @param numHits the number of hits to collect.
+     * @return the collector.
+     * @throws IOException if the collector cannot be created.
+     */
+    private static TopFieldCollector createCollector(Sort sort, int numHits)
+            throws IOException {
+        return TopFieldCollector.create(sort, numHits, false, true, false, false);
+    }
+
+    /**
+     * Returns the document number boundaries of the ranges that should be
+     * scored in parallel for the given <code>query</code>. Range
+     * <code>i</code> starts at <code>ranges[i]</code> (inclusive) and ends at
+     * <code>ranges[i + 1]</code> (exclusive).
+     *
+     * @param query the rewritten query.
+     * @return the range boundaries or <code>null</code> if the query should
+     *         be scored on the calling thread.
+     */
+    int[] getParallelRanges(Query query) {
+        if (executor == null || parallelism < 2
+                || !(reader instanceof MultiIndexReader)
+                || !isParallelizable(query)) {
+            return null;
+        }
+        int maxDoc = reader.maxDoc();
+        int rangeSize = Math.max((maxDoc + parallelism - 1) / parallelism,
+                minRangeSize);
+        List<IndexReader> segments = new ArrayList<IndexReader>();
+        getSegments((MultiIndexReader) reader, segments);
+
+        List<Integer> bounds = new ArrayList<Integer>();
+        bounds.add(0);
+        int start = 0;
+        int docBase = 0;
+        for (IndexReader segment : segments) {
+            docBase += segment.maxDoc();
+            if (docBase - start >= rangeSize && docBase < maxDoc) {
+                bounds.add(docBase);
+                start = docBase;
+            }
+        }
+        if (bounds.size() < 2) {
+            // single range
+            return null;
+        }
+        bounds.add(maxDoc);
+        int[] ranges = new int[bounds.size()];
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = bounds.get(i);
+        }
+        return ranges;
+    }
+
+    /**
+     * Adds the index segments of <code>reader</code> in document number order
+     * to <code>segments</code>.
+     *
+     * @param reader   a multi index reader.
+     * @param segments the list where the segments are added.
+     */
+    private static void getSegments(MultiIndexReader reader,
+                                    List<IndexReader> segments) {
+        for (IndexReader r : reader.getIndexReaders()) {
+            if (r instanceof MultiIndexReader) {
+                getSegments((MultiIndexReader) r, segments);
+            } else {
+                segments.add(r);
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given query can be scored concurrently
+     * with one scorer per document range. Only term queries and boolean or
+     * constant score queries over them qualify. Other scorers keep state in
+     * the query instance or in the shared {@link PerQueryCache}, or compute
+     * a result for the whole index up front, like the range and wildcard
+     * scorers do with their bit sets.
+     *
+     * @param query the rewritten query.
+     * @return <code>true</code> if the query can be scored in parallel.
+     */
+    static boolean isParallelizable(Query query) {
+        if (query instanceof BooleanQuery) {
+            for (BooleanClause clause : ((BooleanQuery) query).getClauses()) {
+                if (!isParallelizable(clause.getQuery())) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (query instanceof ConstantScoreQuery) {
+            Query inner = ((ConstantScoreQuery) query).getQuery();
+            return inner != null && isParallelizable(inner);
+        } else {
+            return query instanceof TermQuery;
+        }
+    }
+
+    /**
+     * Scores the ranges in parallel and collects the matching document
+     * numbers and scores.
+     *
+     * @param query  the rewritten query.
+     * @param ranges the range boundaries.
+     * @return the collected documents for each range.
+     * @throws IOException if an error occurs while executing the query.
+     */
+    private DocCollector[] collectParallel(Query query, int[] ranges)
+            throws IOException {
+        DocCollector[] collectors = new DocCollector[ranges.length - 1];
+        for (int i = 0; i < collectors.length; i++) {
+            collectors[i] = new DocCollector();
+        }
+        collectParallel(query, ranges, collectors);
+        return collectors;
+    }
+
+    /**
+     * Scores the ranges in parallel. Range <code>i</code> is collected with
+     * <code>collectors[i]</code>. The calling thread takes part in scoring
+     * and also scores all ranges that were not picked up by the executor,
+     * which makes sure the query completes even when the executor is
+     * saturated.
+     *
+     * @param query      the rewritten query.
+     * @param ranges     the range boundaries.
+     * @param collectors the collectors, one for each range.
+     * @throws IOException if an error occurs while executing the query.
+     */
+    private void collectParallel(final Query query,
+                                 final int[] ranges,
+                                 final Collector[] collectors)
+            throws IOException {
+        long time = System.currentTimeMillis();
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(collectors.length);
+        final IOException[] error = new IOException[1];
+        Runnable task = new Runnable() {
+            public void run() {
+                int i;
+                while ((i = next.getAndIncrement()) < collectors.length) {
+                    try {
+                        collectRange(query, ranges[i], ranges[i + 1], collectors[i]);
+                    } catch (IOException e) {
+                        synchronized (error) {
+                            error[0] = e;
+                        }
+                    } catch (RuntimeException e) {
+                        synchronized (error) {
+                            error[0] = Util.createIOException(e);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+        for (int i = 1; i < collectors.length; i++) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // calling thread will score remaining ranges
+                break;
+            }
+        }
+        task.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for parallel scoring");
+        }
+        synchronized (error) {
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+        log.debug("Scored {} ranges in parallel in {} ms for {}", new Object[]{
+                collectors.length, System.currentTimeMillis() - time, query});
+    }
+
+    /**
+     * Scores the documents in the range <code>[start, end)</code> with a new
+     * weight and scorer and collects them with <code>collector</code>.
+     *
+     * @param query     the rewritten query.
+     * @param start     the first document number of the range.
+     * @param end       the document number after the last document of the
+     *                  range.
+     * @param collector the collector.
+     * @throws IOException if an error occurs while executing the query.
+     */
+    private void collectRange(Query query,
+                              int start,
+                              int end,
+                              Collector collector) throws IOException {
+        Weight weight = createNormalizedWeight(query);
+        Scorer scorer = weight.scorer(reader, true, false);
+        if (scorer == null) {
+            return;
+        }
+        collector.setScorer(scorer);
+        collector.setNextReader(reader, 0);
+        int doc = scorer.advance(start);
+        while (doc < end) {
+            collector.collect(doc);
+            doc = scorer.nextDoc();
+        }
+        if (doc != DocIdSetIterator.NO_MORE_DOCS) {
+            // make sure scorer frees resources
+            scorer.advance(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Collects document numbers and scores in document order.
+     */
+    private static final class DocCollector extends Collector {
+
+        private Scorer scorer;
+
+        private int[] docs = new int[16];
+
+        private float[] scores = new float[16];
+
+        private int size;
+
+        public void setScorer(Scorer scorer) {
+            this.scorer = scorer;
+        }
+
+        public void collect(int doc) throws IOException {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            docs[size] = doc;
+            scores[size] = scorer.score();
+            size++;
+        }
+
+        public void setNextReader(IndexReader reader, int docBase) {
+        }
+
+        public boolean acceptsDocsOutOfOrder() {
+            return false;
+        }
+    }
+
+    /**
+     * Query hits over the documents collected for consecutive ranges.
+     */
+    private final class DocOrderHits extends AbstractQueryHits {
+
+        private final DocCollector[] collectors;
+
+        private final int size;
+
+        private int range;
+
+        private int index = -1;
+
+        DocOrderHits(DocCollector[] collectors) {
+            this.collectors = collectors;
+            int n = 0;
+            for (DocCollector c : collectors) {
+                n += c.size;
+            }
+            this.size = n;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public ScoreNode nextScoreNode() throws IOException {
+            while (range < collectors.length) {
+                DocCollector c = collectors[range];
+                if (++index < c.size) {
+                    int doc = c.docs[index];
+                    NodeId id = new NodeId(reader.document(
+                            doc, FieldSelectors.UUID).get(FieldNames.UUID));
+                    return new ScoreNode(id, c.scores[index], doc);
+                }
+                range++;
+                index = -1;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Scorer over previously collected hits in document order, which is used
+     * to merge the top hits of the ranges.
+     */
+    static final class MergeScorer extends Scorer {
+
+        private final ScoreDoc[] docs;
+
+        private int index = -1;
+
+        /**
+         * @param docs the hits, sorted by document number.
+         */
+        MergeScorer(ScoreDoc[] docs) {
+            super((Weight) null);
+            this.docs = docs;
+        }
+
+        public float score() {
+            return docs[index].score;
+        }
+
+        public int docID() {
+            if (index < 0) {
+                return -1;
+            } else if (index < docs.length) {
+                return docs[index].doc;
+            } else {
+                return NO_MORE_DOCS;
+            }
+        }
+
+        public int nextDoc() {
+            if (index < docs.length) {
+                index++;
+            }
+            return docID();
+        }
+
+        public int advance(int target) {
+            int doc;
+            do {
+                doc = nextDoc();
+            } while (doc < target);
+            return doc;
+        }
+    }
+
     //---------------------------< IndexSearcher >------------------------------
 
     @Override
@@ -193,9 +193,8 @@ public class LuceneQueryFactory {
 
         QueryHits hits = null;
         try {
-            JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
-                    session, reader, index.getContext().getItemStateManager());
-            searcher.setSimilarity(index.getSimilarity());
+            JackrabbitIndexSearcher searcher =
+                    index.createIndexSearcher(session, reader);
 
             Predicate filter = Predicate.TRUE;
             BooleanQuery query = new BooleanQuery();
@@ -404,7 +403,8 @@ public class LuceneQueryFactory {
         } else if (constraint instanceof DescendantNode) {
             final DescendantNode descendantNode = (DescendantNode) constraint;
             Query context = getNodeIdQuery(UUID, descendantNode.getAncestorPath());
-            query.mainQuery = new DescendantSelfAxisQuery(context, query.subQuery, false);
+            query.mainQuery = new DescendantSelfAxisQuery(context,
+                    query.subQuery, false, index.getIndexFormatVersion());
         } else {
             query.subQuery.add(create(constraint, selectorMap, searcher), MUST);
         }
@@ -32,9 +32,12 @@ import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.jcr.RepositoryException;
 
+import org.apache.jackrabbit.api.stats.RepositoryStatistics.LatencyType;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.query.lucene.directory.DirectoryManager;
 import org.apache.jackrabbit.core.state.ChildNodeEntry;
@@ -47,6 +50,7 @@ import org.apache.jackrabbit.spi.PathFactory;
 import org.apache.jackrabbit.spi.commons.conversion.DefaultNamePathResolver;
 import org.apache.jackrabbit.spi.commons.conversion.PathResolver;
 import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.jackrabbit.stats.LatencyHistogramRecorder;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
@@ -75,10 +79,12 @@ import org.slf4j.LoggerFactory;
  * <p>
  * This class is thread-safe.
  * <p>
- * Note on implementation: Multiple modifying threads are synchronized on a
- * <code>MultiIndex</code> instance itself. Synchronization between a modifying
- * thread and reader threads is done using {@link #updateMonitor} and
- * {@link #updateInProgress}.
+ * Note on implementation: Multiple modifying threads are synchronized using
+ * the {@link #indexLock}. Synchronization between a modifying thread and
+ * reader threads is done using the {@link #updateLock} and
+ * {@link #updateInProgress}. Explicit locks are used instead of monitors,
+ * so that a thread waiting for an index update does not pin a carrier
+ * thread when the repository is used from lightweight threads.
  */
 public class MultiIndex {
 
@@ -158,16 +164,39 @@ public class MultiIndex {
      */
     private CachingMultiIndexReader multiReader;
 
+    /**
+     * Incremented whenever {@link #multiReader} is released after documents
+     * were added to or removed from the index.
+     */
+    private volatile long readerGeneration;
+
+    /**
+     * Set when documents are added or removed while {@link #multiReader} is
+     * in use. Reset when the reader is released.
+     */
+    private boolean documentsModified;
+
     /**
      * Shared document number cache across all persistent indexes.
      */
     private final DocNumberCache cache;
 
     /**
-     * Monitor to use to synchronize access to {@link #multiReader} and
+     * Lock that serializes modifications of this index.
+     */
+    private final ReentrantLock indexLock = new ReentrantLock();
+
+    /**
+     * Lock to use to synchronize access to {@link #multiReader} and
      * {@link #updateInProgress}.
      */
-    private final Object updateMonitor = new Object();
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    /**
+     * Signalled when an update completes and {@link #updateInProgress} is
+     * reset.
+     */
+    private final Condition updateDone = updateLock.newCondition();
 
     /**
      * <code>true</code> if the redo log contained entries on startup.
@@ -233,6 +262,11 @@ public class MultiIndex {
      */
     private final IndexFormatVersion version;
 
+    /**
+     * Latencies of the updates that commit the changes of a save.
+     */
+    private final LatencyHistogramRecorder commitLatency;
+
     /**
      * Creates a new MultiIndex.
      *
@@ -249,6 +283,8 @@ public class MultiIndex {
         this.cache = new DocNumberCache(handler.getCacheSize());
         this.excludedIDs = new HashSet<NodeId>(excludedIDs);
         this.nsMappings = handler.getNamespaceMappings();
+        this.commitLatency = handler.getContext().getRepositoryStatistics()
+                .getLatencyRecorder(LatencyType.INDEX_COMMIT);
 
         indexNames = new IndexInfos(indexDir, "indexes");
 
@@ -300,7 +336,24 @@ public class MultiIndex {
         // initialize hierarchy cache if requested.
         CachingMultiIndexReader reader = getIndexReader(handler.isInitializeHierarchyCache());
         try {
-            version = IndexFormatVersion.getVersion(reader);
+            IndexFormatVersion stored = IndexFormatVersion.read(indexDir);
+            if (stored != null) {
+                version = stored;
+            } else if (reader.numDocs() == 0) {
+                // new index, store the version because it cannot be
+                // recognized from the fields of an index with only the root
+                if (handler.isIndexAncestors()) {
+                    version = IndexFormatVersion.V4;
+                } else {
+                    version = IndexFormatVersion.V3;
+                }
+                version.write(indexDir);
+            } else {
+                version = IndexFormatVersion.getVersion(reader);
+                if (version.isAtLeast(IndexFormatVersion.V4)) {
+                    version.write(indexDir);
+                }
+            }
         } finally {
             reader.release();
         }
@@ -414,45 +467,46 @@ public class MultiIndex {
      *               indicate that a node could not be indexed successfully.
      * @throws IOException if an error occurs while updating the index.
      */
-    synchronized void update(
+    void update(
             Collection<NodeId> remove, Collection<Document> add)
             throws IOException {
-        // make sure a reader is available during long updates
-        if (add.size() > handler.getBufferSize()) {
-            try {
-                getIndexReader().release();
-            } catch (IOException e) {
-                // do not fail if an exception is thrown here
-                log.warn("unable to prepare index reader for queries during update", e);
+        long time = System.nanoTime();
+        indexLock.lock();
+        try {
+            // make sure a reader is available during long updates
+            if (add.size() > handler.getBufferSize()) {
+                try {
+                    getIndexReader().release();
+                } catch (IOException e) {
+                    // do not fail if an exception is thrown here
+                    log.warn("unable to prepare index reader for queries during update", e);
+                }
             }
-        }
 
-        synchronized (updateMonitor) {
-            updateInProgress = true;
-        }
-        try {
-            long transactionId = nextTransactionId++;
-            executeAndLog(new Start(transactionId));
+            beginUpdate();
+            try {
+                long transactionId = nextTransactionId++;
+                executeAndLog(new Start(transactionId));
 
 
-            for (NodeId id : remove) {
-                executeAndLog(new DeleteNode(transactionId, id));
-            }
+                for (NodeId id : remove) {
+                    executeAndLog(new DeleteNode(transactionId, id));
+                }
 
-            for (Document document : add) {
-                if (document != null) {
-                    executeAndLog(new AddNode(transactionId, document));
-                    // commit volatile index if needed
-                    checkVolatileCommit();
+                for (Document document : add) {
+                    if (document != null) {
+                        executeAndLog(new AddNode(transactionId, document));
+                        // commit volatile index if needed
+                        checkVolatileCommit();
+                    }
                 }
+                executeAndLog(new Commit(transactionId));
+            } finally {
+                endUpdate();
             }
-            executeAndLog(new Commit(transactionId));
         } finally {
-            synchronized (updateMonitor) {
-                updateInProgress = false;
-                updateMonitor.notifyAll();
-                releaseMultiReader();
-            }
+            indexLock.unlock();
+            commitLatency.recordValue(System.nanoTime() - time);
         }
     }
 
@@ -486,37 +540,37 @@ public class MultiIndex {
      * @return the number of deleted documents.
      * @throws IOException if an error occurs while deleting documents.
      */
-    synchronized int removeAllDocuments(NodeId id) throws IOException {
-        synchronized (updateMonitor) {
-            updateInProgress = true;
-        }
-        int num;
+    int removeAllDocuments(NodeId id) throws IOException {
+        indexLock.lock();
         try {
-            Term idTerm = TermFactory.createUUIDTerm(id.toString());
-            executeAndLog(new Start(Action.INTERNAL_TRANSACTION));
-            num = volatileIndex.removeDocument(idTerm);
-            if (num > 0) {
-                redoLog.append(new DeleteNode(getTransactionId(), id));
-            }
-            for (PersistentIndex index : indexes) {
-                // only remove documents from registered indexes
-                if (indexNames.contains(index.getName())) {
-                    int removed = index.removeDocument(idTerm);
-                    if (removed > 0) {
-                        redoLog.append(new DeleteNode(getTransactionId(), id));
+            beginUpdate();
+            int num;
+            try {
+                Term idTerm = TermFactory.createUUIDTerm(id.toString());
+                executeAndLog(new Start(Action.INTERNAL_TRANSACTION));
+                num = volatileIndex.removeDocument(idTerm);
+                if (num > 0) {
+                    redoLog.append(new DeleteNode(getTransactionId(), id));
+                }
+                documentsModified = true;
+                for (PersistentIndex index : indexes) {
+                    // only remove documents from registered indexes
+                    if (indexNames.contains(index.getName())) {
+                        int removed = index.removeDocument(idTerm);
+                        if (removed > 0) {
+                            redoLog.append(new DeleteNode(getTransactionId(), id));
+                        }
+                        num += removed;
                     }
-                    num += removed;
                 }
+                executeAndLog(new Commit(getTransactionId()));
+            } finally {
+                endUpdate();
             }
-            executeAndLog(new Commit(getTransactionId()));
+            return num;
         } finally {
-            synchronized (updateMonitor) {
-                updateInProgress = false;
-                updateMonitor.notifyAll();
-                releaseMultiReader();
-            }
+            indexLock.unlock();
         }
-        return num;
     }
 
     /**
@@ -534,33 +588,38 @@ public class MultiIndex {
      * @return the <code>IndexReaders</code>.
      * @throws IOException if an error occurs acquiring the index readers.
      */
-    synchronized IndexReader[] getIndexReaders(
+    IndexReader[] getIndexReaders(
             String[] indexNames, IndexListener listener) throws IOException {
-        Set<String> names = new HashSet<String>(Arrays.asList(indexNames));
-        Map<ReadOnlyIndexReader, PersistentIndex> indexReaders =
-            new HashMap<ReadOnlyIndexReader, PersistentIndex>();
-
+        indexLock.lock();
         try {
-            for (PersistentIndex index : indexes) {
-                if (names.contains(index.getName())) {
-                    indexReaders.put(index.getReadOnlyIndexReader(listener), index);
+            Set<String> names = new HashSet<String>(Arrays.asList(indexNames));
+            Map<ReadOnlyIndexReader, PersistentIndex> indexReaders =
+                new HashMap<ReadOnlyIndexReader, PersistentIndex>();
+
+            try {
+                for (PersistentIndex index : indexes) {
+                    if (names.contains(index.getName())) {
+                        indexReaders.put(index.getReadOnlyIndexReader(listener), index);
+                    }
                 }
-            }
-        } catch (IOException e) {
-            // release readers obtained so far
-            for (Map.Entry<ReadOnlyIndexReader, PersistentIndex> entry
-                    : indexReaders.entrySet()) {
-                try {
-                    entry.getKey().release();
-                } catch (IOException ex) {
-                    log.warn("Exception releasing index reader", ex);
+            } catch (IOException e) {
+                // release readers obtained so far
+                for (Map.Entry<ReadOnlyIndexReader, PersistentIndex> entry
+                        : indexReaders.entrySet()) {
+                    try {
+                        entry.getKey().release();
+                    } catch (IOException ex) {
+                        log.warn("Exception releasing index reader", ex);
+                    }
+                    entry.getValue().resetListener();
                 }
-                entry.getValue().resetListener();
+                throw e;
             }
-            throw e;
-        }
 
-        return indexReaders.keySet().toArray(new IndexReader[indexReaders.size()]);
+            return indexReaders.keySet().toArray(new IndexReader[indexReaders.size()]);
+        } finally {
+            indexLock.unlock();
+        }
     }
 
     /**
@@ -572,40 +631,45 @@ public class MultiIndex {
      * @return a new <code>PersistentIndex</code>.
      * @throws IOException if a new index cannot be created.
      */
-    synchronized PersistentIndex getOrCreateIndex(String indexName)
+    PersistentIndex getOrCreateIndex(String indexName)
             throws IOException {
-        // check existing
-        for (PersistentIndex idx : indexes) {
-            if (idx.getName().equals(indexName)) {
-                return idx;
+        indexLock.lock();
+        try {
+            // check existing
+            for (PersistentIndex idx : indexes) {
+                if (idx.getName().equals(indexName)) {
+                    return idx;
+                }
             }
-        }
 
-        // otherwise open / create it
-        if (indexName == null) {
-            do {
-                indexName = indexNames.newName();
-            } while (directoryManager.hasDirectory(indexName));
-        }
-        PersistentIndex index;
-        try {
-            index = new PersistentIndex(indexName,
-                    handler.getTextAnalyzer(), handler.getSimilarity(),
-                    cache, indexingQueue, directoryManager,
-                    handler.getMaxHistoryAge());
-        } catch (IOException e) {
-            // do some clean up
-            if (!directoryManager.delete(indexName)) {
-                deletable.put(indexName, Long.MIN_VALUE);
+            // otherwise open / create it
+            if (indexName == null) {
+                do {
+                    indexName = indexNames.newName();
+                } while (directoryManager.hasDirectory(indexName));
             }
-            throw e;
-        }
-        index.setUseCompoundFile(handler.getUseCompoundFile());
-        index.setTermInfosIndexDivisor(handler.getTermInfosIndexDivisor());
+            PersistentIndex index;
+            try {
+                index = new PersistentIndex(indexName,
+                        handler.getTextAnalyzer(), handler.getSimilarity(),
+                        cache, indexingQueue, directoryManager,
+                        handler.getMaxHistoryAge());
+            } catch (IOException e) {
+                // do some clean up
+                if (!directoryManager.delete(indexName)) {
+                    deletable.put(indexName, Long.MIN_VALUE);
+                }
+                throw e;
+            }
+            index.setUseCompoundFile(handler.getUseCompoundFile());
+            index.setTermInfosIndexDivisor(handler.getTermInfosIndexDivisor());
 
-        // add to list of open indexes and return it
-        indexes.add(index);
-        return index;
+            // add to list of open indexes and return it
+            indexes.add(index);
+            return index;
+        } finally {
+            indexLock.unlock();
+        }
     }
 
     /**
@@ -618,15 +682,20 @@ public class MultiIndex {
      * @throws IOException if an error occurs while checking existence of
      *          directory.
      */
-    synchronized boolean hasIndex(String indexName) throws IOException {
-        // check existing
-        for (PersistentIndex idx : indexes) {
-            if (idx.getName().equals(indexName)) {
-                return true;
+    boolean hasIndex(String indexName) throws IOException {
+        indexLock.lock();
+        try {
+            // check existing
+            for (PersistentIndex idx : indexes) {
+                if (idx.getName().equals(indexName)) {
+                    return true;
+                }
             }
+            // check if it exists on disk
+            return directoryManager.hasDirectory(indexName);
+        } finally {
+            indexLock.unlock();
         }
-        // check if it exists on disk
-        return directoryManager.hasDirectory(indexName);
     }
 
     /**
@@ -654,10 +723,9 @@ public class MultiIndex {
             log.debug("hierarchy cache initialized in {} ms", time);
         }
 
-        synchronized (this) {
-            synchronized (updateMonitor) {
-                updateInProgress = true;
-            }
+        indexLock.lock();
+        try {
+            beginUpdate();
             try {
                 // if we are reindexing there is already an active transaction
                 if (!reindexing) {
@@ -690,12 +758,10 @@ public class MultiIndex {
                     executeAndLog(new Commit(getTransactionId()));
                 }
             } finally {
-                synchronized (updateMonitor) {
-                    updateInProgress = false;
-                    updateMonitor.notifyAll();
-                    releaseMultiReader();
-                }
+                endUpdate();
             }
+        } finally {
+            indexLock.unlock();
         }
         if (reindexing) {
             // do some cleanup right away when reindexing
@@ -723,38 +789,46 @@ public class MultiIndex {
      * @return an <code>IndexReader</code>.
      * @throws IOException if an error occurs constructing the <code>IndexReader</code>.
      */
-    public synchronized CachingMultiIndexReader getIndexReader(boolean initCache) throws IOException {
-        synchronized (updateMonitor) {
-            if (multiReader != null) {
-                multiReader.acquire();
-                return multiReader;
-            }
-            // no reader available
-            // wait until no update is in progress
-            while (updateInProgress) {
-                try {
-                    updateMonitor.wait();
-                } catch (InterruptedException e) {
-                    throw new IOException("Interrupted while waiting to aquire reader");
+    public CachingMultiIndexReader getIndexReader(boolean initCache) throws IOException {
+        indexLock.lock();
+        try {
+            updateLock.lock();
+            try {
+                if (multiReader != null) {
+                    multiReader.acquire();
+                    return multiReader;
                 }
-            }
-            // some other read thread might have created the reader in the
-            // meantime -> check again
-            if (multiReader == null) {
-                List<ReadOnlyIndexReader> readerList =
-                    new ArrayList<ReadOnlyIndexReader>();
-                for (PersistentIndex pIdx : indexes) {
-                    if (indexNames.contains(pIdx.getName())) {
-                        readerList.add(pIdx.getReadOnlyIndexReader(initCache));
+                // no reader available
+                // wait until no update is in progress
+                while (updateInProgress) {
+                    try {
+                        updateDone.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException("Interrupted while waiting to aquire reader");
                     }
                 }
-                readerList.add(volatileIndex.getReadOnlyIndexReader());
-                ReadOnlyIndexReader[] readers =
-                    readerList.toArray(new ReadOnlyIndexReader[readerList.size()]);
-                multiReader = new CachingMultiIndexReader(readers, cache);
+                // some other read thread might have created the reader in the
+                // meantime -> check again
+                if (multiReader == null) {
+                    List<ReadOnlyIndexReader> readerList =
+                        new ArrayList<ReadOnlyIndexReader>();
+                    for (PersistentIndex pIdx : indexes) {
+                        if (indexNames.contains(pIdx.getName())) {
+                            readerList.add(pIdx.getReadOnlyIndexReader(initCache));
+                        }
+                    }
+                    readerList.add(volatileIndex.getReadOnlyIndexReader());
+                    ReadOnlyIndexReader[] readers =
+                        readerList.toArray(new ReadOnlyIndexReader[readerList.size()]);
+                    multiReader = new CachingMultiIndexReader(readers, cache);
+                }
+                multiReader.acquire();
+                return multiReader;
+            } finally {
+                updateLock.unlock();
             }
-            multiReader.acquire();
-            return multiReader;
+        } finally {
+            indexLock.unlock();
         }
     }
 
@@ -787,7 +861,8 @@ public class MultiIndex {
         // a deadlock might occur
         merger.dispose();
 
-        synchronized (this) {
+        indexLock.lock();
+        try {
             // stop timer
             unscheduleFlushTask();
 
@@ -816,6 +891,8 @@ public class MultiIndex {
             } catch (IOException e) {
                 log.error("Exception while closing directory.", e);
             }
+        } finally {
+            indexLock.unlock();
         }
     }
 
@@ -849,6 +926,18 @@ public class MultiIndex {
         return indexNames.getGeneration();
     }
 
+    /**
+     * Returns the current reader generation of this index. The generation
+     * changes whenever documents are added to or removed from the index. A reader returned by
+     * {@link #getIndexReader()} after this method was called reflects at
+     * least the content of the index at this generation.
+     *
+     * @return the current reader generation.
+     */
+    long getReaderGeneration() {
+        return readerGeneration;
+    }
+
     /**
      * Returns a lucene Document for the <code>node</code>.
      *
@@ -900,13 +989,18 @@ public class MultiIndex {
      *
      * @param index the index to delete.
      */
-    synchronized void deleteIndex(PersistentIndex index) {
-        // remove it from the lists if index is registered
-        indexes.remove(index);
-        indexNames.removeName(index.getName());
-        synchronized (deletable) {
-            log.debug("Moved " + index.getName() + " to deletable");
-            deletable.put(index.getName(), System.currentTimeMillis());
+    void deleteIndex(PersistentIndex index) {
+        indexLock.lock();
+        try {
+            // remove it from the lists if index is registered
+            indexes.remove(index);
+            indexNames.removeName(index.getName());
+            synchronized (deletable) {
+                log.debug("Moved " + index.getName() + " to deletable");
+                deletable.put(index.getName(), System.currentTimeMillis());
+            }
+        } finally {
+            indexLock.unlock();
         }
     }
 
@@ -917,7 +1011,8 @@ public class MultiIndex {
      * @throws IOException if the flush fails.
      */
     private void flush() throws IOException {
-        synchronized (this) {
+        indexLock.lock();
+        try {
 
             // only start transaction when there is something to commit
             boolean transactionStarted = false;
@@ -972,6 +1067,8 @@ public class MultiIndex {
             }
 
             lastFlushTime = System.currentTimeMillis();
+        } finally {
+            indexLock.unlock();
         }
 
         indexHistory.pruneOutdated();
@@ -980,6 +1077,36 @@ public class MultiIndex {
         attemptDelete();
     }
 
+    /**
+     * Marks the start of an update. Readers that request an index reader
+     * wait until the update is done.
+     */
+    private void beginUpdate() {
+        updateLock.lock();
+        try {
+            updateInProgress = true;
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /**
+     * Marks the end of an update, wakes up waiting readers and releases the
+     * current {@link #multiReader}, so that readers see the update.
+     *
+     * @throws IOException if an error occurs while releasing the reader.
+     */
+    private void endUpdate() throws IOException {
+        updateLock.lock();
+        try {
+            updateInProgress = false;
+            updateDone.signalAll();
+            releaseMultiReader();
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
     /**
      * Releases the {@link #multiReader} and sets it <code>null</code>. If the
      * reader is already <code>null</code> this method does nothing. When this
@@ -988,16 +1115,23 @@ public class MultiIndex {
      * <p>
      * Please note that this method does not take care of any synchronization.
      * A caller must ensure that it is the only thread operating on this multi
-     * index, or that it holds the {@link #updateMonitor}.
+     * index, or that it holds the {@link #updateLock}.
      *
      * @throws IOException if an error occurs while releasing the reader.
      */
     void releaseMultiReader() throws IOException {
-        if (multiReader != null) {
-            try {
-                multiReader.release();
-            } finally {
-                multiReader = null;
+        try {
+            if (multiReader != null) {
+                try {
+                    multiReader.release();
+                } finally {
+                    multiReader = null;
+                }
+            }
+        } finally {
+            if (documentsModified) {
+                documentsModified = false;
+                readerGeneration++;
             }
         }
     }
@@ -1129,6 +1263,10 @@ public class MultiIndex {
     private Action executeAndLog(Action a)
             throws IOException {
         a.execute(this);
+        if (a.getType() == Action.TYPE_ADD_NODE
+                || a.getType() == Action.TYPE_DELETE_NODE) {
+            documentsModified = true;
+        }
         redoLog.append(a);
         // please note that flushing the redo log is only required on
         // commit, but we also want to keep track of new indexes for sure.
@@ -1288,35 +1426,34 @@ public class MultiIndex {
      * if the duration (idle time) is more than {@link SearchIndex#getVolatileIdleTime()}
      * seconds.
      */
-    private synchronized void checkFlush() {
-        long idleTime = System.currentTimeMillis() - lastFlushTime;
-        // do not flush if volatileIdleTime is zero or negative
-        if (handler.getVolatileIdleTime() > 0
-                && idleTime > handler.getVolatileIdleTime() * 1000) {
-            try {
-                if (redoLog.hasEntries()) {
-                    log.debug("Flushing index after being idle for "
-                            + idleTime + " ms.");
-                    safeFlush();
+    private void checkFlush() {
+        indexLock.lock();
+        try {
+            long idleTime = System.currentTimeMillis() - lastFlushTime;
+            // do not flush if volatileIdleTime is zero or negative
+            if (handler.getVolatileIdleTime() > 0
+                    && idleTime > handler.getVolatileIdleTime() * 1000) {
+                try {
+                    if (redoLog.hasEntries()) {
+                        log.debug("Flushing index after being idle for "
+                                + idleTime + " ms.");
+                        safeFlush();
+                    }
+                } catch (IOException e) {
+                    log.error("Unable to commit volatile index", e);
                 }
-            } catch (IOException e) {
-                log.error("Unable to commit volatile index", e);
             }
+        } finally {
+            indexLock.unlock();
         }
     }
 
     void safeFlush() throws IOException{
-        synchronized (updateMonitor) {
-            updateInProgress = true;
-        }
+        beginUpdate();
         try {
             flush();
         } finally {
-            synchronized (updateMonitor) {
-                updateInProgress = false;
-                updateMonitor.notifyAll();
-                releaseMultiReader();
-            }
+            endUpdate();
         }
     }
 
@@ -1355,13 +1492,16 @@ public class MultiIndex {
 
                 try {
                     if (transactionPresent) {
-                        synchronized (this) {
+                        indexLock.lock();
+                        try {
                             for (NodeId id : finished.keySet()) {
                                 executeAndLog(new DeleteNode(getTransactionId(), id));
                             }
                             for (Document document : finished.values()) {
                                 executeAndLog(new AddNode(getTransactionId(), document));
                             }
+                        } finally {
+                            indexLock.unlock();
                         }
                     } else {
                         update(finished.keySet(), finished.values());
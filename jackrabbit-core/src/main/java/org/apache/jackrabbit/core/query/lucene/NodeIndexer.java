@@ -20,6 +20,8 @@ import java.math.BigDecimal;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -243,6 +245,10 @@ public class NodeIndexer {
                         Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS,
                         Field.TermVector.NO));
             }
+            // as of version 4, also index the ancestors of the node
+            if (indexFormatVersion.isAtLeast(IndexFormatVersion.V4)) {
+                addAncestors(doc);
+            }
         } catch (NoSuchItemStateException e) {
             throwRepositoryException(e);
         } catch (ItemStateException e) {
@@ -1035,4 +1041,54 @@ public class NodeIndexer {
         Name name = child.getName();
         addNodeName(doc, name.getNamespaceURI(), name.getLocalName());
     }
+
+    /**
+     * Adds a {@link FieldNames#ANCESTORS} field for each ancestor of the
+     * indexed node to the given <code>doc</code>. If the node or one of its
+     * ancestors is shareable, the ancestors of all parents in the shared set
+     * are added.
+     *
+     * @param doc the document.
+     * @throws ItemStateException if an ancestor node cannot be read.
+     */
+    protected void addAncestors(Document doc) throws ItemStateException {
+        Set<NodeId> ancestors = new HashSet<NodeId>();
+        LinkedList<NodeId> parentIds = new LinkedList<NodeId>();
+        addParentIds(node, parentIds);
+        while (!parentIds.isEmpty()) {
+            NodeId id = parentIds.removeFirst();
+            if (ancestors.add(id)) {
+                Field ancestor = new Field(FieldNames.ANCESTORS, false,
+                        id.toString(), Field.Store.NO,
+                        Field.Index.NOT_ANALYZED_NO_NORMS, Field.TermVector.NO);
+                ancestor.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+                doc.add(ancestor);
+                try {
+                    addParentIds((NodeState) stateProvider.getItemState(id), parentIds);
+                } catch (NoSuchItemStateException e) {
+                    // ancestor is outside of the indexed item states, e.g.
+                    // the root node for an index on jcr:system
+                    log.debug("Ancestor {} of node {} not available",
+                            id, node.getNodeId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the ids of the parent nodes of <code>state</code> to
+     * <code>parentIds</code>.
+     *
+     * @param state     a node state.
+     * @param parentIds where the parent ids are added.
+     */
+    private static void addParentIds(NodeState state, List<NodeId> parentIds) {
+        if (state.getSharedSet().isEmpty()) {
+            if (state.getParentId() != null) {
+                parentIds.add(state.getParentId());
+            }
+        } else {
+            parentIds.addAll(state.getSharedSet());
+        }
+    }
 }
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.stats.QueryStatCore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>QueryResultCache</code> caches the raw hits of queries across
+ * sessions. Entries are keyed by a normalized query string and remember the
+ * reader generation of the index the query was executed on. An entry is only
+ * returned for a lookup with the same generation and is dropped otherwise,
+ * hence entries never outlive an index update. Generations are compared per
+ * entry because queries that include the system index have a different
+ * generation than queries that don't. The cached hits are not access
+ * checked, this is still done per session by the query result.
+ */
+class QueryResultCache {
+
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log = LoggerFactory.getLogger(QueryResultCache.class);
+
+    /**
+     * Maps query keys to {@link Entry} instances.
+     */
+    private final LRUMap entries;
+
+    /**
+     * The maximum number of hits of a cached result.
+     */
+    private final int maxHits;
+
+    /**
+     * The query statistics where cache hits and misses are recorded.
+     */
+    private final QueryStatCore stats;
+
+    /**
+     * Creates a new query result cache.
+     *
+     * @param size    the maximum number of cached results.
+     * @param maxHits the maximum number of hits of a cached result. Queries
+     *                with more hits are not cached.
+     * @param stats   the query statistics.
+     */
+    QueryResultCache(int size, int maxHits, QueryStatCore stats) {
+        this.entries = new LRUMap(size);
+        this.maxHits = maxHits;
+        this.stats = stats;
+    }
+
+    /**
+     * Returns the cached hits for the given query or <code>null</code> if
+     * there are none.
+     *
+     * @param key        the normalized query.
+     * @param generation the reader generation of the index.
+     * @return the cached hits or <code>null</code>.
+     */
+    MultiColumnQueryHits get(String key, String generation) {
+        Entry entry;
+        synchronized (entries) {
+            entry = (Entry) entries.get(key);
+            if (entry != null && !generation.equals(entry.generation)) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        stats.logResultCacheAccess(entry != null);
+        if (entry == null) {
+            return null;
+        }
+        log.debug("Query result cache hit for {}", key);
+        return new CachedQueryHits(entry);
+    }
+
+    /**
+     * Wraps the hits of an executed query. The hits are put into the cache
+     * once they have been read completely, unless the hits depend on the
+     * session that executed the query.
+     *
+     * @param key        the normalized query.
+     * @param generation the reader generation of the index when the query
+     *                   was executed.
+     * @param hits       the hits of the query.
+     * @param searcher   the searcher that executed the query.
+     * @return the wrapped hits.
+     */
+    MultiColumnQueryHits record(final String key,
+                                final String generation,
+                                MultiColumnQueryHits hits,
+                                final JackrabbitIndexSearcher searcher) {
+        return new FilterMultiColumnQueryHits(hits) {
+
+            private List<ScoreNode[]> nodes = new ArrayList<ScoreNode[]>();
+
+            public ScoreNode[] nextScoreNodes() throws IOException {
+                ScoreNode[] sn = super.nextScoreNodes();
+                if (nodes != null) {
+                    if (sn == null) {
+                        put(key, new Entry(generation, nodes,
+                                getSelectorNames()), searcher);
+                        nodes = null;
+                    } else if (nodes.size() < maxHits) {
+                        nodes.add(copy(sn));
+                    } else {
+                        nodes = null;
+                    }
+                }
+                return sn;
+            }
+
+            public void skip(int n) throws IOException {
+                if (n > 0) {
+                    nodes = null;
+                }
+                super.skip(n);
+            }
+        };
+    }
+
+    //-------------------------------< internal >-------------------------------
+
+    /**
+     * Puts a completely read result into the cache.
+     *
+     * @param key      the normalized query.
+     * @param entry    the result.
+     * @param searcher the searcher that executed the query.
+     */
+    private void put(String key, Entry entry,
+                     JackrabbitIndexSearcher searcher) {
+        if (searcher.isSessionScoped()) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Copies score nodes, which are mutable and carry document numbers that
+     * are only valid for a given index reader.
+     *
+     * @param nodes the score nodes.
+     * @return the copied score nodes.
+     */
+    private static ScoreNode[] copy(ScoreNode[] nodes) {
+        ScoreNode[] copy = new ScoreNode[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] != null) {
+                copy[i] = new ScoreNode(nodes[i].getNodeId(), nodes[i].getScore());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * A cached query result.
+     */
+    private static final class Entry {
+
+        private final String generation;
+
+        private final List<ScoreNode[]> nodes;
+
+        private final Name[] selectorNames;
+
+        Entry(String generation, List<ScoreNode[]> nodes, Name[] selectorNames) {
+            this.generation = generation;
+            this.nodes = nodes;
+            this.selectorNames = selectorNames;
+        }
+    }
+
+    /**
+     * Query hits over a cached result.
+     */
+    private static final class CachedQueryHits implements MultiColumnQueryHits {
+
+        private final Entry entry;
+
+        private int index;
+
+        CachedQueryHits(Entry entry) {
+            this.entry = entry;
+        }
+
+        public ScoreNode[] nextScoreNodes() {
+            if (index < entry.nodes.size()) {
+                return copy(entry.nodes.get(index++));
+            }
+            return null;
+        }
+
+        public Name[] getSelectorNames() {
+            return entry.selectorNames;
+        }
+
+        public int getSize() {
+            return entry.nodes.size();
+        }
+
+        public void skip(int n) {
+            index = Math.min(index + n, entry.nodes.size());
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -29,6 +29,9 @@ import javax.jcr.RepositoryException;
 import javax.jcr.query.RowIterator;
 
 import org.apache.jackrabbit.api.query.JackrabbitQueryResult;
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.security.AccessManager;
+import org.apache.jackrabbit.core.security.BatchReadAccessManager;
 import org.apache.jackrabbit.core.session.SessionContext;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.commons.query.qom.ColumnImpl;
@@ -45,6 +48,11 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
      */
     private static final Logger log = LoggerFactory.getLogger(QueryResultImpl.class);
 
+    /**
+     * The maximum number of hits whose access rights are checked at once.
+     */
+    private static final int ACCESS_CHECK_BATCH_SIZE = 100;
+
     /**
      * The search index to execute the query.
      */
@@ -363,19 +371,76 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
                                    List<ScoreNode[]> collector,
                                    long maxResults)
             throws IOException, RepositoryException {
+        List<ScoreNode[]> batch = new ArrayList<ScoreNode[]>();
         while (collector.size() < maxResults) {
-            ScoreNode[] sn = hits.nextScoreNodes();
-            if (sn == null) {
-                // no more results
+            long batchSize = Math.min(
+                    maxResults - collector.size(), ACCESS_CHECK_BATCH_SIZE);
+            batch.clear();
+            while (batch.size() < batchSize) {
+                ScoreNode[] sn = hits.nextScoreNodes();
+                if (sn == null) {
+                    // no more results
+                    break;
+                }
+                batch.add(sn);
+            }
+            if (batch.isEmpty()) {
                 break;
             }
             // check access
-            if (isAccessGranted(sn)) {
-                collector.add(sn);
-            } else {
-                invalid++;
+            boolean[] granted = isAccessGranted(batch);
+            for (int i = 0; i < granted.length; i++) {
+                if (granted[i]) {
+                    collector.add(batch.get(i));
+                } else {
+                    invalid++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks for each of the given hits if access is granted to all its
+     * nodes. If the access manager supports it, the access rights of the
+     * nodes of all hits are evaluated at once, otherwise each hit is checked
+     * with {@link #isAccessGranted(ScoreNode[])}.
+     *
+     * @param hits the hits to check.
+     * @return an array of the same size as <code>hits</code> indicating for
+     *         each hit whether read access is granted to all its nodes.
+     * @throws RepositoryException if an error occurs while checking access
+     *                             rights.
+     */
+    protected boolean[] isAccessGranted(List<ScoreNode[]> hits)
+            throws RepositoryException {
+        AccessManager accessMgr = sessionContext.getAccessManager();
+        boolean[] granted = new boolean[hits.size()];
+        if (!(accessMgr instanceof BatchReadAccessManager)) {
+            for (int i = 0; i < granted.length; i++) {
+                granted[i] = isAccessGranted(hits.get(i));
+            }
+            return granted;
+        }
+        List<ItemId> ids = new ArrayList<ItemId>();
+        for (ScoreNode[] nodes : hits) {
+            for (ScoreNode node : nodes) {
+                if (node != null) {
+                    ids.add(node.getNodeId());
+                }
+            }
+        }
+        boolean[] canRead = ((BatchReadAccessManager) accessMgr).canRead(
+                ids.toArray(new ItemId[ids.size()]));
+        int n = 0;
+        for (int i = 0; i < granted.length; i++) {
+            granted[i] = true;
+            for (ScoreNode node : hits.get(i)) {
+                if (node != null && !canRead[n++]) {
+                    granted[i] = false;
+                }
             }
         }
+        return granted;
     }
 
     /**
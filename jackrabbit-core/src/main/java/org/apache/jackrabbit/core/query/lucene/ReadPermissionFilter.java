@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.NamespaceException;
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.security.authorization.SubtreeReadPermissions;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.conversion.NamePathResolver;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>ReadPermissionFilter</code> removes the query hits a session is not
+ * allowed to read before the nodes of the hits are loaded. The read
+ * permission of a hit is determined by walking up the index hierarchy to its
+ * closest access controlled ancestor-or-self, whose read permission is
+ * evaluated once for its whole subtree. Hits with an undetermined read
+ * permission, e.g. because of a restriction, are kept and checked
+ * individually by the query result like all other hits.
+ */
+class ReadPermissionFilter {
+
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ReadPermissionFilter.class);
+
+    /**
+     * The index reader the hits were collected from.
+     */
+    private final IndexReader reader;
+
+    /**
+     * The hierarchy resolver of the index reader.
+     */
+    private final HierarchyResolver resolver;
+
+    /**
+     * The read permissions of the session.
+     */
+    private final SubtreeReadPermissions permissions;
+
+    /**
+     * The documents of type rep:AccessControllable.
+     */
+    private final BitSet accessControlled;
+
+    /**
+     * The documents of type rep:ACL, i.e. the roots of the access control
+     * content.
+     */
+    private final BitSet accessControlContent;
+
+    /**
+     * The read permission per document number.
+     */
+    private final Map<Integer, Integer> readPermissions = new HashMap<Integer, Integer>();
+
+    /**
+     * Reusable array for parent document numbers.
+     */
+    private int[] parents = new int[1];
+
+    /**
+     * Creates a new filter.
+     *
+     * @param reader      the index reader, which must also implement
+     *                    {@link HierarchyResolver}.
+     * @param nsMappings  the namespace mappings of the index.
+     * @param permissions the read permissions of the session.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    ReadPermissionFilter(IndexReader reader,
+                         NamespaceMappings nsMappings,
+                         SubtreeReadPermissions permissions)
+            throws IOException {
+        this.reader = reader;
+        this.resolver = (HierarchyResolver) reader;
+        this.permissions = permissions;
+
+        NamePathResolver npResolver = NamePathResolverImpl.create(nsMappings);
+        try {
+            accessControlled = getDocuments(createNameTerm(npResolver,
+                    NameConstants.JCR_MIXINTYPES, NameConstants.REP_ACCESS_CONTROLLABLE));
+            accessControlContent = getDocuments(createNameTerm(npResolver,
+                    NameConstants.JCR_PRIMARYTYPE, NameConstants.REP_ACL));
+        } catch (NamespaceException e) {
+            // will never happen, prefixes are created when unknown
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the hits the session may be allowed to read. The size of the
+     * returned hits is the size of the given hits, hence an upper bound.
+     *
+     * @param hits the query hits.
+     * @return the filtered query hits.
+     */
+    MultiColumnQueryHits filter(MultiColumnQueryHits hits) {
+        return new FilterMultiColumnQueryHits(hits) {
+
+            public ScoreNode[] nextScoreNodes() throws IOException {
+                ScoreNode[] sn = super.nextScoreNodes();
+                while (sn != null && isDenied(sn)) {
+                    sn = super.nextScoreNodes();
+                }
+                return sn;
+            }
+
+            public void skip(int n) throws IOException {
+                while (n-- > 0 && nextScoreNodes() != null) {
+                    // skip readable hits only
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns <code>true</code> if read access is denied to any of the given
+     * nodes.
+     *
+     * @param nodes the score nodes of a hit.
+     * @return whether read access is denied.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    boolean isDenied(ScoreNode[] nodes) throws IOException {
+        for (ScoreNode node : nodes) {
+            if (node != null) {
+                int doc;
+                try {
+                    doc = node.getDoc(reader);
+                } catch (IOException e) {
+                    // not in the index, e.g. a cached hit that was removed
+                    continue;
+                }
+                if (getReadPermission(doc) == SubtreeReadPermissions.DENIED) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the read permission of the document with the given number.
+     *
+     * @param doc a document number.
+     * @return the read permission.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    int getReadPermission(int doc) throws IOException {
+        List<Integer> path = new ArrayList<Integer>();
+        Integer permission;
+        int n = doc;
+        for (;;) {
+            permission = readPermissions.get(n);
+            if (permission != null) {
+                break;
+            }
+            path.add(n);
+            if (accessControlContent.get(n)) {
+                permission = SubtreeReadPermissions.UNDETERMINED;
+                break;
+            }
+            if (accessControlled.get(n)) {
+                permission = evaluate(n);
+                break;
+            }
+            parents = resolver.getParents(n, parents);
+            if (parents.length != 1) {
+                // root without access control or a shared node
+                permission = SubtreeReadPermissions.UNDETERMINED;
+                break;
+            }
+            n = parents[0];
+        }
+        for (Integer i : path) {
+            readPermissions.put(i, permission);
+        }
+        return permission;
+    }
+
+    //-------------------------------< internal >-------------------------------
+
+    /**
+     * Evaluates the read permission of the subtree at the given access
+     * controlled node.
+     *
+     * @param doc the document number of an access controlled node.
+     * @return the read permission.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    private int evaluate(int doc) throws IOException {
+        Document d = reader.document(doc, FieldSelectors.UUID);
+        NodeId id = new NodeId(d.get(FieldNames.UUID));
+        try {
+            return permissions.getSubtreeReadPermission(id);
+        } catch (ItemNotFoundException e) {
+            // removed while the query was executed
+            return SubtreeReadPermissions.UNDETERMINED;
+        } catch (RepositoryException e) {
+            log.warn("Unable to evaluate read permission of " + id, e);
+            return SubtreeReadPermissions.UNDETERMINED;
+        }
+    }
+
+    private BitSet getDocuments(Term term) throws IOException {
+        BitSet docs = new BitSet();
+        TermDocs tDocs = reader.termDocs(term);
+        try {
+            while (tDocs.next()) {
+                docs.set(tDocs.doc());
+            }
+        } finally {
+            tDocs.close();
+        }
+        return docs;
+    }
+
+    private static Term createNameTerm(NamePathResolver resolver,
+                                       Name property,
+                                       Name value)
+            throws NamespaceException {
+        return new Term(FieldNames.PROPERTIES, FieldNames.createNamedValue(
+                resolver.getJCRName(property), resolver.getJCRName(value)));
+    }
+}
@@ -68,6 +68,9 @@ import org.apache.jackrabbit.core.query.QueryHandlerContext;
 import org.apache.jackrabbit.core.query.lucene.directory.DirectoryManager;
 import org.apache.jackrabbit.core.query.lucene.directory.FSDirectoryManager;
 import org.apache.jackrabbit.core.query.lucene.hits.AbstractHitCollector;
+import org.apache.jackrabbit.core.security.AccessManager;
+import org.apache.jackrabbit.core.security.DefaultAccessManager;
+import org.apache.jackrabbit.core.security.authorization.SubtreeReadPermissions;
 import org.apache.jackrabbit.core.session.SessionContext;
 import org.apache.jackrabbit.core.state.ItemState;
 import org.apache.jackrabbit.core.state.ItemStateException;
@@ -465,6 +468,12 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     private SpellChecker spellChecker;
 
+    /**
+     * The cache for query results or <code>null</code> if query results are
+     * not cached.
+     */
+    private QueryResultCache resultCache;
+
     /**
      * The similarity in use for indexing and searching.
      */
@@ -504,6 +513,35 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     private boolean initializeHierarchyCache = true;
 
+    /**
+     * Flag that indicates whether a new index should store the ancestors of
+     * each node. See {@link IndexFormatVersion#V4}.
+     */
+    private boolean indexAncestors = false;
+
+    /**
+     * The maximum number of index ranges that are scored in parallel for a
+     * single query. Values less than two disable parallel scoring.
+     */
+    private int parallelSearchThreads = 1;
+
+    /**
+     * The maximum number of query results in the result cache. The default
+     * value <code>0</code> disables the cache.
+     */
+    private int resultCacheSize = 0;
+
+    /**
+     * The maximum number of hits of a query result in the result cache.
+     */
+    private int resultCacheMaxHits = 1000;
+
+    /**
+     * Whether query hits are filtered by the read permission of their
+     * closest access controlled ancestor before they are returned.
+     */
+    private boolean readPermissionFilter = false;
+
     /**
      * The name of the redo log factory class implementation.
      */
@@ -607,6 +645,11 @@ public class SearchIndex extends AbstractQueryHandler {
         // initialize spell checker
         spellChecker = createSpellChecker();
 
+        if (resultCacheSize > 0) {
+            resultCache = new QueryResultCache(
+                    resultCacheSize, resultCacheMaxHits, context.getQueryStat());
+        }
+
         log.info("Index initialized: {} Version: {}",
                 new Object[]{path, index.getIndexFormatVersion()});
         if (!index.getIndexFormatVersion().equals(getIndexFormatVersion())) {
@@ -614,6 +657,11 @@ public class SearchIndex extends AbstractQueryHandler {
                     "storage for optimal performance.",
                     getIndexFormatVersion().getVersion());
         }
+        if (indexAncestors
+                && !index.getIndexFormatVersion().isAtLeast(IndexFormatVersion.V4)) {
+            log.warn("Index {} does not contain ancestors. Please re-index " +
+                    "to enable indexAncestors.", path);
+        }
     }
 
     /**
@@ -664,11 +712,15 @@ public class SearchIndex extends AbstractQueryHandler {
         }
 
         Collection<Document> addCollection = new ArrayList<Document>();
+        Collection<NodeState> reindexed = new ArrayList<NodeState>();
         while (add.hasNext()) {
             NodeState state = add.next();
             if (state != null) {
                 NodeId id = state.getNodeId();
                 addedIds.add(id);
+                if (removedIds.contains(id)) {
+                    reindexed.add(state);
+                }
                 retrieveAggregateRoot(state, aggregateRoots);
 
                 try {
@@ -682,6 +734,25 @@ public class SearchIndex extends AbstractQueryHandler {
             }
         }
 
+        if (index.getIndexFormatVersion().isAtLeast(IndexFormatVersion.V4)) {
+            // descendants of moved nodes must be re-indexed
+            // because their ancestors changed
+            Map<NodeId, NodeState> descendants = new HashMap<NodeId, NodeState>();
+            retrieveMovedDescendants(reindexed, descendants);
+            descendants.keySet().removeAll(addedIds);
+            for (NodeState state : descendants.values()) {
+                removeCollection.add(state.getNodeId());
+                try {
+                    addCollection.add(createDocument(
+                            state, getNamespaceMappings(),
+                            index.getIndexFormatVersion()));
+                } catch (RepositoryException e) {
+                    log.warn("Exception while creating document for node: "
+                            + state.getNodeId() + ": " + e.toString());
+                }
+            }
+        }
+
         index.update(removeCollection, addCollection);
 
         // remove any aggregateRoot nodes that are new
@@ -868,13 +939,42 @@ public class SearchIndex extends AbstractQueryHandler {
 
         Sort sort = new Sort(createSortFields(orderProps, orderSpecs, orderFuncs));
 
+        String cacheKey = null;
+        String generation = null;
+        if (resultCache != null) {
+            cacheKey = createResultCacheKey(queryImpl, query);
+            if (cacheKey != null) {
+                // read generation before the reader is acquired
+                generation = getReaderGeneration(queryImpl.needsSystemTree());
+                MultiColumnQueryHits hits = resultCache.get(cacheKey, generation);
+                if (hits != null) {
+                    if (!readPermissionFilter) {
+                        return hits;
+                    }
+                    final IndexReader reader = getIndexReader(queryImpl.needsSystemTree());
+                    return new FilterMultiColumnQueryHits(
+                            filterReadable(session, reader, hits)) {
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                Util.closeOrRelease(reader);
+                            }
+                        }
+                    };
+                }
+            }
+        }
+
         final IndexReader reader = getIndexReader(queryImpl.needsSystemTree());
-        JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
-                session, reader, getContext().getItemStateManager());
-        searcher.setSimilarity(getSimilarity());
-        return new FilterMultiColumnQueryHits(
-                searcher.execute(query, sort, resultFetchHint,
-                        QueryImpl.DEFAULT_SELECTOR_NAME)) {
+        JackrabbitIndexSearcher searcher = createIndexSearcher(session, reader);
+        MultiColumnQueryHits hits = searcher.execute(query, sort,
+                resultFetchHint, QueryImpl.DEFAULT_SELECTOR_NAME);
+        if (cacheKey != null) {
+            hits = resultCache.record(cacheKey, generation, hits, searcher);
+        }
+        hits = filterReadable(session, reader, hits);
+        return new FilterMultiColumnQueryHits(hits) {
             public void close() throws IOException {
                 try {
                     super.close();
@@ -903,11 +1003,9 @@ public class SearchIndex extends AbstractQueryHandler {
         checkOpen();
 
         final IndexReader reader = getIndexReader();
-        JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
-                session, reader, getContext().getItemStateManager());
-        searcher.setSimilarity(getSimilarity());
-        return new FilterMultiColumnQueryHits(
-                query.execute(searcher, orderings, resultFetchHint)) {
+        JackrabbitIndexSearcher searcher = createIndexSearcher(session, reader);
+        return new FilterMultiColumnQueryHits(filterReadable(session, reader,
+                query.execute(searcher, orderings, resultFetchHint))) {
             public void close() throws IOException {
                 try {
                     super.close();
@@ -918,6 +1016,102 @@ public class SearchIndex extends AbstractQueryHandler {
         };
     }
 
+    /**
+     * Filters the hits the given session is not allowed to read if the read
+     * permission filter is enabled and the access manager of the session is
+     * able to evaluate the read permission of whole subtrees.
+     *
+     * @param session the session that executes the query.
+     * @param reader  the index reader the hits were collected from.
+     * @param hits    the query hits.
+     * @return the filtered query hits or <code>hits</code> if no filtering
+     *         is done.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    private MultiColumnQueryHits filterReadable(SessionImpl session,
+                                                IndexReader reader,
+                                                MultiColumnQueryHits hits)
+            throws IOException {
+        if (!readPermissionFilter || !(reader instanceof HierarchyResolver)) {
+            return hits;
+        }
+        AccessManager accessMgr = session.getAccessManager();
+        if (!(accessMgr instanceof DefaultAccessManager)) {
+            return hits;
+        }
+        SubtreeReadPermissions permissions;
+        try {
+            permissions = ((DefaultAccessManager) accessMgr).getSubtreeReadPermissions();
+        } catch (RepositoryException e) {
+            log.warn("Unable to filter query hits by read permission", e);
+            return hits;
+        }
+        if (permissions == null) {
+            return hits;
+        }
+        return new ReadPermissionFilter(reader, nsMappings, permissions).filter(hits);
+    }
+
+    /**
+     * Returns the key for the result cache of the given query or
+     * <code>null</code> if the query cannot be cached. The key consists of
+     * the normalized query tree, which includes the ordering, and the
+     * lucene query, which reflects session specific namespace mappings of
+     * literals.
+     *
+     * @param queryImpl the query impl.
+     * @param query     the lucene query.
+     * @return the cache key or <code>null</code>.
+     */
+    private String createResultCacheKey(AbstractQueryImpl queryImpl,
+                                        Query query) {
+        if (!(queryImpl instanceof QueryImpl)) {
+            return null;
+        }
+        try {
+            return ((QueryImpl) queryImpl).root.dump() + query;
+        } catch (RepositoryException e) {
+            log.debug("Unable to create result cache key: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the reader generation of the indexes that are searched by a
+     * reader returned by {@link #getIndexReader(boolean)}.
+     *
+     * @param includeSystemIndex whether the system index is included.
+     * @return the reader generation.
+     */
+    private String getReaderGeneration(boolean includeSystemIndex) {
+        QueryHandler parentHandler = getContext().getParentHandler();
+        String generation = String.valueOf(index.getReaderGeneration());
+        if (includeSystemIndex && parentHandler instanceof SearchIndex) {
+            generation += "/" + ((SearchIndex) parentHandler).index.getReaderGeneration();
+        }
+        return generation;
+    }
+
+    /**
+     * Creates an index searcher for the given <code>reader</code> configured
+     * with the similarity and parallel scoring settings of this search index.
+     *
+     * @param session the session that executes the query.
+     * @param reader  the index reader.
+     * @return the index searcher.
+     */
+    protected JackrabbitIndexSearcher createIndexSearcher(SessionImpl session,
+                                                          IndexReader reader) {
+        JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
+                session, reader, getContext().getItemStateManager());
+        searcher.setSimilarity(getSimilarity());
+        if (parallelSearchThreads > 1) {
+            searcher.setParallelism(
+                    getContext().getExecutor(), parallelSearchThreads);
+        }
+        return searcher;
+    }
+
     /**
      * Creates an excerpt provider for the given <code>query</code>.
      *
@@ -1789,6 +1983,98 @@ public class SearchIndex extends AbstractQueryHandler {
         log.debug("Retrieved {} aggregate roots in {} ms.", found, time);
     }
 
+    /**
+     * Retrieves the descendants of those <code>states</code> that were moved
+     * and puts them into <code>descendants</code>. A node was moved if the
+     * parent in the index is different from the current parent of the node
+     * state. This method requires an index with format
+     * {@link IndexFormatVersion#V4}.
+     *
+     * @param states      the node states that are re-indexed.
+     * @param descendants descendants of moved nodes are collected in this map
+     */
+    protected void retrieveMovedDescendants(
+            Collection<NodeState> states, Map<NodeId, NodeState> descendants) {
+        if (states.isEmpty()) {
+            return;
+        }
+        int found = 0;
+        long time = System.currentTimeMillis();
+        try {
+            CachingMultiIndexReader reader = index.getIndexReader();
+            try {
+                TermDocs tDocs = reader.termDocs();
+                try {
+                    ItemStateManager ism = getContext().getItemStateManager();
+                    for (NodeState state : states) {
+                        if (!isMoved(reader, tDocs, state)) {
+                            continue;
+                        }
+                        tDocs.seek(new Term(FieldNames.ANCESTORS,
+                                state.getNodeId().toString()));
+                        while (tDocs.next()) {
+                            Document doc = reader.document(
+                                    tDocs.doc(), FieldSelectors.UUID);
+                            NodeId id = new NodeId(doc.get(FieldNames.UUID));
+                            if (!descendants.containsKey(id)
+                                    && ism.hasItemState(id)) {
+                                descendants.put(id, (NodeState) ism.getItemState(id));
+                                found++;
+                            }
+                        }
+                    }
+                } finally {
+                    tDocs.close();
+                }
+            } finally {
+                reader.release();
+            }
+        } catch (Exception e) {
+            log.warn("Exception while retrieving descendants of moved nodes", e);
+        }
+        time = System.currentTimeMillis() - time;
+        log.debug("Retrieved {} descendants of moved nodes in {} ms.", found, time);
+    }
+
+    /**
+     * Returns <code>true</code> if the parents of <code>state</code> are
+     * different from the parents stored in the index.
+     *
+     * @param reader the index reader.
+     * @param tDocs  a term docs instance for reuse.
+     * @param state  the current node state.
+     * @return <code>true</code> if the node was moved; <code>false</code> if
+     *         it was not moved or is not yet indexed.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    private static boolean isMoved(IndexReader reader,
+                                   TermDocs tDocs,
+                                   NodeState state) throws IOException {
+        Set<String> parents = new HashSet<String>();
+        if (state.getSharedSet().isEmpty()) {
+            if (state.getParentId() != null) {
+                parents.add(state.getParentId().toString());
+            }
+        } else {
+            for (NodeId id : state.getSharedSet()) {
+                parents.add(id.toString());
+            }
+        }
+        tDocs.seek(new Term(FieldNames.UUID, state.getNodeId().toString()));
+        if (tDocs.next()) {
+            Document doc = reader.document(
+                    tDocs.doc(), FieldSelectors.UUID_AND_PARENT);
+            Set<String> indexed = new HashSet<String>();
+            for (String parent : doc.getValues(FieldNames.PARENT)) {
+                if (parent.length() > 0) {
+                    indexed.add(parent);
+                }
+            }
+            return !indexed.equals(parents);
+        }
+        return false;
+    }
+
     //----------------------------< internal >----------------------------------
 
     /**
@@ -2517,6 +2803,111 @@ public class SearchIndex extends AbstractQueryHandler {
         this.initializeHierarchyCache = initializeHierarchyCache;
     }
 
+    /**
+     * @return <code>true</code> if a new index should contain the ancestors
+     *         of each node.
+     */
+    public boolean isIndexAncestors() {
+        return indexAncestors;
+    }
+
+    /**
+     * Whether a new index should contain the ancestors of each node. This
+     * speeds up queries with a descendant axis at the cost of a larger index
+     * and re-indexing the descendants of moved nodes. The setting only
+     * applies when the index is created, an existing index must be
+     * re-indexed to change the setting. Queries only make use of the
+     * ancestors if they are also indexed by the search index of the
+     * version storage.
+     *
+     * @param indexAncestors <code>true</code> if ancestors should be indexed.
+     */
+    public void setIndexAncestors(boolean indexAncestors) {
+        this.indexAncestors = indexAncestors;
+    }
+
+    /**
+     * @return the maximum number of index ranges that are scored in parallel
+     *         for a single query.
+     */
+    public int getParallelSearchThreads() {
+        return parallelSearchThreads;
+    }
+
+    /**
+     * Sets the maximum number of index ranges that are scored in parallel for
+     * a single query. The ranges are scored by the repository executor and
+     * the thread that executes the query. Only large indexes are split, and
+     * only term queries and boolean combinations of them are scored in
+     * parallel. The default value <code>1</code> disables parallel scoring.
+     *
+     * @param parallelSearchThreads the maximum number of parallel ranges.
+     */
+    public void setParallelSearchThreads(int parallelSearchThreads) {
+        this.parallelSearchThreads = parallelSearchThreads;
+    }
+
+    /**
+     * @return the maximum number of query results in the result cache.
+     */
+    public int getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of query results that are cached across
+     * sessions. A cached result is reused by identical XPath and SQL queries
+     * until the index is updated. The results are still access checked for
+     * each session. The default value <code>0</code> disables the cache.
+     *
+     * @param resultCacheSize the maximum number of cached query results.
+     */
+    public void setResultCacheSize(int resultCacheSize) {
+        this.resultCacheSize = resultCacheSize;
+    }
+
+    /**
+     * @return the maximum number of hits of a query result in the result
+     *         cache.
+     */
+    public int getResultCacheMaxHits() {
+        return resultCacheMaxHits;
+    }
+
+    /**
+     * Sets the maximum number of hits of a query result in the result cache.
+     * Query results with more hits are not cached. The default value is
+     * <code>1000</code>.
+     *
+     * @param resultCacheMaxHits the maximum number of hits of a cached
+     *                           result.
+     */
+    public void setResultCacheMaxHits(int resultCacheMaxHits) {
+        this.resultCacheMaxHits = resultCacheMaxHits;
+    }
+
+    /**
+     * @return whether query hits are filtered by the read permission of
+     *         their closest access controlled ancestor.
+     */
+    public boolean getReadPermissionFilter() {
+        return readPermissionFilter;
+    }
+
+    /**
+     * Enables or disables filtering of query hits by the read permission of
+     * their closest access controlled ancestor. The permission is evaluated
+     * once per access controlled node and unreadable hits are dropped before
+     * their nodes are loaded. Hits below entries with restrictions are
+     * checked individually. Only effective with the default access control
+     * provider. The default value is <code>false</code>.
+     *
+     * @param readPermissionFilter <code>true</code> to enable the filter.
+     */
+    public void setReadPermissionFilter(boolean readPermissionFilter) {
+        this.readPermissionFilter = readPermissionFilter;
+    }
+
     /**
      * @return the maximum age in seconds for outdated generations of
      * {@link IndexInfos}.
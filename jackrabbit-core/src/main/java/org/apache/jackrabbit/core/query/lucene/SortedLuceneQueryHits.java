@@ -17,13 +17,13 @@
 package org.apache.jackrabbit.core.query.lucene;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.jackrabbit.core.id.NodeId;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
-import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopDocs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,7 +52,7 @@ public final class SortedLuceneQueryHits extends AbstractQueryHits {
     /**
      * The index searcher.
      */
-    private final IndexSearcher searcher;
+    private final JackrabbitIndexSearcher searcher;
 
     /**
      * The query to execute.
@@ -102,7 +102,7 @@ public final class SortedLuceneQueryHits extends AbstractQueryHits {
      * @throws IOException
      *             if an error occurs while reading from the index.
      */
-    public SortedLuceneQueryHits(IndexSearcher searcher, Query query,
+    public SortedLuceneQueryHits(JackrabbitIndexSearcher searcher, Query query,
             Sort sort, long resultFetchHint) throws IOException {
         this.searcher = searcher;
         this.query = query;
@@ -152,11 +152,11 @@ public final class SortedLuceneQueryHits extends AbstractQueryHits {
     //-------------------------------< internal >-------------------------------
 
     private void getHits() throws IOException {
-        TopFieldCollector collector = TopFieldCollector.create(sort, numHits, false, true, false, false);
-        searcher.search(query, collector);
-        size = collector.getTotalHits();
+        TopDocs topDocs = searcher.collectSorted(query, sort, numHits);
+        size = topDocs.totalHits;
         offset += scoreDocs.length;
-        scoreDocs = collector.topDocs(offset, numHits).scoreDocs;
+        ScoreDoc[] docs = topDocs.scoreDocs;
+        scoreDocs = Arrays.copyOfRange(docs, Math.min(offset, docs.length), docs.length);
         log.debug("getHits() {}/{}", scoreDocs.length, numHits);
         // double hits for next round
         numHits *= 2;
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.id.ItemId;
+
+/**
+ * <code>BatchReadAccessManager</code> is an optional extension of the
+ * {@link AccessManager} that is able to evaluate the read permission of many
+ * items at once. Callers check for this interface and otherwise call
+ * {@link AccessManager#canRead(org.apache.jackrabbit.spi.Path, ItemId)} for
+ * each item.
+ */
+public interface BatchReadAccessManager extends AccessManager {
+
+    /**
+     * Determines whether the items with the specified <code>itemIds</code>
+     * can be read. The result is the same as calling
+     * {@link #canRead(org.apache.jackrabbit.spi.Path, ItemId)} for each of
+     * the ids, but implementations may evaluate items with a common ancestor
+     * together, e.g. the child nodes of a node or the nodes of a query
+     * result.<br>
+     * This method should only be called for persisted items. Items that do
+     * not exist (anymore) are reported as readable, retrieving them fails
+     * anyway.
+     *
+     * @param itemIds Ids of the items to be tested.
+     * @return an array of the same length as <code>itemIds</code>, where an
+     * element is <code>true</code> if the item with the id at the same index
+     * can be read.
+     * @throws RepositoryException if an error occurs.
+     */
+    boolean[] canRead(ItemId[] itemIds) throws RepositoryException;
+}
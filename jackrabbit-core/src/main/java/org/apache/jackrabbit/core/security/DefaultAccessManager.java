@@ -24,8 +24,10 @@ import org.apache.jackrabbit.core.SessionImpl;
 import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.security.authorization.AccessControlEditor;
 import org.apache.jackrabbit.core.security.authorization.AccessControlProvider;
+import org.apache.jackrabbit.core.security.authorization.BatchReadPermissions;
 import org.apache.jackrabbit.core.security.authorization.CompiledPermissions;
 import org.apache.jackrabbit.core.security.authorization.Permission;
+import org.apache.jackrabbit.core.security.authorization.SubtreeReadPermissions;
 import org.apache.jackrabbit.core.security.authorization.WorkspaceAccessManager;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.Path;
@@ -74,7 +76,7 @@ import java.util.Set;
  * @see AccessManager
  * @see javax.jcr.security.AccessControlManager
  */
-public class DefaultAccessManager extends AbstractAccessControlManager implements AccessManager {
+public class DefaultAccessManager extends AbstractAccessControlManager implements BatchReadAccessManager {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultAccessManager.class);
 
@@ -266,6 +268,46 @@ public class DefaultAccessManager extends AbstractAccessControlManager implement
         }
     }
 
+    /**
+     * @see BatchReadAccessManager#canRead(ItemId[])
+     */
+    public boolean[] canRead(ItemId[] itemIds) throws RepositoryException {
+        checkInitialized();
+        boolean[] canRead = new boolean[itemIds.length];
+        if (compiledPermissions.canReadAll()) {
+            Arrays.fill(canRead, true);
+        } else if (compiledPermissions instanceof BatchReadPermissions) {
+            canRead = ((BatchReadPermissions) compiledPermissions).canRead(itemIds);
+        } else {
+            for (int i = 0; i < itemIds.length; i++) {
+                try {
+                    canRead[i] = compiledPermissions.canRead(null, itemIds[i]);
+                } catch (ItemNotFoundException e) {
+                    // removed in the meantime
+                    canRead[i] = true;
+                }
+            }
+        }
+        return canRead;
+    }
+
+    /**
+     * Returns the compiled permissions of this access manager if they are
+     * able to evaluate the read permission of whole subtrees.
+     *
+     * @return the subtree read permissions or <code>null</code> if they are
+     * not supported or the session can read all items anyway.
+     * @throws RepositoryException if an error occurs.
+     */
+    public SubtreeReadPermissions getSubtreeReadPermissions() throws RepositoryException {
+        checkInitialized();
+        if (!compiledPermissions.canReadAll()
+                && compiledPermissions instanceof SubtreeReadPermissions) {
+            return (SubtreeReadPermissions) compiledPermissions;
+        }
+        return null;
+    }
+
     /**
      * @see AccessManager#canAccess(String)
      */
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.authorization;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.id.ItemId;
+
+/**
+ * <code>BatchReadPermissions</code> is implemented by
+ * {@link CompiledPermissions} that are able to share the evaluation of the
+ * read permission among items with a common ancestor.
+ */
+public interface BatchReadPermissions extends CompiledPermissions {
+
+    /**
+     * Returns for each of the <i>existing</i> items with the given
+     * <code>ItemId</code>s whether READ permission is granted. This method
+     * acts as shortcut for calling {@link #canRead(org.apache.jackrabbit.spi.Path, ItemId)}
+     * for many items. Items that do not exist are reported as readable.
+     *
+     * @param itemIds The ids of the items.
+     * @return an array of the same length as <code>itemIds</code> containing
+     * <code>true</code> for each item where the READ permission is granted.
+     * @throws RepositoryException If an error occurs.
+     */
+    boolean[] canRead(ItemId[] itemIds) throws RepositoryException;
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.authorization;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+/**
+ * <code>SubtreeReadPermissions</code> is implemented by
+ * {@link CompiledPermissions} that are able to evaluate the read permission
+ * for all items below an access controlled node at once. This allows to
+ * check read access for many items, e.g. the results of a query, by looking
+ * up their closest access controlled ancestor without loading the items.
+ * <p>
+ * Implementations expect the access control content to be defined by child
+ * nodes of type <code>rep:ACL</code> of the access controlled nodes, which
+ * are of type <code>rep:AccessControllable</code>.
+ */
+public interface SubtreeReadPermissions {
+
+    /**
+     * The read permission depends on the individual item, e.g. because an
+     * access control entry defines a restriction.
+     */
+    int UNDETERMINED = 0;
+
+    /**
+     * Read access is granted to all items of the subtree.
+     */
+    int GRANTED = 1;
+
+    /**
+     * Read access is denied to all items of the subtree.
+     */
+    int DENIED = 2;
+
+    /**
+     * Evaluates the read permission for the node with the given id and all
+     * its descendants except access control content and the subtrees of
+     * descendants that are of type <code>rep:AccessControllable</code>.
+     *
+     * @param id the id of an existing node.
+     * @return {@link #GRANTED} or {@link #DENIED} if read access is granted
+     * or denied to all these items, {@link #UNDETERMINED} otherwise.
+     * @throws RepositoryException if an error occurs.
+     */
+    int getSubtreeReadPermission(NodeId id) throws RepositoryException;
+}
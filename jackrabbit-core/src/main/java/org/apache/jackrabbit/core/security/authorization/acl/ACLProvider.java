@@ -88,6 +88,20 @@ public class ACLProvider extends AbstractAccessControlProvider implements Access
      */
     public static final String PARAM_ALLOW_UNKNOWN_PRINCIPALS = "allow-unknown-principals";
 
+    /**
+     * Constant for the name of the configuration option {@code permission-cache-size}.
+     * The option defines the maximum number of evaluated permissions that are
+     * cached for and shared between all sessions with the same set of principals.
+     * A value of {@code 0} disables the shared cache, such that the permissions
+     * are only cached per session. The default is {@link #DEFAULT_PERMISSION_CACHE_SIZE}.
+     */
+    public static final String PARAM_PERMISSION_CACHE_SIZE = "permission-cache-size";
+
+    /**
+     * The default size of the permission cache shared between sessions.
+     */
+    public static final int DEFAULT_PERMISSION_CACHE_SIZE = 10000;
+
     /**
      * the default logger
      */
@@ -110,6 +124,12 @@ public class ACLProvider extends AbstractAccessControlProvider implements Access
      */
     private boolean allowUnknownPrincipals;
 
+    /**
+     * The permissions evaluated for and shared between sessions with the
+     * same set of principals or <code>null</code> if the cache is disabled.
+     */
+    private SharedPermissionCache permissionCache;
+
     //----------------------------------------------< AccessControlProvider >---
     /**
      * @see org.apache.jackrabbit.core.security.authorization.AccessControlProvider#init(Session, Map)
@@ -132,6 +152,20 @@ public class ACLProvider extends AbstractAccessControlProvider implements Access
         }
 
         entryCollector = createEntryCollector(session);
+
+        int cacheSize = DEFAULT_PERMISSION_CACHE_SIZE;
+        Object param = configuration.get(PARAM_PERMISSION_CACHE_SIZE);
+        if (param != null) {
+            try {
+                cacheSize = Integer.parseInt(param.toString());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value for " + PARAM_PERMISSION_CACHE_SIZE + ": " + param);
+            }
+        }
+        if (cacheSize > 0) {
+            permissionCache = new SharedPermissionCache(cacheSize);
+            entryCollector.addListener(permissionCache);
+        }
     }
 
     @Override
@@ -251,7 +285,7 @@ public class ACLProvider extends AbstractAccessControlProvider implements Access
         } else if (isReadOnly(principals)) {
             return getReadOnlyPermissions();
         } else {
-            return new CompiledPermissionsImpl(principals, session, entryCollector, this, true);
+            return new CompiledPermissionsImpl(principals, session, entryCollector, this, true, permissionCache);
         }
     }
 
@@ -263,7 +297,7 @@ public class ACLProvider extends AbstractAccessControlProvider implements Access
         if (isAdminOrSystem(principals)) {
             return true;
         } else {
-            CompiledPermissions cp = new CompiledPermissionsImpl(principals, session, entryCollector, this, false);
+            CompiledPermissions cp = new CompiledPermissionsImpl(principals, session, entryCollector, this, false, permissionCache);
             try {
                 return cp.canRead(null, rootNodeId);
             } finally {
@@ -16,15 +16,19 @@
  */
 package org.apache.jackrabbit.core.security.authorization.acl;
 
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.jcr.RepositoryException;
 
 import org.apache.jackrabbit.core.NodeImpl;
 import org.apache.jackrabbit.core.SessionImpl;
-import org.apache.jackrabbit.core.cache.GrowingLRUMap;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.security.authorization.AccessControlModifications;
 import org.slf4j.Logger;
@@ -61,7 +65,7 @@ class CachingEntryCollector extends EntryCollector {
      */
     CachingEntryCollector(SessionImpl systemSession, NodeId rootID) throws RepositoryException {
         super(systemSession, rootID);
-        cache = new EntryCache();
+        cache = new EntryCache(rootID);
 
         // for testing purposes, see JCR-2950
         String propname = "org.apache.jackrabbit.core.security.authorization.acl.CachingEntryCollector.strategy";
@@ -122,12 +126,13 @@ class CachingEntryCollector extends EntryCollector {
      * @throws RepositoryException If an error occurs.
      */
     private Entries internalUpdateCache(NodeImpl node) throws RepositoryException {
+        long generation = cache.getGeneration();
         Entries entries = super.getEntries(node);
         if (cacheNoAcl || (isRootId(node.getNodeId()) && cache.specialCasesRoot()) || !entries.isEmpty()) {
             // adjust the 'nextId' to point to the next access controlled
             // ancestor node instead of the parent and remember the entries.
             entries.setNextId(getNextID(node));
-            cache.put(node.getNodeId(), entries);
+            cache.put(node.getNodeId(), entries, generation);
         } // else: not access controlled -> ignore.
         return entries;
     }
@@ -267,7 +272,9 @@ class CachingEntryCollector extends EntryCollector {
     @Override
     @SuppressWarnings("unchecked")
     public void notifyListeners(AccessControlModifications modifications) {
-        /* Update cache for all affected access controlled nodes */
+        /* Update cache for all affected access controlled nodes at once */
+        Map<NodeId, Boolean> removed = new HashMap<NodeId, Boolean>();
+        boolean clear = false;
         for (Object key : modifications.getNodeIdentifiers()) {
             if (!(key instanceof NodeId)) {
                 log.warn("Cannot process AC modificationMap entry. Keys must be NodeId.");
@@ -279,22 +286,27 @@ class CachingEntryCollector extends EntryCollector {
                 // clear the complete cache since the nextAcNodeId may
                 // have changed due to the added ACL.
                 log.debug("Policy added, clearing the cache");
-                cache.clear();
+                clear = true;
                 break; // no need for further processing.
             } else if ((type & POLICY_REMOVED) == POLICY_REMOVED) {
                 // clear the entry and change the entries having a nextID
                 // pointing to this node.
-                cache.remove(nodeId, true);
+                removed.put(nodeId, Boolean.TRUE);
             } else if ((type & POLICY_MODIFIED) == POLICY_MODIFIED) {
                 // simply clear the cache entry -> reload upon next access.
-                cache.remove(nodeId, false);
+                removed.put(nodeId, Boolean.FALSE);
             } else if ((type & MOVE) == MOVE) {
                 // some sort of move operation that may affect the cache
                 log.debug("Move operation, clearing the cache");
-                cache.clear();
+                clear = true;
                 break; // no need for further processing.
             }
         }
+        if (clear) {
+            cache.clear();
+        } else if (!removed.isEmpty()) {
+            cache.remove(removed);
+        }
         super.notifyListeners(modifications);
     }
 
@@ -342,15 +354,47 @@ class CachingEntryCollector extends EntryCollector {
      * node. The internal map uses the ID of the node as key while the value
      * consists of {@Entries} objects that not only provide the ACEs defined
      * for that node but also the ID of the next access controlled parent node.
+     * <p>
+     * The cache is split into shards by the hash code of the node id. Lookups
+     * never block, a shard is only locked while evicting entries.
      */
-    private class EntryCache {
+    static class EntryCache {
+
+        static final int SHARD_COUNT = 16;
+
+        private final NodeId rootID;
+        private final Shard[] shards;
+        private volatile Entries rootEntries;
+        private final boolean specialCaseRoot;
+
+        /**
+         * Incremented whenever entries are removed from the cache. Used to
+         * detect entries that were read before the removal but are put into
+         * the cache after it.
+         */
+        private final AtomicLong generation = new AtomicLong();
+
+        EntryCache(NodeId rootID) {
+            this(rootID, getMaxSize(), Boolean.parseBoolean(System.getProperty(
+                    "org.apache.jackrabbit.core.security.authorization.acl.CachingEntryCollector.scroot", "true")));
+        }
+
+        EntryCache(NodeId rootID, int maxsize, boolean specialCaseRoot) {
+            log.info("Creating cache with max size of: " + maxsize);
+
+            this.rootID = rootID;
+            shards = new Shard[SHARD_COUNT];
+            int shardSize = Math.max(1, maxsize / SHARD_COUNT);
+            for (int i = 0; i < SHARD_COUNT; i++) {
+                shards[i] = new Shard(shardSize);
+            }
 
-        private final Map<NodeId, Entries> cache;
-        private Entries rootEntries;
-        private boolean specialCaseRoot = true;
+            this.specialCaseRoot = specialCaseRoot;
 
-        @SuppressWarnings("unchecked")
-        public EntryCache() {
+            log.info("Root is special-cased: " + specialCaseRoot);
+        }
+
+        private static int getMaxSize() {
             int maxsize = 5000;
             String propname = "org.apache.jackrabbit.core.security.authorization.acl.CachingEntryCollector.maxsize";
             try {
@@ -358,47 +402,40 @@ class CachingEntryCollector extends EntryCollector {
             } catch (NumberFormatException ex) {
                 log.debug("Parsing system property " + propname + " with value: " + System.getProperty(propname), ex);
             }
-
-            log.info("Creating cache with max size of: " + maxsize);
-
-            cache = new GrowingLRUMap(1024, maxsize);
-
-            String propsrname = "org.apache.jackrabbit.core.security.authorization.acl.CachingEntryCollector.scroot";
-            specialCaseRoot = Boolean.parseBoolean(System.getProperty(propsrname, "true"));
-
-            log.info("Root is special-cased: " + specialCaseRoot);
+            return maxsize;
         }
 
         public boolean specialCasesRoot() {
             return specialCaseRoot;
         }
 
+        public long getGeneration() {
+            return generation.get();
+        }
+
         public boolean containsKey(NodeId id) {
-            if (specialCaseRoot && isRootId(id)) {
+            if (specialCaseRoot && rootID.equals(id)) {
                 return rootEntries != null;
             } else {
-                synchronized (cache) {
-                    return cache.containsKey(id);
-                }
+                return getShard(id).get(id) != null;
             }
         }
 
         public void clear() {
+            generation.incrementAndGet();
             rootEntries = null;
-            synchronized (cache) {
-                cache.clear();
+            for (Shard shard : shards) {
+                shard.clear();
             }
         }
 
         public Entries get(NodeId id) {
             Entries result;
 
-            if (specialCaseRoot && isRootId(id)) {
+            if (specialCaseRoot && rootID.equals(id)) {
                 result = rootEntries;
             } else {
-                synchronized (cache) {
-                    result = cache.get(id);
-                }
+                result = getShard(id).get(id);
             }
 
             if (result != null) {
@@ -410,7 +447,15 @@ class CachingEntryCollector extends EntryCollector {
             return result;
         }
 
-        public void put(NodeId id, Entries entries) {
+        /**
+         * Puts the entries into the cache unless entries have been removed
+         * from the cache after the given generation.
+         *
+         * @param id The id of the access controlled node.
+         * @param entries The entries defined at the node.
+         * @param generation The generation before the entries were read.
+         */
+        public void put(NodeId id, Entries entries, long generation) {
             log.debug("Updating cache for nodeId {}", id);
 
             // fail early on potential cache corruption
@@ -418,39 +463,177 @@ class CachingEntryCollector extends EntryCollector {
                 throw new IllegalArgumentException("Trying to update cache entry for " + id + " with a circular reference");
             }
 
-            if (specialCaseRoot && isRootId(id)) {
+            if (generation != this.generation.get()) {
+                log.debug("Cache modified concurrently, not caching nodeId {}", id);
+                return;
+            }
+            if (specialCaseRoot && rootID.equals(id)) {
                 rootEntries = entries;
             } else {
-                synchronized (cache) {
-                    cache.put(id, entries);
-                }
+                getShard(id).put(id, entries);
+            }
+            if (generation != this.generation.get()) {
+                // modified concurrently: the entry may have missed the removal
+                remove(id);
             }
         }
 
-        public void remove(NodeId id, boolean adjustNextIds) {
-            log.debug("Removing nodeId {} from cache", id);
-            Entries result;
-            synchronized (cache) {
-                if (specialCaseRoot && isRootId(id)) {
-                    result = rootEntries;
-                    rootEntries = null;
-                } else {
-                    result = cache.remove(id);
+        /**
+         * Removes the entries of the given nodes from the cache.
+         *
+         * @param ids The ids of the nodes mapped to a flag indicating whether
+         * entries that have the node as next id must be changed to point to
+         * the next id of the node.
+         */
+        public void remove(Map<NodeId, Boolean> ids) {
+            generation.incrementAndGet();
+            Map<NodeId, NodeId> nextIds = new HashMap<NodeId, NodeId>();
+            for (Map.Entry<NodeId, Boolean> entry : ids.entrySet()) {
+                NodeId id = entry.getKey();
+                log.debug("Removing nodeId {} from cache", id);
+                Entries result = remove(id);
+                if (entry.getValue() && result != null) {
+                    nextIds.put(id, result.getNextId());
+                }
+            }
+
+            if (!nextIds.isEmpty()) {
+                // adjust the next ids of all remaining entries in one pass
+                for (Shard shard : shards) {
+                    for (Map.Entry<NodeId, CacheEntry> entry : shard.entrySet()) {
+                        Entries entries = entry.getValue().entries;
+                        NodeId nextId = entries.getNextId();
+                        if (nextId == null || !nextIds.containsKey(nextId)) {
+                            continue;
+                        }
+                        for (int i = 0; i < nextIds.size() && nextIds.containsKey(nextId); i++) {
+                            nextId = nextIds.get(nextId);
+                        }
+                        // fail early on potential cache corruption
+                        if (entry.getKey().equals(nextId) || nextIds.containsKey(nextId)) {
+                            throw new IllegalArgumentException("Trying to update cache entry for " + entry.getKey() + " with a circular reference");
+                        }
+                        entries.setNextId(nextId);
+                    }
                 }
+            }
+        }
+
+        private Entries remove(NodeId id) {
+            if (specialCaseRoot && rootID.equals(id)) {
+                Entries result = rootEntries;
+                rootEntries = null;
+                return result;
+            } else {
+                return getShard(id).remove(id);
+            }
+        }
+
+        Shard getShard(NodeId id) {
+            int h = id.hashCode();
+            h ^= (h >>> 16);
+            return shards[h & (SHARD_COUNT - 1)];
+        }
+    }
+
+    /**
+     * A shard of the {@link EntryCache}. Lookups are lock free. When the
+     * shard grows beyond its maximum size, entries that have not been
+     * accessed since the previous eviction are removed (second chance
+     * eviction). Only one thread evicts at a time, others continue without
+     * waiting.
+     */
+    static final class Shard {
+
+        private final ConcurrentMap<NodeId, CacheEntry> map =
+                new ConcurrentHashMap<NodeId, CacheEntry>(64, 0.75f, 4);
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final ReentrantLock evictionLock = new ReentrantLock();
+
+        private final int maxSize;
+
+        Shard(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        Entries get(NodeId id) {
+            CacheEntry entry = map.get(id);
+            if (entry == null) {
+                return null;
+            }
+            if (!entry.accessed) {
+                entry.accessed = true;
+            }
+            return entry.entries;
+        }
+
+        void put(NodeId id, Entries entries) {
+            if (map.put(id, new CacheEntry(entries)) == null
+                    && size.incrementAndGet() > maxSize) {
+                evict();
+            }
+        }
 
-                if (adjustNextIds && result != null) {
-                    NodeId nextId = result.getNextId();
-                    for (Entries entry : cache.values()) {
-                        if (id.equals(entry.getNextId())) {
-                            // fail early on potential cache corruption
-                            if (id.equals(nextId)) {
-                                throw new IllegalArgumentException("Trying to update cache entry for " + id + " with a circular reference");
-                            }
-                            entry.setNextId(nextId);
+        Entries remove(NodeId id) {
+            CacheEntry entry = map.remove(id);
+            if (entry == null) {
+                return null;
+            }
+            size.decrementAndGet();
+            return entry.entries;
+        }
+
+        void clear() {
+            for (NodeId id : map.keySet()) {
+                remove(id);
+            }
+        }
+
+        int size() {
+            return size.get();
+        }
+
+        Iterable<Map.Entry<NodeId, CacheEntry>> entrySet() {
+            return map.entrySet();
+        }
+
+        private void evict() {
+            if (!evictionLock.tryLock()) {
+                // another thread is already evicting
+                return;
+            }
+            try {
+                // two rounds at most: the first may only reset access flags
+                for (int round = 0; round < 2 && size.get() > maxSize; round++) {
+                    Iterator<Map.Entry<NodeId, CacheEntry>> it = map.entrySet().iterator();
+                    while (size.get() > maxSize && it.hasNext()) {
+                        Map.Entry<NodeId, CacheEntry> e = it.next();
+                        if (e.getValue().accessed) {
+                            e.getValue().accessed = false;
+                        } else if (map.remove(e.getKey(), e.getValue())) {
+                            size.decrementAndGet();
                         }
                     }
                 }
+            } finally {
+                evictionLock.unlock();
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The value of a {@link Shard} entry.
+     */
+    private static final class CacheEntry {
+
+        private final Entries entries;
+
+        private volatile boolean accessed;
+
+        CacheEntry(Entries entries) {
+            this.entries = entries;
+        }
+    }
+}
@@ -29,10 +29,12 @@ import org.apache.jackrabbit.core.security.authorization.AbstractCompiledPermiss
 import org.apache.jackrabbit.core.security.authorization.AccessControlListener;
 import org.apache.jackrabbit.core.security.authorization.AccessControlModifications;
 import org.apache.jackrabbit.core.security.authorization.AccessControlUtils;
+import org.apache.jackrabbit.core.security.authorization.BatchReadPermissions;
 import org.apache.jackrabbit.core.security.authorization.Permission;
 import org.apache.jackrabbit.core.security.authorization.PrivilegeBits;
 import org.apache.jackrabbit.core.security.authorization.PrivilegeManagerImpl;
 import org.apache.jackrabbit.core.security.authorization.PrivilegeRegistry;
+import org.apache.jackrabbit.core.security.authorization.SubtreeReadPermissions;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.Path;
 import org.apache.jackrabbit.util.Text;
@@ -43,6 +45,7 @@ import javax.jcr.ItemNotFoundException;
 import javax.jcr.RepositoryException;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -51,7 +54,8 @@ import java.util.Set;
 /**
  * <code>CompiledPermissionsImpl</code>...
  */
-class CompiledPermissionsImpl extends AbstractCompiledPermissions implements AccessControlListener {
+class CompiledPermissionsImpl extends AbstractCompiledPermissions
+        implements AccessControlListener, SubtreeReadPermissions, BatchReadPermissions {
 
     private static final Logger LOG = LoggerFactory.getLogger(CompiledPermissionsImpl.class);
 
@@ -67,6 +71,13 @@ class CompiledPermissionsImpl extends AbstractCompiledPermissions implements Acc
     private final EntryCollector entryCollector;
     private final AccessControlUtils util;
 
+    /**
+     * The cache shared with other sessions or <code>null</code> if the
+     * evaluated permissions are only cached for this instance.
+     */
+    private final SharedPermissionCache sharedCache;
+    private final SharedPermissionCache.PrincipalNames sharedKey;
+
     /*
      * Start with initial map size of 1024 and grow up to 5000 before
      * removing LRU items.
@@ -79,6 +90,13 @@ class CompiledPermissionsImpl extends AbstractCompiledPermissions implements Acc
     CompiledPermissionsImpl(Set<Principal> principals, SessionImpl session,
                             EntryCollector entryCollector, AccessControlUtils util,
                             boolean listenToEvents) throws RepositoryException {
+        this(principals, session, entryCollector, util, listenToEvents, null);
+    }
+
+    CompiledPermissionsImpl(Set<Principal> principals, SessionImpl session,
+                            EntryCollector entryCollector, AccessControlUtils util,
+                            boolean listenToEvents, SharedPermissionCache sharedCache)
+            throws RepositoryException {
         this.session = session;
         this.entryCollector = entryCollector;
         this.util = util;
@@ -88,6 +106,13 @@ class CompiledPermissionsImpl extends AbstractCompiledPermissions implements Acc
             principalNames.add(princ.getName());
         }
 
+        this.sharedCache = sharedCache;
+        if (sharedCache != null) {
+            sharedKey = new SharedPermissionCache.PrincipalNames(principalNames);
+        } else {
+            sharedKey = null;
+        }
+
         if (listenToEvents) {
             /*
             Make sure this AclPermission recalculates the permissions if
@@ -226,6 +251,31 @@ class CompiledPermissionsImpl extends AbstractCompiledPermissions implements Acc
         super.clearCache();
     }
 
+    /**
+     * Returns the result from the shared cache if there is one, otherwise
+     * from the cache of this instance.
+     *
+     * @see AbstractCompiledPermissions#getResult(org.apache.jackrabbit.spi.Path)
+     */
+    @Override
+    public Result getResult(Path absPath) throws RepositoryException {
+        if (sharedCache == null) {
+            return super.getResult(absPath);
+        }
+        SharedPermissionCache.Key key = new SharedPermissionCache.Key(sharedKey, absPath);
+        Result result = (Result) sharedCache.get(key);
+        if (result == null) {
+            long generation = sharedCache.getGeneration();
+            if (absPath == null) {
+                result = buildRepositoryResult();
+            } else {
+                result = buildResult(absPath);
+            }
+            sharedCache.put(key, result, generation);
+        }
+        return result;
+    }
+
     //--------------------------------------------< CompiledPermissions >---
     /**
      * @see org.apache.jackrabbit.core.security.authorization.CompiledPermissions#close()
@@ -242,50 +292,162 @@ class CompiledPermissionsImpl extends AbstractCompiledPermissions implements Acc
      */
     public boolean canRead(Path path, ItemId itemId) throws RepositoryException {
         ItemId id = (itemId == null) ? session.getHierarchyManager().resolvePath(path) : itemId;
-        // no extra check for existence as method may only be called for existing items.
-        boolean isExistingNode = id.denotesNode();
-        boolean canRead = false;
+        if (sharedCache != null) {
+            SharedPermissionCache.Key key = new SharedPermissionCache.Key(sharedKey, id);
+            Boolean canRead = (Boolean) sharedCache.get(key);
+            if (canRead == null) {
+                long generation = sharedCache.getGeneration();
+                canRead = evaluateRead(path, id);
+                sharedCache.put(key, canRead, generation);
+            }
+            return canRead;
+        }
+        boolean canRead;
         synchronized (monitor) {
             if (readCache.containsKey(id)) {
                 canRead = readCache.get(id);
             } else {
-                ItemManager itemMgr = session.getItemManager();
-                NodeId nodeId = (isExistingNode) ? (NodeId) id : ((PropertyId) id).getParentId();
-                NodeImpl node = (NodeImpl) itemMgr.getItem(nodeId);
-
-                boolean isAcItem = util.isAcItem(node);
-                EntryFilterImpl filter;
-                if (path == null) {
-                    filter = new EntryFilterImpl(principalNames, id, session);
+                canRead = evaluateRead(path, id);
+                readCache.put(id, canRead);
+            }
+        }
+        return canRead;
+    }
+
+    /**
+     * Evaluates the READ permission of the given items. The read permission
+     * of the nodes and properties that neither are access controlled nor
+     * define access control content is the read permission of the subtree of
+     * their parent, which is evaluated once for all siblings.
+     *
+     * @see org.apache.jackrabbit.core.security.authorization.BatchReadPermissions#canRead(ItemId[])
+     */
+    public boolean[] canRead(ItemId[] itemIds) throws RepositoryException {
+        if (sharedCache != null) {
+            return evaluateRead(itemIds);
+        }
+        synchronized (monitor) {
+            return evaluateRead(itemIds);
+        }
+    }
+
+    private boolean[] evaluateRead(ItemId[] itemIds) throws RepositoryException {
+        long generation = (sharedCache == null) ? 0 : sharedCache.getGeneration();
+        boolean[] canRead = new boolean[itemIds.length];
+        Map<NodeId, Integer> subtreePermissions = new HashMap<NodeId, Integer>();
+        for (int i = 0; i < itemIds.length; i++) {
+            ItemId id = itemIds[i];
+            SharedPermissionCache.Key key = null;
+            Boolean read;
+            if (sharedCache != null) {
+                key = new SharedPermissionCache.Key(sharedKey, id);
+                read = (Boolean) sharedCache.get(key);
+            } else {
+                read = readCache.get(id);
+            }
+            if (read == null) {
+                try {
+                    read = evaluateRead(id, subtreePermissions);
+                } catch (ItemNotFoundException e) {
+                    // removed in the meantime
+                    canRead[i] = true;
+                    continue;
+                }
+                if (sharedCache != null) {
+                    sharedCache.put(key, read, generation);
                 } else {
-                    filter = new EntryFilterImpl(principalNames, path, session);
+                    readCache.put(id, read);
                 }
+            }
+            canRead[i] = read;
+        }
+        return canRead;
+    }
 
-                if (isAcItem) {
-                    /* item defines ac content -> regular evaluation */
-                    Result result = buildResult(node, isExistingNode, isAcItem, filter);
-                    canRead = result.grants(Permission.READ);
-                } else {
-                    /*
-                     simplified evaluation focusing on READ permission. this allows
-                     to omit evaluation of parent node permissions that are
-                     required when calculating the complete set of permissions
-                     (see special treatment of remove, create or ac-specific
-                      permissions).
-                     */
-                    for (Entry ace : entryCollector.collectEntries(node, filter)) {
-                        if (ace.getPrivilegeBits().includesRead()) {
-                            canRead = ace.isAllow();
-                            break;
-                        }
-                    }
+    private boolean evaluateRead(ItemId id, Map<NodeId, Integer> subtreePermissions)
+            throws RepositoryException {
+        NodeId parentId;
+        if (id.denotesNode()) {
+            NodeImpl node = (NodeImpl) session.getItemManager().getItem(id);
+            parentId = node.getParentId();
+            if (parentId == null || node.isAccessControllable() || util.isAcItem(node)) {
+                return evaluateRead(null, id);
+            }
+        } else {
+            parentId = ((PropertyId) id).getParentId();
+        }
+        Integer permission = subtreePermissions.get(parentId);
+        if (permission == null) {
+            permission = getSubtreeReadPermission(parentId);
+            subtreePermissions.put(parentId, permission);
+        }
+        if (permission == UNDETERMINED) {
+            return evaluateRead(null, id);
+        }
+        return permission == GRANTED;
+    }
+
+    private boolean evaluateRead(Path path, ItemId id) throws RepositoryException {
+        // no extra check for existence as method may only be called for existing items.
+        boolean isExistingNode = id.denotesNode();
+        boolean canRead = false;
+        ItemManager itemMgr = session.getItemManager();
+        NodeId nodeId = (isExistingNode) ? (NodeId) id : ((PropertyId) id).getParentId();
+        NodeImpl node = (NodeImpl) itemMgr.getItem(nodeId);
+
+        boolean isAcItem = util.isAcItem(node);
+        EntryFilterImpl filter;
+        if (path == null) {
+            filter = new EntryFilterImpl(principalNames, id, session);
+        } else {
+            filter = new EntryFilterImpl(principalNames, path, session);
+        }
+
+        if (isAcItem) {
+            /* item defines ac content -> regular evaluation */
+            Result result = buildResult(node, isExistingNode, isAcItem, filter);
+            canRead = result.grants(Permission.READ);
+        } else {
+            /*
+             simplified evaluation focusing on READ permission. this allows
+             to omit evaluation of parent node permissions that are
+             required when calculating the complete set of permissions
+             (see special treatment of remove, create or ac-specific
+              permissions).
+             */
+            for (Entry ace : entryCollector.collectEntries(node, filter)) {
+                if (ace.getPrivilegeBits().includesRead()) {
+                    canRead = ace.isAllow();
+                    break;
                 }
-                readCache.put(id, canRead);
             }
         }
         return canRead;
     }
 
+    //-----------------------------------------< SubtreeReadPermissions >---
+    /**
+     * @see SubtreeReadPermissions#getSubtreeReadPermission(NodeId)
+     */
+    public int getSubtreeReadPermission(NodeId id) throws RepositoryException {
+        NodeImpl node = (NodeImpl) session.getItemManager().getItem(id);
+        if (util.isAcItem(node)) {
+            return UNDETERMINED;
+        }
+        // same evaluation as canRead, but restricted entries are included
+        // since they may or may not match the items of the subtree.
+        EntryFilterImpl filter = new EntryFilterImpl(principalNames);
+        for (Entry ace : entryCollector.collectEntries(node, filter)) {
+            if (ace.getPrivilegeBits().includesRead()) {
+                if (ace.hasRestrictions()) {
+                    return UNDETERMINED;
+                }
+                return (ace.isAllow()) ? GRANTED : DENIED;
+            }
+        }
+        return DENIED;
+    }
+
     //----------------------------------------< ACLModificationListener >---
     /**
      * @see org.apache.jackrabbit.core.security.authorization.AccessControlListener#acModified(org.apache.jackrabbit.core.security.authorization.AccessControlModifications)
@@ -438,7 +438,7 @@ public class EntryCollector extends AccessControlObserver implements AccessContr
     static class Entries {
 
         private final List<Entry> aces;
-        private NodeId nextId;
+        private volatile NodeId nextId;
 
         Entries(List<Entry> aces, NodeId nextId) {
             this.aces = aces;
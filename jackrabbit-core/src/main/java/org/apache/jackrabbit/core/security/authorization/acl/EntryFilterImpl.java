@@ -52,6 +52,17 @@ class EntryFilterImpl implements EntryFilter {
         };
     }
 
+    /**
+     * Creates a filter that only matches the principal names of the entries
+     * and includes all entries that define restrictions.
+     *
+     * @param principalNames the principal names.
+     */
+    EntryFilterImpl(Collection<String> principalNames) {
+        this.principalNames = principalNames;
+        this.pathProvider = null;
+    }
+
     EntryFilterImpl(Collection<String> principalNames, final Path absPath, final PathResolver pathResolver) {
         this.principalNames = principalNames;
         this.pathProvider = new PathProvider() {
@@ -100,9 +111,10 @@ class EntryFilterImpl implements EntryFilter {
 
     private boolean matches(Entry entry) {
         if (principalNames == null || principalNames.contains(entry.getPrincipalName())) {
-            if (!entry.hasRestrictions()) {
+            if (!entry.hasRestrictions() || pathProvider == null) {
                 // short cut: there is no glob-restriction -> the entry matches
                 // because it is either defined on the node or inherited.
+                // without target path all restricted entries are included.
                 return true;
             } else {
                 // there is a glob-restriction: check if the target path matches
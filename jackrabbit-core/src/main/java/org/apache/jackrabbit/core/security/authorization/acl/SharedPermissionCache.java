@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.authorization.acl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.core.cache.ConcurrentCache;
+import org.apache.jackrabbit.core.security.authorization.AccessControlListener;
+import org.apache.jackrabbit.core.security.authorization.AccessControlModifications;
+
+/**
+ * <code>SharedPermissionCache</code> caches the permissions evaluated by
+ * {@link CompiledPermissionsImpl} across all sessions of a workspace. The
+ * evaluation only depends on the names of the principals and the access
+ * control content, hence sessions with the same set of principals can share
+ * their results. Entries are keyed by the principal names and either the
+ * path or the item id the permissions were evaluated for. The whole cache
+ * is cleared whenever access control content is modified.
+ */
+class SharedPermissionCache implements AccessControlListener {
+
+    /**
+     * The cached permissions.
+     */
+    private final ConcurrentCache<Key, Object> cache;
+
+    /**
+     * Incremented with every access control modification. Used to detect
+     * results that were evaluated before a modification but are put into
+     * the cache after it has been cleared.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize the maximum number of cached entries.
+     */
+    SharedPermissionCache(int maxSize) {
+        cache = new ConcurrentCache<Key, Object>("SharedPermissionCache");
+        cache.setMaxMemorySize(maxSize);
+    }
+
+    /**
+     * Returns the cached value for the given key.
+     *
+     * @param key the cache key.
+     * @return the cached value or <code>null</code>.
+     */
+    Object get(Key key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Returns the current generation of this cache. Callers must retrieve
+     * the generation before evaluating a value and pass it to
+     * {@link #put(Key, Object, long)}.
+     *
+     * @return the current generation.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Caches a value unless access control content has been modified
+     * after the given generation.
+     *
+     * @param key        the cache key.
+     * @param value      the evaluated value.
+     * @param generation the generation when the evaluation started.
+     */
+    void put(Key key, Object value, long generation) {
+        if (generation == this.generation.get()) {
+            cache.put(key, value, 1);
+            if (generation != this.generation.get()) {
+                // modified concurrently: the entry may have missed the clear
+                cache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return the number of cached entries.
+     */
+    long size() {
+        return cache.getElementCount();
+    }
+
+    //----------------------------------------------< AccessControlListener >---
+    /**
+     * @see AccessControlListener#acModified(AccessControlModifications)
+     */
+    public void acModified(AccessControlModifications modifications) {
+        // ignore the details of the modifications and clear the cache.
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    //--------------------------------------------------------< inner class >---
+    /**
+     * An immutable set of principal names with a precomputed hash code.
+     */
+    static final class PrincipalNames {
+
+        private final Set<String> names;
+
+        private final int hashCode;
+
+        PrincipalNames(Collection<String> names) {
+            this.names = Collections.unmodifiableSet(new HashSet<String>(names));
+            this.hashCode = this.names.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof PrincipalNames) {
+                PrincipalNames other = (PrincipalNames) obj;
+                return hashCode == other.hashCode && names.equals(other.names);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The key of a cache entry. The target is either a path, an item id or
+     * <code>null</code> for repository level permissions.
+     */
+    static final class Key {
+
+        private final PrincipalNames principals;
+
+        private final Object target;
+
+        private final int hashCode;
+
+        Key(PrincipalNames principals, Object target) {
+            this.principals = principals;
+            this.target = target;
+            this.hashCode = 31 * principals.hashCode()
+                    + (target == null ? 0 : target.hashCode());
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof Key) {
+                Key other = (Key) obj;
+                return hashCode == other.hashCode
+                        && principals.equals(other.principals)
+                        && (target == null ? other.target == null : target.equals(other.target));
+            }
+            return false;
+        }
+    }
+}
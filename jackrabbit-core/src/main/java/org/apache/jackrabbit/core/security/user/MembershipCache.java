@@ -20,12 +20,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.jcr.AccessDeniedException;
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
-import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
@@ -38,16 +40,25 @@ import org.apache.jackrabbit.core.NodeImpl;
 import org.apache.jackrabbit.core.PropertyImpl;
 import org.apache.jackrabbit.core.SessionImpl;
 import org.apache.jackrabbit.core.SessionListener;
-import org.apache.jackrabbit.core.cache.ConcurrentCache;
-import org.apache.jackrabbit.core.nodetype.NodeTypeImpl;
+import org.apache.jackrabbit.core.observation.EventImpl;
 import org.apache.jackrabbit.core.observation.SynchronousEventListener;
 import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
 import org.apache.jackrabbit.util.Text;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * <code>MembershipCache</code>...
+ * <code>MembershipCache</code> resolves the groups an authorizable is a
+ * declared or inherited member of. It keeps a {@link MembershipIndex} of the
+ * declared members of all groups below the groups path, which is built with
+ * a single traversal on first use and kept up to date by listening to
+ * membership changes. Changes that cannot be attributed to a group discard
+ * the index, which is then rebuilt on the next lookup.
+ * <p>
+ * The listener runs while the change is saved and therefore neither reads
+ * content nor creates sessions. It only records the nodes whose members
+ * changed, which are read on the next lookup.
  */
 public class MembershipCache implements UserConstants, SynchronousEventListener, SessionListener {
 
@@ -56,43 +67,67 @@ public class MembershipCache implements UserConstants, SynchronousEventListener,
      */
     private static final Logger log = LoggerFactory.getLogger(MembershipCache.class);
 
-    /**
-     * The maximum size of this cache
-     */
-    private static final int MAX_CACHE_SIZE =
-            Integer.getInteger("org.apache.jackrabbit.MembershipCache", 5000);
-
     private final SessionImpl systemSession;
     private final String groupsPath;
     private final boolean useMembersNode;
     private final String pMembers;
-    private final ConcurrentCache<String, Collection<String>> cache;
+    private final String pPrimaryType;
+
+    /**
+     * The membership index or <code>null</code> if it has not been built yet
+     * or was discarded.
+     */
+    private final AtomicReference<MembershipIndex> index = new AtomicReference<MembershipIndex>();
+
+    /**
+     * Number of observed event bundles. Used to detect changes while the
+     * index is built.
+     */
+    private final AtomicLong eventCount = new AtomicLong();
+
+    /**
+     * Identifiers of the groups whose <code>rep:members</code> property
+     * changed since the last lookup.
+     */
+    private final Set<String> pendingGroups = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Identifiers of the nodes with changed properties that may be
+     * <code>rep:Members</code> nodes of a group. They are attributed to
+     * their group on the next lookup.
+     */
+    private final Set<String> pendingNodes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The principal name index, which is shared by all user managers of the
+     * workspace like the membership cache.
+     */
+    private final PrincipalNameIndex principalNameIndex;
 
-    MembershipCache(SessionImpl systemSession, String groupsPath, boolean useMembersNode) throws RepositoryException {
+    MembershipCache(SessionImpl systemSession, String usersPath, String groupsPath, boolean useMembersNode) throws RepositoryException {
         this.systemSession = systemSession;
         this.groupsPath = (groupsPath == null) ? UserConstants.GROUPS_PATH : groupsPath;
         this.useMembersNode = useMembersNode;
+        principalNameIndex = new PrincipalNameIndex(systemSession,
+                (usersPath == null) ? UserConstants.USERS_PATH : usersPath, this.groupsPath);
 
         pMembers = systemSession.getJCRName(UserManagerImpl.P_MEMBERS);
-        cache = new ConcurrentCache<String, Collection<String>>("MembershipCache", 16);
-        cache.setMaxMemorySize(MAX_CACHE_SIZE);
+        pPrimaryType = systemSession.getJCRName(NameConstants.JCR_PRIMARYTYPE);
 
-        String[] ntNames = new String[] {
-                systemSession.getJCRName(UserConstants.NT_REP_GROUP),
-                systemSession.getJCRName(UserConstants.NT_REP_MEMBERS)
-        };
         // register event listener to be informed about membership changes.
+        // removed nodes are observed as well, because removing a group or
+        // a rep:Members node does not create events for their properties.
         systemSession.getWorkspace().getObservationManager().addEventListener(this,
-                Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED,
+                Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED | Event.NODE_REMOVED,
                 groupsPath,
                 true,
                 null,
-                ntNames,
+                null,
                 false);
         // make sure the membership cache is informed if the system session is
         // logged out in order to stop listening to events.
         systemSession.addListener(this);
-        log.debug("Membership cache initialized. Max Size = {}", MAX_CACHE_SIZE);
+        log.debug("Membership cache initialized.");
     }
 
 
@@ -101,45 +136,53 @@ public class MembershipCache implements UserConstants, SynchronousEventListener,
      * @see javax.jcr.observation.EventListener#onEvent(javax.jcr.observation.EventIterator)
      */
     public void onEvent(EventIterator eventIterator) {
-        // evaluate if the membership cache needs to be cleared;
-        boolean clear = false;
-        while (eventIterator.hasNext() && !clear) {
-            Event ev = eventIterator.nextEvent();
-            try {
-                if (pMembers.equals(Text.getName(ev.getPath()))) {
-                    // simple case: a rep:members property that is affected
-                    clear = true;
-                } else if (useMembersNode) {
-                    // test if it affects a property defined by rep:Members node type.
-                    int type = ev.getType();
-                    if (type == Event.PROPERTY_ADDED || type == Event.PROPERTY_CHANGED) {
-                        Property p = systemSession.getProperty(ev.getPath());
-                        Name declNtName = ((NodeTypeImpl) p.getDefinition().getDeclaringNodeType()).getQName();
-                        clear = NT_REP_MEMBERS.equals(declNtName);
-                    } else {
-                        // PROPERTY_REMOVED
-                        // test if the primary node type of the parent node is rep:Members
-                        // this could potentially by some other property as well as the
-                        // rep:Members node are not protected and could changed by
-                        // adding a mixin type.
-                        // ignoring this and simply clear the cache
-                        String parentId = ev.getIdentifier();
-                        Node n = systemSession.getNodeByIdentifier(parentId);
-                        Name ntName = ((NodeTypeImpl) n.getPrimaryNodeType()).getQName();
-                        clear = (UserConstants.NT_REP_MEMBERS.equals(ntName));
+        eventCount.incrementAndGet();
+        MembershipIndex idx = index.get();
+        if (idx == null) {
+            // built from the current content on the next lookup
+            return;
+        }
+        try {
+            while (eventIterator.hasNext()) {
+                Event ev = eventIterator.nextEvent();
+                if (!(ev instanceof EventImpl)) {
+                    throw new RepositoryException("Unexpected event: " + ev);
+                }
+                EventImpl event = (EventImpl) ev;
+                // primary type of the parent of the property or removed node
+                Name ntName = event.getPrimaryNodeTypeName();
+                String parentId = event.getParentId().toString();
+                if (ev.getType() == Event.NODE_REMOVED) {
+                    if (NT_REP_GROUP.equals(ntName)) {
+                        // a rep:Members node of a group
+                        pendingGroups.add(parentId);
+                    } else if (NT_REP_MEMBERS.equals(ntName)) {
+                        pendingNodes.add(parentId);
+                    }
+                    // the removed node may be a group itself
+                    pendingGroups.add(ev.getIdentifier());
+                } else {
+                    String name = Text.getName(ev.getPath());
+                    if (pMembers.equals(name)) {
+                        // simple case: a rep:members property of a group
+                        pendingGroups.add(parentId);
+                    } else if (NT_REP_GROUP.equals(ntName)) {
+                        if (ev.getType() == Event.PROPERTY_ADDED && pPrimaryType.equals(name)) {
+                            // a new group, which may reuse the identifier
+                            // of a removed group
+                            pendingGroups.add(parentId);
+                        }
+                    } else if (NT_REP_MEMBERS.equals(ntName)) {
+                        pendingNodes.add(parentId);
                     }
                 }
-            } catch (RepositoryException e) {
-                log.warn(e.getMessage());
-                // exception while processing the event -> clear the cache to
-                // be sure it isn't outdated.
-                clear = true;
             }
-        }
-
-        if (clear) {
-            cache.clear();
-            log.debug("Membership cache cleared because of observation event.");
+        } catch (RepositoryException e) {
+            log.warn(e.getMessage());
+            // exception while processing the event -> discard the
+            // index to be sure it isn't outdated.
+            index.compareAndSet(idx, null);
+            log.debug("Membership index discarded because of observation event.");
         }
     }
 
@@ -172,7 +215,7 @@ public class MembershipCache implements UserConstants, SynchronousEventListener,
      * @throws RepositoryException If an error occurs.
      */
     Collection<String> getDeclaredMemberOf(String authorizableNodeIdentifier) throws RepositoryException {
-        return declaredMemberOf(authorizableNodeIdentifier);
+        return getIndex().getDeclaredMemberOf(authorizableNodeIdentifier);
     }
 
     /**
@@ -183,24 +226,30 @@ public class MembershipCache implements UserConstants, SynchronousEventListener,
      * @throws RepositoryException If an error occurs.
      */
     Collection<String> getMemberOf(String authorizableNodeIdentifier) throws RepositoryException {
-        Set<String> groupNodeIds = new HashSet<String>();
-        memberOf(authorizableNodeIdentifier, groupNodeIds);
-        return Collections.unmodifiableCollection(groupNodeIds);
+        return getIndex().getMemberOf(authorizableNodeIdentifier);
     }
 
     /**
-     * Returns the size of the membership cache
+     * @return The principal name index of the workspace.
+     */
+    PrincipalNameIndex getPrincipalNameIndex() {
+        return principalNameIndex;
+    }
+
+    /**
+     * Returns the number of members in the membership index
      * @return the size
      */
     int getSize() {
-        return (int) cache.getElementCount();
+        MembershipIndex idx = index.get();
+        return idx == null ? 0 : idx.size();
     }
 
     /**
      * For testing purposes only.
      */
     void clear() {
-        cache.clear();
+        index.set(null);
     }
 
     /**
@@ -262,62 +311,216 @@ public class MembershipCache implements UserConstants, SynchronousEventListener,
 
     //------------------------------------------------------------< private >---
     /**
-     * Collects the groups where the given authorizable is a declared member of. If the information is not cached, it
-     * is collected from the repository.
+     * Returns the membership index and builds it if necessary.
      *
-     * @param authorizableNodeIdentifier Identifier of the authorizable node
-     * @return the collection of groups where the authorizable is a declared member of
+     * @return the membership index.
      * @throws RepositoryException if an error occurs
      */
-    private Collection<String> declaredMemberOf(String authorizableNodeIdentifier) throws RepositoryException {
-        final long t0 = System.nanoTime();
+    private MembershipIndex getIndex() throws RepositoryException {
+        MembershipIndex idx = index.get();
+        if (idx != null && (!pendingGroups.isEmpty() || !pendingNodes.isEmpty())) {
+            synchronized (this) {
+                if (!readPending(idx)) {
+                    index.compareAndSet(idx, null);
+                    log.debug("Membership index discarded because of membership changes.");
+                }
+                idx = index.get();
+            }
+        }
+        if (idx == null) {
+            synchronized (this) {
+                idx = index.get();
+                if (idx == null) {
+                    long count = eventCount.get();
+                    // the index is built from the current content
+                    pendingGroups.clear();
+                    pendingNodes.clear();
+                    idx = buildIndex();
+                    index.set(idx);
+                    if (count != eventCount.get()) {
+                        // membership may have changed while the index was
+                        // built. the index is still good enough for this
+                        // lookup, but must be built again for the next one.
+                        index.compareAndSet(idx, null);
+                    }
+                }
+            }
+        }
+        return idx;
+    }
 
-        Collection<String> groupNodeIds = cache.get(authorizableNodeIdentifier);
+    /**
+     * Builds the membership index by traversing the groups tree.
+     *
+     * @return the membership index.
+     * @throws RepositoryException if an error occurs
+     */
+    private MembershipIndex buildIndex() throws RepositoryException {
+        final long t0 = System.nanoTime();
+        MembershipIndex idx = new MembershipIndex(useMembersNode);
+        // retrieve a new session with system-subject in order to avoid
+        // concurrent read operations using the system session of this workspace.
+        Session session = getSession();
+        try {
+            if (session.nodeExists(groupsPath)) {
+                indexGroups((NodeImpl) session.getNode(groupsPath), idx);
+            } // else: no groups exist -> nothing to do.
+        } finally {
+            // release session if it isn't the original system session
+            if (session != systemSession) {
+                session.logout();
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Membership index with {} members built in {}us", idx.size(), (System.nanoTime() - t0) / 1000);
+        }
+        return idx;
+    }
 
-        boolean wasCached = true;
-        if (groupNodeIds == null) {
-            wasCached = false;
-            // retrieve a new session with system-subject in order to avoid
-            // concurrent read operations using the system session of this workspace.
-            Session session = getSession();
-            try {
-                groupNodeIds = collectDeclaredMembership(authorizableNodeIdentifier, session);
-                cache.put(authorizableNodeIdentifier, Collections.unmodifiableCollection(groupNodeIds), 1);
+    /**
+     * Adds the declared members of all groups in the given tree to the index.
+     *
+     * @param node the node to traverse
+     * @param idx the index to update
+     * @throws RepositoryException if an error occurs
+     */
+    private void indexGroups(NodeImpl node, MembershipIndex idx) throws RepositoryException {
+        if (node.isNodeType(NT_REP_GROUP)) {
+            Set<String> pIds = new HashSet<String>();
+            Set<String> nIds = new HashSet<String>();
+            collectMembers(node, pIds, nIds);
+            idx.setMembers(node.getIdentifier(), pIds, nIds);
+        } else {
+            NodeIterator iter = node.getNodes();
+            while (iter.hasNext()) {
+                indexGroups((NodeImpl) iter.nextNode(), idx);
             }
-            finally {
-                // release session if it isn't the original system session
-                if (session != systemSession) {
-                    session.logout();
+        }
+    }
+
+    /**
+     * Reads the members of the groups that changed since the last lookup
+     * and updates the index. A node that is added again while it is read
+     * stays pending, so the latest change is read on the next lookup.
+     *
+     * @param idx the index to update
+     * @return <code>false</code> if a change cannot be attributed to a group
+     * and the index must be rebuilt.
+     */
+    private boolean readPending(MembershipIndex idx) {
+        Set<String> groupIds = new HashSet<String>();
+        for (String groupId : pendingGroups) {
+            pendingGroups.remove(groupId);
+            groupIds.add(groupId);
+        }
+        SessionImpl session = getSession();
+        try {
+            for (String nodeId : pendingNodes) {
+                pendingNodes.remove(nodeId);
+                NodeImpl n = (NodeImpl) session.getNodeByIdentifier(nodeId);
+                if (n.isNodeType(NT_REP_MEMBERS)) {
+                    while (n.isNodeType(NT_REP_MEMBERS)) {
+                        n = (NodeImpl) n.getParent();
+                    }
+                    groupIds.add(n.getIdentifier());
                 }
             }
+            for (String groupId : groupIds) {
+                updateIndex(idx, groupId, session);
+            }
+        } catch (ItemNotFoundException e) {
+            // a property of a removed node that cannot be attributed
+            // to a group anymore -> rebuild the index.
+            return false;
+        } catch (RepositoryException e) {
+            log.warn(e.getMessage());
+            return false;
+        } finally {
+            // release session if it isn't the original system session
+            if (session != systemSession) {
+                session.logout();
+            }
         }
+        log.debug("Membership index updated for {} groups.", groupIds.size());
+        return true;
+    }
 
-        if (log.isDebugEnabled()) {
-            final long t1 = System.nanoTime();
-            log.debug("Membership cache {} {} declared memberships of {} in {}us. cache size = {}", new Object[]{
-                    wasCached ? "returns" : "collected",
-                    groupNodeIds.size(),
-                    authorizableNodeIdentifier,
-                    (t1-t0) / 1000,
-                    cache.getElementCount()
-            });
+    /**
+     * Reads the declared members of a group and updates the index.
+     *
+     * @param idx the index to update
+     * @param groupNodeIdentifier Identifier of the group node
+     * @param session the session to read from
+     * @throws RepositoryException if an error occurs
+     */
+    private void updateIndex(MembershipIndex idx, String groupNodeIdentifier, Session session)
+            throws RepositoryException {
+        NodeImpl node;
+        try {
+            node = (NodeImpl) session.getNodeByIdentifier(groupNodeIdentifier);
+        } catch (ItemNotFoundException e) {
+            idx.removeGroup(groupNodeIdentifier);
+            return;
+        }
+        if (node.isNodeType(NT_REP_GROUP)) {
+            Set<String> pIds = new HashSet<String>();
+            Set<String> nIds = new HashSet<String>();
+            collectMembers(node, pIds, nIds);
+            idx.setMembers(groupNodeIdentifier, pIds, nIds);
+        } else {
+            idx.removeGroup(groupNodeIdentifier);
         }
-        return groupNodeIds;
     }
 
     /**
-     * Collects the groups where the given authorizable is a member of by recursively fetching the declared memberships
-     * via {@link #declaredMemberOf(String)} (cached).
+     * Collects the declared members of a group.
      *
-     * @param authorizableNodeIdentifier Identifier of the authorizable node
-     * @param groupNodeIds Map to receive the node ids of the groups
+     * @param group the group node
+     * @param pIds output set of member node ids in the members property
+     * @param nIds output set of member node ids in the members node tree
      * @throws RepositoryException if an error occurs
      */
-    private void memberOf(String authorizableNodeIdentifier, Collection<String> groupNodeIds) throws RepositoryException {
-        Collection<String> declared = declaredMemberOf(authorizableNodeIdentifier);
-        for (String identifier : declared) {
-            if (groupNodeIds.add(identifier)) {
-                memberOf(identifier, groupNodeIds);
+    private static void collectMembers(NodeImpl group, Set<String> pIds, Set<String> nIds)
+            throws RepositoryException {
+        if (group.hasProperty(P_MEMBERS)) {
+            for (Value value : group.getProperty(P_MEMBERS).getValues()) {
+                pIds.add(value.getString());
+            }
+        }
+        NodeIterator iter = group.getNodes();
+        while (iter.hasNext()) {
+            NodeImpl child = (NodeImpl) iter.nextNode();
+            if (child.isNodeType(NT_REP_MEMBERS)) {
+                collectNodeMembers(child, nIds);
+            }
+        }
+    }
+
+    /**
+     * Collects the members in a <code>rep:Members</code> tree.
+     *
+     * @param node a <code>rep:Members</code> node
+     * @param nIds output set of member node ids
+     * @throws RepositoryException if an error occurs
+     */
+    private static void collectNodeMembers(NodeImpl node, Set<String> nIds) throws RepositoryException {
+        PropertyIterator pIter = node.getProperties();
+        while (pIter.hasNext()) {
+            PropertyImpl p = (PropertyImpl) pIter.nextProperty();
+            if (p.getType() == PropertyType.WEAKREFERENCE) {
+                Value[] values = p.isMultiple()
+                        ? p.getValues()
+                        : new Value[]{p.getValue()};
+                for (Value v : values) {
+                    nIds.add(v.getString());
+                }
+            }
+        }
+        NodeIterator iter = node.getNodes();
+        while (iter.hasNext()) {
+            NodeImpl child = (NodeImpl) iter.nextNode();
+            if (child.isNodeType(NT_REP_MEMBERS)) {
+                collectNodeMembers(child, nIds);
             }
         }
     }
@@ -395,7 +598,7 @@ public class MembershipCache implements UserConstants, SynchronousEventListener,
         }
 
         // Based on the user's setting return either of the found membership information
-        return select(pIds, nIds);
+        return select(pIds, nIds, useMembersNode);
     }
 
     /**
@@ -421,7 +624,7 @@ public class MembershipCache implements UserConstants, SynchronousEventListener,
         } // else: no groups exist -> nothing to do.
 
         // Based on the user's setting return either of the found membership information
-        return select(pIds, nIds);
+        return select(pIds, nIds, useMembersNode);
     }
 
     /**
@@ -505,9 +708,10 @@ public class MembershipCache implements UserConstants, SynchronousEventListener,
      *
      * @param pIds the set of group node ids retrieved through membership properties
      * @param nIds the set of group node ids retrieved through membership nodes
+     * @param useMembersNode whether membership nodes take precedence
      * @return the selected set.
      */
-    private Set<String> select(Set<String> pIds, Set<String> nIds) {
+    static Set<String> select(Set<String> pIds, Set<String> nIds, boolean useMembersNode) {
         Set<String> result;
         if (useMembersNode) {
             if (!nIds.isEmpty() || pIds.isEmpty()) {
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.user;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <code>MembershipIndex</code> is a reverse index of group membership. It
+ * maps the node identifier of every member to the node identifiers of the
+ * groups the member is declared in, either through the
+ * <code>rep:members</code> property or through a <code>rep:Members</code>
+ * node tree. The transitive membership of an authorizable is computed from
+ * the declared memberships on demand and kept until one of the groups it
+ * depends on changes its members.
+ * <p>
+ * Lookups are O(number of groups) of the authorizable, independent of the
+ * number of members of these groups.
+ */
+final class MembershipIndex {
+
+    /**
+     * Whether node based membership takes precedence over property based
+     * membership, see {@link MembershipCache#select(Set, Set, boolean)}.
+     */
+    private final boolean useMembersNode;
+
+    /**
+     * Group id to the ids of the members in its <code>rep:members</code>
+     * property.
+     */
+    private final Map<String, Set<String>> propertyMembers = new HashMap<String, Set<String>>();
+
+    /**
+     * Group id to the ids of the members in its <code>rep:Members</code> tree.
+     */
+    private final Map<String, Set<String>> nodeMembers = new HashMap<String, Set<String>>();
+
+    /**
+     * Member id to the ids of the groups whose <code>rep:members</code>
+     * property contains the member.
+     */
+    private final Map<String, Set<String>> propertyGroups = new HashMap<String, Set<String>>();
+
+    /**
+     * Member id to the ids of the groups whose <code>rep:Members</code> tree
+     * contains the member.
+     */
+    private final Map<String, Set<String>> nodeGroups = new HashMap<String, Set<String>>();
+
+    /**
+     * Member id to the ids of all groups it is a direct or indirect member of.
+     */
+    private final ConcurrentMap<String, Collection<String>> memberOf =
+            new ConcurrentHashMap<String, Collection<String>>();
+
+    /**
+     * Lookups hold the read lock, modifications the write lock. Transitive
+     * memberships are computed and cached while holding the read lock, hence
+     * a modification can never be overwritten with an outdated result.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Creates an empty index.
+     *
+     * @param useMembersNode whether node based membership takes precedence.
+     */
+    MembershipIndex(boolean useMembersNode) {
+        this.useMembersNode = useMembersNode;
+    }
+
+    /**
+     * Sets the declared members of a group.
+     *
+     * @param groupId         the node identifier of the group.
+     * @param propertyMembers the members in the <code>rep:members</code>
+     *                        property of the group.
+     * @param nodeMembers     the members in the <code>rep:Members</code> tree
+     *                        of the group.
+     */
+    void setMembers(String groupId,
+                    Set<String> propertyMembers,
+                    Set<String> nodeMembers) {
+        lock.writeLock().lock();
+        try {
+            Set<String> changed = new HashSet<String>();
+            update(groupId, propertyMembers, this.propertyMembers, propertyGroups, changed);
+            update(groupId, nodeMembers, this.nodeMembers, nodeGroups, changed);
+            invalidate(changed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a group from the index.
+     *
+     * @param groupId the node identifier of the group.
+     */
+    void removeGroup(String groupId) {
+        Set<String> empty = Collections.emptySet();
+        setMembers(groupId, empty, empty);
+    }
+
+    /**
+     * Returns the groups the given authorizable is declared member of.
+     *
+     * @param memberId the node identifier of an authorizable.
+     * @return the node identifiers of the groups.
+     */
+    Collection<String> getDeclaredMemberOf(String memberId) {
+        lock.readLock().lock();
+        try {
+            return Collections.unmodifiableCollection(
+                    new HashSet<String>(declaredMemberOf(memberId)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the groups the given authorizable is a direct or indirect
+     * member of.
+     *
+     * @param memberId the node identifier of an authorizable.
+     * @return the node identifiers of the groups.
+     */
+    Collection<String> getMemberOf(String memberId) {
+        lock.readLock().lock();
+        try {
+            Collection<String> groupIds = memberOf.get(memberId);
+            if (groupIds == null) {
+                Set<String> result = new HashSet<String>();
+                collectMemberOf(memberId, result);
+                groupIds = Collections.unmodifiableCollection(result);
+                memberOf.put(memberId, groupIds);
+            }
+            return groupIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of indexed members.
+     *
+     * @return the number of members.
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            Set<String> members = new HashSet<String>(propertyGroups.keySet());
+            members.addAll(nodeGroups.keySet());
+            return members.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //------------------------------------------------------------< private >---
+
+    /**
+     * Returns the declared groups of a member. The caller must hold a lock.
+     *
+     * @param memberId the node identifier of an authorizable.
+     * @return the node identifiers of the groups.
+     */
+    private Set<String> declaredMemberOf(String memberId) {
+        Set<String> pIds = propertyGroups.get(memberId);
+        Set<String> nIds = nodeGroups.get(memberId);
+        Set<String> empty = Collections.emptySet();
+        return MembershipCache.select(
+                pIds == null ? empty : pIds,
+                nIds == null ? empty : nIds,
+                useMembersNode);
+    }
+
+    private void collectMemberOf(String memberId, Set<String> groupIds) {
+        Collection<String> cached = memberOf.get(memberId);
+        if (cached != null) {
+            groupIds.addAll(cached);
+            return;
+        }
+        for (String groupId : declaredMemberOf(memberId)) {
+            if (groupIds.add(groupId)) {
+                collectMemberOf(groupId, groupIds);
+            }
+        }
+    }
+
+    /**
+     * Replaces the members of a group in one of the forward maps and updates
+     * the corresponding reverse map.
+     *
+     * @param groupId the node identifier of the group.
+     * @param members the new members of the group.
+     * @param forward group to members map.
+     * @param reverse member to groups map.
+     * @param changed collects the members that were added or removed.
+     */
+    private static void update(String groupId,
+                               Set<String> members,
+                               Map<String, Set<String>> forward,
+                               Map<String, Set<String>> reverse,
+                               Set<String> changed) {
+        Set<String> previous = forward.remove(groupId);
+        if (previous == null) {
+            previous = Collections.emptySet();
+        }
+        for (String memberId : previous) {
+            if (!members.contains(memberId)) {
+                Set<String> groupIds = reverse.get(memberId);
+                if (groupIds != null) {
+                    groupIds.remove(groupId);
+                    if (groupIds.isEmpty()) {
+                        reverse.remove(memberId);
+                    }
+                }
+                changed.add(memberId);
+            }
+        }
+        for (String memberId : members) {
+            if (!previous.contains(memberId)) {
+                Set<String> groupIds = reverse.get(memberId);
+                if (groupIds == null) {
+                    groupIds = new HashSet<String>();
+                    reverse.put(memberId, groupIds);
+                }
+                groupIds.add(groupId);
+                changed.add(memberId);
+            }
+        }
+        if (!members.isEmpty()) {
+            forward.put(groupId, new HashSet<String>(members));
+        }
+    }
+
+    /**
+     * Removes the transitive memberships that depend on the declared
+     * memberships of the given members, i.e. those of the members themselves
+     * and of all authorizables that are direct or indirect members of them.
+     *
+     * @param changed the members whose declared memberships changed.
+     */
+    private void invalidate(Set<String> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        Iterator<Map.Entry<String, Collection<String>>> it = memberOf.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Collection<String>> entry = it.next();
+            if (changed.contains(entry.getKey())
+                    || !Collections.disjoint(changed, entry.getValue())) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.user;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+
+import org.apache.jackrabbit.core.HierarchyManager;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.SessionListener;
+import org.apache.jackrabbit.core.WorkspaceImpl;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.nodetype.EffectiveNodeType;
+import org.apache.jackrabbit.core.nodetype.NodeTypeRegistry;
+import org.apache.jackrabbit.core.observation.SynchronousEventListener;
+import org.apache.jackrabbit.core.state.ChildNodeEntry;
+import org.apache.jackrabbit.core.state.ItemStateException;
+import org.apache.jackrabbit.core.state.ItemStateManager;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.jackrabbit.core.state.PropertyState;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.jackrabbit.util.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>PrincipalNameIndex</code> maps the principal names of all users and
+ * groups to the identifiers of their nodes, so that an authorizable can be
+ * looked up by its principal name without a query. The persisted
+ * <code>rep:principalName</code> properties are the source of the index: it
+ * is built with a single traversal of the authorizable tree on first use and
+ * kept up to date by listening to changes of these properties and to
+ * removed nodes, including external changes of other cluster nodes.
+ * <p>
+ * Changed properties are not read by the listener, which runs while the
+ * change is saved, but on the next lookup. Lookups read the persisted item
+ * states of the workspace, which may be read concurrently, and neither use
+ * the shared system session nor create sessions: the index is used while the
+ * security manager creates the system users and groups, before sessions can
+ * be created.
+ */
+public class PrincipalNameIndex implements UserConstants, SynchronousEventListener, SessionListener {
+
+    /**
+     * logger instance
+     */
+    private static final Logger log = LoggerFactory.getLogger(PrincipalNameIndex.class);
+
+    private final SessionImpl systemSession;
+
+    /**
+     * The item state manager of the workspace.
+     */
+    private final ItemStateManager stateMgr;
+
+    /**
+     * The hierarchy manager of the workspace.
+     */
+    private final HierarchyManager hierMgr;
+
+    private final NodeTypeRegistry ntReg;
+
+    private final String[] searchRoots;
+    private final String pPrincipalName;
+
+    /**
+     * Principal name to node identifier map or <code>null</code> if it has
+     * not been built yet or was discarded.
+     */
+    private final AtomicReference<Index> index = new AtomicReference<Index>();
+
+    /**
+     * Number of observed event bundles. Used to detect changes while the
+     * index is built.
+     */
+    private final AtomicLong eventCount = new AtomicLong();
+
+    PrincipalNameIndex(SessionImpl systemSession, String usersPath, String groupsPath) throws RepositoryException {
+        this.systemSession = systemSession;
+        WorkspaceImpl wsp = (WorkspaceImpl) systemSession.getWorkspace();
+        stateMgr = wsp.getItemStateManager();
+        hierMgr = wsp.getHierarchyManager();
+        ntReg = systemSession.getNodeTypeManager().getNodeTypeRegistry();
+        if (Text.isDescendantOrEqual(usersPath, groupsPath)) {
+            searchRoots = new String[] {usersPath};
+        } else if (Text.isDescendantOrEqual(groupsPath, usersPath)) {
+            searchRoots = new String[] {groupsPath};
+        } else {
+            searchRoots = new String[] {usersPath, groupsPath};
+        }
+        pPrincipalName = systemSession.getJCRName(P_PRINCIPAL_NAME);
+
+        String targetPath = groupsPath;
+        while (!Text.isDescendantOrEqual(targetPath, usersPath)) {
+            targetPath = Text.getRelativeParent(targetPath, 1);
+        }
+        // removed nodes are observed as well, because removing an
+        // authorizable or a folder does not create events for the
+        // properties of the removed nodes.
+        String[] ntNames = new String[] {
+                systemSession.getJCRName(NT_REP_AUTHORIZABLE),
+                systemSession.getJCRName(NT_REP_AUTHORIZABLE_FOLDER)
+        };
+        systemSession.getWorkspace().getObservationManager().addEventListener(this,
+                Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED | Event.NODE_REMOVED,
+                targetPath,
+                true,
+                null,
+                ntNames,
+                false);
+        systemSession.addListener(this);
+    }
+
+    /**
+     * Returns the identifier of the authorizable node with the given
+     * principal name as persisted in the workspace.
+     *
+     * @param principalName a principal name.
+     * @return the node identifier or <code>null</code> if there is no such
+     * authorizable.
+     * @throws RepositoryException If the index cannot be built.
+     */
+    String getNodeIdentifier(String principalName) throws RepositoryException {
+        return getIndex().ids.get(principalName);
+    }
+
+    /**
+     * For testing purposes only.
+     */
+    void clear() {
+        index.set(null);
+    }
+
+    //------------------------------------------------------< EventListener >---
+    /**
+     * @see javax.jcr.observation.EventListener#onEvent(javax.jcr.observation.EventIterator)
+     */
+    public void onEvent(EventIterator events) {
+        eventCount.incrementAndGet();
+        Index idx = index.get();
+        if (idx == null) {
+            // built from the current content on the next lookup
+            return;
+        }
+        try {
+            while (events.hasNext()) {
+                Event ev = events.nextEvent();
+                if (ev.getType() == Event.NODE_REMOVED) {
+                    // the authorizables below the removed node are read on
+                    // the next lookup, they may have been moved
+                    idx.purge(ev.getPath());
+                    continue;
+                }
+                if (!pPrincipalName.equals(Text.getName(ev.getPath()))) {
+                    continue;
+                }
+                String nodeId = ev.getIdentifier();
+                if (ev.getType() == Event.PROPERTY_REMOVED) {
+                    idx.remove(nodeId);
+                } else {
+                    // read on the next lookup
+                    idx.pending.add(nodeId);
+                }
+            }
+        } catch (RepositoryException e) {
+            log.warn("Principal name index discarded: {}", e.getMessage());
+            index.compareAndSet(idx, null);
+        }
+    }
+
+    //----------------------------------------------------< SessionListener >---
+    /**
+     * @see SessionListener#loggingOut(org.apache.jackrabbit.core.SessionImpl)
+     */
+    public void loggingOut(SessionImpl session) {
+        try {
+            systemSession.getWorkspace().getObservationManager().removeEventListener(this);
+        } catch (RepositoryException e) {
+            log.error("Unexpected error: Failed to stop event listening of PrincipalNameIndex.", e);
+        }
+    }
+
+    /**
+     * @see SessionListener#loggedOut(org.apache.jackrabbit.core.SessionImpl)
+     */
+    public void loggedOut(SessionImpl session) {
+        // nothing to do
+    }
+
+    //------------------------------------------------------------< private >---
+    /**
+     * Returns the index and builds it if necessary.
+     *
+     * @return the index.
+     * @throws RepositoryException If an error occurs.
+     */
+    private Index getIndex() throws RepositoryException {
+        Index idx = index.get();
+        if (idx == null) {
+            synchronized (this) {
+                idx = index.get();
+                if (idx == null) {
+                    long count = eventCount.get();
+                    idx = buildIndex();
+                    index.set(idx);
+                    if (count != eventCount.get()) {
+                        // principal names may have changed while the index
+                        // was built -> build again for the next lookup.
+                        index.compareAndSet(idx, null);
+                    }
+                }
+            }
+        }
+        if (!idx.pending.isEmpty()) {
+            synchronized (this) {
+                readPending(idx);
+            }
+        }
+        return idx;
+    }
+
+    private Index buildIndex() throws RepositoryException {
+        final long t0 = System.nanoTime();
+        Index idx = new Index();
+        try {
+            for (String root : searchRoots) {
+                Path path = systemSession.getQPath(root).getNormalizedPath();
+                NodeId id = hierMgr.resolveNodePath(path);
+                if (id != null) {
+                    collect((NodeState) stateMgr.getItemState(id), path, idx);
+                }
+            }
+        } catch (ItemStateException e) {
+            throw new RepositoryException("Unable to build the principal name index.", e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Principal name index with {} authorizables built in {}us", idx.ids.size(), (System.nanoTime() - t0) / 1000);
+        }
+        return idx;
+    }
+
+    private void collect(NodeState state, Path path, Index idx) throws RepositoryException, ItemStateException {
+        EffectiveNodeType ent = ntReg.getEffectiveNodeType(state.getNodeTypeName());
+        if (ent.includesNodeType(NT_REP_AUTHORIZABLE)) {
+            String principalName = getPrincipalName(state);
+            if (principalName != null) {
+                idx.put(principalName, state.getNodeId().toString(), systemSession.getJCRPath(path));
+            }
+        } else if (ent.includesNodeType(NT_REP_AUTHORIZABLE_FOLDER)) {
+            for (ChildNodeEntry entry : state.getChildNodeEntries()) {
+                NodeState child = (NodeState) stateMgr.getItemState(entry.getId());
+                Path childPath = PathFactoryImpl.getInstance().create(path, entry.getName(), entry.getIndex(), true);
+                collect(child, childPath, idx);
+            }
+        }
+    }
+
+    /**
+     * Reads the principal names of the authorizables that changed since the
+     * last lookup. An identifier that is added again while it is read stays
+     * pending, so the latest change is read on the next lookup.
+     *
+     * @param idx the index.
+     * @throws RepositoryException If an error occurs, in which case the
+     * index is discarded.
+     */
+    private void readPending(Index idx) throws RepositoryException {
+        try {
+            for (String nodeId : idx.pending) {
+                idx.pending.remove(nodeId);
+                NodeId id = NodeId.valueOf(nodeId);
+                String principalName = null;
+                String path = null;
+                if (stateMgr.hasItemState(id)) {
+                    principalName = getPrincipalName((NodeState) stateMgr.getItemState(id));
+                    path = systemSession.getJCRPath(hierMgr.getPath(id));
+                }
+                if (principalName != null && isIndexed(path)) {
+                    idx.put(principalName, nodeId, path);
+                } else {
+                    // removed or moved out of the authorizable trees
+                    idx.remove(nodeId);
+                }
+            }
+        } catch (ItemStateException e) {
+            index.compareAndSet(idx, null);
+            throw new RepositoryException("Unable to update the principal name index.", e);
+        } catch (RepositoryException e) {
+            index.compareAndSet(idx, null);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the principal name of the given node.
+     *
+     * @param state the state of an authorizable node.
+     * @return the principal name or <code>null</code> if the node has none.
+     * @throws RepositoryException If an error occurs.
+     * @throws ItemStateException If the property cannot be read.
+     */
+    private String getPrincipalName(NodeState state) throws RepositoryException, ItemStateException {
+        if (!state.hasPropertyName(P_PRINCIPAL_NAME)) {
+            return null;
+        }
+        PropertyId id = new PropertyId(state.getNodeId(), P_PRINCIPAL_NAME);
+        PropertyState ps = (PropertyState) stateMgr.getItemState(id);
+        InternalValue[] values = ps.getValues();
+        return (values.length == 0) ? null : values[0].getString();
+    }
+
+    private boolean isIndexed(String path) {
+        for (String root : searchRoots) {
+            if (Text.isDescendant(root, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Principal name to node identifier map with the reverse mappings that
+     * are needed to process removed principal names and removed nodes.
+     */
+    private static final class Index {
+
+        private final ConcurrentMap<String, String> ids = new ConcurrentHashMap<String, String>();
+
+        private final ConcurrentMap<String, String> names = new ConcurrentHashMap<String, String>();
+
+        /**
+         * Node identifier to node path map.
+         */
+        private final ConcurrentMap<String, String> paths = new ConcurrentHashMap<String, String>();
+
+        /**
+         * Identifiers of the authorizables whose principal name changed
+         * since the last lookup.
+         */
+        private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        private synchronized void put(String principalName, String nodeId, String path) {
+            paths.put(nodeId, path);
+            String previous = names.put(nodeId, principalName);
+            if (previous != null && !previous.equals(principalName)) {
+                ids.remove(previous, nodeId);
+            }
+            ids.put(principalName, nodeId);
+        }
+
+        private synchronized void remove(String nodeId) {
+            pending.remove(nodeId);
+            paths.remove(nodeId);
+            String name = names.remove(nodeId);
+            if (name != null) {
+                ids.remove(name, nodeId);
+            }
+        }
+
+        /**
+         * Marks the authorizables at or below the given path as pending.
+         *
+         * @param path the path of a removed node.
+         */
+        private void purge(String path) {
+            for (Map.Entry<String, String> entry : paths.entrySet()) {
+                if (Text.isDescendantOrEqual(path, entry.getValue())) {
+                    pending.add(entry.getKey());
+                }
+            }
+        }
+    }
+}
@@ -344,7 +344,7 @@ public class UserManagerImpl extends ProtectedItemModifier
         if (mCache != null) {
             membershipCache = mCache;
         } else {
-            membershipCache = new MembershipCache(session, groupsPath, hasMemberSplitSize());
+            membershipCache = new MembershipCache(session, usersPath, groupsPath, hasMemberSplitSize());
         }
 
         NodeResolver nr;
@@ -500,7 +500,7 @@ public class UserManagerImpl extends ProtectedItemModifier
                 // ignore and execute the query.
             }
             // authorizable whose ID matched the principal name -> search.
-            n = (NodeImpl) authResolver.findNode(P_PRINCIPAL_NAME, name, NT_REP_AUTHORIZABLE);
+            n = findByPrincipalName(name);
         }
         // build the corresponding authorizable object
         return getAuthorizable(n);
@@ -928,6 +928,41 @@ public class UserManagerImpl extends ProtectedItemModifier
         return getAuthorizable(n);
     }
 
+    /**
+     * Looks up the authorizable node with the given principal name in the
+     * principal name index and falls back to the node resolver if the index
+     * is not available.
+     *
+     * @param principalName The principal name.
+     * @return The authorizable node or <code>null</code>.
+     * @throws RepositoryException If an error occurs.
+     */
+    private NodeImpl findByPrincipalName(String principalName) throws RepositoryException {
+        String nodeId;
+        try {
+            nodeId = membershipCache.getPrincipalNameIndex().getNodeIdentifier(principalName);
+        } catch (RepositoryException e) {
+            log.debug("Principal name index not available: {}", e.getMessage());
+            return (NodeImpl) authResolver.findNode(P_PRINCIPAL_NAME, principalName, NT_REP_AUTHORIZABLE);
+        }
+        if (nodeId != null) {
+            try {
+                NodeImpl n = (NodeImpl) session.getNodeByIdentifier(nodeId);
+                // the index reflects the persisted state, which may differ
+                // from what this session sees.
+                if (n.isNodeType(NT_REP_AUTHORIZABLE) && n.hasProperty(P_PRINCIPAL_NAME)
+                        && principalName.equals(n.getProperty(P_PRINCIPAL_NAME).getString())) {
+                    return n;
+                }
+            } catch (ItemNotFoundException e) {
+                // removed in the meantime
+            } catch (AccessDeniedException e) {
+                // not visible to this session
+            }
+        }
+        return null;
+    }
+
     private Value getValue(String strValue) {
         return session.getValueFactory().createValue(strValue);
     }
@@ -25,8 +25,10 @@ import java.util.concurrent.locks.ReentrantLock;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 
+import org.apache.jackrabbit.api.stats.RepositoryStatistics.LatencyType;
 import org.apache.jackrabbit.core.WorkspaceManager;
 import org.apache.jackrabbit.core.observation.ObservationDispatcher;
+import org.apache.jackrabbit.stats.LatencyHistogramRecorder;
 import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -78,6 +80,16 @@ public class SessionState {
      * Duration of write operations.
      */
     private final AtomicLong writeDuration;
+
+    /**
+     * Latencies of read operations.
+     */
+    private final LatencyHistogramRecorder readLatency;
+
+    /**
+     * Latencies of write operations.
+     */
+    private final LatencyHistogramRecorder writeLatency;
     
     /**
      * Number of open sessions.
@@ -121,6 +133,10 @@ public class SessionState {
         this.writeCounter = statistics.getCounter(Type.SESSION_WRITE_COUNTER);
         this.readDuration = statistics.getCounter(Type.SESSION_READ_DURATION);
         this.writeDuration = statistics.getCounter(Type.SESSION_WRITE_DURATION);
+        this.readLatency =
+                statistics.getLatencyRecorder(LatencyType.SESSION_READ);
+        this.writeLatency =
+                statistics.getLatencyRecorder(LatencyType.SESSION_WRITE);
         this.sessionCount = statistics.getCounter(Type.SESSION_COUNT);
         statistics.getCounter(Type.SESSION_LOGIN_COUNTER).incrementAndGet();
         sessionCount.incrementAndGet();
@@ -221,9 +237,11 @@ public class SessionState {
                     if (isWriteOperation) {
                         writeCounter.incrementAndGet();
                         writeDuration.addAndGet(time);
+                        writeLatency.recordValue(time);
                     } else {
                         readCounter.incrementAndGet();
                         readDuration.addAndGet(time);
+                        readLatency.recordValue(time);
                     }
 
                     log.debug("Performed {} in {}ns", operation, time);
@@ -16,48 +16,74 @@
  */
 package org.apache.jackrabbit.core.state;
 
-import org.apache.commons.collections.map.LinkedMap;
 import org.apache.jackrabbit.core.id.NodeId;
-import org.apache.jackrabbit.core.util.EmptyLinkedMap;
+import org.apache.jackrabbit.core.util.PersistentHashMap;
 import org.apache.jackrabbit.spi.Name;
 
 import java.util.List;
-import java.util.HashMap;
 import java.util.Collections;
 import java.util.ArrayList;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * <code>ChildNodeEntries</code> represents an insertion-ordered
  * collection of <code>ChildNodeEntry</code>s that also maintains
  * the index values of same-name siblings on insertion and removal.
+ * <p>
+ * The entries are kept in persistent maps, which are never modified but
+ * replaced by modified copies that share most of their structure with the
+ * original. A clone therefore shares the maps with this instance, and adding
+ * or removing an entry takes logarithmic instead of linear time no matter
+ * whether the maps are shared or not. Only the list of same-name siblings
+ * of a modified name is copied if it is shared. The insertion order is maintained by
+ * linking each entry to the ids of its previous and next entry. The ordered
+ * list of entries is built once per version of the maps and shared with
+ * clones until either instance is modified.
  */
 class ChildNodeEntries implements Cloneable {
 
     /**
-     * Insertion-ordered map of entries
-     * (key=NodeId, value=entry)
+     * Map of linked entries
+     * (key=NodeId, value=link)
      */
-    private LinkedMap entries;
+    private PersistentHashMap<NodeId, Link> entries;
 
     /**
      * Map used for lookup by name
      * (key=name, value=either a single entry or a list of sns entries)
      */
-    private Map<Name, Object> nameMap;
+    private PersistentHashMap<Name, Object> nameMap;
 
     /**
-     * Indicates whether the entries and nameMap are shared with another
-     * ChildNodeEntries instance.
+     * Id of the first entry or <code>null</code> if there are no entries.
      */
-    private boolean shared;
+    private NodeId first;
+
+    /**
+     * Id of the last entry or <code>null</code> if there are no entries.
+     */
+    private NodeId last;
+
+    /**
+     * Token of the sibling lists that are not shared with a clone and may
+     * therefore be modified in place. Replaced whenever this instance is
+     * cloned.
+     */
+    private Object owner = new Object();
+
+    /**
+     * Unmodifiable list of the entries in insertion order, or
+     * <code>null</code> if the entries changed since the list was built.
+     */
+    private List<ChildNodeEntry> list;
 
     ChildNodeEntries() {
         init();
     }
 
     ChildNodeEntry get(NodeId id) {
-        return (ChildNodeEntry) entries.get(id);
+        Link link = entries.get(id);
+        return link != null ? link.entry : null;
     }
 
     @SuppressWarnings("unchecked")
@@ -100,16 +126,14 @@ class ChildNodeEntries implements Cloneable {
         return null;
     }
 
-    @SuppressWarnings("unchecked")
     ChildNodeEntry add(Name nodeName, NodeId id) {
-        ensureModifiable();
-        List<ChildNodeEntry> siblings = null;
+        Siblings siblings = null;
         int index = 0;
         Object obj = nameMap.get(nodeName);
         if (obj != null) {
             if (obj instanceof List<?>) {
                 // map entry is a list of siblings
-                siblings = (List<ChildNodeEntry>) obj;
+                siblings = modifiable((Siblings) obj);
                 if (siblings.size() > 0) {
                     // reuse immutable Name instance from 1st same name sibling
                     // in order to help gc conserving memory
@@ -118,9 +142,8 @@ class ChildNodeEntries implements Cloneable {
             } else {
                 // map entry is a single child node entry,
                 // convert to siblings list
-                siblings = new ArrayList<ChildNodeEntry>();
+                siblings = new Siblings(owner);
                 siblings.add((ChildNodeEntry) obj);
-                nameMap.put(nodeName, siblings);
             }
             index = siblings.size();
         }
@@ -130,10 +153,18 @@ class ChildNodeEntries implements Cloneable {
         ChildNodeEntry entry = new ChildNodeEntry(nodeName, id, index);
         if (siblings != null) {
             siblings.add(entry);
+            nameMap = nameMap.put(nodeName, siblings);
+        } else {
+            nameMap = nameMap.put(nodeName, entry);
+        }
+        Link link = entries.get(id);
+        if (link != null) {
+            // keep the position of an existing entry with the same id
+            entries = entries.put(id, new Link(entry, link.previous, link.next));
+            list = null;
         } else {
-            nameMap.put(nodeName, entry);
+            link(entry);
         }
-        entries.put(id, entry);
 
         return entry;
     }
@@ -148,13 +179,11 @@ class ChildNodeEntries implements Cloneable {
     // The index may have changed because of changes by another session. Use remove(NodeId id)
     // instead    
     @Deprecated
-    @SuppressWarnings("unchecked")
     public ChildNodeEntry remove(Name nodeName, int index) {
         if (index < 1) {
             throw new IllegalArgumentException("index is 1-based");
         }
 
-        ensureModifiable();
         Object obj = nameMap.get(nodeName);
         if (obj == null) {
             return null;
@@ -166,21 +195,22 @@ class ChildNodeEntries implements Cloneable {
                 return null;
             }
             ChildNodeEntry removedEntry = (ChildNodeEntry) obj;
-            nameMap.remove(nodeName);
-            entries.remove(removedEntry.getId());
+            nameMap = nameMap.remove(nodeName);
+            unlink(removedEntry.getId());
             return removedEntry;
         }
 
         // map entry is a list of siblings
-        List<ChildNodeEntry> siblings = (List<ChildNodeEntry>) obj;
+        Siblings siblings = (Siblings) obj;
         if (index > siblings.size()) {
             return null;
         }
 
         // remove from siblings list
+        siblings = modifiable(siblings);
         ChildNodeEntry removedEntry = siblings.remove(index - 1);
         // remove from ordered entries map
-        entries.remove(removedEntry.getId());
+        unlink(removedEntry.getId());
 
         // update indices of subsequent same-name siblings
         for (int i = index - 1; i < siblings.size(); i++) {
@@ -189,18 +219,22 @@ class ChildNodeEntries implements Cloneable {
             // overwrite old entry with updated entry in siblings list
             siblings.set(i, newEntry);
             // overwrite old entry with updated entry in ordered entries map
-            entries.put(newEntry.getId(), newEntry);
+            Link link = entries.get(newEntry.getId());
+            entries = entries.put(newEntry.getId(), new Link(newEntry, link.previous, link.next));
+            list = null;
         }
 
         // clean up name lookup map if necessary
         if (siblings.size() == 0) {
             // no more entries with that name left:
             // remove from name lookup map as well
-            nameMap.remove(nodeName);
+            nameMap = nameMap.remove(nodeName);
         } else if (siblings.size() == 1) {
             // just one entry with that name left:
             // discard siblings list and update name lookup map accordingly
-            nameMap.put(nodeName, siblings.get(0));
+            nameMap = nameMap.put(nodeName, siblings.get(0));
+        } else {
+            nameMap = nameMap.put(nodeName, siblings);
         }
 
         // we're done
@@ -214,7 +248,7 @@ class ChildNodeEntries implements Cloneable {
      * @return the removed entry or <code>null</code> if there is no such entry.
      */
     ChildNodeEntry remove(NodeId id) {
-        ChildNodeEntry entry = (ChildNodeEntry) entries.get(id);
+        ChildNodeEntry entry = get(id);
         if (entry != null) {
             return remove(entry.getName(), entry.getIndex());
         }
@@ -256,12 +290,11 @@ class ChildNodeEntries implements Cloneable {
             return Collections.emptyList();
         }
         if (other.isEmpty()) {
-            return list();
+            return new ArrayList<ChildNodeEntry>(list());
         }
 
         List<ChildNodeEntry> result = new ArrayList<ChildNodeEntry>();
-        for (Object e : entries.values()) {
-            ChildNodeEntry entry = (ChildNodeEntry) e;
+        for (ChildNodeEntry entry : list()) {
             ChildNodeEntry otherEntry = other.get(entry.getId());
             if (entry == otherEntry) {
                 continue;
@@ -294,8 +327,7 @@ class ChildNodeEntries implements Cloneable {
         }
 
         List<ChildNodeEntry> result = new ArrayList<ChildNodeEntry>();
-        for (Object e : entries.values()) {
-            ChildNodeEntry entry = (ChildNodeEntry) e;
+        for (ChildNodeEntry entry : list()) {
             ChildNodeEntry otherEntry = other.get(entry.getId());
             if (entry == otherEntry) {
                 result.add(entry);
@@ -313,15 +345,25 @@ class ChildNodeEntries implements Cloneable {
         return entries.isEmpty();
     }
 
-    @SuppressWarnings("unchecked")
     public List<ChildNodeEntry> list() {
-        return new ArrayList<ChildNodeEntry>(entries.values());
+        List<ChildNodeEntry> list = this.list;
+        if (list == null) {
+            ChildNodeEntry[] array = new ChildNodeEntry[entries.size()];
+            int i = 0;
+            for (NodeId id = first; id != null; ) {
+                Link link = entries.get(id);
+                array[i++] = link.entry;
+                id = link.next;
+            }
+            list = Collections.unmodifiableList(Arrays.asList(array));
+            this.list = list;
+        }
+        return list;
     }
 
     public List<ChildNodeEntry> getRenamedEntries(ChildNodeEntries that) {
         List<ChildNodeEntry> renamed = Collections.emptyList();
-        for (Object e : entries.values()) {
-            ChildNodeEntry entry = (ChildNodeEntry) e;
+        for (ChildNodeEntry entry : list()) {
             ChildNodeEntry other = that.get(entry.getId());
             if (other != null && !entry.getName().equals(other.getName())) {
                 // child node entry with same id but different name exists in
@@ -335,6 +377,35 @@ class ChildNodeEntries implements Cloneable {
         return renamed;
     }
 
+    /**
+     * Returns the entries of <code>this</code> whose node does not exist in
+     * <code>that</code> or has another name or same name sibling index
+     * there. Only the parts of the entries that are not shared with
+     * <code>that</code> are compared, so the cost is proportional to the
+     * number of changes between the two instances.
+     *
+     * @param that the entries to compare with
+     * @return the removed, renamed and renumbered entries, in no particular
+     *         order.
+     */
+    List<ChildNodeEntry> getMovedEntries(ChildNodeEntries that) {
+        List<ChildNodeEntry> moved = Collections.emptyList();
+        for (NodeId id : entries.diff(that.entries)) {
+            ChildNodeEntry entry = entries.get(id).entry;
+            ChildNodeEntry other = that.get(id);
+            if (other == null
+                    || (other != entry
+                        && (other.getIndex() != entry.getIndex()
+                            || !other.getName().equals(entry.getName())))) {
+                if (moved.isEmpty()) {
+                    moved = new ArrayList<ChildNodeEntry>();
+                }
+                moved.add(entry);
+            }
+        }
+        return moved;
+    }
+
     public int size() {
         return entries.size();
     }
@@ -346,9 +417,9 @@ class ChildNodeEntries implements Cloneable {
         }
         if (obj instanceof ChildNodeEntries) {
             ChildNodeEntries other = (ChildNodeEntries) obj;
-            return (nameMap.equals(other.nameMap)
-                    && entries.equals(other.entries)
-                    && shared == other.shared);
+            return entries == other.entries
+                    || (entries.size() == other.entries.size()
+                    && list().equals(other.list()));
         }
         return false;
     }
@@ -368,17 +439,17 @@ class ChildNodeEntries implements Cloneable {
 
     /**
      * Returns a shallow copy of this <code>ChildNodeEntries</code> instance;
-     * the entries themselves are not cloned.
+     * the entries themselves are not cloned. The copy shares the immutable
+     * maps with this instance.
      *
      * @return a shallow copy of this instance.
      */
     protected Object clone() {
         try {
             ChildNodeEntries clone = (ChildNodeEntries) super.clone();
-            if (nameMap != Collections.EMPTY_MAP) {
-                clone.shared = true;
-                shared = true;
-            }
+            // neither instance may modify the shared sibling lists
+            clone.owner = new Object();
+            owner = new Object();
             return clone;
         } catch (CloneNotSupportedException e) {
             // never happens, this class is cloneable
@@ -389,35 +460,114 @@ class ChildNodeEntries implements Cloneable {
     //-------------------------------------------------------------< internal >
 
     /**
-     * Initializes the name and entries map with unmodifiable empty instances.
+     * Initializes the name and entries map with empty instances.
      */
     private void init() {
-        nameMap = Collections.emptyMap();
-        entries = EmptyLinkedMap.INSTANCE;
-        shared = false;
+        nameMap = PersistentHashMap.empty();
+        entries = PersistentHashMap.empty();
+        first = null;
+        last = null;
+        list = null;
     }
 
     /**
-     * Ensures that the {@link #nameMap} and {@link #entries} map are
-     * modifiable.
+     * Appends the given entry to the ordered entries.
+     *
+     * @param entry the new entry.
      */
-    @SuppressWarnings("unchecked")
-    private void ensureModifiable() {
-        if (nameMap == Collections.EMPTY_MAP) {
-            nameMap = new HashMap<Name, Object>();
-            entries = new LinkedMap();
-        } else if (shared) {
-            entries = (LinkedMap) entries.clone();
-            nameMap = new HashMap<Name, Object>(nameMap);
-            for (Map.Entry<Name, Object> entry : nameMap.entrySet()) {
-                Object value = entry.getValue();
-                if (value instanceof List<?>) {
-                    entry.setValue(new ArrayList<ChildNodeEntry>(
-                            (List<ChildNodeEntry>) value));
-                }
-            }
-            shared = false;
+    private void link(ChildNodeEntry entry) {
+        NodeId id = entry.getId();
+        if (last == null) {
+            first = id;
+        } else {
+            Link previous = entries.get(last);
+            entries = entries.put(last, new Link(previous.entry, previous.previous, id));
         }
+        entries = entries.put(id, new Link(entry, last, null));
+        last = id;
+        list = null;
+    }
+
+    /**
+     * Removes the entry with the given id from the ordered entries.
+     *
+     * @param id id of an existing entry.
+     */
+    private void unlink(NodeId id) {
+        Link link = entries.get(id);
+        entries = entries.remove(id);
+        if (link.previous == null) {
+            first = link.next;
+        } else {
+            Link previous = entries.get(link.previous);
+            entries = entries.put(link.previous, new Link(previous.entry, previous.previous, link.next));
+        }
+        if (link.next == null) {
+            last = link.previous;
+        } else {
+            Link next = entries.get(link.next);
+            entries = entries.put(link.next, new Link(next.entry, link.previous, next.next));
+        }
+        list = null;
+    }
+
+    /**
+     * Returns the given sibling list if it is owned by this instance, or
+     * an owned copy of it.
+     *
+     * @param siblings sibling list of the name map.
+     * @return a sibling list that may be modified.
+     */
+    private Siblings modifiable(Siblings siblings) {
+        if (siblings.owner == owner) {
+            return siblings;
+        }
+        Siblings copy = new Siblings(owner);
+        copy.addAll(siblings);
+        return copy;
+    }
+
+    /**
+     * List of same-name sibling entries of the name map.
+     */
+    private static final class Siblings extends ArrayList<ChildNodeEntry> {
+
+        private static final long serialVersionUID = 4424131487519421592L;
+
+        /**
+         * Token of the instance that may modify this list.
+         */
+        private final transient Object owner;
+
+        Siblings(Object owner) {
+            this.owner = owner;
+        }
+
+    }
+
+    /**
+     * Immutable entry of the ordered entries map.
+     */
+    private static final class Link {
+
+        private final ChildNodeEntry entry;
+
+        /**
+         * Id of the previous entry or <code>null</code> for the first entry.
+         */
+        private final NodeId previous;
+
+        /**
+         * Id of the next entry or <code>null</code> for the last entry.
+         */
+        private final NodeId next;
+
+        Link(ChildNodeEntry entry, NodeId previous, NodeId next) {
+            this.entry = entry;
+            this.previous = previous;
+            this.next = next;
+        }
+
     }
 
 }
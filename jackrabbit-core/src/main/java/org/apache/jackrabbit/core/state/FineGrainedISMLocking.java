@@ -25,17 +25,16 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
 
-import EDU.oswego.cs.dl.util.concurrent.Latch;
-import EDU.oswego.cs.dl.util.concurrent.ReadWriteLock;
-import EDU.oswego.cs.dl.util.concurrent.Sync;
-import EDU.oswego.cs.dl.util.concurrent.WriterPreferenceReadWriteLock;
-
 /**
  * <code>FineGrainedISMLocking</code>...
  */
@@ -58,7 +57,7 @@ public class FineGrainedISMLocking implements ISMLocking {
 
     private volatile Object activeWriterId;
 
-    private ReadWriteLock writerStateRWLock = new WriterPreferenceReadWriteLock();
+    private ReadWriteLock writerStateRWLock = new ReentrantReadWriteLock();
 
     /**
      * Map that contains the read locks.
@@ -74,15 +73,15 @@ public class FineGrainedISMLocking implements ISMLocking {
      * List of waiting readers that are blocked because they conflict with
      * the current writer.
      */
-    private List<Sync> waitingReaders =
-        Collections.synchronizedList(new LinkedList<Sync>());
+    private List<CountDownLatch> waitingReaders =
+        Collections.synchronizedList(new LinkedList<CountDownLatch>());
 
     /**
      * List of waiting writers that are blocked because there is already a
      * current writer or one of the current reads conflicts with the change log
      * of the blocked writer.
      */
-    private List<Sync> waitingWriters = new LinkedList<Sync>();
+    private List<CountDownLatch> waitingWriters = new LinkedList<CountDownLatch>();
 
     /**
      * {@inheritDoc}
@@ -99,10 +98,10 @@ public class FineGrainedISMLocking implements ISMLocking {
         // if we get here the following is true:
         // - the current thread does not hold a write lock
         for (;;) {
-            Sync signal;
+            CountDownLatch signal;
             // make sure writer state does not change
-            Sync shared = writerStateRWLock.readLock();
-            shared.acquire();
+            Lock shared = writerStateRWLock.readLock();
+            shared.lockInterruptibly();
             try {
                 if (activeWriter == null
                         || !hasDependency(activeWriter.changes, id)) {
@@ -110,17 +109,17 @@ public class FineGrainedISMLocking implements ISMLocking {
                     readLockMap.addLock(id);
                     return new ReadLockImpl(id);
                 } else {
-                    signal = new Latch();
+                    signal = new CountDownLatch(1);
                     waitingReaders.add(signal);
                 }
             } finally {
-                shared.release();
+                shared.unlock();
             }
 
             // if we get here there was an active writer with
             // a dependency to the current id.
             // wait for the writer until it is done, then try again
-            signal.acquire();
+            signal.await();
         }
     }
 
@@ -130,10 +129,10 @@ public class FineGrainedISMLocking implements ISMLocking {
     public WriteLock acquireWriteLock(ChangeLog changeLog)
             throws InterruptedException {
         for (;;) {
-            Sync signal;
+            CountDownLatch signal;
             // we want to become the current writer
-            Sync exclusive = writerStateRWLock.writeLock();
-            exclusive.acquire();
+            Lock exclusive = writerStateRWLock.writeLock();
+            exclusive.lockInterruptibly();
             Object currentId = getCurrentThreadId();
             try {
                 if (activeWriter == null
@@ -146,16 +145,16 @@ public class FineGrainedISMLocking implements ISMLocking {
                             && !readLockMap.hasDependency(changeLog)) {
                         return activeWriter;
                     } else {
-                        signal = new Latch();
+                        signal = new CountDownLatch(1);
                         waitingWriters.add(signal);
                     }
                 }
             } finally {
-                exclusive.release();
+                exclusive.unlock();
             }
             // if we get here there is an active writer or there is a read
             // lock that conflicts with the change log
-            signal.acquire();
+            signal.await();
         }
     }
 
@@ -170,39 +169,23 @@ public class FineGrainedISMLocking implements ISMLocking {
         }
 
         public void release() {
-            Sync exclusive = writerStateRWLock.writeLock();
-            for (;;) {
-                try {
-                    exclusive.acquire();
-                    break;
-                } catch (InterruptedException e) {
-                    // try again
-                    Thread.interrupted();
-                }
-            }
+            Lock exclusive = writerStateRWLock.writeLock();
+            exclusive.lock();
             try {
                 activeWriter = null;
                 activeWriterId = null;
                 notifyWaitingReaders();
                 notifyWaitingWriters();
             } finally {
-                exclusive.release();
+                exclusive.unlock();
             }
         }
 
         public ReadLock downgrade() {
             readerCount.incrementAndGet();
             readLockMap.addLock(null);
-            Sync exclusive = writerStateRWLock.writeLock();
-            for (;;) {
-                try {
-                    exclusive.acquire();
-                    break;
-                } catch (InterruptedException e) {
-                    // try again
-                    Thread.interrupted();
-                }
-            }
+            Lock exclusive = writerStateRWLock.writeLock();
+            exclusive.lock();
             try {
                 activeWriter = null;
                 // only notify waiting readers since we still hold a down
@@ -210,7 +193,7 @@ public class FineGrainedISMLocking implements ISMLocking {
                 // other writers
                 notifyWaitingReaders();
             } finally {
-                exclusive.release();
+                exclusive.unlock();
             }
             return anonymousReadLock;
         }
@@ -230,16 +213,8 @@ public class FineGrainedISMLocking implements ISMLocking {
         }
 
         public void release() {
-            Sync shared = writerStateRWLock.readLock();
-            for (;;) {
-                try {
-                    shared.acquire();
-                    break;
-                } catch (InterruptedException e) {
-                    // try again
-                    Thread.interrupted();
-                }
-            }
+            Lock shared = writerStateRWLock.readLock();
+            shared.lock();
             try {
                 readLockMap.removeLock(id);
                 if (readerCount.decrementAndGet() == 0 && activeWriter == null) {
@@ -251,7 +226,7 @@ public class FineGrainedISMLocking implements ISMLocking {
                     notifyWaitingWriters();
                 }
             } finally {
-                shared.release();
+                shared.unlock();
             }
         }
     }
@@ -275,9 +250,9 @@ public class FineGrainedISMLocking implements ISMLocking {
      * only one thread calls this method at a time.
      */
     private void notifyWaitingReaders() {
-        Iterator<Sync> it = waitingReaders.iterator();
+        Iterator<CountDownLatch> it = waitingReaders.iterator();
         while (it.hasNext()) {
-            it.next().release();
+            it.next().countDown();
             it.remove();
         }
     }
@@ -290,9 +265,9 @@ public class FineGrainedISMLocking implements ISMLocking {
             if (waitingWriters.isEmpty()) {
                 return;
             }
-            Iterator<Sync> it = waitingWriters.iterator();
+            Iterator<CountDownLatch> it = waitingWriters.iterator();
             while (it.hasNext()) {
-                it.next().release();
+                it.next().countDown();
                 it.remove();
             }
         }
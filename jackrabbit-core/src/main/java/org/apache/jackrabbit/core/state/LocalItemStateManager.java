@@ -251,6 +251,25 @@ public class LocalItemStateManager
         return editMode;
     }
 
+    /**
+     * Returns <code>true</code> if this state manager has changes that are
+     * not yet visible in the shared item state manager.
+     *
+     * @return whether there are local changes.
+     */
+    public boolean hasLocalChanges() {
+        return editMode;
+    }
+
+    /**
+     * Returns the path cache of the shared item state manager.
+     *
+     * @return the shared path cache.
+     */
+    public SharedPathCache getSharedPathCache() {
+        return sharedStateMgr.getPathCache();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -713,6 +713,19 @@ public class NodeState extends ItemState {
         }
     }
 
+    /**
+     * Returns the child node entries of <i>this</i> node state whose path is
+     * different in the given node state, i.e. the child nodes that have been
+     * removed, renamed or moved, or that changed their same name sibling
+     * index.
+     *
+     * @param other another version of this node state
+     * @return list of moved child node entries, in no particular order
+     */
+    synchronized List<ChildNodeEntry> getMovedChildNodeEntries(NodeState other) {
+        return childNodeEntries.getMovedEntries(other.childNodeEntries);
+    }
+
     /**
      * Returns a list of child node entries that exist both in <i>this</i> node
      * state and in the overlayed node state but have been reordered.
@@ -95,6 +95,7 @@ public class SessionItemStateManager
 
         // create hierarchy manager that uses both transient and persistent state
         hierMgr = new CachingHierarchyManager(rootNodeId, this);
+        hierMgr.setSharedPathCache(stateMgr.getSharedPathCache());
         addListener(hierMgr);
     }
 
@@ -331,6 +332,18 @@ public class SessionItemStateManager
         return !transientStore.isEmpty();
     }
 
+    /**
+     * Returns <code>true</code> if this manager has transient changes or
+     * the underlying state manager has changes that are not yet visible in
+     * the shared item state manager.
+     *
+     * @return whether there are local changes.
+     */
+    public boolean hasLocalChanges() {
+        return !transientStore.isEmpty() || !atticStore.isEmpty()
+                || stateMgr.hasLocalChanges();
+    }
+
     /**
      * Returns a collection of those transient item state instances that are
      * direct or indirect descendants of the item state with the given parent.
@@ -16,6 +16,8 @@
  */
 package org.apache.jackrabbit.core.state;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -27,6 +29,7 @@ import javax.jcr.ReferentialIntegrityException;
 import javax.jcr.RepositoryException;
 import javax.jcr.nodetype.NoSuchNodeTypeException;
 
+import org.apache.jackrabbit.core.HierarchyManagerImpl;
 import org.apache.jackrabbit.core.RepositoryImpl;
 import org.apache.jackrabbit.core.cluster.ClusterException;
 import org.apache.jackrabbit.core.cluster.UpdateEventChannel;
@@ -45,8 +48,10 @@ import org.apache.jackrabbit.core.persistence.PersistenceManager;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.jackrabbit.core.virtual.VirtualItemStateProvider;
 import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.Path;
 import org.apache.jackrabbit.spi.QNodeDefinition;
 import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -126,6 +131,12 @@ public class SharedItemStateManager
     private static final boolean VALIDATE_HIERARCHY =
         Boolean.getBoolean("org.apache.jackrabbit.core.state.validatehierarchy");
 
+    /**
+     * Maximum number of moved subtrees of an update that are invalidated
+     * individually in the shared path cache. Larger updates clear the cache.
+     */
+    private static final int MAX_MOVED_PATHS = 100;
+
     /**
      * cache of weak references to ItemState objects issued by this
      * ItemStateManager
@@ -190,6 +201,12 @@ public class SharedItemStateManager
 
     private final NodeIdFactory nodeIdFactory;
 
+    /**
+     * Paths of the persisted nodes, shared by the hierarchy managers that
+     * operate on this item state manager.
+     */
+    private final SharedPathCache pathCache = new SharedPathCache();
+
     /**
      * Creates a new <code>SharedItemStateManager</code> instance.
      *
@@ -239,6 +256,16 @@ public class SharedItemStateManager
         this.eventChannel = eventChannel;
     }
 
+    /**
+     * Returns the cache of the paths of the nodes persisted by this item
+     * state manager.
+     *
+     * @return the shared path cache.
+     */
+    public SharedPathCache getPathCache() {
+        return pathCache;
+    }
+
     /**
      * Sets a new locking strategy.
      *
@@ -534,6 +561,12 @@ public class SharedItemStateManager
          */
         private EventStateCollection events;
 
+        /**
+         * Paths of the nodes that are removed or moved by this update or
+         * <code>null</code> if all cached paths must be invalidated.
+         */
+        private List<Path> movedPaths;
+
         /**
          * The write lock we currently hold or <code>null</code> if none is
          * hold.
@@ -768,6 +801,12 @@ public class SharedItemStateManager
                     }
                 }
 
+                // determine the paths to invalidate while the
+                // shared items still reflect the persisted state and
+                // invalidate them before the changes become visible
+                movedPaths = getMovedPaths(local);
+                invalidatePaths(movedPaths);
+
                 /* Push all changes from the local items to the shared items */
                 local.push();
 
@@ -834,6 +873,11 @@ public class SharedItemStateManager
                 // JCR-2171: This must happen after downgrading the lock!
                 shared.persisted();
 
+                // invalidate the paths again after the listeners updated
+                // their states, paths resolved from outdated states in the
+                // meantime must not stay cached
+                invalidatePaths(movedPaths);
+
                 /* notify virtual providers about node references */
                 for (int i = 0; i < virtualNodeReferences.length; i++) {
                     ChangeLog virtualRefs = virtualNodeReferences[i];
@@ -1601,15 +1645,30 @@ public class SharedItemStateManager
         }
 
         ChangeLog shared = new ChangeLog();
+        List<Path> movedPaths = new ArrayList<Path>();
 
         // Build a copy of the external change log, consisting of shared
         // states we have in our cache. Inform listeners about this
         // change.
         for (ItemState state : external.modifiedStates()) {
-            state = cache.retrieve(state.getId());
+            ItemId id = state.getId();
+            state = cache.retrieve(id);
             if (state != null) {
                 try {
                     ItemState currentState = loadItemState(state.getId());
+                    if (state.isNode()) {
+                        NodeState before = (NodeState) state;
+                        List<Path> paths = getMovedPaths(
+                                before.getMovedChildNodeEntries((NodeState) currentState),
+                                before, pathCache.getPath(before.getNodeId()));
+                        // invalidate before the change becomes visible
+                        invalidatePaths(paths);
+                        if (paths == null) {
+                            movedPaths = null;
+                        } else if (movedPaths != null) {
+                            movedPaths.addAll(paths);
+                        }
+                    }
                     state.copy(currentState, true);
                     shared.modified(state);
                 } catch (NoSuchItemStateException e) {
@@ -1623,6 +1682,10 @@ public class SharedItemStateManager
                     log.warn(msg);
                     state.discard();
                 }
+            } else if (id.denotesNode()) {
+                // unknown whether child nodes were moved
+                pathCache.clear();
+                movedPaths = null;
             }
         }
         for (ItemState state : external.deletedStates()) {
@@ -1632,6 +1695,7 @@ public class SharedItemStateManager
             }
         }
         shared.persisted();
+        invalidatePaths(movedPaths);
     }
 
     /**
@@ -1814,6 +1878,101 @@ public class SharedItemStateManager
         }
     }
 
+    /**
+     * Returns the paths of the child nodes that are removed, renamed or
+     * moved by the given changes. The paths are determined from the current
+     * shared states, hence this method must be called before the changes
+     * are pushed.
+     *
+     * @param changes local changes.
+     * @return the paths or <code>null</code> if they cannot be determined
+     *         and all cached paths must be invalidated.
+     */
+    private List<Path> getMovedPaths(ChangeLog changes) {
+        if (pathCache.size() == 0) {
+            // nothing to invalidate
+            return null;
+        }
+        List<Path> paths = new ArrayList<Path>();
+        HierarchyManagerImpl hmgr = null;
+        for (ItemState state : changes.modifiedStates()) {
+            if (!state.isNode() || !state.hasOverlayedState()) {
+                continue;
+            }
+            NodeState before = (NodeState) state.getOverlayedState();
+            List<ChildNodeEntry> entries =
+                    before.getMovedChildNodeEntries((NodeState) state);
+            if (entries.isEmpty()) {
+                continue;
+            }
+            Path path = pathCache.getPath(before.getNodeId());
+            if (path == null) {
+                try {
+                    if (hmgr == null) {
+                        hmgr = new HierarchyManagerImpl(rootNodeId, this);
+                    }
+                    path = hmgr.getPath(before.getNodeId());
+                } catch (RepositoryException e) {
+                    log.debug("Unable to determine path of " + before.getNodeId(), e);
+                    return null;
+                }
+            }
+            List<Path> moved = getMovedPaths(entries, before, path);
+            if (moved == null || paths.size() + moved.size() > MAX_MOVED_PATHS) {
+                return null;
+            }
+            paths.addAll(moved);
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the paths of the child nodes of a node that are removed,
+     * renamed or moved by a modification of the node.
+     *
+     * @param moved  the moved child node entries of the node before the
+     *               modification.
+     * @param before the node state before the modification.
+     * @param path   the path of the node or <code>null</code> if unknown.
+     * @return the paths, empty if no child node is moved, or
+     *         <code>null</code> if they cannot be determined and all cached
+     *         paths must be invalidated.
+     */
+    private static List<Path> getMovedPaths(List<ChildNodeEntry> moved,
+                                            NodeState before, Path path) {
+        if (moved.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (path == null || before.isShareable()) {
+            return null;
+        }
+        List<Path> paths = new ArrayList<Path>(moved.size());
+        try {
+            for (ChildNodeEntry entry : moved) {
+                paths.add(PathFactoryImpl.getInstance().create(
+                        path, entry.getName(), entry.getIndex(), true));
+            }
+        } catch (RepositoryException e) {
+            log.debug("Unable to create path of child node below " + path, e);
+            return null;
+        }
+        return paths;
+    }
+
+    /**
+     * Invalidates the cached paths at and below the given paths.
+     *
+     * @param paths the paths to invalidate or <code>null</code> to
+     *              invalidate all cached paths.
+     */
+    private void invalidatePaths(List<Path> paths) {
+        if (paths == null) {
+            pathCache.clear();
+        } else {
+            pathCache.invalidate(paths);
+        }
+    }
+
     /**
      * Checks if this item state manager has the given item state without
      * considering the virtual item state managers.
@@ -0,0 +1,368 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+
+/**
+ * <code>SharedPathCache</code> caches the paths of nodes as persisted by a
+ * {@link SharedItemStateManager}, so that all hierarchy managers of a
+ * workspace are able to share the paths resolved by any of them. The cache
+ * must only be used by hierarchy managers that see the persisted state, i.e.
+ * that have no transient or transactional changes.
+ * <p>
+ * The shared item state manager invalidates the paths at and below a child
+ * node whenever a committed change removes, renames or moves it. Paths
+ * below <code>/jcr:system</code> are never cached, because most of its
+ * content is provided by virtual item state providers and changed without
+ * notice to the shared item state manager.
+ * <p>
+ * Lookups are lock free. Writers must obtain the current generation before
+ * they start to resolve a path and pass it to {@link #cache(NodeId, Path, long)}
+ * or {@link #cache(Path, NodeId, long)}, which ignore paths that may have
+ * been resolved before an invalidation. Modifications are serialized and
+ * maintain an index of the cached paths by their parent path, so that an
+ * invalidation only visits the cached paths in the invalidated subtrees.
+ */
+public class SharedPathCache {
+
+    /**
+     * Default upper limit of cached paths
+     */
+    public static final int DEFAULT_UPPER_LIMIT = 100000;
+
+    private static final int MAX_UPPER_LIMIT =
+            Integer.getInteger("org.apache.jackrabbit.core.state.SharedPathCache.cacheSize", DEFAULT_UPPER_LIMIT);
+
+    /**
+     * Mapping of paths to the ids of the nodes at these paths.
+     */
+    private final ConcurrentMap<Path, NodeId> ids =
+            new ConcurrentHashMap<Path, NodeId>();
+
+    /**
+     * Mapping of node ids to their primary path.
+     */
+    private final ConcurrentMap<NodeId, Path> paths =
+            new ConcurrentHashMap<NodeId, Path>();
+
+    /**
+     * Number of entries in {@link #ids}.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Incremented on every invalidation.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Cached paths and ancestors of cached paths, mapped to those of their
+     * child paths that are cached or have cached descendants. Every cached
+     * path and every key except the root path is contained in the set of
+     * its parent path. Guarded by {@link #lock}.
+     */
+    private final Map<Path, Set<Path>> children = new HashMap<Path, Set<Path>>();
+
+    /**
+     * Lock held by threads that modify the cache.
+     */
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Upper limit
+     */
+    private final int upperLimit;
+
+    /**
+     * Creates a new cache with the default upper limit.
+     */
+    public SharedPathCache() {
+        this(MAX_UPPER_LIMIT);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param upperLimit the maximum number of cached paths.
+     */
+    public SharedPathCache(int upperLimit) {
+        this.upperLimit = upperLimit;
+    }
+
+    /**
+     * Returns the current generation of this cache. The generation must be
+     * obtained before a path is resolved that is subsequently passed to
+     * one of the <code>cache</code> methods.
+     *
+     * @return the current generation.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns the cached primary path of the node with the given id.
+     *
+     * @param id a node id.
+     * @return the path or <code>null</code> if not cached.
+     */
+    public Path getPath(NodeId id) {
+        return paths.get(id);
+    }
+
+    /**
+     * Returns the cached id of the node at the given path.
+     *
+     * @param path a normalized absolute path.
+     * @return the node id or <code>null</code> if not cached.
+     */
+    public NodeId getId(Path path) {
+        return ids.get(path);
+    }
+
+    /**
+     * Caches the primary path of a node.
+     *
+     * @param id         the node id.
+     * @param path       the primary path of the node.
+     * @param generation the generation obtained before the path was resolved.
+     */
+    public void cache(NodeId id, Path path, long generation) {
+        if (!isCacheable(path)) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (put(path, id, generation)) {
+                paths.put(id, path);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches the id of the node at the given path. The path need not be the
+     * primary path of a shareable node.
+     *
+     * @param path       the path.
+     * @param id         the id of the node at <code>path</code>.
+     * @param generation the generation obtained before the path was resolved.
+     * @return <code>true</code> if the path was cached.
+     */
+    public boolean cache(Path path, NodeId id, long generation) {
+        if (!isCacheable(path)) {
+            return false;
+        }
+        lock.lock();
+        try {
+            return put(path, id, generation);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all cached paths that are equal to or descendants of the given
+     * paths.
+     *
+     * @param invalidated normalized absolute paths.
+     */
+    public void invalidate(Collection<Path> invalidated) {
+        if (invalidated.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            if (size.get() == 0) {
+                return;
+            }
+            List<Path> subtree = new ArrayList<Path>();
+            for (Path path : invalidated) {
+                subtree.add(path);
+                while (!subtree.isEmpty()) {
+                    Path p = subtree.remove(subtree.size() - 1);
+                    NodeId id = ids.remove(p);
+                    if (id != null) {
+                        size.decrementAndGet();
+                        paths.remove(id, p);
+                    }
+                    Set<Path> set = children.remove(p);
+                    if (set != null) {
+                        subtree.addAll(set);
+                    }
+                }
+                unlink(path);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all cached paths.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            ids.clear();
+            paths.clear();
+            children.clear();
+            size.set(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of cached paths.
+     *
+     * @return the number of cached paths.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    //------------------------------------------------------< private methods >
+
+    /**
+     * Returns <code>false</code> for paths that must not be cached.
+     *
+     * @param path a path.
+     * @return whether the path may be cached.
+     */
+    private static boolean isCacheable(Path path) {
+        if (!path.isAbsolute() || !path.isNormalized()) {
+            return false;
+        }
+        if (path.getDepth() > 1
+                && NameConstants.JCR_SYSTEM.equals(path.getElements()[1].getName())) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Caches the given path unless the cache has been invalidated since the
+     * given generation. The caller must hold the lock.
+     */
+    private boolean put(Path path, NodeId id, long generation) {
+        if (generation != this.generation.get()) {
+            return false;
+        }
+        NodeId previous = ids.put(path, id);
+        if (previous == null) {
+            link(path);
+            if (size.incrementAndGet() > upperLimit) {
+                evict();
+                return id.equals(ids.get(path));
+            }
+        } else if (!previous.equals(id)) {
+            paths.remove(previous, path);
+        }
+        return true;
+    }
+
+    /**
+     * Adds the given path to the set of its parent path, and the parent
+     * path to the set of its own parent if it was not already indexed. The
+     * caller must hold the lock.
+     */
+    private void link(Path path) {
+        while (path.getDepth() > 0) {
+            Path parent = getParent(path);
+            Set<Path> set = children.get(parent);
+            boolean linked = set != null || ids.containsKey(parent);
+            if (set == null) {
+                set = new HashSet<Path>();
+                children.put(parent, set);
+            }
+            set.add(path);
+            if (linked) {
+                return;
+            }
+            path = parent;
+        }
+    }
+
+    /**
+     * Removes the given path from the set of its parent path if it is
+     * neither cached nor has cached descendants, and the parent path from
+     * the set of its own parent if that leaves the parent without cached
+     * descendants. The caller must hold the lock.
+     */
+    private void unlink(Path path) {
+        while (path.getDepth() > 0
+                && !ids.containsKey(path) && !children.containsKey(path)) {
+            Path parent = getParent(path);
+            Set<Path> set = children.get(parent);
+            if (set == null || !set.remove(path) || !set.isEmpty()) {
+                return;
+            }
+            children.remove(parent);
+            path = parent;
+        }
+    }
+
+    private static Path getParent(Path path) {
+        try {
+            return path.getAncestor(1);
+        } catch (RepositoryException e) {
+            // cannot happen for normalized absolute paths
+            throw new IllegalStateException("Unable to get parent of " + path, e);
+        }
+    }
+
+    /**
+     * Removes about a quarter of the cached paths. The caller must hold the
+     * lock.
+     */
+    private void evict() {
+        int target = upperLimit - upperLimit / 4;
+        Iterator<Map.Entry<Path, NodeId>> it = ids.entrySet().iterator();
+        while (size.get() > target && it.hasNext()) {
+            Map.Entry<Path, NodeId> entry = it.next();
+            Path path = entry.getKey();
+            it.remove();
+            size.decrementAndGet();
+            paths.remove(entry.getValue(), path);
+            unlink(path);
+        }
+    }
+}
@@ -220,6 +220,16 @@ public class XAItemStateManager extends LocalItemStateManager implements Interna
         return changeLog;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Also returns <code>true</code> if this state manager is associated
+     * with a transaction.
+     */
+    public boolean hasLocalChanges() {
+        return super.hasLocalChanges() || getChangeLog() != null;
+    }
+
     /**
      * @throws UnsupportedOperationException always.
      */
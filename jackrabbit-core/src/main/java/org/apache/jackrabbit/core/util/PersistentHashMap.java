@@ -0,0 +1,490 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <code>PersistentHashMap</code> implements an immutable hash map as a hash
+ * array mapped trie. Modifications return a new map that shares all but the
+ * modified path of the trie with the original map, so copies are free and a
+ * modification takes time and memory proportional to the depth of the trie
+ * (log<sub>32</sub> of the size of the map).
+ * <p>
+ * Keys and values must not be <code>null</code>.
+ */
+public final class PersistentHashMap<K, V> {
+
+    /**
+     * Marker returned by the trie nodes for missing keys.
+     */
+    private static final Object NOT_FOUND = new Object();
+
+    /**
+     * Number of hash bits consumed per level of the trie.
+     */
+    private static final int BITS = 5;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap(null, 0);
+
+    /**
+     * The root of the trie or <code>null</code> if the map is empty.
+     */
+    private final TrieNode root;
+
+    /**
+     * The number of entries.
+     */
+    private final int size;
+
+    private PersistentHashMap(TrieNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @return the empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the value mapped to the given key.
+     *
+     * @param key the key
+     * @return the value or <code>null</code> if the key is not mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (root == null) {
+            return null;
+        }
+        Object value = root.find(hash(key), 0, key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    /**
+     * Returns whether the given key is mapped.
+     *
+     * @param key the key
+     * @return <code>true</code> if the key is mapped.
+     */
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns a map with the given key mapped to the given value.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the new map, or this map if the key is already mapped to the
+     *         same value instance.
+     */
+    public PersistentHashMap<K, V> put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value must not be null");
+        }
+        int hash = hash(key);
+        if (root == null) {
+            return new PersistentHashMap<K, V>(
+                    new BitmapNode(bit(hash, 0), new Object[] {key, value}), 1);
+        }
+        boolean[] added = new boolean[1];
+        TrieNode node = root.put(hash, 0, key, value, added);
+        if (node == root) {
+            return this;
+        }
+        return new PersistentHashMap<K, V>(node, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without a mapping for the given key.
+     *
+     * @param key the key
+     * @return the new map, or this map if the key is not mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public PersistentHashMap<K, V> remove(Object key) {
+        if (root == null) {
+            return this;
+        }
+        TrieNode node = root.remove(hash(key), 0, key);
+        if (node == root) {
+            return this;
+        } else if (node == null) {
+            return EMPTY;
+        }
+        return new PersistentHashMap<K, V>(node, size - 1);
+    }
+
+    /**
+     * Returns the number of entries of this map.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether this map is empty.
+     *
+     * @return <code>true</code> if this map is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the keys of this map that are not mapped to the same value
+     * instance by the given map. Parts of the trie that both maps share are
+     * skipped, so comparing a map with a modified copy takes time
+     * proportional to the number of modifications rather than to the size
+     * of the maps.
+     *
+     * @param other the map to compare with
+     * @return the keys that are not mapped or mapped to another value in
+     *         <code>other</code>, in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    public List<K> diff(PersistentHashMap<K, V> other) {
+        List<Object> keys = new ArrayList<Object>();
+        if (root != null) {
+            root.diff(other.root, 0, keys);
+        }
+        return (List<K>) (List<?>) keys;
+    }
+
+    //-------------------------------------------------------------< internal >
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    private static Object[] insertPair(Object[] array, int i, Object key, Object value) {
+        Object[] copy = new Object[array.length + 2];
+        System.arraycopy(array, 0, copy, 0, i);
+        copy[i] = key;
+        copy[i + 1] = value;
+        System.arraycopy(array, i, copy, i + 2, array.length - i);
+        return copy;
+    }
+
+    private static Object[] removePair(Object[] array, int i) {
+        Object[] copy = new Object[array.length - 2];
+        System.arraycopy(array, 0, copy, 0, i);
+        System.arraycopy(array, i + 2, copy, i, copy.length - i);
+        return copy;
+    }
+
+    private static Object[] replace(Object[] array, int i, Object key, Object value) {
+        Object[] copy = array.clone();
+        copy[i] = key;
+        copy[i + 1] = value;
+        return copy;
+    }
+
+    /**
+     * Node of the trie.
+     */
+    private abstract static class TrieNode {
+
+        /**
+         * Returns the value of the given key or {@link #NOT_FOUND}.
+         */
+        abstract Object find(int hash, int shift, Object key);
+
+        /**
+         * Returns a node with the given mapping, or this node if the key is
+         * already mapped to the given value. Sets <code>added[0]</code> if
+         * the key was not mapped before.
+         */
+        abstract TrieNode put(
+                int hash, int shift, Object key, Object value, boolean[] added);
+
+        /**
+         * Returns a node without the given key, this node if the key is not
+         * mapped, or <code>null</code> if the resulting node is empty.
+         */
+        abstract TrieNode remove(int hash, int shift, Object key);
+
+        /**
+         * Adds the keys of this node that are not mapped to the same value
+         * instance by the given node at the same level of another trie.
+         */
+        abstract void diff(TrieNode other, int shift, List<Object> keys);
+
+        /**
+         * Adds the keys of this node that are not mapped to the same value
+         * instance by the given node at the given level, or all keys if the
+         * given node is <code>null</code>.
+         */
+        void collect(TrieNode other, int otherShift, List<Object> keys) {
+            Object[] array = array();
+            for (int i = 0; i < array.length; i += 2) {
+                Object k = array[i];
+                if (k == null) {
+                    ((TrieNode) array[i + 1]).collect(other, otherShift, keys);
+                } else if (other == null
+                        || other.find(hash(k), otherShift, k) != array[i + 1]) {
+                    keys.add(k);
+                }
+            }
+        }
+
+        /**
+         * Returns the key and value pairs of this node.
+         */
+        abstract Object[] array();
+
+    }
+
+    /**
+     * Trie node with up to 32 slots, of which only the used ones are
+     * allocated. Each slot is a pair of either key and value, or
+     * <code>null</code> and a child node.
+     */
+    private static final class BitmapNode extends TrieNode {
+
+        private final int bitmap;
+
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int hash, int shift, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = index(bit);
+            Object k = array[i];
+            if (k == null) {
+                return ((TrieNode) array[i + 1]).find(hash, shift + BITS, key);
+            } else if (key.equals(k)) {
+                return array[i + 1];
+            } else {
+                return NOT_FOUND;
+            }
+        }
+
+        @Override
+        TrieNode put(int hash, int shift, Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, insertPair(array, i, key, value));
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                TrieNode child = (TrieNode) v;
+                TrieNode node = child.put(hash, shift + BITS, key, value, added);
+                if (node == child) {
+                    return this;
+                }
+                return new BitmapNode(bitmap, replace(array, i, null, node));
+            } else if (key.equals(k)) {
+                if (v == value) {
+                    return this;
+                }
+                return new BitmapNode(bitmap, replace(array, i, k, value));
+            } else {
+                added[0] = true;
+                TrieNode node = create(shift + BITS, k, v, hash, key, value);
+                return new BitmapNode(bitmap, replace(array, i, null, node));
+            }
+        }
+
+        @Override
+        TrieNode remove(int hash, int shift, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit);
+            Object k = array[i];
+            if (k == null) {
+                TrieNode child = (TrieNode) array[i + 1];
+                TrieNode node = child.remove(hash, shift + BITS, key);
+                if (node == child) {
+                    return this;
+                } else if (node != null) {
+                    return new BitmapNode(bitmap, replace(array, i, null, node));
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            return new BitmapNode(bitmap ^ bit, removePair(array, i));
+        }
+
+        @Override
+        void diff(TrieNode other, int shift, List<Object> keys) {
+            if (other == this) {
+                return;
+            } else if (!(other instanceof BitmapNode)) {
+                collect(other, shift, keys);
+                return;
+            }
+            BitmapNode that = (BitmapNode) other;
+            int i = 0;
+            for (int bits = bitmap; bits != 0; bits &= bits - 1, i += 2) {
+                int bit = Integer.lowestOneBit(bits);
+                Object k = array[i];
+                Object v = array[i + 1];
+                if ((that.bitmap & bit) == 0) {
+                    if (k == null) {
+                        ((TrieNode) v).collect(null, 0, keys);
+                    } else {
+                        keys.add(k);
+                    }
+                    continue;
+                }
+                int j = that.index(bit);
+                Object otherKey = that.array[j];
+                Object otherValue = that.array[j + 1];
+                if (k == null && otherKey == null) {
+                    ((TrieNode) v).diff((TrieNode) otherValue, shift + BITS, keys);
+                } else if (k == null) {
+                    ((TrieNode) v).collect(that, shift, keys);
+                } else if (otherKey == null) {
+                    if (((TrieNode) otherValue).find(hash(k), shift + BITS, k) != v) {
+                        keys.add(k);
+                    }
+                } else if (v != otherValue || !k.equals(otherKey)) {
+                    keys.add(k);
+                }
+            }
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+
+        /**
+         * Creates a node that contains two mappings with different keys.
+         */
+        private static TrieNode create(
+                int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+            int h1 = hash(k1);
+            if (h1 == h2) {
+                return new CollisionNode(h1, new Object[] {k1, v1, k2, v2});
+            }
+            boolean[] added = new boolean[1];
+            return new BitmapNode(bit(h1, shift), new Object[] {k1, v1})
+                    .put(h2, shift, k2, v2, added);
+        }
+
+    }
+
+    /**
+     * Trie node with the mappings of keys that have the same hash code.
+     */
+    private static final class CollisionNode extends TrieNode {
+
+        private final int hash;
+
+        private final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int index(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int hash, int shift, Object key) {
+            int i = index(key);
+            return i < 0 ? NOT_FOUND : array[i + 1];
+        }
+
+        @Override
+        TrieNode put(int hash, int shift, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // push this node one level down
+                return new BitmapNode(bit(this.hash, shift), new Object[] {null, this})
+                        .put(hash, shift, key, value, added);
+            }
+            int i = index(key);
+            if (i < 0) {
+                added[0] = true;
+                return new CollisionNode(hash, insertPair(array, array.length, key, value));
+            } else if (array[i + 1] == value) {
+                return this;
+            }
+            return new CollisionNode(hash, replace(array, i, key, value));
+        }
+
+        @Override
+        TrieNode remove(int hash, int shift, Object key) {
+            int i = index(key);
+            if (i < 0) {
+                return this;
+            } else if (array.length == 2) {
+                return null;
+            }
+            return new CollisionNode(hash, removePair(array, i));
+        }
+
+        @Override
+        void diff(TrieNode other, int shift, List<Object> keys) {
+            if (other != this) {
+                collect(other, shift, keys);
+            }
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+
+    }
+
+}
@@ -16,65 +16,158 @@
  */
 package org.apache.jackrabbit.core.util;
 
+import static org.apache.jackrabbit.data.core.TransactionContext.getCurrentThreadId;
 import static org.apache.jackrabbit.data.core.TransactionContext.isSameThreadId;
 
-import org.apache.jackrabbit.data.core.TransactionContext;
-
-import EDU.oswego.cs.dl.util.concurrent.ReentrantLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A reentrant lock for synchronization. 
  * Unlike a normal reentrant lock, this one allows the lock
  * to be re-entered not just by a thread that's already holding the lock but
  * by any thread within the same transaction.
+ * <p>
+ * Waiting threads are parked using a {@link Condition} and not an object
+ * monitor.
  */
-public class XAReentrantLock extends ReentrantLock {
-	
-	/**
-	 * The active lock holder of this {@link ReentrantLock}
-	 */
+public class XAReentrantLock implements Lock {
+
+    /**
+     * Guards the state of this lock.
+     */
+    private final ReentrantLock sync = new ReentrantLock();
+
+    /**
+     * Signalled when the lock becomes available.
+     */
+    private final Condition released = sync.newCondition();
+
+    /**
+     * The active lock holder of this lock
+     */
     private Object activeId;
 
+    /**
+     * The number of holds of the active lock holder.
+     */
+    private int holds;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void lock() {
+        Object currentId = getCurrentThreadId();
+        sync.lock();
+        try {
+            while (!tryAcquire(currentId)) {
+                released.awaitUninterruptibly();
+            }
+        } finally {
+            sync.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void lockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        Object currentId = getCurrentThreadId();
+        sync.lock();
+        try {
+            while (!tryAcquire(currentId)) {
+                released.await();
+            }
+        } finally {
+            sync.unlock();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
-    @Override
-    public void acquire() throws InterruptedException {
+    public boolean tryLock() {
+        Object currentId = getCurrentThreadId();
+        sync.lock();
+        try {
+            return tryAcquire(currentId);
+        } finally {
+            sync.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean tryLock(long time, TimeUnit unit)
+            throws InterruptedException {
         if (Thread.interrupted()) {
             throw new InterruptedException();
         }
-        Object currentId = TransactionContext.getCurrentThreadId();
-        synchronized(this) {
-            if (currentId == activeId || (activeId != null && isSameThreadId(activeId, currentId))) { 
-                ++holds_;
-            } else {
-                try {  
-                    while (activeId != null) {
-                        wait(); 
-                    }
-                    activeId = currentId;
-                    holds_ = 1;
-                } catch (InterruptedException ex) {
-                    notify();
-                    throw ex;
+        long nanos = unit.toNanos(time);
+        Object currentId = getCurrentThreadId();
+        sync.lock();
+        try {
+            while (!tryAcquire(currentId)) {
+                if (nanos <= 0) {
+                    return false;
                 }
+                nanos = released.awaitNanos(nanos);
             }
+            return true;
+        } finally {
+            sync.unlock();
         }
     }
 
     /**
      * {@inheritDoc}
+     *
+     * @throws IllegalMonitorStateException if the lock is not held by the
+     *         current thread or transaction
      */
-    @Override
-    public synchronized void release()  {
-        Object currentId = TransactionContext.getCurrentThreadId();
-        if (activeId != null && !isSameThreadId(activeId, currentId)) {
-            throw new Error("Illegal Lock usage"); 
+    public void unlock() {
+        Object currentId = getCurrentThreadId();
+        sync.lock();
+        try {
+            if (holds == 0 || !isSameThreadId(activeId, currentId)) {
+                throw new IllegalMonitorStateException("Illegal Lock usage");
+            }
+            if (--holds == 0) {
+                activeId = null;
+                released.signal();
+            }
+        } finally {
+            sync.unlock();
         }
+    }
 
-        if (--holds_ == 0) {
-            activeId = null;
-            notify(); 
+    /**
+     * Conditions are not supported by this lock.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public Condition newCondition() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Acquires the lock if it is free or already held by the given thread
+     * or transaction. The caller must hold {@link #sync}.
+     */
+    private boolean tryAcquire(Object currentId) {
+        if (activeId == null) {
+            activeId = currentId;
+        } else if (!isSameThreadId(activeId, currentId)) {
+            return false;
         }
+        ++holds;
+        return true;
     }
+
 }
@@ -18,113 +18,300 @@ package org.apache.jackrabbit.core.util;
 
 import static org.apache.jackrabbit.data.core.TransactionContext.getCurrentThreadId;
 import static org.apache.jackrabbit.data.core.TransactionContext.isSameThreadId;
-import EDU.oswego.cs.dl.util.concurrent.ReentrantWriterPreferenceReadWriteLock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A reentrant read-write lock for synchronization. 
  * Unlike a normal reentrant lock, this one allows the lock
  * to be re-entered not just by a thread that's already holding the lock but
  * by any thread within the same transaction.
+ * <p>
+ * Writers are preferred: new readers wait while a writer is waiting, unless
+ * they already hold the read or write lock. A holder of the write lock may
+ * acquire the read lock (and release the write lock to downgrade), and the
+ * only holder of the read lock may acquire the write lock. The write lock
+ * may be released by any thread, as a transaction may be committed by a
+ * different thread than the one that prepared it.
+ * <p>
+ * Waiting threads are parked using {@link Condition}s and not object
+ * monitors.
  */
-public class XAReentrantWriterPreferenceReadWriteLock extends ReentrantWriterPreferenceReadWriteLock{
-	
-	private Object activeWriter;
-    
+public class XAReentrantWriterPreferenceReadWriteLock implements ReadWriteLock {
+
+    /**
+     * Guards the state of this lock.
+     */
+    private final ReentrantLock sync = new ReentrantLock();
+
+    /**
+     * Signalled when waiting readers may be able to proceed.
+     */
+    private final Condition readerCondition = sync.newCondition();
+
+    /**
+     * Signalled when waiting writers may be able to proceed.
+     */
+    private final Condition writerCondition = sync.newCondition();
+
+    /**
+     * The thread or transaction holding the write lock.
+     */
+    private Object activeWriter;
+
+    private int writeHolds;
+
+    /**
+     * Read holds per thread or transaction.
+     */
+    private final Map<Object, Integer> readers = new HashMap<Object, Integer>();
+
+    private int activeReaders;
+
+    private int waitingReaders;
+
+    private int waitingWriters;
+
+    private final Lock readLock = new ReaderLock();
+
+    private final Lock writeLock = new WriterLock();
+
     /**
      * {@inheritDoc}
      */
-    protected boolean allowReader() {
-        Object currentId = getCurrentThreadId();
-        return (activeWriter == null && waitingWriters_ == 0) || isSameThreadId(activeWriter, currentId);
+    public Lock readLock() {
+        return readLock;
     }
 
     /**
      * {@inheritDoc}
      */
-    protected synchronized boolean startWrite() {
-    	Object currentId = getCurrentThreadId();
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    //-------------------------------------------------------------< internal >
+
+    private boolean allowReader(Object currentId) {
+        return (activeWriter == null && waitingWriters == 0)
+                || isSameThreadId(activeWriter, currentId);
+    }
+
+    private boolean startRead(Object currentId) {
+        Integer holds = readers.get(currentId);
+        if (holds != null) { // already held -- just increment hold count
+            readers.put(currentId, holds + 1);
+        } else if (allowReader(currentId)) {
+            readers.put(currentId, 1);
+        } else {
+            return false;
+        }
+        ++activeReaders;
+        return true;
+    }
+
+    private boolean startWrite(Object currentId) {
         if (activeWriter != null && isSameThreadId(activeWriter, currentId)) { // already held; re-acquire
-        	++writeHolds_;
+            ++writeHolds;
+            return true;
+        } else if (writeHolds == 0 && (activeReaders == 0
+                || (readers.size() == 1 && readers.containsKey(currentId)))) {
+            activeWriter = currentId;
+            writeHolds = 1;
             return true;
-        } else if (writeHolds_ == 0) {
-        	if (activeReaders_ == 0 || (readers_.size() == 1 && readers_.get(currentId) != null)) {
-        		activeWriter = currentId;
-        		writeHolds_ = 1;
-        		return true;
-        	} else {
-        		return false;
-        	}
         } else {
-        	return false;
+            return false;
         }
     }
 
     /**
-     * {@inheritDoc}
+     * Acquires the read or write lock.
+     *
+     * @param write whether to acquire the write lock
+     * @param interruptible whether waiting can be interrupted
+     * @param nanos the maximum time to wait, or a negative value to wait
+     *              until the lock is acquired
+     * @return whether the lock was acquired
+     * @throws InterruptedException if interrupted while waiting
      */
-    protected synchronized Signaller endWrite() {
-        --writeHolds_;
-        if (writeHolds_ > 0) {  // still being held
-        	return null;
-        } else {
-        	activeWriter = null;
-            if (waitingReaders_ > 0 && allowReader()) {
-                return readerLock_;
-            } else if (waitingWriters_ > 0) {
-                return writerLock_;
+    private boolean acquire(boolean write, boolean interruptible, long nanos)
+            throws InterruptedException {
+        if (interruptible && Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        Object currentId = getCurrentThreadId();
+        sync.lock();
+        try {
+            if (write ? startWrite(currentId) : startRead(currentId)) {
+                return true;
+            } else if (nanos == 0) {
+                return false;
+            }
+            Condition condition = write ? writerCondition : readerCondition;
+            boolean acquired = false;
+            if (write) {
+                ++waitingWriters;
             } else {
-                return null;
+                ++waitingReaders;
             }
+            try {
+                while (!acquired) {
+                    if (nanos < 0) {
+                        if (interruptible) {
+                            condition.await();
+                        } else {
+                            condition.awaitUninterruptibly();
+                        }
+                    } else if (nanos > 0) {
+                        nanos = Math.max(condition.awaitNanos(nanos), 0);
+                    } else {
+                        break;
+                    }
+                    acquired = write ? startWrite(currentId) : startRead(currentId);
+                }
+            } finally {
+                if (write) {
+                    --waitingWriters;
+                    if (!acquired) {
+                        // readers may have been waiting for this writer,
+                        // and a signal to this writer is passed on
+                        readerCondition.signalAll();
+                        writerCondition.signal();
+                    }
+                } else {
+                    --waitingReaders;
+                }
+            }
+            return acquired;
+        } finally {
+            sync.unlock();
+        }
+    }
+
+    private void endRead() {
+        Object currentId = getCurrentThreadId();
+        sync.lock();
+        try {
+            Integer holds = readers.get(currentId);
+            if (holds == null) {
+                throw new IllegalMonitorStateException();
+            }
+            --activeReaders;
+            if (holds > 1) { // more than one hold; decrement count
+                readers.put(currentId, holds - 1);
+            } else {
+                readers.remove(currentId);
+                if (writeHolds == 0 && waitingWriters > 0) {
+                    if (activeReaders == 0) {
+                        writerCondition.signal();
+                    } else if (readers.size() == 1) {
+                        // the remaining reader may wait for the write lock
+                        writerCondition.signalAll();
+                    }
+                }
+            }
+        } finally {
+            sync.unlock();
+        }
+    }
+
+    private void endWrite() {
+        sync.lock();
+        try {
+            if (writeHolds == 0) {
+                throw new IllegalMonitorStateException();
+            }
+            if (--writeHolds == 0) {
+                activeWriter = null;
+                if (waitingWriters > 0) {
+                    // waiting readers are blocked by the waiting writers
+                    writerCondition.signal();
+                } else if (waitingReaders > 0) {
+                    readerCondition.signalAll();
+                }
+            }
+        } finally {
+            sync.unlock();
         }
     }
 
     /**
-     * {@inheritDoc}
-     */
-	@SuppressWarnings("unchecked")
-	protected synchronized boolean startRead() {
-		Object currentId = getCurrentThreadId();
-	    Object c = readers_.get(currentId);
-	    if (c != null) { // already held -- just increment hold count
-	    	readers_.put(currentId, new Integer(((Integer)(c)).intValue()+1));
-	    	++activeReaders_;
-	    	return true;
-	    } else if (allowReader()) {
-	    	readers_.put(currentId, IONE);
-	    	++activeReaders_;
-	    	return true;
-	    } else {
-	    	return false;
-	    }
-	}
-	
-    /**
-     * {@inheritDoc}
+     * Base class of the read and write lock views.
      */
-	@SuppressWarnings("unchecked")
-	protected synchronized Signaller endRead() {
-		Object currentId = getCurrentThreadId();
-	    Object c = readers_.get(currentId);
-	    if (c == null) {
-	    	throw new IllegalStateException();
-	    }
-	    --activeReaders_;
-	    if (c != IONE) { // more than one hold; decrement count
-	    	int h = ((Integer)(c)).intValue()-1;
-	    	Integer ih = (h == 1)? IONE : new Integer(h);
-	    	readers_.put(currentId, ih);
-	    	return null;
-	    } else {
-	    	readers_.remove(currentId);
-	    
-	    	if (writeHolds_ > 0) { // a write lock is still held
-	    		return null;
-	    	} else if (activeReaders_ == 0 && waitingWriters_ > 0) {
-	    		return writerLock_;
-	    	} else  {
-	    		return null;
-	    	}
-	    }
-	}
+    private abstract class AbstractLock implements Lock {
+
+        private final boolean write;
+
+        protected AbstractLock(boolean write) {
+            this.write = write;
+        }
+
+        public void lock() {
+            try {
+                acquire(write, false, -1);
+            } catch (InterruptedException e) {
+                // not thrown when waiting uninterruptibly
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public void lockInterruptibly() throws InterruptedException {
+            acquire(write, true, -1);
+        }
+
+        public boolean tryLock() {
+            try {
+                return acquire(write, false, 0);
+            } catch (InterruptedException e) {
+                // not thrown without waiting
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public boolean tryLock(long time, TimeUnit unit)
+                throws InterruptedException {
+            return acquire(write, true, Math.max(unit.toNanos(time), 0));
+        }
+
+        /**
+         * Conditions are not supported by this lock.
+         *
+         * @throws UnsupportedOperationException always
+         */
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    private class ReaderLock extends AbstractLock {
+
+        ReaderLock() {
+            super(false);
+        }
+
+        public void unlock() {
+            endRead();
+        }
+
+    }
+
+    private class WriterLock extends AbstractLock {
+
+        WriterLock() {
+            super(true);
+        }
+
+        public void unlock() {
+            endWrite();
+        }
+
+    }
 
 }
@@ -16,10 +16,10 @@
  */
 package org.apache.jackrabbit.core.version;
 
-import org.apache.jackrabbit.core.util.XAReentrantWriterPreferenceReadWriteLock;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 
-import EDU.oswego.cs.dl.util.concurrent.ReadWriteLock;
-import EDU.oswego.cs.dl.util.concurrent.Sync;
+import org.apache.jackrabbit.core.util.XAReentrantWriterPreferenceReadWriteLock;
 
 /**
  * A reentrant read-write lock used by the internal version manager for
@@ -49,11 +49,11 @@ public class VersioningLock {
         private WriteLock(ReadWriteLock readWriteLock)
                 throws InterruptedException {
             this.readWriteLock = readWriteLock;
-            this.readWriteLock.writeLock().acquire();
+            this.readWriteLock.writeLock().lockInterruptibly();
         }
 
         public void release() {
-            readWriteLock.writeLock().release();
+            readWriteLock.writeLock().unlock();
         }
 
         public ReadLock downgrade() throws InterruptedException {
@@ -66,15 +66,15 @@ public class VersioningLock {
 
     public static class ReadLock {
 
-        private final Sync readLock;
+        private final Lock readLock;
 
-        private ReadLock(Sync readLock) throws InterruptedException {
+        private ReadLock(Lock readLock) throws InterruptedException {
             this.readLock = readLock;
-            this.readLock.acquire();
+            this.readLock.lockInterruptibly();
         }
 
         public void release() {
-            readLock.release();
+            readLock.unlock();
         }
 
     }
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.xml;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.ValueFormatException;
+
+import org.apache.jackrabbit.core.data.DataStore;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.spi.commons.conversion.NamePathResolver;
+import org.apache.jackrabbit.spi.commons.value.ValueFormat;
+import org.apache.jackrabbit.value.ValueHelper;
+
+/**
+ * <code>BinaryDecoder</code> decodes the base64 encoded binary values of an
+ * import in background threads while the XML document is parsed. The
+ * decoded binaries are written to the data store (if one is configured), so
+ * that they do not need to be copied again when the imported items are
+ * persisted.
+ * <p>
+ * The number of values that are decoded or waiting to be decoded is limited,
+ * parsing blocks until a decoder thread becomes available.
+ */
+class BinaryDecoder {
+
+    /**
+     * The decoder threads.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Limits the number of values that are decoded or waiting to be decoded.
+     */
+    private final Semaphore pending;
+
+    /**
+     * The data store or <code>null</code> if none is configured.
+     */
+    private final DataStore store;
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param threads number of decoder threads.
+     * @param store   the data store or <code>null</code>.
+     */
+    BinaryDecoder(int threads, DataStore store) {
+        ThreadFactory f = new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "BinaryDecoder");
+                t.setDaemon(true);
+                return t;
+            }
+        };
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 1000, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), f);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.pending = new Semaphore(threads * 2);
+        this.store = store;
+    }
+
+    /**
+     * Starts decoding the given base64 encoded binary value. The returned
+     * value takes the ownership of the given value, which is disposed
+     * once it is decoded.
+     *
+     * @param value        the encoded value.
+     * @param nsContext    the namespace context of the value.
+     * @param valueFactory the value factory.
+     * @return a value that waits for the decoded binary when it is accessed.
+     * @throws RepositoryException if interrupted while waiting for a decoder
+     *                             thread.
+     */
+    TextValue decode(final BufferedStringValue value,
+                     NamePathResolver nsContext,
+                     ValueFactory valueFactory) throws RepositoryException {
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            value.dispose();
+            throw new RepositoryException("Interrupted while decoding binary", e);
+        }
+        Future<InternalValue> future;
+        try {
+            future = executor.submit(new Callable<InternalValue>() {
+                public InternalValue call() throws Exception {
+                    try {
+                        return value.getInternalValue(PropertyType.BINARY, store);
+                    } finally {
+                        value.dispose();
+                        pending.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.release();
+            value.dispose();
+            throw e;
+        }
+        return new DecodedValue(future, nsContext, valueFactory);
+    }
+
+    /**
+     * Stops the decoder threads once all pending values are decoded.
+     */
+    void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * A binary value that is decoded in the background.
+     */
+    private static class DecodedValue implements TextValue {
+
+        private final Future<InternalValue> future;
+
+        private final NamePathResolver nsContext;
+
+        private final ValueFactory valueFactory;
+
+        private DecodedValue(Future<InternalValue> future,
+                             NamePathResolver nsContext,
+                             ValueFactory valueFactory) {
+            this.future = future;
+            this.nsContext = nsContext;
+            this.valueFactory = valueFactory;
+        }
+
+        private InternalValue get() throws RepositoryException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                throw new RepositoryException("Interrupted while decoding binary", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RepositoryException) {
+                    throw (RepositoryException) cause;
+                }
+                throw new RepositoryException("Failed to decode binary", cause);
+            }
+        }
+
+        //----------------------------------------------------< TextValue >
+
+        public Value getValue(int type, NamePathResolver resolver)
+                throws ValueFormatException, RepositoryException {
+            Value value = ValueFormat.getJCRValue(get(), resolver, valueFactory);
+            if (type == PropertyType.BINARY) {
+                return value;
+            } else {
+                return ValueHelper.convert(value, type, valueFactory);
+            }
+        }
+
+        public InternalValue getInternalValue(int type)
+                throws ValueFormatException, RepositoryException {
+            InternalValue value = get();
+            if (type == PropertyType.BINARY) {
+                return value;
+            } else {
+                return InternalValue.create(ValueHelper.convert(
+                        value.getString(), type, valueFactory), nsContext);
+            }
+        }
+
+        public void dispose() {
+            // the encoded value is disposed once decoded, the decoded value
+            // is owned by the imported property
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.jackrabbit.core.xml;
 
+import org.apache.jackrabbit.core.data.DataStore;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.jackrabbit.util.Base64;
 import org.apache.jackrabbit.util.TransientFileFactory;
@@ -276,6 +277,22 @@ class BufferedStringValue implements TextValue {
 
     public InternalValue getInternalValue(int type)
             throws ValueFormatException, RepositoryException {
+        return getInternalValue(type, null);
+    }
+
+    /**
+     * Returns the internal value of the given type. Large binary values are
+     * decoded to the given data store if one is passed, or to a temporary
+     * file otherwise.
+     *
+     * @param type  the target type
+     * @param store the data store or <code>null</code>
+     * @return the internal value
+     * @throws ValueFormatException if the value cannot be converted
+     * @throws RepositoryException if another error occurs
+     */
+    InternalValue getInternalValue(int type, DataStore store)
+            throws ValueFormatException, RepositoryException {
         try {
             if (type == PropertyType.BINARY) {
                 // base64 encoded BINARY type;
@@ -291,7 +308,15 @@ class BufferedStringValue implements TextValue {
                     // >= 65kb: deserialize BINARY type
                     // using Reader and temporary file
                     Base64ReaderInputStream in = new Base64ReaderInputStream(reader());
-                    return InternalValue.createTemporary(in);
+                    try {
+                        if (store != null) {
+                            return InternalValue.create(in, store);
+                        } else {
+                            return InternalValue.createTemporary(in);
+                        }
+                    } finally {
+                        in.close();
+                    }
                 }
             } else {
                 // convert serialized value to InternalValue using
@@ -346,6 +371,11 @@ class BufferedStringValue implements TextValue {
             remaining--;
             return buffer[pos++] & 0xff;
         }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
     }
 
     /**
@@ -23,6 +23,7 @@ import javax.jcr.Session;
 import javax.jcr.ValueFactory;
 
 import org.apache.jackrabbit.commons.NamespaceHelper;
+import org.apache.jackrabbit.core.data.DataStore;
 import org.apache.jackrabbit.spi.Name;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,6 +63,11 @@ public class ImportHandler extends DefaultHandler {
 
     private TargetImportHandler targetHandler = null;
 
+    /**
+     * Decodes binary values in the background, or <code>null</code>.
+     */
+    private final BinaryDecoder binaryDecoder;
+
     /**
      * The local namespace mappings reported by
      * {@link #startPrefixMapping(String, String)}. These mappings are used
@@ -72,10 +78,35 @@ public class ImportHandler extends DefaultHandler {
 
     public ImportHandler(Importer importer, Session session)
             throws RepositoryException {
+        this(importer, session, 0, null);
+    }
+
+    /**
+     * Creates an import handler that decodes the binary values of a system
+     * view document with the given number of background threads while the
+     * document is parsed.
+     *
+     * @param importer the importer
+     * @param session the session
+     * @param binaryThreads number of threads that decode binary values, or
+     *                      zero to decode them when the properties are
+     *                      imported
+     * @param store the data store the decoded binaries are written to, or
+     *              <code>null</code> to write them to temporary files
+     * @throws RepositoryException if an error occurs
+     */
+    public ImportHandler(Importer importer, Session session,
+                         int binaryThreads, DataStore store)
+            throws RepositoryException {
         this.importer = importer;
         this.helper = new NamespaceHelper(session);
         this.localNamespaceMappings = helper.getNamespaces();
         this.valueFactory = session.getValueFactory();
+        if (binaryThreads > 0) {
+            binaryDecoder = new BinaryDecoder(binaryThreads, store);
+        } else {
+            binaryDecoder = null;
+        }
     }
 
     //---------------------------------------------------------< ErrorHandler >
@@ -110,6 +141,9 @@ public class ImportHandler extends DefaultHandler {
         log.error("fatal error encountered at line: " + e.getLineNumber()
                 + ", column: " + e.getColumnNumber()
                 + " while parsing XML stream: " + e.toString());
+        if (binaryDecoder != null) {
+            binaryDecoder.close();
+        }
         throw e;
     }
 
@@ -120,9 +154,15 @@ public class ImportHandler extends DefaultHandler {
      */
     @Override
     public void endDocument() throws SAXException {
-        // delegate to target handler
-        if (targetHandler != null) {
-            targetHandler.endDocument();
+        try {
+            // delegate to target handler
+            if (targetHandler != null) {
+                targetHandler.endDocument();
+            }
+        } finally {
+            if (binaryDecoder != null) {
+                binaryDecoder.close();
+            }
         }
     }
 
@@ -159,7 +199,8 @@ public class ImportHandler extends DefaultHandler {
             // the namespace of the first element determines the type of XML
             // (system view/document view)
             if (Name.NS_SV_URI.equals(namespaceURI)) {
-                targetHandler = new SysViewImportHandler(importer, valueFactory);
+                targetHandler = new SysViewImportHandler(
+                        importer, valueFactory, binaryDecoder);
             } else {
                 targetHandler = new DocViewImportHandler(importer, valueFactory);
             }
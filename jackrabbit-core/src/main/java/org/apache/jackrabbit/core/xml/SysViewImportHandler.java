@@ -61,6 +61,12 @@ class SysViewImportHandler extends TargetImportHandler {
         new ArrayList<BufferedStringValue>();
     private BufferedStringValue currentPropValue;
 
+    /**
+     * decodes binary values in the background or <code>null</code> if
+     * binary values are decoded when the property is imported
+     */
+    private final BinaryDecoder binaryDecoder;
+
     /**
      * Constructs a new <code>SysViewImportHandler</code>.
      *
@@ -68,7 +74,20 @@ class SysViewImportHandler extends TargetImportHandler {
      * @param valueFactory the value factory
      */
     SysViewImportHandler(Importer importer, ValueFactory valueFactory) {
+        this(importer, valueFactory, null);
+    }
+
+    /**
+     * Constructs a new <code>SysViewImportHandler</code>.
+     *
+     * @param importer the underlying importer
+     * @param valueFactory the value factory
+     * @param binaryDecoder decoder for binary values or <code>null</code>
+     */
+    SysViewImportHandler(Importer importer, ValueFactory valueFactory,
+                         BinaryDecoder binaryDecoder) {
         super(importer, valueFactory);
+        this.binaryDecoder = binaryDecoder;
     }
 
     private void processNode(ImportState state, boolean start, boolean end)
@@ -301,10 +320,24 @@ class SysViewImportHandler extends TargetImportHandler {
                         && currentPropValues.size() != 1) {
                     currentPropMultipleStatus = MultipleStatus.MULTIPLE;
                 }
+                TextValue[] values = currentPropValues.toArray(
+                        new TextValue[currentPropValues.size()]);
+                if (binaryDecoder != null
+                        && currentPropType == PropertyType.BINARY) {
+                    // decode while parsing continues
+                    try {
+                        for (int i = 0; i < values.length; i++) {
+                            values[i] = binaryDecoder.decode(
+                                    currentPropValues.get(i), resolver, valueFactory);
+                        }
+                    } catch (RepositoryException e) {
+                        throw new SAXException(e);
+                    }
+                }
                 PropInfo prop = new PropInfo(
                         currentPropName,
                         currentPropType,
-                        currentPropValues.toArray(new TextValue[currentPropValues.size()]),
+                        values,
                         currentPropMultipleStatus);
                 state.props.add(prop);
             }
@@ -52,8 +52,10 @@ import javax.jcr.nodetype.ConstraintViolationException;
 import javax.jcr.version.VersionException;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
 /**
@@ -75,6 +77,44 @@ public class WorkspaceImporter implements Importer {
     private boolean aborted;
     private final Stack<NodeState> parents;
 
+    /**
+     * Number of nodes after which the imported items are persisted, or zero
+     * if the import is persisted at once.
+     */
+    private final int batchSize;
+
+    /**
+     * Number of nodes imported since the last batch was persisted.
+     */
+    private int batchCount;
+
+    /**
+     * Reference properties imported since the last batch was persisted.
+     * Only used when importing in batches, otherwise the references are
+     * tracked by the {@link #refTracker}.
+     */
+    private final List<PropertyState> batchReferences = new ArrayList<PropertyState>();
+
+    /**
+     * Number of {@link #batchReferences} whose referenced nodes are known
+     * to exist.
+     */
+    private int checkedReferences;
+
+    /**
+     * Original uuids of the nodes imported since the last batch was
+     * persisted that have been mapped to new uuids.
+     */
+    private final List<NodeId> batchMappings = new ArrayList<NodeId>();
+
+    /**
+     * Persisted reference properties by the uuids they refer to that have
+     * not been mapped yet. Only used when importing in batches with
+     * {@link ImportUUIDBehavior#IMPORT_UUID_CREATE_NEW}.
+     */
+    private final Map<NodeId, List<PropertyId>> unresolvedReferences =
+            new HashMap<NodeId, List<PropertyId>>();
+
     /**
      * helper object that keeps track of remapped uuid's and imported reference
      * properties that might need correcting depending on the uuid mappings
@@ -156,6 +196,8 @@ public class WorkspaceImporter implements Importer {
         parents = new Stack<NodeState>();
         parents.push(importTarget);
 
+        batchSize = (config != null) ? config.getBatchSize() : 0;
+
         // TODO: TOBEFIXED importer doesn't yet pass protected items to the configured importers.
         // for the time being log an exception if an importer is configured that
         // is expected to work with workspace import. see JCR-2521
@@ -198,6 +240,9 @@ public class WorkspaceImporter implements Importer {
             EffectiveNodeType ent = itemOps.getEffectiveNodeType(node);
             if (ent.includesNodeType(NameConstants.MIX_REFERENCEABLE)) {
                 refTracker.mappedId(nodeInfo.getId(), node.getNodeId());
+                if (batchSize > 0) {
+                    batchMappings.add(nodeInfo.getId());
+                }
             }
         } else if (uuidBehavior == ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW) {
             // if existing node is shareable, then instead of failing, create
@@ -446,7 +491,11 @@ public class WorkspaceImporter implements Importer {
         if (prop.getType() == PropertyType.REFERENCE
                 || prop.getType() == PropertyType.WEAKREFERENCE) {
             // store reference for later resolution
-            refTracker.processedReference(prop);
+            if (batchSize > 0) {
+                batchReferences.add(prop);
+            } else {
+                refTracker.processedReference(prop);
+            }
         }
 
         // store property
@@ -672,6 +721,10 @@ public class WorkspaceImporter implements Importer {
 
             // we're done with that node, now store its state
             itemOps.store(node);
+
+            if (batchSize > 0 && ++batchCount >= batchSize) {
+                persistBatch();
+            }
             succeeded = true;
         } finally {
             if (!succeeded) {
@@ -700,35 +753,12 @@ public class WorkspaceImporter implements Importer {
              * adjust references that refer to uuids which have been mapped to
              * newly generated uuids on import
              */
-            Iterator<Object> iter = refTracker.getProcessedReferences();
-            while (iter.hasNext()) {
-                PropertyState prop = (PropertyState) iter.next();
-                // being paranoid...
-                if (prop.getType() != PropertyType.REFERENCE
-                    && prop.getType() != PropertyType.WEAKREFERENCE) {
-                    continue;
-                }
-                boolean modified = false;
-                InternalValue[] values = prop.getValues();
-                InternalValue[] newVals = new InternalValue[values.length];
-                for (int i = 0; i < values.length; i++) {
-                    NodeId adjusted =
-                        refTracker.getMappedId(values[i].getNodeId());
-                    if (adjusted != null) {
-                        newVals[i] = InternalValue.create(
-                                adjusted,
-                                prop.getType() != PropertyType.REFERENCE);
-                        modified = true;
-                    } else {
-                        // reference doesn't need adjusting, just copy old value
-                        newVals[i] = values[i];
-                    }
-                }
-                if (modified) {
-                    prop.setValues(newVals);
-                    itemOps.store(prop);
-                }
+            if (uuidBehavior == ImportUUIDBehavior.IMPORT_UUID_CREATE_NEW) {
+                resolveBatchReferences();
             }
+            batchReferences.clear();
+            unresolvedReferences.clear();
+            adjustReferences();
             refTracker.clear();
 
             // make sure import target is valid according to its definition
@@ -752,4 +782,135 @@ public class WorkspaceImporter implements Importer {
         }
     }
 
+    //------------------------------------------------------------< private >
+    /**
+     * Adjusts the processed reference properties that refer to uuids which
+     * have been mapped to newly generated uuids.
+     *
+     * @throws RepositoryException if an error occurs
+     */
+    private void adjustReferences() throws RepositoryException {
+        Iterator<Object> iter = refTracker.getProcessedReferences();
+        while (iter.hasNext()) {
+            PropertyState prop = (PropertyState) iter.next();
+            // being paranoid...
+            if (prop.getType() != PropertyType.REFERENCE
+                && prop.getType() != PropertyType.WEAKREFERENCE) {
+                continue;
+            }
+            if (batchSize > 0) {
+                // the property may have been persisted with an earlier batch
+                prop = itemOps.getPropertyState(prop.getPropertyId());
+            }
+            adjustReference(prop);
+        }
+    }
+
+    /**
+     * Adjusts the values of a reference property that refer to uuids which
+     * have been mapped to newly generated uuids.
+     *
+     * @param prop a reference property
+     */
+    private void adjustReference(PropertyState prop) {
+        boolean modified = false;
+        InternalValue[] values = prop.getValues();
+        InternalValue[] newVals = new InternalValue[values.length];
+        for (int i = 0; i < values.length; i++) {
+            NodeId adjusted =
+                refTracker.getMappedId(values[i].getNodeId());
+            if (adjusted != null) {
+                newVals[i] = InternalValue.create(
+                        adjusted,
+                        prop.getType() != PropertyType.REFERENCE);
+                modified = true;
+            } else {
+                // reference doesn't need adjusting, just copy old value
+                newVals[i] = values[i];
+            }
+        }
+        if (modified) {
+            prop.setValues(newVals);
+            itemOps.store(prop);
+        }
+    }
+
+    /**
+     * Adjusts the reference properties imported since the last batch and
+     * the persisted ones that refer to nodes imported since the last batch.
+     * Properties that still refer to uuids which have not been mapped are
+     * remembered by these uuids, as the nodes may be imported later on.
+     * Each property is thus only adjusted again when a node it refers to
+     * is imported.
+     *
+     * @throws RepositoryException if an error occurs
+     */
+    private void resolveBatchReferences() throws RepositoryException {
+        for (NodeId oldId : batchMappings) {
+            List<PropertyId> propIds = unresolvedReferences.remove(oldId);
+            if (propIds != null) {
+                for (PropertyId propId : propIds) {
+                    adjustReference(itemOps.getPropertyState(propId));
+                }
+            }
+        }
+        batchMappings.clear();
+
+        for (PropertyState prop : batchReferences) {
+            for (InternalValue value : prop.getValues()) {
+                NodeId id = value.getNodeId();
+                if (refTracker.getMappedId(id) == null) {
+                    List<PropertyId> propIds = unresolvedReferences.get(id);
+                    if (propIds == null) {
+                        propIds = new ArrayList<PropertyId>();
+                        unresolvedReferences.put(id, propIds);
+                    }
+                    propIds.add(prop.getPropertyId());
+                }
+            }
+            adjustReference(prop);
+        }
+    }
+
+    /**
+     * Persists the items imported so far and starts a new update operation.
+     * The batch is extended while a reference property refers to a node
+     * that has not been imported yet, as it could not be persisted without
+     * violating referential integrity. The referenced nodes of each
+     * property are only checked until they are found.
+     *
+     * @throws RepositoryException if an error occurs
+     */
+    private void persistBatch() throws RepositoryException {
+        while (checkedReferences < batchReferences.size()) {
+            PropertyState prop = batchReferences.get(checkedReferences);
+            if (prop.getType() == PropertyType.REFERENCE) {
+                for (InternalValue value : prop.getValues()) {
+                    NodeId id = refTracker.getMappedId(value.getNodeId());
+                    if (id == null) {
+                        id = value.getNodeId();
+                    }
+                    try {
+                        itemOps.getNodeState(id);
+                    } catch (ItemNotFoundException e) {
+                        // referenced node not yet imported
+                        return;
+                    }
+                }
+            }
+            checkedReferences++;
+        }
+
+        if (uuidBehavior == ImportUUIDBehavior.IMPORT_UUID_CREATE_NEW) {
+            // uuids of nodes imported later on may still be mapped
+            resolveBatchReferences();
+        }
+        batchReferences.clear();
+        checkedReferences = 0;
+
+        itemOps.update();
+        itemOps.edit();
+        batchCount = 0;
+    }
+
 }
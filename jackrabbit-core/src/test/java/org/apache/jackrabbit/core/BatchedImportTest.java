@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jcr.ImportUUIDBehavior;
+import javax.jcr.Node;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.ObservationManager;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.commons.xml.ParsingContentHandler;
+import org.apache.jackrabbit.core.config.ImportConfig;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.observation.SynchronousEventListener;
+import org.apache.jackrabbit.core.xml.ImportHandler;
+import org.apache.jackrabbit.core.xml.WorkspaceImporter;
+import org.apache.jackrabbit.test.AbstractJCRTest;
+import org.apache.jackrabbit.util.Base64;
+
+/**
+ * <code>BatchedImportTest</code> imports system view documents into a
+ * workspace in batches and with binaries decoded in background threads.
+ */
+public class BatchedImportTest extends AbstractJCRTest {
+
+    private static final int NODES = 10;
+
+    private static final int BINARY_SIZE = 100 * 1024;
+
+    public void testBatchedImport() throws Exception {
+        NodeId[] ids = new NodeId[NODES];
+        for (int i = 0; i < NODES; i++) {
+            ids[i] = NodeId.randomId();
+        }
+        doImport(createXML(ids, true), ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW);
+
+        Node a = testRootNode.getNode("a");
+        for (int i = 0; i < NODES; i++) {
+            Node n = a.getNode("n" + i);
+            assertEquals(ids[i].toString(), n.getIdentifier());
+            assertBinary(i, n.getProperty("data").getBinary().getStream());
+            // the first node refers to the last node, which is imported
+            // after the first batches
+            Node target = n.getProperty("ref").getNode();
+            assertEquals(ids[(i + NODES - 1) % NODES].toString(), target.getIdentifier());
+        }
+    }
+
+    public void testBatchesPersisted() throws Exception {
+        NodeId[] ids = new NodeId[NODES];
+        for (int i = 0; i < NODES; i++) {
+            ids[i] = NodeId.randomId();
+        }
+        List<Integer> batches = doImport(
+                createXML(ids, false), ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW);
+
+        // without forward references every batch is persisted on its own
+        assertEquals(Arrays.asList(4, 3, 3, 1), batches);
+        Node a = testRootNode.getNode("a");
+        for (int i = 1; i < NODES; i++) {
+            Node target = a.getNode("n" + i).getProperty("ref").getNode();
+            assertEquals(ids[i - 1].toString(), target.getIdentifier());
+        }
+    }
+
+    public void testBatchedImportCreateNew() throws Exception {
+        NodeId[] ids = new NodeId[NODES];
+        for (int i = 0; i < NODES; i++) {
+            ids[i] = NodeId.randomId();
+        }
+        String xml = createXML(ids, true);
+        doImport(xml, ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW);
+
+        // import again with new uuids, references are mapped to the new nodes
+        // and the existing nodes with the original uuids satisfy referential
+        // integrity, hence references are mapped across batches
+        List<Integer> batches = doImport(xml, ImportUUIDBehavior.IMPORT_UUID_CREATE_NEW);
+        assertTrue(batches.size() > 1);
+        Node a = testRootNode.getNode("a[2]");
+        for (int i = 0; i < NODES; i++) {
+            Node n = a.getNode("n" + i);
+            assertFalse(ids[i].toString().equals(n.getIdentifier()));
+            assertBinary(i, n.getProperty("data").getBinary().getStream());
+            Node target = n.getProperty("ref").getNode();
+            assertEquals(a.getNode("n" + ((i + NODES - 1) % NODES)).getIdentifier(),
+                    target.getIdentifier());
+        }
+    }
+
+    /**
+     * Imports the given document and returns the number of nodes added by
+     * each persisted batch.
+     */
+    private List<Integer> doImport(String xml, int uuidBehavior) throws Exception {
+        final List<Integer> batches = new ArrayList<Integer>();
+        SynchronousEventListener listener = new SynchronousEventListener() {
+            public void onEvent(EventIterator events) {
+                int added = 0;
+                while (events.hasNext()) {
+                    if (events.nextEvent().getType() == Event.NODE_ADDED) {
+                        added++;
+                    }
+                }
+                batches.add(added);
+            }
+        };
+        ObservationManager obsMgr = superuser.getWorkspace().getObservationManager();
+        obsMgr.addEventListener(listener, Event.NODE_ADDED, testRoot, true, null, null, false);
+        try {
+            SessionImpl s = (SessionImpl) superuser;
+            ImportConfig config = new ImportConfig();
+            config.setBatchSize(3);
+            config.setBinaryThreads(2);
+            WorkspaceImporter importer = new WorkspaceImporter(
+                    s.getQPath(testRoot), (WorkspaceImpl) s.getWorkspace(),
+                    s.context, uuidBehavior, config);
+            ImportHandler handler = new ImportHandler(
+                    importer, s, config.getBinaryThreads(), s.context.getDataStore());
+            new ParsingContentHandler(handler).parse(
+                    new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        } finally {
+            obsMgr.removeEventListener(listener);
+        }
+        superuser.refresh(false);
+        return batches;
+    }
+
+    /**
+     * Creates a document with nodes that refer to their preceding sibling.
+     * The first node refers to the last one if <code>forwardReference</code>
+     * is <code>true</code> and has no reference otherwise.
+     */
+    private static String createXML(NodeId[] ids, boolean forwardReference) throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<sv:node sv:name=\"a\""
+                + " xmlns:jcr=\"http://www.jcp.org/jcr/1.0\""
+                + " xmlns:sv=\"http://www.jcp.org/jcr/sv/1.0\">"
+                + "<sv:property sv:name=\"jcr:primaryType\" sv:type=\"Name\">"
+                + "<sv:value>nt:unstructured</sv:value></sv:property>");
+        for (int i = 0; i < ids.length; i++) {
+            xml.append("<sv:node sv:name=\"n").append(i).append("\">"
+                    + "<sv:property sv:name=\"jcr:primaryType\" sv:type=\"Name\">"
+                    + "<sv:value>nt:unstructured</sv:value></sv:property>"
+                    + "<sv:property sv:name=\"jcr:mixinTypes\" sv:type=\"Name\">"
+                    + "<sv:value>mix:referenceable</sv:value></sv:property>"
+                    + "<sv:property sv:name=\"jcr:uuid\" sv:type=\"String\">"
+                    + "<sv:value>").append(ids[i]).append("</sv:value></sv:property>");
+            if (i > 0 || forwardReference) {
+                xml.append("<sv:property sv:name=\"ref\" sv:type=\"Reference\">"
+                        + "<sv:value>").append(ids[(i + ids.length - 1) % ids.length])
+                        .append("</sv:value></sv:property>");
+            }
+            xml.append("<sv:property sv:name=\"data\" sv:type=\"Binary\">"
+                    + "<sv:value>");
+            StringWriter writer = new StringWriter();
+            Base64.encode(createBinary(i), 0, BINARY_SIZE, writer);
+            xml.append(writer);
+            xml.append("</sv:value></sv:property></sv:node>");
+        }
+        xml.append("</sv:node>");
+        return xml.toString();
+    }
+
+    private static byte[] createBinary(int seed) {
+        byte[] data = new byte[BINARY_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static void assertBinary(int seed, InputStream in) throws Exception {
+        try {
+            assertTrue(Arrays.equals(createBinary(seed), IOUtils.toByteArray(in)));
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core;
+
+import java.io.ByteArrayInputStream;
+
+import javax.jcr.ItemExistsException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.nodetype.ConstraintViolationException;
+import javax.jcr.nodetype.NodeTypeManager;
+import javax.jcr.nodetype.NodeTypeTemplate;
+import javax.transaction.UserTransaction;
+
+import org.apache.jackrabbit.api.BulkWriter;
+import org.apache.jackrabbit.api.JackrabbitWorkspace;
+import org.apache.jackrabbit.test.AbstractJCRTest;
+
+/**
+ * <code>BulkWriterTest</code> writes node trees with a {@link BulkWriter}.
+ */
+public class BulkWriterTest extends AbstractJCRTest {
+
+    private static final int NODES = 10;
+
+    public void testWriteTree() throws Exception {
+        ValueFactory vf = superuser.getValueFactory();
+        BulkWriter writer = ((JackrabbitWorkspace) superuser.getWorkspace())
+                .createBulkWriter(testRoot, 3);
+        writer.startNode("a", "nt:unstructured");
+        for (int i = 0; i < NODES; i++) {
+            writer.startNode("n" + i, "nt:unstructured", "mix:referenceable");
+            writer.setProperty("index", vf.createValue(i));
+            writer.setProperty("values", new Value[] {
+                    vf.createValue("x"), vf.createValue("y")});
+            writer.endNode();
+        }
+        // persisted in batches before the writer is closed
+        assertTrue(writer.getNodeCount() > 0);
+        writer.endNode();
+        writer.close();
+        assertEquals(NODES + 1, writer.getNodeCount());
+        assertTrue(writer.getNodesPerSecond() > 0);
+
+        Session s = getHelper().getSuperuserSession();
+        try {
+            Node a = s.getNode(testRoot).getNode("a");
+            assertEquals(NODES, a.getNodes().getSize());
+            for (int i = 0; i < NODES; i++) {
+                Node n = a.getNode("n" + i);
+                assertEquals(i, n.getProperty("index").getLong());
+                assertEquals(2, n.getProperty("values").getValues().length);
+                assertTrue(n.isNodeType("mix:referenceable"));
+                assertTrue(n.isSame(s.getNodeByIdentifier(n.getIdentifier())));
+            }
+        } finally {
+            s.logout();
+        }
+    }
+
+    public void testAutoCreatedItems() throws Exception {
+        BulkWriter writer = ((JackrabbitWorkspace) superuser.getWorkspace())
+                .createBulkWriter(testRoot, 100);
+        writer.startNode("file", "nt:file");
+        writer.startNode("jcr:content", "nt:resource");
+        writer.setProperty("jcr:data", superuser.getValueFactory().createValue(
+                superuser.getValueFactory().createBinary(
+                        new ByteArrayInputStream(new byte[] {1, 2, 3}))));
+        writer.endNode();
+        writer.endNode();
+        writer.close();
+
+        superuser.refresh(false);
+        Node file = testRootNode.getNode("file");
+        assertTrue(file.hasProperty("jcr:created"));
+        assertEquals(3, file.getNode("jcr:content").getProperty("jcr:data").getLength());
+    }
+
+    public void testConstraints() throws Exception {
+        BulkWriter writer = ((JackrabbitWorkspace) superuser.getWorkspace())
+                .createBulkWriter(testRoot, 100);
+        writer.startNode("folder", "nt:folder");
+        try {
+            writer.setProperty("prop", superuser.getValueFactory().createValue("x"));
+            fail("nt:folder does not allow residual properties");
+        } catch (ConstraintViolationException e) {
+            // expected
+        }
+        writer.startNode("child", "nt:folder");
+        writer.endNode();
+        try {
+            writer.startNode("child", "nt:folder");
+            fail("nt:folder does not allow same name siblings");
+        } catch (ItemExistsException e) {
+            // expected
+        }
+        writer.startNode("file", "nt:file");
+        try {
+            writer.endNode();
+            fail("jcr:content is mandatory");
+        } catch (ConstraintViolationException e) {
+            // expected
+        }
+        writer.startNode("jcr:content", "nt:unstructured");
+        writer.endNode();
+        writer.endNode();
+        writer.endNode();
+        writer.close();
+        try {
+            writer.startNode("x", "nt:unstructured");
+            fail("writer has been closed");
+        } catch (RepositoryException e) {
+            // expected
+        }
+    }
+
+    public void testMixins() throws Exception {
+        NodeTypeManager ntMgr = superuser.getWorkspace().getNodeTypeManager();
+        NodeTypeTemplate template = ntMgr.createNodeTypeTemplate();
+        template.setName("bulkWriterAbstractMixin");
+        template.setMixin(true);
+        template.setAbstract(true);
+        ntMgr.registerNodeType(template, true);
+
+        BulkWriter writer = ((JackrabbitWorkspace) superuser.getWorkspace())
+                .createBulkWriter(testRoot, 100);
+        try {
+            writer.startNode("a", "nt:unstructured", "nt:folder");
+            fail("nt:folder is not a mixin");
+        } catch (ConstraintViolationException e) {
+            // expected
+        }
+        try {
+            writer.startNode("a", "nt:unstructured", "bulkWriterAbstractMixin");
+            fail("abstract mixins can not be assigned");
+        } catch (ConstraintViolationException e) {
+            // expected
+        }
+        writer.close();
+        assertFalse(testRootNode.hasNode("a"));
+    }
+
+    public void testTransaction() throws Exception {
+        JackrabbitWorkspace wsp = (JackrabbitWorkspace) superuser.getWorkspace();
+        BulkWriter writer = wsp.createBulkWriter(testRoot, 1);
+        UserTransaction utx = new UserTransactionImpl(superuser);
+        utx.begin();
+        try {
+            try {
+                wsp.createBulkWriter(testRoot, 1);
+                fail("bulk writes cannot be part of a transaction");
+            } catch (RepositoryException e) {
+                // expected
+            }
+            writer.startNode("a", "nt:unstructured");
+            try {
+                writer.endNode();
+                fail("bulk writes cannot be part of a transaction");
+            } catch (RepositoryException e) {
+                // expected
+            }
+        } finally {
+            utx.rollback();
+        }
+        assertFalse(testRootNode.hasNode("a"));
+    }
+}
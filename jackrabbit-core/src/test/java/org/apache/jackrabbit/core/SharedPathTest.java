@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.SharedPathCache;
+import org.apache.jackrabbit.test.AbstractJCRTest;
+
+/**
+ * <code>SharedPathTest</code> checks that sessions see the correct paths
+ * while the persisted paths are shared between their hierarchy managers.
+ */
+public class SharedPathTest extends AbstractJCRTest {
+
+    private Session other;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        other = getHelper().getSuperuserSession();
+    }
+
+    protected void tearDown() throws Exception {
+        other.logout();
+        other = null;
+        super.tearDown();
+    }
+
+    public void testMove() throws Exception {
+        Node n1 = testRootNode.addNode(nodeName1, testNodeType);
+        Node n2 = testRootNode.addNode(nodeName2, testNodeType);
+        Node child = n1.addNode(nodeName3, testNodeType).addNode(nodeName4, testNodeType);
+        superuser.save();
+        String id = child.getIdentifier();
+        String path = child.getPath();
+
+        // resolve the path in the other session
+        assertEquals(path, other.getNodeByIdentifier(id).getPath());
+        assertEquals(id, other.getNode(path).getIdentifier());
+        SessionImpl s = (SessionImpl) other;
+        SharedPathCache cache = s.context.getRepository().getWorkspaceStateManager(
+                s.getWorkspace().getName()).getPathCache();
+        assertEquals(s.getQPath(path), cache.getPath(new NodeId(id)));
+
+        superuser.move(n1.getPath(), n2.getPath() + "/" + nodeName1);
+        superuser.save();
+
+        other.refresh(false);
+        String newPath = n2.getPath() + "/" + nodeName1 + "/" + nodeName3 + "/" + nodeName4;
+        assertEquals(newPath, other.getNodeByIdentifier(id).getPath());
+        assertFalse(other.nodeExists(path));
+        assertEquals(id, other.getNode(newPath).getIdentifier());
+        assertEquals(s.getQPath(newPath), cache.getPath(new NodeId(id)));
+    }
+
+    public void testRemoveKeepsSiblingPaths() throws Exception {
+        Node n1 = testRootNode.addNode(nodeName1, testNodeType);
+        Node child1 = n1.addNode(nodeName3, testNodeType);
+        Node n2 = testRootNode.addNode(nodeName2, testNodeType);
+        Node child2 = n2.addNode(nodeName3, testNodeType);
+        superuser.save();
+        String id1 = child1.getIdentifier();
+        String id2 = child2.getIdentifier();
+        String path1 = child1.getPath();
+        assertEquals(path1, other.getNodeByIdentifier(id1).getPath());
+        assertEquals(child2.getPath(), other.getNodeByIdentifier(id2).getPath());
+
+        SessionImpl s = (SessionImpl) other;
+        SharedPathCache cache = s.context.getRepository().getWorkspaceStateManager(
+                s.getWorkspace().getName()).getPathCache();
+        NodeId testRootId = new NodeId(testRootNode.getIdentifier());
+        assertNotNull(cache.getPath(testRootId));
+
+        n1.remove();
+        superuser.save();
+
+        // only the paths of the removed subtree are invalidated
+        assertNull(cache.getPath(new NodeId(id1)));
+        assertEquals(s.getQPath(child2.getPath()), cache.getPath(new NodeId(id2)));
+        assertEquals(s.getQPath(testRoot), cache.getPath(testRootId));
+        other.refresh(false);
+        assertFalse(other.nodeExists(path1));
+        assertEquals(child2.getPath(), other.getNodeByIdentifier(id2).getPath());
+    }
+
+    public void testTransientMove() throws Exception {
+        Node n1 = testRootNode.addNode(nodeName1, testNodeType);
+        Node child = n1.addNode(nodeName2, testNodeType);
+        superuser.save();
+        String id = child.getIdentifier();
+        String path = child.getPath();
+        assertEquals(path, other.getNodeByIdentifier(id).getPath());
+
+        other.move(n1.getPath(), testRoot + "/" + nodeName3);
+        assertEquals(testRoot + "/" + nodeName3 + "/" + nodeName2,
+                other.getNodeByIdentifier(id).getPath());
+        assertFalse(other.nodeExists(path));
+
+        // unaffected by the transient move
+        assertEquals(path, superuser.getNodeByIdentifier(id).getPath());
+        assertEquals(id, superuser.getNode(path).getIdentifier());
+        other.refresh(false);
+        assertEquals(path, other.getNodeByIdentifier(id).getPath());
+    }
+
+    public void testSameNameSiblings() throws Exception {
+        Node parent = testRootNode.addNode(nodeName1, testNodeType);
+        Node sns1 = parent.addNode(nodeName2, testNodeType);
+        Node sns2 = parent.addNode(nodeName2, testNodeType);
+        superuser.save();
+        String id2 = sns2.getIdentifier();
+        assertEquals(parent.getPath() + "/" + nodeName2 + "[2]",
+                other.getNodeByIdentifier(id2).getPath());
+
+        sns1.remove();
+        superuser.save();
+
+        other.refresh(false);
+        assertEquals(parent.getPath() + "/" + nodeName2,
+                other.getNodeByIdentifier(id2).getPath());
+        assertEquals(id2, other.getNode(parent.getPath() + "/" + nodeName2).getIdentifier());
+    }
+}
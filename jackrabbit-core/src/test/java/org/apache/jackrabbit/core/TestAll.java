@@ -36,6 +36,7 @@ public class TestAll extends TestCase {
 
         suite.addTestSuite(ReplacePropertyWhileOthersReadTest.class);
         suite.addTestSuite(CachingHierarchyManagerTest.class);
+        suite.addTestSuite(SharedPathTest.class);
         suite.addTestSuite(ShareableNodeTest.class);
         suite.addTestSuite(MultiWorkspaceShareableNodeTest.class);
         suite.addTestSuite(TransientRepositoryTest.class);
@@ -82,6 +83,8 @@ public class TestAll extends TestCase {
         suite.addTestSuite(ConsistencyCheck.class);
         suite.addTestSuite(RemoveAddNodeWithUUIDTest.class);
         suite.addTestSuite(MoveAtRootTest.class);
+        suite.addTestSuite(BatchedImportTest.class);
+        suite.addTestSuite(BulkWriterTest.class);
 
         return suite;
     }
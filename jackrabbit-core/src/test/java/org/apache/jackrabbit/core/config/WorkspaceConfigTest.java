@@ -119,6 +119,16 @@ public class WorkspaceConfigTest extends TestCase {
         assertEquals(1, lp.size());
         assertTrue(lp.get(0) instanceof UserImporter);
         assertEquals(UserImporter.ImportBehavior.NAME_BESTEFFORT, ((UserImporter)lp.get(0)).getImportBehavior());
+        assertEquals(0, config.getBatchSize());
+        assertEquals(0, config.getBinaryThreads());
+
+        // XML_6 ---------------------------------------------------------------
+        xml = parseXML(new InputSource(new StringReader(XML_6)), true);
+        config = parser.parseImportConfig(xml);
+
+        assertEquals(1, config.getProtectedItemImporters().size());
+        assertEquals(1000, config.getBatchSize());
+        assertEquals(4, config.getBinaryThreads());
     }
 
     private static Element parseXML(InputSource xml, boolean validate) throws ConfigurationException {
@@ -177,4 +187,11 @@ public class WorkspaceConfigTest extends TestCase {
                     "       <param name=\"importBehavior\" value=\"besteffort\"/>" +
                     "    </ProtectedPropertyImporter>\n" +
                     " </Import></Workspace>";
+
+    private static final String XML_6 =
+            " <Workspace><Import>\n" +
+                    "    <param name=\"batchSize\" value=\"1000\"/>\n" +
+                    "    <param name=\"binaryThreads\" value=\"4\"/>\n" +
+                    "    <ProtectedPropertyImporter class=\"org.apache.jackrabbit.core.security.user.UserImporter\"/>\n" +
+                    " </Import></Workspace>";
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.jackrabbit.core.data;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
@@ -37,6 +38,7 @@ import org.apache.jackrabbit.core.journal.JournalFactory;
 import org.apache.jackrabbit.core.journal.MemoryJournal;
 import org.apache.jackrabbit.core.journal.MemoryJournal.MemoryRecord;
 import org.apache.jackrabbit.core.observation.EventState;
+import org.apache.jackrabbit.core.persistence.PMContext;
 import org.apache.jackrabbit.core.persistence.bundle.AbstractBundlePersistenceManager;
 import org.apache.jackrabbit.core.persistence.bundle.ConsistencyCheckerImpl;
 import org.apache.jackrabbit.core.persistence.check.ReportItem;
@@ -50,6 +52,7 @@ import org.apache.jackrabbit.spi.NameFactory;
 import org.apache.jackrabbit.spi.commons.name.NameConstants;
 import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
 import org.apache.jackrabbit.spi.commons.namespace.NamespaceResolver;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 
 import junit.framework.TestCase;
 
@@ -431,9 +434,17 @@ public class ConsistencyCheckerImplTest extends TestCase {
             for (NodePropBundle bundle : bundles) {
                 this.bundles.put(bundle.getId(), bundle);
             }
+            // sets up the bundle cache and the statistics
+            try {
+                init(new PMContext(
+                        new File("target", "consistency-checker"), null, null,
+                        null, null, null, new RepositoryStatisticsImpl()));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
         }
 
-        public List<NodeId> getAllNodeIds(final NodeId after, final int maxCount) throws ItemStateException, RepositoryException {
+        protected List<NodeId> getAllBundleIds(final NodeId after, final int maxCount) throws ItemStateException, RepositoryException {
             List<NodeId> allNodeIds = new ArrayList<NodeId>();
             boolean add = after == null;
             for (NodeId nodeId : bundles.keySet()) {
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.integration;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+
+import org.apache.jackrabbit.core.query.AbstractQueryTest;
+
+/**
+ * <code>DescendantAxisBenchmarkTest</code> compares descendant axis queries
+ * on an index without ancestors (workspace <code>default</code>) with an
+ * index that contains ancestors (workspace <code>index-format-v4</code>) on
+ * a deep and on a wide tree.
+ */
+public class DescendantAxisBenchmarkTest extends AbstractQueryTest {
+
+    /**
+     * Depth of the deep test tree.
+     */
+    private static final int DEPTH = 50;
+
+    /**
+     * Number of children per node in the wide test tree.
+     */
+    private static final int WIDTH = 2000;
+
+    /**
+     * Number of query executions per measurement.
+     */
+    private static final int RUNS = 20;
+
+    private static final String V4_WORKSPACE = "index-format-v4";
+
+    public void testDeepTree() throws RepositoryException {
+        compare("deep", new TreeBuilder() {
+            public void build(Node root) throws RepositoryException {
+                Node n = root;
+                for (int i = 0; i < DEPTH; i++) {
+                    n = n.addNode("level" + i);
+                    n.setProperty("marker", i % 5 == 0 ? "yes" : "no");
+                }
+            }
+        });
+    }
+
+    public void testWideTree() throws RepositoryException {
+        compare("wide", new TreeBuilder() {
+            public void build(Node root) throws RepositoryException {
+                for (int i = 0; i < WIDTH; i++) {
+                    Node n = root.addNode("node" + i);
+                    n.setProperty("marker", i % 5 == 0 ? "yes" : "no");
+                    if (i % 100 == 0) {
+                        root.getSession().save();
+                    }
+                }
+            }
+        });
+    }
+
+    private void compare(String shape, TreeBuilder builder)
+            throws RepositoryException {
+        Session v4 = getHelper().getSuperuserSession(V4_WORKSPACE);
+        try {
+            Node v4Root = cleanUpTestRoot(v4);
+            builder.build(testRootNode);
+            builder.build(v4Root);
+            superuser.save();
+            v4.save();
+
+            String stmt = "/jcr:root/" + testPath + "//element(*, nt:unstructured)[@marker = 'yes']";
+            long parentWalk = execute(superuser, stmt);
+            long ancestors = execute(v4, stmt);
+            assertEquals("wrong number of results",
+                    count(superuser, stmt), count(v4, stmt));
+            log.println(shape + " tree: parent traversal " + parentWalk
+                    + " ms, ancestors index " + ancestors + " ms");
+            log.flush();
+            cleanUpTestRoot(v4);
+        } finally {
+            v4.logout();
+        }
+    }
+
+    private static long execute(Session s, String stmt)
+            throws RepositoryException {
+        // warm up
+        count(s, stmt);
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < RUNS; i++) {
+            count(s, stmt);
+        }
+        return System.currentTimeMillis() - time;
+    }
+
+    private static long count(Session s, String stmt)
+            throws RepositoryException {
+        QueryManager qm = s.getWorkspace().getQueryManager();
+        NodeIterator nodes = qm.createQuery(stmt, Query.XPATH).execute().getNodes();
+        long count = 0;
+        while (nodes.hasNext()) {
+            nodes.nextNode();
+            count++;
+        }
+        return count;
+    }
+
+    private interface TreeBuilder {
+
+        void build(Node root) throws RepositoryException;
+    }
+}
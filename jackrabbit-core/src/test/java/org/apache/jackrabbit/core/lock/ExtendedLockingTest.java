@@ -48,4 +48,32 @@ public class ExtendedLockingTest extends AbstractJCRTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    public void testDeepLockAfterMove() throws RepositoryException {
+        Node n = testRootNode.addNode(nodeName1);
+        n.addMixin(mixLockable);
+        Node child = n.addNode(nodeName2);
+        testRootNode.addNode(nodeName3);
+        testRootNode.save();
+
+        n.lock(true, true);
+        try {
+            assertTrue(child.isLocked());
+            assertFalse(child.holdsLock());
+            assertEquals(n.getPath(), child.getLock().getNode().getPath());
+
+            superuser.move(n.getPath(), testRoot + "/" + nodeName3 + "/" + nodeName1);
+            superuser.save();
+
+            assertTrue(n.isLocked());
+            assertTrue(n.holdsLock());
+            assertTrue(child.isLocked());
+            assertEquals(n.getPath(), child.getLock().getNode().getPath());
+            assertFalse(testRootNode.getNode(nodeName3).isLocked());
+        } finally {
+            n.unlock();
+        }
+        assertFalse(n.isLocked());
+        assertFalse(child.isLocked());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.nodetype;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.nodetype.EffectiveNodeTypeCache.Key;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.QNodeTypeDefinition;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.test.AbstractJCRTest;
+
+/**
+ * <code>BitSetENTCacheImplTest</code> checks that cached keys are found by
+ * the names of their node types, and that the cache can be used
+ * concurrently.
+ */
+public class BitSetENTCacheImplTest extends AbstractJCRTest {
+
+    private Map<Name, QNodeTypeDefinition> ntdCache;
+
+    private BitSetENTCacheImpl cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        NodeTypeRegistry registry = ((SessionImpl) superuser)
+                .getNodeTypeManager().getNodeTypeRegistry();
+        ntdCache = new HashMap<Name, QNodeTypeDefinition>();
+        for (Name name : registry.getRegisteredNodeTypes()) {
+            ntdCache.put(name, registry.getNodeTypeDef(name));
+        }
+        cache = new BitSetENTCacheImpl();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ntdCache = null;
+        cache = null;
+        super.tearDown();
+    }
+
+    public void testCachedKeyIsReturned() throws Exception {
+        Set<Name> mixins = new HashSet<Name>(Arrays.asList(
+                NameConstants.MIX_REFERENCEABLE, NameConstants.MIX_LOCKABLE));
+        EffectiveNodeType ent = NodeTypeRegistry.getEffectiveNodeType(
+                names(NameConstants.NT_UNSTRUCTURED, mixins), cache, ntdCache);
+
+        Key key = cache.getKey(NameConstants.NT_UNSTRUCTURED, mixins);
+        assertSame(ent, cache.get(key));
+        assertSame(key, cache.getKey(NameConstants.NT_UNSTRUCTURED, mixins));
+        assertSame(key, cache.getKey(new Name[] {
+                NameConstants.MIX_LOCKABLE, NameConstants.NT_UNSTRUCTURED,
+                NameConstants.MIX_REFERENCEABLE }));
+
+        Key single = cache.getKey(
+                NameConstants.NT_UNSTRUCTURED, Collections.<Name>emptySet());
+        assertTrue(cache.contains(single));
+        assertSame(single, cache.getKey(
+                new Name[] { NameConstants.NT_UNSTRUCTURED }));
+    }
+
+    public void testUncachedKey() throws Exception {
+        NodeTypeRegistry.getEffectiveNodeType(
+                NameConstants.NT_UNSTRUCTURED, cache, ntdCache);
+        Set<Name> mixins = Collections.singleton(NameConstants.MIX_VERSIONABLE);
+        Key key = cache.getKey(NameConstants.NT_UNSTRUCTURED, mixins);
+        assertFalse(cache.contains(key));
+        assertEquals(key, cache.getKey(names(NameConstants.NT_UNSTRUCTURED, mixins)));
+
+        // a node type that was never used in this cache
+        assertFalse(cache.contains(
+                cache.getKey(NameConstants.NT_FOLDER, mixins)));
+    }
+
+    public void testInvalidate() throws Exception {
+        Set<Name> mixins = Collections.singleton(NameConstants.MIX_LOCKABLE);
+        NodeTypeRegistry.getEffectiveNodeType(
+                names(NameConstants.NT_UNSTRUCTURED, mixins), cache, ntdCache);
+        Key combined = cache.getKey(NameConstants.NT_UNSTRUCTURED, mixins);
+        Key single = cache.getKey(new Name[] { NameConstants.NT_UNSTRUCTURED });
+        assertTrue(cache.contains(combined));
+        assertTrue(cache.contains(single));
+
+        BitSetENTCacheImpl clone = (BitSetENTCacheImpl) cache.clone();
+        cache.invalidate(NameConstants.MIX_LOCKABLE);
+        assertFalse(cache.contains(combined));
+        assertTrue(cache.contains(single));
+        // the clone is not affected
+        assertTrue(clone.contains(combined));
+    }
+
+    public void testFindBest() throws Exception {
+        NodeTypeRegistry.getEffectiveNodeType(new Name[] {
+                NameConstants.NT_UNSTRUCTURED, NameConstants.MIX_LOCKABLE },
+                cache, ntdCache);
+        Key key = cache.getKey(new Name[] {
+                NameConstants.NT_UNSTRUCTURED, NameConstants.MIX_LOCKABLE,
+                NameConstants.MIX_REFERENCEABLE });
+        Key best = cache.findBest(key);
+        assertEquals(
+                cache.getKey(new Name[] { NameConstants.MIX_LOCKABLE,
+                        NameConstants.NT_UNSTRUCTURED }), best);
+    }
+
+    public void testConcurrentLookups() throws Exception {
+        final List<Name> mixins = Arrays.asList(
+                NameConstants.MIX_REFERENCEABLE, NameConstants.MIX_LOCKABLE,
+                NameConstants.MIX_VERSIONABLE, NameConstants.MIX_SHAREABLE,
+                NameConstants.MIX_TITLE, NameConstants.MIX_CREATED);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 20; t++) {
+            final int seed = t;
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 1000; i++) {
+                            // a combination of mixins, selected by the bits of c
+                            int c = (seed * 31 + i) % (1 << mixins.size());
+                            Set<Name> set = new HashSet<Name>();
+                            for (int m = 0; m < mixins.size(); m++) {
+                                if ((c & (1 << m)) != 0) {
+                                    set.add(mixins.get(m));
+                                }
+                            }
+                            EffectiveNodeType ent = cache.get(
+                                    cache.getKey(NameConstants.NT_UNSTRUCTURED, set));
+                            if (ent == null) {
+                                synchronized (cache) {
+                                    ent = NodeTypeRegistry.getEffectiveNodeType(
+                                            names(NameConstants.NT_UNSTRUCTURED, set),
+                                            cache, ntdCache);
+                                }
+                            }
+                            assertTrue(ent.includesNodeType(NameConstants.NT_UNSTRUCTURED));
+                            for (Name mixin : set) {
+                                assertTrue(ent.includesNodeType(mixin));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (error.get() != null) {
+            throw new Exception(error.get());
+        }
+    }
+
+    private static Name[] names(Name primary, Set<Name> mixins) {
+        Name[] names = new Name[mixins.size() + 1];
+        mixins.toArray(names);
+        names[names.length - 1] = primary;
+        return names;
+    }
+
+}
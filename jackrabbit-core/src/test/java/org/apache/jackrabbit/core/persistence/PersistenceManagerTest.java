@@ -18,6 +18,10 @@ package org.apache.jackrabbit.core.persistence;
 
 import java.io.File;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import javax.jcr.PropertyType;
 
@@ -32,6 +36,8 @@ import org.apache.jackrabbit.core.id.PropertyId;
 import org.apache.jackrabbit.core.persistence.mem.InMemBundlePersistenceManager;
 import org.apache.jackrabbit.core.persistence.mem.InMemPersistenceManager;
 import org.apache.jackrabbit.core.persistence.obj.ObjectPersistenceManager;
+import org.apache.jackrabbit.core.persistence.segment.SegmentPersistenceManager;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle;
 import org.apache.jackrabbit.core.persistence.xml.XMLPersistenceManager;
 import org.apache.jackrabbit.core.state.ChangeLog;
 import org.apache.jackrabbit.core.state.ItemState;
@@ -118,8 +124,79 @@ public class PersistenceManagerTest extends TestCase {
         assertPersistenceManager(manager);
     }
 
-    private void assertPersistenceManager(PersistenceManager manager)
-            throws Exception {
+    public void testDerbyPoolCompressedBundles() throws Exception {
+        org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager manager =
+            new org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager();
+        manager.setDriver("org.apache.derby.jdbc.EmbeddedDriver");
+        manager.setUrl("jdbc:derby:" + database.getPath() + ";create=true");
+        manager.setConnectionFactory(new ConnectionFactory());
+        manager.setBundleCompressionThreshold("1");
+        assertPersistenceManager(manager);
+    }
+
+    public void testSegmentPersistenceManager() throws Exception {
+        SegmentPersistenceManager manager = new SegmentPersistenceManager();
+        manager.setSegmentSize("1024");
+        assertPersistenceManager(manager);
+    }
+
+    public void testInMemBundleChildNodePages() throws Exception {
+        InMemBundlePages manager = new InMemBundlePages();
+        manager.setChildNodePageSize("8");
+        init(manager);
+        try {
+            assertChildNodePages(manager, manager);
+        } finally {
+            manager.close();
+        }
+    }
+
+    public void testSegmentChildNodePages() throws Exception {
+        SegmentPages manager = new SegmentPages();
+        manager.setSegmentSize("4096");
+        manager.setChildNodePageSize("8");
+        init(manager);
+        try {
+            assertChildNodePages(manager, manager);
+        } finally {
+            manager.close();
+        }
+    }
+
+    public void testDerbyPoolChildNodePages() throws Exception {
+        DerbyPoolPages manager = new DerbyPoolPages();
+        configureDerbyPoolPersistenceManager(manager);
+        init(manager);
+        try {
+            org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager reloaded =
+                createDerbyPoolPersistenceManager();
+            init(reloaded);
+            try {
+                assertChildNodePages(manager, reloaded);
+            } finally {
+                reloaded.close();
+            }
+        } finally {
+            manager.close();
+        }
+    }
+
+    private org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager createDerbyPoolPersistenceManager() {
+        org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager manager =
+            new org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager();
+        configureDerbyPoolPersistenceManager(manager);
+        return manager;
+    }
+
+    private void configureDerbyPoolPersistenceManager(
+            org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager manager) {
+        manager.setDriver("org.apache.derby.jdbc.EmbeddedDriver");
+        manager.setUrl("jdbc:derby:" + database.getPath() + ";create=true");
+        manager.setConnectionFactory(new ConnectionFactory());
+        manager.setChildNodePageSize("8");
+    }
+
+    private void init(PersistenceManager manager) throws Exception {
         manager.init(new PMContext(
                 directory,
                 new MemoryFileSystem(),
@@ -128,6 +205,11 @@ public class PersistenceManagerTest extends TestCase {
                 null,
                 null,
                 new RepositoryStatisticsImpl()));
+    }
+
+    private void assertPersistenceManager(PersistenceManager manager)
+            throws Exception {
+        init(manager);
         try {
             assertCreateNewNode(manager);
             assertCreateNewProperty(manager);
@@ -258,6 +340,112 @@ public class PersistenceManagerTest extends TestCase {
         assertFalse(manager.existsReferencesTo(CHILD_ID));
     }
 
+    /**
+     * Stores a node with many child nodes with <code>manager</code> and
+     * loads it with <code>reader</code>, which has a separate bundle cache.
+     */
+    private <T extends IterablePersistenceManager & BundleIds> void assertChildNodePages(
+            T manager, PersistenceManager reader)
+            throws Exception {
+        NodeState node = new NodeState(
+                NODE_ID, TEST, RepositoryImpl.ROOT_NODE_ID,
+                ItemState.STATUS_NEW, true);
+        node.addPropertyName(NameConstants.JCR_PRIMARYTYPE);
+        for (int i = 0; i < 200; i++) {
+            node.addChildNodeEntry(TEST, NodeId.randomId());
+        }
+        ChangeLog create = new ChangeLog();
+        create.added(node);
+        manager.store(create);
+
+        // the node bundle and its pages, which are not nodes
+        List<NodeId> ids = manager.getBundleIds();
+        assertTrue(ids.size() > 2);
+        assertTrue(ids.contains(NODE_ID));
+        assertEquals(node, reader.load(NODE_ID));
+        assertEquals(Collections.singletonList(NODE_ID), manager.getAllNodeIds(null, 0));
+        assertEquals(Collections.singletonList(NODE_ID), manager.getAllNodeIds(null, 1));
+        assertTrue(manager.getAllNodeIds(NODE_ID, 1).isEmpty());
+        assertEquals(1, manager.getAllNodeInfos(null, 0).size());
+        assertEquals(1, manager.getAllNodeInfos(null, 1).size());
+        for (NodeId id : ids) {
+            if (!id.equals(NODE_ID)) {
+                assertTrue(NodePropBundle.isChildNodePageId(id));
+                assertFalse(reader.exists(id));
+                // the last id of a batch is never a page
+                for (NodeId next : manager.getAllNodeIds(id, 1)) {
+                    assertEquals(NODE_ID, next);
+                }
+            }
+        }
+
+        // adding a child node replaces a single page
+        Set<NodeId> pages = new HashSet<NodeId>(ids);
+        node.setStatus(ItemState.STATUS_EXISTING);
+        node.addChildNodeEntry(TEST, NodeId.randomId());
+        ChangeLog update = new ChangeLog();
+        update.modified(node);
+        manager.store(update);
+        Set<NodeId> updated = new HashSet<NodeId>(manager.getBundleIds());
+        Set<NodeId> kept = new HashSet<NodeId>(updated);
+        kept.retainAll(pages);
+        assertTrue(kept.size() >= pages.size() - 1);
+        assertTrue(updated.size() - kept.size() <= 2);
+        assertEquals(node, manager.load(NODE_ID));
+
+        // few child nodes are stored in the bundle again
+        node.removeAllChildNodeEntries();
+        node.addChildNodeEntry(TEST, CHILD_ID);
+        update = new ChangeLog();
+        update.modified(node);
+        manager.store(update);
+        assertEquals(Collections.singletonList(NODE_ID), manager.getBundleIds());
+        assertEquals(node, manager.load(NODE_ID));
+
+        ChangeLog delete = new ChangeLog();
+        delete.deleted(node);
+        manager.store(delete);
+        assertTrue(manager.getBundleIds().isEmpty());
+    }
+
+    /**
+     * Gives access to the ids of all stored bundles, including the ids of
+     * child node pages.
+     */
+    private interface BundleIds {
+
+        List<NodeId> getBundleIds() throws Exception;
+
+    }
+
+    private static class InMemBundlePages
+            extends InMemBundlePersistenceManager implements BundleIds {
+
+        public List<NodeId> getBundleIds() throws Exception {
+            return getAllBundleIds(null, 0);
+        }
+
+    }
+
+    private static class SegmentPages
+            extends SegmentPersistenceManager implements BundleIds {
+
+        public List<NodeId> getBundleIds() throws Exception {
+            return getAllBundleIds(null, 0);
+        }
+
+    }
+
+    private static class DerbyPoolPages
+            extends org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager
+            implements BundleIds {
+
+        public List<NodeId> getBundleIds() throws Exception {
+            return getAllBundleIds(null, 0);
+        }
+
+    }
+
     private void assertEquals(NodeState expected, NodeState actual) {
         assertEquals(expected.getId(), actual.getId());
         assertEquals(expected.getNodeId(), actual.getNodeId());
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.segment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+/**
+ * Tests the {@link OffHeapIndex} against a {@link HashMap}.
+ */
+public class OffHeapIndexTest extends TestCase {
+
+    public void testRandomOperations() {
+        Random random = new Random(1);
+        Map<NodeId, Long> expected = new HashMap<NodeId, Long>();
+        OffHeapIndex index = new OffHeapIndex(0);
+        for (int i = 0; i < 100000; i++) {
+            // few distinct ids, so that entries are replaced and removed
+            NodeId id = new NodeId(random.nextInt(100), random.nextInt(50));
+            Long old = expected.get(id);
+            long previous;
+            if (random.nextInt(3) == 0) {
+                previous = index.remove(id);
+                expected.remove(id);
+            } else {
+                long location = i + 1;
+                previous = index.put(id, location);
+                expected.put(id, location);
+            }
+            assertEquals(old == null ? 0 : old.longValue(), previous);
+            assertEquals(expected.size(), index.size());
+        }
+        for (Map.Entry<NodeId, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().longValue(), index.get(entry.getKey()));
+        }
+        Set<NodeId> ids = new HashSet<NodeId>();
+        for (int i = 0; i < index.getCapacity(); i++) {
+            NodeId id = index.getId(i);
+            if (id != null) {
+                assertTrue(ids.add(id));
+            }
+        }
+        assertEquals(expected.keySet(), ids);
+    }
+
+    public void testGetIds() {
+        Random random = new Random(1);
+        Set<NodeId> expected = new HashSet<NodeId>();
+        OffHeapIndex index = new OffHeapIndex(0);
+        for (int i = 0; i < 1000; i++) {
+            NodeId id = new NodeId(random.nextInt(20) - 10, random.nextLong());
+            expected.add(id);
+            index.put(id, i + 1);
+        }
+        List<NodeId> all = index.getIds(null, 0);
+        assertEquals(expected.size(), all.size());
+        assertEquals(expected, new HashSet<NodeId>(all));
+
+        // iterate to the end in batches
+        List<NodeId> ids = new ArrayList<NodeId>();
+        List<NodeId> batch = index.getIds(null, 7);
+        while (!batch.isEmpty()) {
+            assertTrue(batch.size() <= 7);
+            ids.addAll(batch);
+            batch = index.getIds(batch.get(batch.size() - 1), 7);
+        }
+        assertEquals(all, ids);
+        assertTrue(index.getIds(all.get(all.size() - 1), 0).isEmpty());
+    }
+
+    public void testResize() {
+        OffHeapIndex index = new OffHeapIndex(10);
+        NodeId[] ids = new NodeId[10000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = NodeId.randomId();
+            assertEquals(0, index.put(ids[i], i + 1));
+        }
+        assertTrue(index.getCapacity() >= ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i + 1, index.get(ids[i]));
+        }
+        assertEquals(0, index.get(NodeId.randomId()));
+        assertEquals(0, index.remove(NodeId.randomId()));
+        for (int i = 0; i < ids.length; i += 2) {
+            assertEquals(i + 1, index.remove(ids[i]));
+        }
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i % 2 == 0 ? 0 : i + 1, index.get(ids[i]));
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.segment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.NamespaceRegistryImpl;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.fs.FileSystem;
+import org.apache.jackrabbit.core.fs.mem.MemoryFileSystem;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.PMContext;
+import org.apache.jackrabbit.core.state.ChangeLog;
+import org.apache.jackrabbit.core.state.ItemState;
+import org.apache.jackrabbit.core.state.NodeReferences;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
+
+/**
+ * <code>SegmentPersistenceManagerTest</code> checks that the segments are
+ * replayed when the persistence manager is opened again, that uncommitted
+ * and corrupt records are discarded, and that compaction keeps the current
+ * records.
+ */
+public class SegmentPersistenceManagerTest extends TestCase {
+
+    private static final Name TEST =
+        NameFactoryImpl.getInstance().create("", "test");
+
+    private File directory;
+
+    /**
+     * Keeps the name index between instances.
+     */
+    private FileSystem fileSystem;
+
+    private SegmentPersistenceManager manager;
+
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("jackrabbit-segment-", "-test");
+        directory.delete();
+        directory.mkdirs();
+        fileSystem = new MemoryFileSystem();
+        manager = open();
+    }
+
+    protected void tearDown() throws Exception {
+        if (manager != null) {
+            manager.close();
+        }
+        FileUtils.deleteQuietly(directory);
+    }
+
+    public void testReopen() throws Exception {
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = 0; i < 100; i++) {
+            NodeId id = NodeId.randomId();
+            store(id);
+            ids.add(id);
+        }
+        for (int i = 0; i < 100; i += 10) {
+            delete(ids.get(i));
+        }
+        NodeReferences references = new NodeReferences(ids.get(1));
+        references.addReference(new PropertyId(ids.get(2), TEST));
+        ChangeLog changes = new ChangeLog();
+        changes.modified(references);
+        manager.store(changes);
+        assertTrue(getSegmentFiles().length > 1);
+
+        reopen();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 10 != 0, manager.exists(ids.get(i)));
+        }
+        assertTrue(manager.existsReferencesTo(ids.get(1)));
+        assertEquals(references.getReferences(),
+                manager.loadReferencesTo(ids.get(1)).getReferences());
+
+        List<NodeId> expected = new ArrayList<NodeId>();
+        for (int i = 0; i < 100; i++) {
+            if (i % 10 != 0) {
+                expected.add(ids.get(i));
+            }
+        }
+        List<NodeId> all = manager.getAllNodeIds(null, 0);
+        assertEquals(new HashSet<NodeId>(expected), new HashSet<NodeId>(all));
+        assertEquals(expected.size(), all.size());
+        assertEquals(all.subList(0, 10), manager.getAllNodeIds(null, 10));
+        assertEquals(all.subList(11, 21), manager.getAllNodeIds(all.get(10), 10));
+    }
+
+    public void testUncommittedRecordsAreDiscarded() throws Exception {
+        NodeId committed = NodeId.randomId();
+        NodeId uncommitted = NodeId.randomId();
+        store(committed);
+        store(uncommitted);
+        manager.close();
+        manager = null;
+
+        // remove the last commit record, as if the system crashed before
+        // it was written
+        Segment segment = openLastSegment();
+        int last = 0;
+        for (int offset = Segment.HEADER_SIZE; segment.isValid(offset);
+                offset += segment.getRecordSize(offset)) {
+            last = offset;
+            segment.setSize(offset + segment.getRecordSize(offset));
+        }
+        assertEquals(Segment.COMMIT, segment.getType(last));
+        segment.truncate(last);
+        segment.force();
+        segment.close();
+
+        manager = open();
+        assertTrue(manager.exists(committed));
+        assertFalse(manager.exists(uncommitted));
+
+        // the discarded records are overwritten by new ones
+        NodeId next = NodeId.randomId();
+        store(next);
+        reopen();
+        assertTrue(manager.exists(committed));
+        assertFalse(manager.exists(uncommitted));
+        assertTrue(manager.exists(next));
+    }
+
+    public void testCorruptRecordsAreDiscarded() throws Exception {
+        NodeId valid = NodeId.randomId();
+        NodeId corrupt = NodeId.randomId();
+        store(valid);
+        store(corrupt);
+        manager.close();
+        manager = null;
+
+        // change a byte of the last bundle record
+        Segment segment = openLastSegment();
+        int last = 0;
+        for (int offset = Segment.HEADER_SIZE; segment.isValid(offset);
+                offset += segment.getRecordSize(offset)) {
+            if (segment.getType(offset) == Segment.BUNDLE) {
+                last = offset;
+            }
+        }
+        assertEquals(corrupt, segment.getId(last));
+        segment.close();
+        FileUtils.writeByteArrayToFile(segment.getFile(), corrupt(
+                FileUtils.readFileToByteArray(segment.getFile()),
+                last + Segment.RECORD_OVERHEAD));
+
+        manager = open();
+        assertTrue(manager.exists(valid));
+        assertFalse(manager.exists(corrupt));
+    }
+
+    public void testCompaction() throws Exception {
+        NodeId kept = NodeId.randomId();
+        NodeId deleted = NodeId.randomId();
+        store(kept);
+        store(deleted);
+        // fill many segments with replaced records
+        for (int i = 0; i < 100; i++) {
+            store(kept);
+        }
+        delete(deleted);
+        store(kept);
+        int before = getSegmentFiles().length;
+        assertTrue(before > 2);
+
+        manager.compact();
+        int after = getSegmentFiles().length;
+        assertTrue(after < before);
+        assertTrue(manager.exists(kept));
+        assertFalse(manager.exists(deleted));
+
+        reopen();
+        assertEquals(after, getSegmentFiles().length);
+        assertTrue(manager.exists(kept));
+        assertFalse(manager.exists(deleted));
+        assertEquals(Arrays.asList(kept), manager.getAllNodeIds(null, 0));
+    }
+
+    private SegmentPersistenceManager open() throws Exception {
+        SegmentPersistenceManager manager = new SegmentPersistenceManager();
+        manager.setSegmentSize("1024");
+        manager.setCompactionInterval("0");
+        manager.init(new PMContext(
+                directory,
+                fileSystem,
+                RepositoryImpl.ROOT_NODE_ID,
+                new NamespaceRegistryImpl(new MemoryFileSystem()),
+                null,
+                null,
+                new RepositoryStatisticsImpl()));
+        return manager;
+    }
+
+    private void reopen() throws Exception {
+        manager.close();
+        manager = null;
+        manager = open();
+    }
+
+    private void store(NodeId id) throws Exception {
+        ChangeLog changes = new ChangeLog();
+        changes.added(createState(id));
+        manager.store(changes);
+    }
+
+    private void delete(NodeId id) throws Exception {
+        ChangeLog changes = new ChangeLog();
+        changes.deleted(createState(id));
+        manager.store(changes);
+    }
+
+    private NodeState createState(NodeId id) {
+        NodeState state = new NodeState(
+                id, TEST, RepositoryImpl.ROOT_NODE_ID,
+                ItemState.STATUS_NEW, true);
+        state.addPropertyName(NameConstants.JCR_PRIMARYTYPE);
+        return state;
+    }
+
+    private File[] getSegmentFiles() {
+        File[] files = new File(directory, "segments").listFiles();
+        Arrays.sort(files);
+        return files;
+    }
+
+    private Segment openLastSegment() throws Exception {
+        File[] files = getSegmentFiles();
+        File file = files[files.length - 1];
+        String name = file.getName();
+        return Segment.open(
+                Integer.parseInt(name.substring(0, name.indexOf('.'))), file);
+    }
+
+    private static byte[] corrupt(byte[] data, int offset) {
+        data[offset] ^= 0x55;
+        return data;
+    }
+
+}
@@ -18,6 +18,7 @@ package org.apache.jackrabbit.core.persistence.util;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.util.Arrays;
@@ -28,9 +29,11 @@ import java.util.Iterator;
 
 import javax.jcr.PropertyType;
 
+import org.apache.jackrabbit.api.stats.RepositoryStatistics;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle.PropertyEntry;
+import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.util.StringIndex;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.jackrabbit.spi.Name;
@@ -40,6 +43,7 @@ import org.apache.jackrabbit.spi.PathFactory;
 import org.apache.jackrabbit.spi.commons.name.NameConstants;
 import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
 import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 
 import junit.framework.TestCase;
 
@@ -315,6 +319,202 @@ public class BundleBindingTest extends TestCase {
         assertBundleRoundtrip(bundle);
     }
 
+    /**
+     * Tests that properties are decoded lazily and written back as is.
+     */
+    public void testLazyProperties() throws Exception {
+        NodePropBundle bundle = new NodePropBundle(NodeId.randomId());
+        bundle.setParentId(NodeId.randomId());
+        bundle.setNodeTypeName(NameConstants.NT_UNSTRUCTURED);
+        bundle.setMixinTypeNames(Collections.<Name>emptySet());
+        bundle.setSharedSet(Collections.<NodeId>emptySet());
+
+        // name values in namespaces that are also used in the bundle
+        Name names = factory.create("ns1", "names");
+        PropertyEntry property = new PropertyEntry(
+                new PropertyId(bundle.getId(), names));
+        property.setType(PropertyType.NAME);
+        property.setMultiValued(true);
+        property.setValues(new InternalValue[] {
+                InternalValue.create(factory.create("ns2", "a")),
+                InternalValue.create(factory.create("ns1", "b")) });
+        bundle.addProperty(property);
+        Name strings = factory.create("ns2", "strings");
+        property = new PropertyEntry(new PropertyId(bundle.getId(), strings));
+        property.setType(PropertyType.STRING);
+        property.setMultiValued(false);
+        property.setModCount((short) 3);
+        property.setValues(new InternalValue[] { InternalValue.create("x") });
+        bundle.addProperty(property);
+        bundle.addChildNodeEntry(factory.create("ns2", "child"), NodeId.randomId());
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        binding.writeBundle(buffer, bundle);
+        byte[] bytes = buffer.toByteArray();
+        assertEquals(BundleBinding.VERSION_4, bytes[0]);
+
+        NodePropBundle result =
+            binding.readBundle(new ByteArrayInputStream(bytes), bundle.getId());
+        assertNotNull(result.getPropertyEntry(names).getData());
+        assertNotNull(result.getPropertyEntry(strings).getData());
+        assertEquals(bundle.getChildNodeEntries(), result.getChildNodeEntries());
+
+        // undecoded properties are written unchanged
+        buffer = new ByteArrayOutputStream();
+        binding.writeBundle(buffer, result);
+        assertTrue(Arrays.equals(bytes, buffer.toByteArray()));
+        assertNotNull(result.getPropertyEntry(names).getData());
+
+        assertEquals(3, result.getPropertyEntry(strings).getModCount());
+        assertNull(result.getPropertyEntry(strings).getData());
+        assertEquals(bundle, result);
+
+        // a modified property is encoded again
+        result.getPropertyEntry(strings).setValues(
+                new InternalValue[] { InternalValue.create("y") });
+        buffer = new ByteArrayOutputStream();
+        binding.writeBundle(buffer, result);
+        NodePropBundle modified = binding.readBundle(
+                new ByteArrayInputStream(buffer.toByteArray()), bundle.getId());
+        assertEquals("y", modified.getPropertyEntry(strings).getValues()[0].getString());
+        assertEquals(result, modified);
+    }
+
+    /**
+     * Tests that corrupt property records are reported when the bundle is
+     * read or when the property is decoded.
+     */
+    public void testCorruptProperties() throws Exception {
+        NodePropBundle bundle = new NodePropBundle(NodeId.randomId());
+        bundle.setParentId(NodeId.randomId());
+        bundle.setNodeTypeName(NameConstants.NT_UNSTRUCTURED);
+        bundle.setMixinTypeNames(Collections.<Name>emptySet());
+        bundle.setSharedSet(Collections.<NodeId>emptySet());
+        PropertyId id = new PropertyId(bundle.getId(), factory.create("", "test"));
+
+        // string value of five bytes that are missing
+        PropertyEntry property = new PropertyEntry(
+                id, binding, new byte[] { PropertyType.STRING, 0, 5 });
+        try {
+            property.decode();
+            fail("truncated property record decoded");
+        } catch (ItemStateException e) {
+            // expected
+        }
+        try {
+            property.getType();
+            fail("truncated property record decoded");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        property = new PropertyEntry(
+                id, binding, new byte[] { PropertyType.STRING, 0, 1, 'x', 0 });
+        try {
+            property.decode();
+            fail("property record with trailing data decoded");
+        } catch (ItemStateException e) {
+            // expected
+        }
+
+        // records with an unknown type are rejected when the bundle is read
+        bundle.addProperty(new PropertyEntry(id, binding, new byte[] { 0 }));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        binding.writeBundle(buffer, bundle);
+        try {
+            binding.readBundle(
+                    new ByteArrayInputStream(buffer.toByteArray()), bundle.getId());
+            fail("property record of unknown type read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that bundles of the previous serialization version are read.
+     */
+    public void testVersion3Bundle() throws Exception {
+        NodePropBundle bundle = new NodePropBundle(NodeId.randomId());
+        bundle.setParentId(NodeId.randomId());
+        bundle.setNodeTypeName(NameConstants.NT_UNSTRUCTURED);
+        bundle.setMixinTypeNames(Collections.<Name>emptySet());
+        bundle.setSharedSet(Collections.<NodeId>emptySet());
+        Name name = factory.create("ns1", "test");
+        PropertyEntry property =
+            new PropertyEntry(new PropertyId(bundle.getId(), name));
+        property.setType(PropertyType.NAME);
+        property.setMultiValued(false);
+        property.setValues(new InternalValue[] {
+                InternalValue.create(factory.create("ns2", "a")) });
+        bundle.addProperty(property);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new BundleWriter(binding, buffer, BundleBinding.VERSION_3).writeBundle(bundle);
+        byte[] bytes = buffer.toByteArray();
+        assertEquals(BundleBinding.VERSION_3, bytes[0]);
+
+        NodePropBundle result =
+            binding.readBundle(new ByteArrayInputStream(bytes), bundle.getId());
+        assertNull(result.getPropertyEntry(name).getData());
+        assertEquals(bundle, result);
+    }
+
+    /**
+     * Tests compression of large bundles.
+     */
+    public void testCompressedBundle() throws Exception {
+        RepositoryStatisticsImpl stats = new RepositoryStatisticsImpl();
+        binding.setRepositoryStatistics(stats);
+        binding.setCompressionThreshold(100);
+
+        NodePropBundle bundle = new NodePropBundle(NodeId.randomId());
+        bundle.setParentId(NodeId.randomId());
+        bundle.setNodeTypeName(NameConstants.NT_UNSTRUCTURED);
+        bundle.setMixinTypeNames(Collections.<Name>emptySet());
+        bundle.setSharedSet(Collections.<NodeId>emptySet());
+        assertBundleRoundtrip(bundle);
+        assertEquals(0, stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_COMPRESSION_COUNTER).get());
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("a highly compressible text ");
+        }
+        PropertyEntry property = new PropertyEntry(
+                new PropertyId(bundle.getId(), factory.create("", "text")));
+        property.setType(PropertyType.STRING);
+        property.setMultiValued(false);
+        property.setValues(new InternalValue[] {
+                InternalValue.create(text.toString()) });
+        bundle.addProperty(property);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        binding.writeBundle(buffer, bundle);
+        byte[] bytes = buffer.toByteArray();
+        assertEquals(BundleBinding.VERSION_CURRENT | BundleBinding.COMPRESSED,
+                bytes[0] & 0xff);
+        assertTrue(bytes.length < text.length() / 10);
+        assertEquals(bundle, binding.readBundle(
+                new ByteArrayInputStream(bytes), bundle.getId()));
+
+        assertEquals(1, stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_COMPRESSION_COUNTER).get());
+        assertEquals(1, stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_DECOMPRESSION_COUNTER).get());
+        assertEquals(bytes.length, stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_COMPRESSED_SIZE_COUNTER).get());
+        assertTrue(stats.getCounter(RepositoryStatistics.Type
+                .BUNDLE_UNCOMPRESSED_SIZE_COUNTER).get() > text.length());
+
+        // compressed bundles are read when compression is disabled
+        binding.setCompressionThreshold(0);
+        assertEquals(bundle, binding.readBundle(
+                new ByteArrayInputStream(bytes), bundle.getId()));
+        buffer = new ByteArrayOutputStream();
+        binding.writeBundle(buffer, bundle);
+        assertEquals(BundleBinding.VERSION_CURRENT, buffer.toByteArray()[0]);
+    }
+
     public void testBooleanSerialization() throws Exception {
         assertValueSerialization(InternalValue.create(true));
         assertValueSerialization(InternalValue.create(false));
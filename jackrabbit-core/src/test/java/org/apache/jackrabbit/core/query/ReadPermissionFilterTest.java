@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.query.Query;
+import javax.jcr.security.AccessControlPolicy;
+import javax.jcr.security.AccessControlPolicyIterator;
+import javax.jcr.security.Privilege;
+
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
+import org.apache.jackrabbit.api.security.user.User;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.security.authorization.AccessControlConstants;
+import org.apache.jackrabbit.test.NotExecutableException;
+import org.apache.jackrabbit.test.api.security.AbstractAccessControlTest;
+
+/**
+ * <code>ReadPermissionFilterTest</code> checks that queries only return the
+ * nodes a session is allowed to read when the index filters hits by the
+ * read permission of their closest access controlled ancestor.
+ */
+public class ReadPermissionFilterTest extends AbstractAccessControlTest {
+
+    private Session anonymous;
+
+    private Principal principal;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        anonymous = getHelper().getReadOnlySession();
+        if (!(anonymous instanceof JackrabbitSession)) {
+            anonymous.logout();
+            throw new NotExecutableException();
+        }
+        User user = (User) ((JackrabbitSession) anonymous).getUserManager()
+                .getAuthorizable(anonymous.getUserID());
+        if (user == null) {
+            anonymous.logout();
+            throw new NotExecutableException();
+        }
+        principal = user.getPrincipal();
+    }
+
+    protected void tearDown() throws Exception {
+        anonymous.logout();
+        anonymous = null;
+        principal = null;
+        super.tearDown();
+    }
+
+    public void testDeniedSubtree() throws Exception {
+        Node n1 = testRootNode.addNode(nodeName1, testNodeType);
+        Node n2 = testRootNode.addNode(nodeName2, testNodeType);
+        Node n21 = n2.addNode(nodeName1, testNodeType);
+        n21.addNode(nodeName1, testNodeType);
+        superuser.save();
+
+        setEntry(n2, false, null);
+
+        checkResult(n1.getPath());
+    }
+
+    public void testGrantedBelowDenied() throws Exception {
+        Node n1 = testRootNode.addNode(nodeName1, testNodeType);
+        Node n11 = n1.addNode(nodeName1, testNodeType);
+        Node n111 = n11.addNode(nodeName1, testNodeType);
+        n1.addNode(nodeName2, testNodeType);
+        superuser.save();
+
+        setEntry(n1, false, null);
+        setEntry(n11, true, null);
+
+        checkResult(n11.getPath(), n111.getPath());
+    }
+
+    public void testRestriction() throws Exception {
+        Node n1 = testRootNode.addNode(nodeName1, testNodeType);
+        n1.addNode(nodeName1, testNodeType);
+        Node n12 = n1.addNode(nodeName2, testNodeType);
+        superuser.save();
+
+        setEntry(n1, false, "/" + nodeName1);
+
+        checkResult(n1.getPath(), n12.getPath());
+    }
+
+    private void setEntry(Node node, boolean isAllow, String glob)
+            throws RepositoryException, NotExecutableException {
+        JackrabbitAccessControlList acl = null;
+        AccessControlPolicyIterator it = acMgr.getApplicablePolicies(node.getPath());
+        while (it.hasNext()) {
+            AccessControlPolicy acp = it.nextAccessControlPolicy();
+            if (acp instanceof JackrabbitAccessControlList) {
+                acl = (JackrabbitAccessControlList) acp;
+            }
+        }
+        if (acl == null) {
+            throw new NotExecutableException();
+        }
+        Privilege[] read = privilegesFromName(Privilege.JCR_READ);
+        if (glob == null) {
+            acl.addEntry(principal, read, isAllow);
+        } else {
+            String restrName = ((SessionImpl) superuser).getJCRName(AccessControlConstants.P_GLOB);
+            Map<String, Value> restrictions = Collections.singletonMap(
+                    restrName, superuser.getValueFactory().createValue(glob));
+            acl.addEntry(principal, read, isAllow, restrictions);
+        }
+        acMgr.setPolicy(node.getPath(), acl);
+        superuser.save();
+    }
+
+    private void checkResult(String... paths) throws RepositoryException {
+        anonymous.refresh(false);
+        String stmt = testPath + "//element(*, " + testNodeType + ")";
+        Query query = anonymous.getWorkspace().getQueryManager().createQuery(
+                stmt, Query.XPATH);
+        Set<String> expected = new HashSet<String>();
+        Collections.addAll(expected, paths);
+        Set<String> result = new HashSet<String>();
+        for (NodeIterator it = query.execute().getNodes(); it.hasNext(); ) {
+            result.add(it.nextNode().getPath());
+        }
+        assertEquals(expected, result);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+
+/**
+ * <code>AncestorsIndexTest</code> checks descendant axis queries on an index
+ * with format {@link IndexFormatVersion#V4}.
+ */
+public class AncestorsIndexTest extends AbstractIndexingTest {
+
+    private static final String WORKSPACE_NAME = "index-format-v4";
+
+    protected String getWorkspaceName() {
+        return WORKSPACE_NAME;
+    }
+
+    public void testDescendantAxis() throws RepositoryException {
+        Node a = testRootNode.addNode("a");
+        Node b = a.addNode("b");
+        Node c = b.addNode("c");
+        Node d = a.addNode("d");
+        session.save();
+
+        String base = "/jcr:root" + testRootNode.getPath() + "/a";
+        executeXPathQuery(base + "//*", new Node[]{b, c, d});
+        executeXPathQuery(base + "//c", new Node[]{c});
+        executeXPathQuery(base + "/*/*", new Node[]{c});
+        executeXPathQuery(base + "//element(*, nt:unstructured)[@jcr:primaryType]",
+                new Node[]{b, c, d});
+        executeXPathQuery(base + "/b//*", new Node[]{c});
+    }
+
+    public void testDescendantAxisAfterMove() throws RepositoryException {
+        Node a = testRootNode.addNode("a");
+        Node b = a.addNode("b");
+        Node c = b.addNode("c");
+        Node d = c.addNode("d");
+        Node x = testRootNode.addNode("x");
+        session.save();
+
+        session.move(b.getPath(), x.getPath() + "/b");
+        session.save();
+
+        String root = "/jcr:root" + testRootNode.getPath();
+        executeXPathQuery(root + "/a//*", new Node[]{});
+        executeXPathQuery(root + "/x//*", new Node[]{b, c, d});
+        executeXPathQuery(root + "/x//d", new Node[]{d});
+
+        // move back
+        session.move(b.getPath(), a.getPath() + "/b");
+        session.save();
+
+        executeXPathQuery(root + "/a//d", new Node[]{d});
+        executeXPathQuery(root + "/x//*", new Node[]{});
+    }
+
+    public void testDescendantAxisAfterRename() throws RepositoryException {
+        Node a = testRootNode.addNode("a");
+        Node b = a.addNode("b");
+        Node c = b.addNode("c");
+        session.save();
+
+        session.move(a.getPath(), testRootNode.getPath() + "/renamed");
+        session.save();
+
+        executeXPathQuery("/jcr:root" + testRootNode.getPath() + "/renamed//*",
+                new Node[]{b, c});
+    }
+}
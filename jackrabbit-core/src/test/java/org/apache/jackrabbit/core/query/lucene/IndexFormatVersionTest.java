@@ -16,10 +16,17 @@
  */
 package org.apache.jackrabbit.core.query.lucene;
 
+import java.io.File;
+
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
 import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.lucene.store.RAMDirectory;
 
 /**
  * <code>IndexFormatVersionTest</code> checks if the various index format
@@ -39,6 +46,47 @@ public class IndexFormatVersionTest extends AbstractIndexingTest {
         checkIndexFormatVersion("index-format-v3", IndexFormatVersion.V3);
     }
 
+    public void testVersionFour() throws RepositoryException {
+        checkIndexFormatVersion("index-format-v4", IndexFormatVersion.V4);
+    }
+
+    public void testStoredVersion() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        assertNull(IndexFormatVersion.read(directory));
+        IndexFormatVersion.V4.write(directory);
+        assertSame(IndexFormatVersion.V4, IndexFormatVersion.read(directory));
+    }
+
+    /**
+     * The index of a new workspace contains only the root node, which has no
+     * ancestors. It must still be version four when it is opened again.
+     */
+    public void testVersionFourOfNewIndex() throws Exception {
+        File home = new File("target", "IndexFormatVersionTest");
+        FileUtils.deleteDirectory(home);
+        try {
+            for (int i = 0; i < 2; i++) {
+                RepositoryImpl repo = RepositoryImpl.create(RepositoryConfig.create(
+                        getClass().getResourceAsStream("repository-index-ancestors.xml"),
+                        home.getPath()));
+                try {
+                    Session session = repo.login(
+                            new SimpleCredentials("admin", "admin".toCharArray()));
+                    try {
+                        assertEquals(IndexFormatVersion.V4.getVersion(),
+                                getSearchIndex(session).getIndexFormatVersion().getVersion());
+                    } finally {
+                        session.logout();
+                    }
+                } finally {
+                    repo.shutdown();
+                }
+            }
+        } finally {
+            FileUtils.deleteDirectory(home);
+        }
+    }
+
     private void checkIndexFormatVersion(String wspName,
                                          IndexFormatVersion version)
             throws RepositoryException {
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.jcr.Node;
+
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * <code>ParallelSearchTest</code> checks that queries scored in parallel
+ * return the same hits as queries scored on the calling thread.
+ */
+public class ParallelSearchTest extends AbstractIndexingTest {
+
+    private ExecutorService executor;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = Executors.newFixedThreadPool(3);
+        for (int i = 0; i < 4; i++) {
+            Node n = testRootNode.addNode("node" + i);
+            for (int j = 0; j < 50; j++) {
+                n.addNode("child" + j);
+            }
+            session.save();
+            // create a new index segment
+            getSearchIndex().flush();
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        executor = null;
+        super.tearDown();
+    }
+
+    public void testUnsorted() throws Exception {
+        assertParallelHits(createQuery(), new Sort(), 200);
+    }
+
+    public void testSorted() throws Exception {
+        assertParallelHits(createQuery(),
+                new Sort(new SortField(FieldNames.UUID, SortField.STRING)), 200);
+    }
+
+    public void testTermRangeQuery() throws Exception {
+        // rewritten to a constant score query over term queries
+        Query query = new RangeQuery(new Term(FieldNames.LOCAL_NAME, "child1"),
+                new Term(FieldNames.LOCAL_NAME, "child3"), true,
+                new PerQueryCache());
+        assertParallelHits(query, new Sort(), -1);
+    }
+
+    public void testRangeQuery() throws Exception {
+        Query query = new RangeQuery(new Term(FieldNames.LOCAL_NAME, "CHILD1"),
+                new Term(FieldNames.LOCAL_NAME, "CHILD3"), true,
+                TransformConstants.TRANSFORM_UPPER_CASE, new PerQueryCache());
+        assertSequentialHits(query, -1);
+    }
+
+    public void testWildcardQuery() throws Exception {
+        int maxClauseCount = BooleanQuery.getMaxClauseCount();
+        // use the wildcard scorer instead of a term query rewrite
+        BooleanQuery.setMaxClauseCount(1);
+        try {
+            Query query = new WildcardQuery(FieldNames.LOCAL_NAME, null,
+                    "child1%", new PerQueryCache());
+            assertSequentialHits(query, -1);
+        } finally {
+            BooleanQuery.setMaxClauseCount(maxClauseCount);
+        }
+    }
+
+    public void testMatchAllQuery() throws Exception {
+        String field = getSearchIndex().getNamespaceMappings().translateName(
+                NameConstants.JCR_PRIMARYTYPE);
+        assertSequentialHits(new MatchAllQuery(field, new PerQueryCache()), -1);
+    }
+
+    public void testMergeScorer() throws Exception {
+        Scorer scorer = new JackrabbitIndexSearcher.MergeScorer(new ScoreDoc[] {
+                new ScoreDoc(3, 1.0f), new ScoreDoc(5, 2.0f),
+                new ScoreDoc(8, 3.0f), new ScoreDoc(13, 4.0f)});
+        assertEquals(-1, scorer.docID());
+        assertEquals(3, scorer.nextDoc());
+        assertEquals(1.0f, scorer.score());
+        assertEquals(8, scorer.advance(6));
+        assertEquals(3.0f, scorer.score());
+        assertEquals(13, scorer.advance(13));
+        assertEquals(Scorer.NO_MORE_DOCS, scorer.nextDoc());
+        assertEquals(Scorer.NO_MORE_DOCS, scorer.advance(20));
+    }
+
+    public void testStatefulQueryNotParallel() throws Exception {
+        Query query = new DescendantSelfAxisQuery(
+                createQuery(), true, getSearchIndex().getIndexFormatVersion());
+        assertFalse(JackrabbitIndexSearcher.isParallelizable(query));
+        BooleanQuery bq = new BooleanQuery();
+        bq.add(createQuery(), BooleanClause.Occur.MUST);
+        assertTrue(JackrabbitIndexSearcher.isParallelizable(bq));
+        bq.add(query, BooleanClause.Occur.MUST);
+        assertFalse(JackrabbitIndexSearcher.isParallelizable(bq));
+    }
+
+    public void testCachingQueriesNotParallel() throws Exception {
+        PerQueryCache cache = new PerQueryCache();
+        Term lower = new Term(FieldNames.LOCAL_NAME, "a");
+        Term upper = new Term(FieldNames.LOCAL_NAME, "b");
+        assertFalse(JackrabbitIndexSearcher.isParallelizable(
+                new RangeQuery(lower, upper, true, cache)));
+        assertFalse(JackrabbitIndexSearcher.isParallelizable(
+                new WildcardQuery(FieldNames.LOCAL_NAME, null, "a%", cache)));
+        assertFalse(JackrabbitIndexSearcher.isParallelizable(
+                new MatchAllQuery(FieldNames.PROPERTIES_SET, cache)));
+    }
+
+    private Query createQuery() throws Exception {
+        BooleanQuery query = new BooleanQuery();
+        for (int i = 0; i < 4; i++) {
+            String id = testRootNode.getNode("node" + i).getIdentifier();
+            query.add(new TermQuery(new Term(FieldNames.PARENT, id)),
+                    BooleanClause.Occur.SHOULD);
+        }
+        return query;
+    }
+
+    private void assertParallelHits(Query query, Sort sort, int size)
+            throws IOException {
+        SearchIndex index = getSearchIndex();
+        IndexReader reader = index.getIndexReader();
+        try {
+            JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
+                    (SessionImpl) session, reader,
+                    index.getContext().getItemStateManager());
+            List<ScoreNode> expected = getHits(searcher, query, sort);
+            assertSize(size, expected);
+
+            searcher.setParallelism(executor, 4);
+            searcher.setMinParallelRangeSize(1);
+            assertNotNull("query not scored in parallel",
+                    searcher.getParallelRanges(query.rewrite(reader)));
+            List<ScoreNode> actual = getHits(searcher, query, sort);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getNodeId(),
+                        actual.get(i).getNodeId());
+                assertEquals(expected.get(i).getDoc(reader),
+                        actual.get(i).getDoc(reader));
+            }
+        } finally {
+            Util.closeOrRelease(reader);
+        }
+    }
+
+    /**
+     * Checks that a query, which must not be split into ranges, returns the
+     * same hits when it is executed concurrently by several threads with
+     * parallel scoring enabled.
+     *
+     * @param query the query.
+     * @param size  the expected number of hits, see
+     *              {@link #assertSize(int, List)}.
+     */
+    private void assertSequentialHits(final Query query, int size)
+            throws Exception {
+        SearchIndex index = getSearchIndex();
+        IndexReader reader = index.getIndexReader();
+        try {
+            final JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
+                    (SessionImpl) session, reader,
+                    index.getContext().getItemStateManager());
+            final List<ScoreNode> expected = getHits(searcher, query, new Sort());
+            assertSize(size, expected);
+
+            searcher.setParallelism(executor, 4);
+            searcher.setMinParallelRangeSize(1);
+            assertNull("query scored in parallel",
+                    searcher.getParallelRanges(query.rewrite(reader)));
+            List<Future<List<ScoreNode>>> results =
+                    new ArrayList<Future<List<ScoreNode>>>();
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(new Callable<List<ScoreNode>>() {
+                    public List<ScoreNode> call() throws Exception {
+                        return getHits(searcher, query, new Sort());
+                    }
+                }));
+            }
+            for (Future<List<ScoreNode>> result : results) {
+                List<ScoreNode> actual = result.get();
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getNodeId(),
+                            actual.get(i).getNodeId());
+                }
+            }
+        } finally {
+            Util.closeOrRelease(reader);
+        }
+    }
+
+    /**
+     * @param size the expected number of hits or <code>-1</code> if the
+     *             number depends on the content of the workspace, in which
+     *             case there must be at least one hit.
+     * @param hits the hits.
+     */
+    private static void assertSize(int size, List<ScoreNode> hits) {
+        if (size < 0) {
+            assertFalse("no hits", hits.isEmpty());
+        } else {
+            assertEquals(size, hits.size());
+        }
+    }
+
+    private static List<ScoreNode> getHits(JackrabbitIndexSearcher searcher,
+                                           Query query,
+                                           Sort sort) throws IOException {
+        List<ScoreNode> nodes = new ArrayList<ScoreNode>();
+        // small fetch hint to exercise paging of sorted hits
+        QueryHits hits = searcher.evaluate(query, sort, 20);
+        try {
+            ScoreNode sn;
+            while ((sn = hits.nextScoreNode()) != null) {
+                nodes.add(sn);
+            }
+        } finally {
+            hits.close();
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import javax.jcr.Node;
+import javax.jcr.query.Query;
+
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.jackrabbit.stats.QueryStatCore;
+
+/**
+ * <code>QueryResultCacheTest</code> checks the query result cache of the
+ * default workspace.
+ */
+public class QueryResultCacheTest extends AbstractIndexingTest {
+
+    private QueryStatCore stats;
+
+    private boolean statsEnabled;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        stats = getSearchIndex().getContext().getQueryStat();
+        statsEnabled = stats.isEnabled();
+        stats.setEnabled(true);
+    }
+
+    protected void tearDown() throws Exception {
+        stats.setEnabled(statsEnabled);
+        stats = null;
+        super.tearDown();
+    }
+
+    /*
+     * use default ws
+     */
+    protected String getWorkspaceName() {
+        return null;
+    }
+
+    public void testCachedResult() throws Exception {
+        Node n1 = testRootNode.addNode("node1");
+        n1.setProperty("prop", "cached");
+        Node n2 = testRootNode.addNode("node2");
+        n2.setProperty("prop", "cached");
+        session.save();
+
+        String stmt = testPath + "/*[@prop = 'cached'] order by @jcr:score descending";
+        executeXPathQuery(stmt, new Node[]{n1, n2});
+        long hits = stats.getResultCacheHitCount();
+        executeXPathQuery(stmt, new Node[]{n1, n2});
+        assertTrue("result not cached", stats.getResultCacheHitCount() > hits);
+    }
+
+    public void testInvalidation() throws Exception {
+        Node n1 = testRootNode.addNode("node1");
+        n1.setProperty("prop", "invalidate");
+        session.save();
+
+        String stmt = testPath + "/*[@prop = 'invalidate']";
+        executeXPathQuery(stmt, new Node[]{n1});
+        executeXPathQuery(stmt, new Node[]{n1});
+
+        Node n2 = testRootNode.addNode("node2");
+        n2.setProperty("prop", "invalidate");
+        session.save();
+        executeXPathQuery(stmt, new Node[]{n1, n2});
+
+        n1.remove();
+        session.save();
+        executeXPathQuery(stmt, new Node[]{n2});
+    }
+
+    public void testAlternatingGenerations() throws Exception {
+        Node n1 = testRootNode.addNode("node1");
+        n1.setProperty("prop", "alternate");
+        session.save();
+
+        // does not need the system index
+        String stmt1 = testPath + "/*[@prop = 'alternate']";
+        // includes the system index, hence uses a different reader generation
+        String stmt2 = "//*[@prop = 'alternate']";
+        executeXPathQuery(stmt1, new Node[]{n1});
+        executeXPathQuery(stmt2, new Node[]{n1});
+        for (int i = 0; i < 3; i++) {
+            long hits = stats.getResultCacheHitCount();
+            executeXPathQuery(stmt1, new Node[]{n1});
+            assertEquals("result not cached", hits + 1, stats.getResultCacheHitCount());
+            executeXPathQuery(stmt2, new Node[]{n1});
+            assertEquals("result not cached", hits + 2, stats.getResultCacheHitCount());
+        }
+    }
+
+    public void testLimit() throws Exception {
+        Node[] nodes = new Node[5];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = testRootNode.addNode("node" + i);
+            nodes[i].setProperty("prop", "limit");
+        }
+        session.save();
+
+        String stmt = testPath + "/*[@prop = 'limit'] order by @jcr:score descending";
+        executeXPathQuery(stmt, nodes);
+        long hits = stats.getResultCacheHitCount();
+        Query q = qm.createQuery(stmt, Query.XPATH);
+        q.setLimit(2);
+        q.setOffset(1);
+        checkResult(q.execute(), 2);
+        assertTrue("result not cached", stats.getResultCacheHitCount() > hits);
+    }
+}
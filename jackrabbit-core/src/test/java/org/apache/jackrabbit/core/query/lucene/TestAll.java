@@ -53,6 +53,9 @@ public class TestAll extends TestCase {
         suite.addTestSuite(ArrayHitsTest.class);
         suite.addTestSuite(IndexFormatVersionTest.class);
         suite.addTestSuite(SynonymProviderTest.class);
+        suite.addTestSuite(AncestorsIndexTest.class);
+        suite.addTestSuite(ParallelSearchTest.class);
+        suite.addTestSuite(QueryResultCacheTest.class);
 
         return suite;
     }
@@ -16,6 +16,8 @@
  */
 package org.apache.jackrabbit.core.security.authorization.acl;
 
+import org.apache.jackrabbit.api.BulkWriter;
+import org.apache.jackrabbit.api.JackrabbitWorkspace;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
 import org.apache.jackrabbit.core.security.authorization.AbstractEvaluationTest;
 import org.apache.jackrabbit.core.security.authorization.AccessControlConstants;
@@ -91,6 +93,45 @@ public class AcReadWriteTest extends AbstractEvaluationTest {
     }
 
 
+    public void testBulkWriterRestrictions() throws RepositoryException, NotExecutableException {
+        /* grant 'testUser' rep:write at 'path', but withdraw the permission
+           to modify properties named 'denied' and to add nodes in the subtree
+           of nodes named 'locked'. */
+        givePrivileges(path, privilegesFromName(PrivilegeRegistry.REP_WRITE),
+                getRestrictions(superuser, path));
+        Map<String, Value> restrictions = new HashMap<String, Value>(getRestrictions(superuser, path));
+        restrictions.put(AccessControlConstants.P_GLOB.toString(), vf.createValue("/*/denied"));
+        withdrawPrivileges(path, privilegesFromName(Privilege.JCR_MODIFY_PROPERTIES), restrictions);
+        restrictions.put(AccessControlConstants.P_GLOB.toString(), vf.createValue("/*/locked*"));
+        withdrawPrivileges(path, privilegesFromName(Privilege.JCR_ADD_CHILD_NODES), restrictions);
+
+        BulkWriter writer = ((JackrabbitWorkspace) getTestSession().getWorkspace())
+                .createBulkWriter(path, 100);
+        writer.startNode("a", testNodeType);
+        writer.setProperty("allowed", vf.createValue("x"));
+        try {
+            writer.setProperty("denied", vf.createValue("x"));
+            fail("AccessDeniedException expected");
+        } catch (AccessDeniedException e) {
+            // success.
+        }
+        writer.startNode("locked", testNodeType);
+        try {
+            writer.startNode("b", testNodeType);
+            fail("AccessDeniedException expected");
+        } catch (AccessDeniedException e) {
+            // success.
+        }
+        writer.endNode();
+        writer.endNode();
+        writer.close();
+
+        assertTrue(superuser.propertyExists(path + "/a/allowed"));
+        assertFalse(superuser.propertyExists(path + "/a/denied"));
+        assertTrue(superuser.nodeExists(path + "/a/locked"));
+        assertFalse(superuser.nodeExists(path + "/a/locked/b"));
+    }
+
     public void testAccessControlPrivileges() throws RepositoryException, NotExecutableException {
         /* precondition:
           testuser must have READ-only permission on test-node and below
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.authorization.acl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.security.authorization.acl.CachingEntryCollector.EntryCache;
+import org.apache.jackrabbit.core.security.authorization.acl.CachingEntryCollector.Shard;
+import org.apache.jackrabbit.core.security.authorization.acl.EntryCollector.Entries;
+
+/**
+ * <code>CachingEntryCollectorTest</code>...
+ */
+public class CachingEntryCollectorTest extends TestCase {
+
+    private final NodeId rootID = NodeId.randomId();
+
+    public void testShardEviction() {
+        Shard shard = new Shard(4);
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = 0; i < 4; i++) {
+            NodeId id = NodeId.randomId();
+            ids.add(id);
+            shard.put(id, entries(null));
+        }
+        assertEquals(4, shard.size());
+
+        // accessed entries get a second chance
+        assertNotNull(shard.get(ids.get(0)));
+        assertNotNull(shard.get(ids.get(1)));
+        shard.put(NodeId.randomId(), entries(null));
+        assertEquals(4, shard.size());
+        assertNotNull(shard.get(ids.get(0)));
+        assertNotNull(shard.get(ids.get(1)));
+    }
+
+    public void testShardEvictionAllAccessed() {
+        Shard shard = new Shard(4);
+        for (int i = 0; i < 4; i++) {
+            NodeId id = NodeId.randomId();
+            shard.put(id, entries(null));
+            shard.get(id);
+        }
+        shard.put(NodeId.randomId(), entries(null));
+        assertEquals(4, shard.size());
+    }
+
+    public void testShardReplaceDoesNotGrow() {
+        Shard shard = new Shard(4);
+        NodeId id = NodeId.randomId();
+        Entries second = entries(null);
+        shard.put(id, entries(null));
+        shard.put(id, second);
+        assertEquals(1, shard.size());
+        assertSame(second, shard.get(id));
+
+        assertSame(second, shard.remove(id));
+        assertEquals(0, shard.size());
+        assertNull(shard.remove(id));
+        assertEquals(0, shard.size());
+    }
+
+    public void testCacheEviction() {
+        int maxSize = 2 * EntryCache.SHARD_COUNT;
+        EntryCache cache = new EntryCache(rootID, maxSize, true);
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = 0; i < 10 * maxSize; i++) {
+            NodeId id = NodeId.randomId();
+            ids.add(id);
+            cache.put(id, entries(null), cache.getGeneration());
+        }
+        int cached = 0;
+        for (NodeId id : ids) {
+            assertTrue(cache.getShard(id).size() <= 2);
+            if (cache.containsKey(id)) {
+                cached++;
+            }
+        }
+        assertTrue(cached > 0);
+        assertTrue(cached <= maxSize);
+    }
+
+    public void testAclChangeInvalidatesPendingRead() {
+        EntryCache cache = new EntryCache(rootID, 100, true);
+        NodeId id = NodeId.randomId();
+
+        // entries read before the policy of a node was modified
+        long generation = cache.getGeneration();
+        cache.remove(Collections.singletonMap(id, Boolean.FALSE));
+        cache.put(id, entries(null), generation);
+        assertFalse(cache.containsKey(id));
+
+        cache.put(id, entries(null), cache.getGeneration());
+        assertTrue(cache.containsKey(id));
+    }
+
+    public void testClearInvalidatesPendingRead() {
+        EntryCache cache = new EntryCache(rootID, 100, true);
+        NodeId id = NodeId.randomId();
+
+        long generation = cache.getGeneration();
+        cache.clear();
+        cache.put(id, entries(null), generation);
+        cache.put(rootID, entries(null), generation);
+        assertFalse(cache.containsKey(id));
+        assertFalse(cache.containsKey(rootID));
+    }
+
+    public void testRemovePolicyAdjustsNextId() {
+        EntryCache cache = new EntryCache(rootID, 100, true);
+        NodeId a = NodeId.randomId();
+        NodeId b = NodeId.randomId();
+        NodeId c = NodeId.randomId();
+        NodeId d = NodeId.randomId();
+        cache.put(rootID, entries(null), cache.getGeneration());
+        cache.put(a, entries(rootID), cache.getGeneration());
+        cache.put(b, entries(a), cache.getGeneration());
+        cache.put(c, entries(b), cache.getGeneration());
+        cache.put(d, entries(b), cache.getGeneration());
+
+        cache.remove(Collections.singletonMap(b, Boolean.TRUE));
+        assertFalse(cache.containsKey(b));
+        assertEquals(a, cache.get(c).getNextId());
+        assertEquals(a, cache.get(d).getNextId());
+        assertEquals(rootID, cache.get(a).getNextId());
+
+        // removing a chain of policies at once
+        Map<NodeId, Boolean> removed = new HashMap<NodeId, Boolean>();
+        removed.put(a, Boolean.TRUE);
+        removed.put(c, Boolean.TRUE);
+        cache.remove(removed);
+        assertEquals(rootID, cache.get(d).getNextId());
+    }
+
+    public void testModifyPolicyKeepsNextId() {
+        EntryCache cache = new EntryCache(rootID, 100, true);
+        NodeId a = NodeId.randomId();
+        NodeId b = NodeId.randomId();
+        cache.put(a, entries(rootID), cache.getGeneration());
+        cache.put(b, entries(a), cache.getGeneration());
+
+        cache.remove(Collections.singletonMap(a, Boolean.FALSE));
+        assertFalse(cache.containsKey(a));
+        assertEquals(a, cache.get(b).getNextId());
+    }
+
+    public void testCircularNextId() {
+        EntryCache cache = new EntryCache(rootID, 100, true);
+        NodeId id = NodeId.randomId();
+        try {
+            cache.put(id, entries(id), cache.getGeneration());
+            fail("Circular next id must be rejected.");
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+        assertFalse(cache.containsKey(id));
+    }
+
+    public void testRootSpecialCase() {
+        EntryCache cache = new EntryCache(rootID, 100, true);
+        Entries entries = entries(null);
+        cache.put(rootID, entries, cache.getGeneration());
+        assertSame(entries, cache.get(rootID));
+        assertEquals(0, cache.getShard(rootID).size());
+
+        cache = new EntryCache(rootID, 100, false);
+        cache.put(rootID, entries, cache.getGeneration());
+        assertSame(entries, cache.get(rootID));
+        assertEquals(1, cache.getShard(rootID).size());
+    }
+
+    private static Entries entries(NodeId nextId) {
+        return new Entries(Collections.<Entry>emptyList(), nextId);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.authorization.acl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.security.AccessControlPolicy;
+import javax.jcr.security.AccessControlPolicyIterator;
+import javax.jcr.security.Privilege;
+
+import org.apache.jackrabbit.core.NodeImpl;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.security.principal.EveryonePrincipal;
+import org.apache.jackrabbit.test.NotExecutableException;
+import org.apache.jackrabbit.test.api.security.AbstractAccessControlTest;
+
+/**
+ * <code>EntryCollectorContentionTest</code> measures the throughput of many
+ * threads that concurrently look up the access control entries of access
+ * controlled nodes and their ancestors in the {@link CachingEntryCollector}
+ * used by the {@link ACLProvider}. Note that this test takes a while to
+ * finish and does not contain assertions about the throughput, so it should
+ * only be invoked explicitly instead of being included in the normal test
+ * suite.
+ */
+public class EntryCollectorContentionTest extends AbstractAccessControlTest {
+
+    /**
+     * Number of access controlled nodes.
+     */
+    private static final int NODES = 200;
+
+    /**
+     * Numbers of concurrent reader threads to compare.
+     */
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    /**
+     * Duration of a measurement in milliseconds.
+     */
+    private static final long DURATION = 5000;
+
+    private CachingEntryCollector collector;
+
+    private final List<NodeId> ids = new ArrayList<NodeId>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        Node parent = testRootNode;
+        for (int i = 0; i < NODES; i++) {
+            // alternate between siblings and descendants
+            Node n = ((i % 10 == 0) ? testRootNode : parent).addNode(nodeName1 + i, testNodeType);
+            superuser.save();
+            ACLTemplate acl = getPolicy(n.getPath());
+            acl.addEntry(EveryonePrincipal.getInstance(),
+                    privilegesFromName(Privilege.JCR_READ), i % 2 == 0);
+            acMgr.setPolicy(n.getPath(), acl);
+            superuser.save();
+            ids.add(((NodeImpl) n).getNodeId());
+            parent = n;
+        }
+
+        SessionImpl s = (SessionImpl) superuser;
+        collector = new CachingEntryCollector(s, ((NodeImpl) s.getRootNode()).getNodeId());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (collector != null) {
+            collector.close();
+        }
+        ids.clear();
+        super.tearDown();
+    }
+
+    public void testConcurrentReads() throws Exception {
+        // populate the cache
+        for (NodeId id : ids) {
+            assertFalse(collector.getEntries(id).isEmpty());
+        }
+        for (int threads : THREADS) {
+            long ops = run(threads);
+            log.println(threads + " threads: " + (ops * 1000 / DURATION) + " lookups/s");
+            log.flush();
+        }
+    }
+
+    private long run(int threads) throws InterruptedException {
+        final AtomicLong ops = new AtomicLong();
+        final long end = System.currentTimeMillis() + DURATION;
+        final List<Throwable> problems = new ArrayList<Throwable>();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int offset = i;
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    long count = 0;
+                    try {
+                        int i = offset;
+                        while (System.currentTimeMillis() < end) {
+                            for (int j = 0; j < 100; j++) {
+                                // walk up the access controlled ancestors
+                                NodeId id = ids.get(i++ % ids.size());
+                                while (id != null) {
+                                    id = collector.getEntries(id).getNextId();
+                                    count++;
+                                }
+                            }
+                        }
+                    } catch (Throwable t) {
+                        synchronized (problems) {
+                            problems.add(t);
+                        }
+                    }
+                    ops.addAndGet(count);
+                }
+            });
+        }
+        for (Thread t : workers) {
+            t.start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        if (!problems.isEmpty()) {
+            fail(problems.get(0).toString());
+        }
+        return ops.get();
+    }
+
+    private ACLTemplate getPolicy(String path) throws RepositoryException,
+            NotExecutableException {
+        AccessControlPolicyIterator itr = acMgr.getApplicablePolicies(path);
+        while (itr.hasNext()) {
+            AccessControlPolicy policy = itr.nextAccessControlPolicy();
+            if (policy instanceof ACLTemplate) {
+                return (ACLTemplate) policy;
+            }
+        }
+        throw new NotExecutableException();
+    }
+}
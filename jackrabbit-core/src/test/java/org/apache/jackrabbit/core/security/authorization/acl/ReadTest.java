@@ -21,6 +21,12 @@ import org.apache.jackrabbit.api.JackrabbitSession;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
 import org.apache.jackrabbit.api.security.user.Authorizable;
 import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.core.NodeImpl;
+import org.apache.jackrabbit.core.PropertyImpl;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.security.AccessManager;
+import org.apache.jackrabbit.core.security.BatchReadAccessManager;
 import org.apache.jackrabbit.core.security.authorization.AbstractEvaluationTest;
 import org.apache.jackrabbit.core.security.authorization.AccessControlConstants;
 import org.apache.jackrabbit.test.NotExecutableException;
@@ -28,7 +34,9 @@ import org.junit.Test;
 
 import javax.jcr.AccessDeniedException;
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
 import javax.jcr.PathNotFoundException;
+import javax.jcr.PropertyIterator;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
@@ -36,8 +44,10 @@ import javax.jcr.ValueFactory;
 import javax.jcr.security.AccessControlManager;
 import javax.jcr.security.Privilege;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -475,6 +485,46 @@ public class ReadTest extends AbstractEvaluationTest {
         }
     }
 
+    public void testBatchRead() throws Exception {
+        Privilege[] read = privilegesFromName(Privilege.JCR_READ);
+        Node n = superuser.getNode(path);
+        Node sibling = n.addNode(nodeName3, testNodeType);
+        sibling.setProperty(propertyName1, "a");
+        superuser.save();
+
+        withdrawPrivileges(path, read, getRestrictions(superuser, path));
+        givePrivileges(childNPath, read, getRestrictions(superuser, childNPath));
+        Map<String, Value> restrictions = new HashMap<String, Value>(getRestrictions(superuser, childNPath));
+        restrictions.put(AccessControlConstants.P_GLOB.toString(),
+                superuser.getValueFactory().createValue("/" + jcrPrimaryType));
+        withdrawPrivileges(childNPath, read, restrictions);
+
+        List<ItemId> ids = new ArrayList<ItemId>();
+        collectIds(superuser.getNode(testRoot), ids);
+        ItemId[] itemIds = ids.toArray(new ItemId[ids.size()]);
+
+        AccessManager testAccessMgr = ((SessionImpl) getTestSession()).getAccessManager();
+        assertTrue(testAccessMgr instanceof BatchReadAccessManager);
+        boolean[] canRead = ((BatchReadAccessManager) testAccessMgr).canRead(itemIds);
+        assertEquals(itemIds.length, canRead.length);
+        for (int i = 0; i < itemIds.length; i++) {
+            assertEquals(itemIds[i].toString(),
+                    testAccessMgr.canRead(null, itemIds[i]), canRead[i]);
+        }
+        assertFalse(canRead[ids.indexOf(((NodeImpl) sibling).getNodeId())]);
+        assertTrue(canRead[ids.indexOf(((NodeImpl) superuser.getNode(childNPath)).getNodeId())]);
+    }
+
+    private static void collectIds(Node node, List<ItemId> ids) throws RepositoryException {
+        ids.add(((NodeImpl) node).getNodeId());
+        for (PropertyIterator it = node.getProperties(); it.hasNext(); ) {
+            ids.add(((PropertyImpl) it.nextProperty()).getId());
+        }
+        for (NodeIterator it = node.getNodes(); it.hasNext(); ) {
+            collectIds(it.nextNode(), ids);
+        }
+    }
+
     private static boolean canGetNode(Session session, String nodePath) throws RepositoryException {
         try {
             session.getNode(nodePath);
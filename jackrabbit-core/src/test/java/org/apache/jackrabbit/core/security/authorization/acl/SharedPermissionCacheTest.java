@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.authorization.acl;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.security.authorization.AccessControlModifications;
+
+/**
+ * <code>SharedPermissionCacheTest</code>...
+ */
+public class SharedPermissionCacheTest extends TestCase {
+
+    private final SharedPermissionCache.PrincipalNames principals =
+            new SharedPermissionCache.PrincipalNames(Arrays.asList("a", "everyone"));
+
+    public void testPrincipalOrder() {
+        SharedPermissionCache cache = new SharedPermissionCache(10);
+        cache.put(new SharedPermissionCache.Key(principals, "/x"), Boolean.TRUE, cache.getGeneration());
+
+        SharedPermissionCache.PrincipalNames reversed =
+                new SharedPermissionCache.PrincipalNames(Arrays.asList("everyone", "a"));
+        assertEquals(Boolean.TRUE, cache.get(new SharedPermissionCache.Key(reversed, "/x")));
+
+        SharedPermissionCache.PrincipalNames other =
+                new SharedPermissionCache.PrincipalNames(Collections.singleton("everyone"));
+        assertNull(cache.get(new SharedPermissionCache.Key(other, "/x")));
+    }
+
+    public void testRepositoryLevelKey() {
+        SharedPermissionCache cache = new SharedPermissionCache(10);
+        cache.put(new SharedPermissionCache.Key(principals, null), Boolean.FALSE, cache.getGeneration());
+        assertEquals(Boolean.FALSE, cache.get(new SharedPermissionCache.Key(principals, null)));
+        assertNull(cache.get(new SharedPermissionCache.Key(principals, "/")));
+    }
+
+    public void testModification() {
+        SharedPermissionCache cache = new SharedPermissionCache(10);
+        SharedPermissionCache.Key key = new SharedPermissionCache.Key(principals, "/x");
+        long generation = cache.getGeneration();
+        cache.put(key, Boolean.TRUE, generation);
+
+        cache.acModified(new AccessControlModifications<String>(
+                Collections.<String, Integer>emptyMap()));
+        assertNull(cache.get(key));
+
+        // evaluated before the modification
+        cache.put(key, Boolean.TRUE, generation);
+        assertNull(cache.get(key));
+        assertEquals(0, cache.size());
+    }
+
+    public void testMaxSize() {
+        SharedPermissionCache cache = new SharedPermissionCache(10);
+        for (int i = 0; i < 100; i++) {
+            cache.put(new SharedPermissionCache.Key(principals, "/" + i), Boolean.TRUE, cache.getGeneration());
+        }
+        assertTrue(cache.size() <= 10);
+    }
+}
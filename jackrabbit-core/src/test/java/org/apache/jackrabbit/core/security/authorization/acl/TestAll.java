@@ -41,6 +41,8 @@ public class TestAll extends TestCase {
         suite.addTestSuite(ACLTemplateEntryTest.class);
         suite.addTestSuite(EntryTest.class);
         suite.addTestSuite(EntryCollectorTest.class);
+        suite.addTestSuite(CachingEntryCollectorTest.class);
+        suite.addTestSuite(SharedPermissionCacheTest.class);
 
         suite.addTestSuite(ReadTest.class);
         suite.addTestSuite(WriteTest.class);
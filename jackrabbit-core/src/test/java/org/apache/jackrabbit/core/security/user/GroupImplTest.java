@@ -22,13 +22,18 @@ import org.apache.jackrabbit.api.security.principal.PrincipalManager;
 import org.apache.jackrabbit.api.security.user.AbstractUserTest;
 import org.apache.jackrabbit.api.security.user.Authorizable;
 import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.api.security.user.User;
+import org.apache.jackrabbit.core.SessionImpl;
 import org.apache.jackrabbit.core.security.principal.EveryonePrincipal;
 import org.apache.jackrabbit.test.NotExecutableException;
 
 import javax.jcr.RepositoryException;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 
 /**
@@ -126,4 +131,83 @@ public class GroupImplTest extends AbstractUserTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    public void testMembershipIndex() throws Exception {
+        assertMembershipIndexUpdated((UserManagerImpl) userMgr);
+    }
+
+    public void testMembershipIndexWithMembersNode() throws Exception {
+        Properties options = new Properties();
+        options.put(UserManagerImpl.PARAM_GROUP_MEMBERSHIP_SPLIT_SIZE, 4);
+        UserManagerImpl umgr = new UserManagerImpl(
+                (SessionImpl) superuser, superuser.getUserID(), options);
+        assertMembershipIndexUpdated(umgr);
+    }
+
+    /**
+     * Changes the members of a group through the session and checks that
+     * the membership index of the given user manager follows the changes.
+     */
+    private void assertMembershipIndexUpdated(UserManagerImpl umgr) throws Exception {
+        MembershipCache cache = umgr.getMembershipCache();
+        Group g = null;
+        List<User> users = new ArrayList<User>();
+        try {
+            Principal principal = getTestPrincipal();
+            g = umgr.createGroup(principal);
+            List<String> userIds = new ArrayList<String>();
+            for (int i = 0; i < 6; i++) {
+                User u = umgr.createUser(getTestPrincipal().getName(), "pw");
+                users.add(u);
+                userIds.add(((UserImpl) u).getNode().getIdentifier());
+            }
+            save(superuser);
+            String groupId = ((GroupImpl) g).getNode().getIdentifier();
+
+            // build the index before the membership changes
+            for (String userId : userIds) {
+                assertFalse(cache.getDeclaredMemberOf(userId).contains(groupId));
+            }
+
+            for (User u : users) {
+                assertTrue(g.addMember(u));
+            }
+            save(superuser);
+            for (String userId : userIds) {
+                assertTrue(cache.getDeclaredMemberOf(userId).contains(groupId));
+                assertTrue(cache.getMemberOf(userId).contains(groupId));
+            }
+
+            assertTrue(g.removeMember(users.get(0)));
+            save(superuser);
+            assertFalse(cache.getDeclaredMemberOf(userIds.get(0)).contains(groupId));
+            for (String userId : userIds.subList(1, userIds.size())) {
+                assertTrue(cache.getDeclaredMemberOf(userId).contains(groupId));
+            }
+
+            g.remove();
+            g = null;
+            save(superuser);
+            for (String userId : userIds) {
+                assertFalse(cache.getMemberOf(userId).contains(groupId));
+            }
+
+            // a new group with the same identifier has no members
+            g = umgr.createGroup(principal);
+            save(superuser);
+            assertEquals(groupId, ((GroupImpl) g).getNode().getIdentifier());
+            assertFalse(g.getDeclaredMembers().hasNext());
+            for (String userId : userIds) {
+                assertFalse(cache.getMemberOf(userId).contains(groupId));
+            }
+        } finally {
+            if (g != null) {
+                g.remove();
+            }
+            for (User u : users) {
+                u.remove();
+            }
+            save(superuser);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.user;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>MembershipIndexTest</code> checks the declared and inherited
+ * memberships resolved by the {@link MembershipIndex} while groups change.
+ */
+public class MembershipIndexTest extends TestCase {
+
+    private static final Set<String> NONE = Collections.emptySet();
+
+    public void testDeclaredMembership() {
+        MembershipIndex index = new MembershipIndex(false);
+        index.setMembers("g1", set("u1", "u2"), NONE);
+        index.setMembers("g2", set("u1"), NONE);
+        assertGroups(set("g1", "g2"), index.getDeclaredMemberOf("u1"));
+        assertGroups(set("g1"), index.getDeclaredMemberOf("u2"));
+        assertTrue(index.getDeclaredMemberOf("u3").isEmpty());
+        assertEquals(2, index.size());
+
+        index.setMembers("g1", set("u2", "u3"), NONE);
+        assertGroups(set("g2"), index.getDeclaredMemberOf("u1"));
+        assertGroups(set("g1"), index.getDeclaredMemberOf("u3"));
+
+        index.removeGroup("g1");
+        assertTrue(index.getDeclaredMemberOf("u2").isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    public void testInheritedMembership() {
+        MembershipIndex index = new MembershipIndex(false);
+        index.setMembers("g1", set("g2"), NONE);
+        index.setMembers("g2", set("g3", "u1"), NONE);
+        index.setMembers("g3", set("u2"), NONE);
+        assertGroups(set("g1", "g2", "g3"), index.getMemberOf("u2"));
+        assertGroups(set("g1", "g2"), index.getMemberOf("u1"));
+
+        // changes of an ancestor group invalidate the cached memberships
+        index.setMembers("g1", NONE, NONE);
+        assertGroups(set("g2", "g3"), index.getMemberOf("u2"));
+        assertGroups(set("g2"), index.getMemberOf("u1"));
+
+        index.setMembers("g4", set("g3"), NONE);
+        assertGroups(set("g2", "g3", "g4"), index.getMemberOf("u2"));
+        assertGroups(set("g2"), index.getMemberOf("u1"));
+    }
+
+    public void testCyclicMembership() {
+        MembershipIndex index = new MembershipIndex(false);
+        index.setMembers("g1", set("g2", "u1"), NONE);
+        index.setMembers("g2", set("g1"), NONE);
+        assertGroups(set("g1", "g2"), index.getMemberOf("u1"));
+        assertGroups(set("g1", "g2"), index.getMemberOf("g1"));
+    }
+
+    public void testMembersNode() {
+        MembershipIndex index = new MembershipIndex(true);
+        index.setMembers("g1", set("u1"), NONE);
+        index.setMembers("g2", NONE, set("u1"));
+        // node based membership takes precedence
+        assertGroups(set("g2"), index.getDeclaredMemberOf("u1"));
+
+        index.removeGroup("g2");
+        assertGroups(set("g1"), index.getDeclaredMemberOf("u1"));
+    }
+
+    private static Set<String> set(String... ids) {
+        return new HashSet<String>(Arrays.asList(ids));
+    }
+
+    private static void assertGroups(Set<String> expected, Collection<String> actual) {
+        assertEquals(expected, new HashSet<String>(actual));
+    }
+}
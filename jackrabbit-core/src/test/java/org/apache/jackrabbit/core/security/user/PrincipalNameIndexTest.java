@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.user;
+
+import java.io.File;
+
+import javax.jcr.Node;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.jackrabbit.api.security.user.User;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+import org.apache.jackrabbit.core.security.SecurityConstants;
+import org.apache.jackrabbit.core.security.principal.PrincipalImpl;
+import org.apache.jackrabbit.test.JUnitTest;
+
+/**
+ * <code>PrincipalNameIndexTest</code> checks the principal name index of a
+ * new repository, where it is used while the security manager creates the
+ * system users and groups.
+ */
+public class PrincipalNameIndexTest extends JUnitTest {
+
+    private static final String REPO_HOME = new File("target",
+            PrincipalNameIndexTest.class.getSimpleName()).getPath();
+
+    private RepositoryImpl repo;
+
+    private JackrabbitSession session;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        FileUtils.deleteDirectory(new File(REPO_HOME));
+        RepositoryConfig config = RepositoryConfig.create(
+                getClass().getResourceAsStream("repository-security-workspace.xml"), REPO_HOME);
+        repo = RepositoryImpl.create(config);
+        // the user manager of the security workspace creates the
+        // administrator groups
+        session = (JackrabbitSession) repo.login(
+                new SimpleCredentials("admin", "admin".toCharArray()), "security");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        session.logout();
+        repo.shutdown();
+        FileUtils.deleteDirectory(new File(REPO_HOME));
+        super.tearDown();
+    }
+
+    public void testSystemAuthorizables() throws Exception {
+        UserManager userMgr = session.getUserManager();
+        assertFalse(userMgr.getAuthorizable("admin").isGroup());
+        assertFalse(userMgr.getAuthorizable("anonymous").isGroup());
+        String[] groups = {
+                UserConstants.USER_ADMIN_GROUP_NAME,
+                UserConstants.GROUP_ADMIN_GROUP_NAME,
+                SecurityConstants.ADMINISTRATORS_NAME
+        };
+        for (String name : groups) {
+            Authorizable group = userMgr.getAuthorizable(new PrincipalImpl(name));
+            assertNotNull(name, group);
+            assertTrue(name, group.isGroup());
+        }
+    }
+
+    public void testNewPrincipalName() throws Exception {
+        UserManager userMgr = session.getUserManager();
+        User user = userMgr.createUser("id", "pw", new PrincipalImpl("name"), null);
+        try {
+            session.save();
+            Authorizable found = userMgr.getAuthorizable(new PrincipalImpl("name"));
+            assertNotNull(found);
+            assertEquals(user.getID(), found.getID());
+        } finally {
+            user.remove();
+            session.save();
+        }
+        assertNull(userMgr.getAuthorizable(new PrincipalImpl("name")));
+    }
+
+    public void testRemovedUser() throws Exception {
+        UserManager userMgr = session.getUserManager();
+        PrincipalNameIndex index = getIndex(userMgr);
+        User user = userMgr.createUser("id", "pw", new PrincipalImpl("name"), null);
+        session.save();
+        assertEquals(getNode(user).getIdentifier(), index.getNodeIdentifier("name"));
+
+        user.remove();
+        session.save();
+        assertNull(index.getNodeIdentifier("name"));
+    }
+
+    public void testRemovedFolder() throws Exception {
+        UserManager userMgr = session.getUserManager();
+        PrincipalNameIndex index = getIndex(userMgr);
+        User user = userMgr.createUser("id", "pw", new PrincipalImpl("name"), "/folder/subfolder");
+        session.save();
+        Node folder = getNode(user).getParent().getParent();
+        assertEquals(getNode(user).getIdentifier(), index.getNodeIdentifier("name"));
+
+        folder.remove();
+        session.save();
+        assertNull(index.getNodeIdentifier("name"));
+        assertNotNull(index.getNodeIdentifier("admin"));
+    }
+
+    public void testMovedUser() throws Exception {
+        UserManager userMgr = session.getUserManager();
+        PrincipalNameIndex index = getIndex(userMgr);
+        User user = userMgr.createUser("id", "pw", new PrincipalImpl("name"), null);
+        session.save();
+        Node node = getNode(user);
+        String nodeId = node.getIdentifier();
+        assertEquals(nodeId, index.getNodeIdentifier("name"));
+
+        try {
+            session.move(node.getPath(), node.getParent().getPath() + "/moved");
+            session.save();
+            assertEquals(nodeId, index.getNodeIdentifier("name"));
+        } finally {
+            session.getNodeByIdentifier(nodeId).remove();
+            session.save();
+        }
+    }
+
+    private static Node getNode(Authorizable authorizable) {
+        return ((AuthorizableImpl) authorizable).getNode();
+    }
+
+    private static PrincipalNameIndex getIndex(UserManager userMgr) {
+        return ((UserManagerImpl) userMgr).getMembershipCache().getPrincipalNameIndex();
+    }
+
+}
@@ -55,6 +55,8 @@ public class TestAll extends TestCase {
         suite.addTestSuite(DefaultPrincipalProviderTest.class);        
 
         suite.addTestSuite(PasswordUtilityTest.class);
+        suite.addTestSuite(MembershipIndexTest.class);
+        suite.addTestSuite(PrincipalNameIndexTest.class);
         return suite;
     }
 }
@@ -140,6 +140,44 @@ public class UserManagerImplTest extends AbstractUserTest {
         }
     }
 
+    public void testGetAuthorizableByPrincipalName() throws RepositoryException, NotExecutableException {
+        Principal p = getTestPrincipal();
+        String uid = getTestUserId(p);
+        PrincipalNameIndex index = ((UserManagerImpl) userMgr).getMembershipCache().getPrincipalNameIndex();
+
+        User u = null;
+        Group gr = null;
+        try {
+            // build the index before the authorizables are created
+            assertNull(userMgr.getAuthorizable(new TestPrincipal(p.getName())));
+
+            u = userMgr.createUser(uid, buildPassword(uid), p, null);
+            Principal gp = getTestPrincipal();
+            gr = userMgr.createGroup(getTestUserId(gp), gp, null);
+            save(superuser);
+
+            // principal names that differ from the IDs are resolved by the index
+            assertEquals(u.getID(), userMgr.getAuthorizable(new TestPrincipal(p.getName())).getID());
+            assertEquals(gr.getID(), userMgr.getAuthorizable(new TestPrincipal(gp.getName())).getID());
+
+            index.clear();
+            assertEquals(u.getID(), userMgr.getAuthorizable(new TestPrincipal(p.getName())).getID());
+
+            u.remove();
+            u = null;
+            save(superuser);
+            assertNull(userMgr.getAuthorizable(new TestPrincipal(p.getName())));
+        } finally {
+            if (u != null) {
+                u.remove();
+            }
+            if (gr != null) {
+                gr.remove();
+            }
+            save(superuser);
+        }
+    }
+
     public void testCreateGroupWithInvalidIdOrPrincipal() throws RepositoryException, NotExecutableException {
         Principal p = getTestPrincipal();
         String uid = p.getName();
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+
+/**
+ * <code>ChildNodeEntriesTest</code> checks the order and the same-name
+ * sibling indexes of {@link ChildNodeEntries} and that clones are not
+ * affected by modifications.
+ */
+public class ChildNodeEntriesTest extends TestCase {
+
+    private static final NameFactory FACTORY = NameFactoryImpl.getInstance();
+
+    private static final Name A = FACTORY.create("", "a");
+
+    private static final Name B = FACTORY.create("", "b");
+
+    public void testOrder() {
+        ChildNodeEntries entries = new ChildNodeEntries();
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = 0; i < 1000; i++) {
+            NodeId id = NodeId.randomId();
+            entries.add(FACTORY.create("", "n" + i), id);
+            ids.add(id);
+        }
+        assertEquals(1000, entries.size());
+
+        // remove the first, the last and every tenth entry
+        for (int i = 999; i >= 0; i -= 10) {
+            assertEquals(ids.get(i), entries.remove(ids.remove(i)).getId());
+        }
+        entries.remove(ids.remove(0));
+        assertNull(entries.remove(NodeId.randomId()));
+
+        assertIds(ids, entries);
+        for (NodeId id : ids) {
+            assertEquals(id, entries.get(id).getId());
+        }
+    }
+
+    public void testSameNameSiblings() {
+        ChildNodeEntries entries = new ChildNodeEntries();
+        NodeId a1 = NodeId.randomId();
+        NodeId b1 = NodeId.randomId();
+        NodeId a2 = NodeId.randomId();
+        NodeId a3 = NodeId.randomId();
+        entries.add(A, a1);
+        entries.add(B, b1);
+        assertEquals(2, entries.add(A, a2).getIndex());
+        assertEquals(3, entries.add(A, a3).getIndex());
+        assertEquals(3, entries.get(A).size());
+        assertEquals(a2, entries.get(A, 2).getId());
+
+        entries.remove(a1);
+        assertEquals(2, entries.get(A).size());
+        assertEquals(1, entries.get(a2).getIndex());
+        assertEquals(a3, entries.get(A, 2).getId());
+        assertEquals(2, entries.get(a3).getIndex());
+
+        entries.remove(a2);
+        assertEquals(1, entries.get(a3).getIndex());
+        assertEquals(a3, entries.get(A, 1).getId());
+        assertNull(entries.get(A, 2));
+
+        List<NodeId> expected = new ArrayList<NodeId>();
+        expected.add(b1);
+        expected.add(a3);
+        assertIds(expected, entries);
+    }
+
+    public void testClone() {
+        ChildNodeEntries entries = new ChildNodeEntries();
+        NodeId a1 = NodeId.randomId();
+        NodeId a2 = NodeId.randomId();
+        NodeId b1 = NodeId.randomId();
+        entries.add(A, a1);
+        entries.add(A, a2);
+
+        ChildNodeEntries clone = (ChildNodeEntries) entries.clone();
+        assertEquals(entries, clone);
+
+        // modifications of the clone do not affect the original
+        clone.add(A, NodeId.randomId());
+        clone.add(B, b1);
+        clone.remove(a1);
+        assertEquals(2, entries.size());
+        assertEquals(2, entries.get(A).size());
+        assertEquals(1, entries.get(a1).getIndex());
+        assertEquals(2, entries.get(a2).getIndex());
+        assertNull(entries.get(b1));
+        assertFalse(entries.equals(clone));
+
+        // and vice versa
+        entries.add(A, NodeId.randomId());
+        entries.removeAll();
+        assertEquals(3, clone.size());
+        assertEquals(2, clone.get(A).size());
+        assertEquals(1, clone.get(a2).getIndex());
+        assertEquals(b1, clone.get(B, 1).getId());
+        assertTrue(entries.isEmpty());
+    }
+
+    public void testRemoveAllRetainAll() {
+        ChildNodeEntries entries = new ChildNodeEntries();
+        NodeId a1 = NodeId.randomId();
+        NodeId b1 = NodeId.randomId();
+        entries.add(A, a1);
+        entries.add(B, b1);
+
+        ChildNodeEntries other = (ChildNodeEntries) entries.clone();
+        other.remove(a1);
+        NodeId a2 = NodeId.randomId();
+        other.add(A, a2);
+
+        assertEquals(a1, entries.removeAll(other).get(0).getId());
+        assertEquals(1, entries.removeAll(other).size());
+        assertEquals(b1, entries.retainAll(other).get(0).getId());
+        assertEquals(1, entries.retainAll(other).size());
+    }
+
+    public void testList() {
+        ChildNodeEntries entries = new ChildNodeEntries();
+        NodeId a1 = NodeId.randomId();
+        NodeId a2 = NodeId.randomId();
+        entries.add(A, a1);
+        entries.add(A, a2);
+
+        // the list is built once and shared with clones
+        List<ChildNodeEntry> list = entries.list();
+        assertSame(list, entries.list());
+        ChildNodeEntries clone = (ChildNodeEntries) entries.clone();
+        assertSame(list, clone.list());
+        try {
+            list.remove(0);
+            fail("the list of entries is unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        // modifications do not affect lists returned earlier
+        clone.remove(a1);
+        assertEquals(2, list.size());
+        assertEquals(a1, list.get(0).getId());
+        assertEquals(1, clone.list().size());
+        assertEquals(1, clone.list().get(0).getIndex());
+        assertSame(list, entries.list());
+        entries.removeAll();
+        assertTrue(entries.list().isEmpty());
+        assertEquals(2, list.size());
+    }
+
+    private static void assertIds(List<NodeId> expected, ChildNodeEntries entries) {
+        List<NodeId> actual = new ArrayList<NodeId>();
+        for (ChildNodeEntry entry : entries.list()) {
+            actual.add(entry.getId());
+        }
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), entries.size());
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.commons.conversion.DefaultNamePathResolver;
+import org.apache.jackrabbit.spi.commons.conversion.PathResolver;
+import org.apache.jackrabbit.spi.commons.namespace.NamespaceResolver;
+
+/**
+ * <code>SharedPathCacheTest</code> checks the caching and invalidation of
+ * paths in the {@link SharedPathCache}.
+ */
+public class SharedPathCacheTest extends TestCase {
+
+    private static final PathResolver RESOLVER = new DefaultNamePathResolver(new NamespaceResolver() {
+
+        public String getPrefix(String uri) {
+            throw new UnsupportedOperationException();
+        }
+
+        public String getURI(String prefix) {
+            if (Name.NS_JCR_PREFIX.equals(prefix)) {
+                return Name.NS_JCR_URI;
+            }
+            return "";
+        }
+    });
+
+    public void testCache() throws Exception {
+        SharedPathCache cache = new SharedPathCache(10);
+        NodeId id = NodeId.randomId();
+        Path path = toPath("/a/b");
+        cache.cache(id, path, cache.getGeneration());
+        assertEquals(path, cache.getPath(id));
+        assertEquals(id, cache.getId(toPath("/a[1]/b")));
+
+        // secondary path of a shareable node
+        Path other = toPath("/c");
+        cache.cache(other, id, cache.getGeneration());
+        assertEquals(id, cache.getId(other));
+        assertEquals(path, cache.getPath(id));
+        assertEquals(2, cache.size());
+    }
+
+    public void testInvalidate() throws Exception {
+        SharedPathCache cache = new SharedPathCache(10);
+        NodeId a = NodeId.randomId();
+        NodeId b = NodeId.randomId();
+        NodeId ab = NodeId.randomId();
+        cache.cache(a, toPath("/a"), cache.getGeneration());
+        cache.cache(b, toPath("/b"), cache.getGeneration());
+        cache.cache(ab, toPath("/a/b"), cache.getGeneration());
+
+        long generation = cache.getGeneration();
+        cache.invalidate(Collections.singletonList(toPath("/a")));
+        assertNull(cache.getPath(a));
+        assertNull(cache.getPath(ab));
+        assertNull(cache.getId(toPath("/a/b")));
+        assertEquals(toPath("/b"), cache.getPath(b));
+        assertEquals(1, cache.size());
+
+        // resolved before the invalidation
+        cache.cache(ab, toPath("/a/b"), generation);
+        assertNull(cache.getPath(ab));
+        assertEquals(1, cache.size());
+    }
+
+    public void testInvalidateSubtree() throws Exception {
+        SharedPathCache cache = new SharedPathCache(10);
+        NodeId abc = NodeId.randomId();
+        NodeId ab2 = NodeId.randomId();
+        NodeId ac = NodeId.randomId();
+        // the ancestors of /a/b/c are not cached
+        cache.cache(abc, toPath("/a/b/c"), cache.getGeneration());
+        cache.cache(ab2, toPath("/a/b[2]"), cache.getGeneration());
+        cache.cache(ac, toPath("/a/c"), cache.getGeneration());
+
+        cache.invalidate(Collections.singletonList(toPath("/a/b")));
+        assertNull(cache.getPath(abc));
+        assertEquals(toPath("/a/b[2]"), cache.getPath(ab2));
+        assertEquals(toPath("/a/c"), cache.getPath(ac));
+        assertEquals(2, cache.size());
+
+        // cached again below the invalidated path
+        cache.cache(abc, toPath("/a/b/c"), cache.getGeneration());
+        cache.invalidate(Collections.singletonList(toPath("/a")));
+        assertNull(cache.getPath(abc));
+        assertNull(cache.getPath(ab2));
+        assertNull(cache.getPath(ac));
+        assertEquals(0, cache.size());
+    }
+
+    public void testInvalidateAfterEviction() throws Exception {
+        SharedPathCache cache = new SharedPathCache(10);
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = 0; i < 100; i++) {
+            NodeId id = NodeId.randomId();
+            ids.add(id);
+            cache.cache(id, toPath("/a/n" + i + "/b"), cache.getGeneration());
+        }
+        cache.invalidate(Collections.singletonList(toPath("/a")));
+        assertEquals(0, cache.size());
+        for (NodeId id : ids) {
+            assertNull(cache.getPath(id));
+        }
+    }
+
+    public void testSystemPathsNotCached() throws Exception {
+        SharedPathCache cache = new SharedPathCache(10);
+        NodeId id = NodeId.randomId();
+        Path path = toPath("/jcr:system/jcr:versionStorage");
+        cache.cache(id, path, cache.getGeneration());
+        assertNull(cache.getPath(id));
+        assertNull(cache.getId(path));
+    }
+
+    public void testUpperLimit() throws Exception {
+        SharedPathCache cache = new SharedPathCache(10);
+        for (int i = 0; i < 100; i++) {
+            cache.cache(NodeId.randomId(), toPath("/n" + i), cache.getGeneration());
+        }
+        assertTrue(cache.size() <= 10);
+    }
+
+    public void testMovedChildNodes() throws Exception {
+        Name a = RESOLVER.getQPath("a").getName();
+        Name b = RESOLVER.getQPath("b").getName();
+        Name c = RESOLVER.getQPath("c").getName();
+        NodeState before = new NodeState(NodeId.randomId(), null, null,
+                ItemState.STATUS_EXISTING, false);
+        NodeId idA = NodeId.randomId();
+        NodeId idB1 = NodeId.randomId();
+        NodeId idB2 = NodeId.randomId();
+        NodeId idC = NodeId.randomId();
+        before.addChildNodeEntry(a, idA);
+        before.addChildNodeEntry(b, idB1);
+        before.addChildNodeEntry(b, idB2);
+        before.addChildNodeEntry(c, idC);
+
+        NodeState after = new NodeState(before, ItemState.STATUS_EXISTING, true);
+        assertTrue(before.getMovedChildNodeEntries(after).isEmpty());
+
+        // remove a and b[1], b[2] becomes b[1] and c is renamed
+        after.removeChildNodeEntry(idA);
+        after.removeChildNodeEntry(idB1);
+        after.renameChildNodeEntry(idC, a);
+        Set<NodeId> moved = new HashSet<NodeId>();
+        for (ChildNodeEntry entry : before.getMovedChildNodeEntries(after)) {
+            moved.add(entry.getId());
+        }
+        assertEquals(new HashSet<NodeId>(Arrays.asList(idA, idB1, idB2, idC)), moved);
+
+        // reordering children with distinct names does not change paths
+        after = new NodeState(before, ItemState.STATUS_EXISTING, true);
+        after.removeChildNodeEntry(idA);
+        after.addChildNodeEntry(a, idA);
+        assertTrue(before.getMovedChildNodeEntries(after).isEmpty());
+    }
+
+    private static Path toPath(String path) throws Exception {
+        return RESOLVER.getQPath(path);
+    }
+}
@@ -76,4 +76,21 @@ public class QueryStatCoreTest extends AbstractJCRTest {
         queryStat.setPopularQueriesQueueSize(newSize);
         assertEquals(newSize, queryStat.getPopularQueries().length);
     }
+
+    public void testResultCacheStats() throws Exception {
+        queryStat.logResultCacheAccess(true);
+        queryStat.logResultCacheAccess(false);
+        queryStat.logResultCacheAccess(false);
+        assertEquals(1, queryStat.getResultCacheHitCount());
+        assertEquals(2, queryStat.getResultCacheMissCount());
+
+        // disabled stats are not recorded
+        queryStat.setEnabled(false);
+        queryStat.logResultCacheAccess(true);
+        assertEquals(1, queryStat.getResultCacheHitCount());
+
+        queryStat.reset();
+        assertEquals(0, queryStat.getResultCacheHitCount());
+        assertEquals(0, queryStat.getResultCacheMissCount());
+    }
 }
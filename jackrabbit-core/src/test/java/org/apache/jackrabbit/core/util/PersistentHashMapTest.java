@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link PersistentHashMap} against a {@link HashMap}.
+ */
+public class PersistentHashMapTest extends TestCase {
+
+    public void testRandomOperations() {
+        Random random = new Random(1);
+        Map<Integer, String> expected = new HashMap<Integer, String>();
+        PersistentHashMap<Integer, String> map = PersistentHashMap.empty();
+        for (int i = 0; i < 100000; i++) {
+            Integer key = random.nextInt(5000);
+            PersistentHashMap<Integer, String> before = map;
+            int size = before.size();
+            String old = before.get(key);
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                expected.remove(key);
+            } else {
+                String value = "v" + i;
+                map = map.put(key, value);
+                expected.put(key, value);
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+            // the previous version is not affected
+            assertEquals(size, before.size());
+            assertEquals(old, before.get(key));
+        }
+        for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    public void testCollisions() {
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 100; i++) {
+            map = map.put(new Key(i), i);
+        }
+        assertEquals(100, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), map.get(new Key(i)));
+        }
+        assertSame(map, map.remove(new Key(100)));
+        for (int i = 0; i < 100; i += 2) {
+            map = map.remove(new Key(i));
+        }
+        assertEquals(50, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), map.get(new Key(i)));
+        }
+        for (int i = 1; i < 100; i += 2) {
+            map = map.remove(new Key(i));
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    public void testDiff() {
+        Random random = new Random(1);
+        PersistentHashMap<Integer, String> base = PersistentHashMap.empty();
+        for (int i = 0; i < 5000; i++) {
+            base = base.put(i, "v" + i);
+        }
+        assertTrue(base.diff(base).isEmpty());
+        for (int n = 0; n < 100; n++) {
+            PersistentHashMap<Integer, String> map = base;
+            Set<Integer> expected = new HashSet<Integer>();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                Integer key = random.nextInt(6000);
+                if (random.nextBoolean()) {
+                    map = map.remove(key);
+                } else {
+                    map = map.put(key, "w" + key);
+                }
+            }
+            for (int i = 0; i < 6000; i++) {
+                String value = base.get(i);
+                if (value != null && value != map.get(i)) {
+                    expected.add(i);
+                }
+            }
+            assertEquals(expected, new HashSet<Integer>(base.diff(map)));
+        }
+        assertEquals(5000, base.diff(PersistentHashMap.<Integer, String>empty()).size());
+    }
+
+    public void testDiffCollisions() {
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 100; i++) {
+            map = map.put(new Key(i), i);
+        }
+        PersistentHashMap<Key, Integer> other = map.remove(new Key(3)).put(new Key(9), 90);
+        Set<Key> expected = new HashSet<Key>();
+        expected.add(new Key(3));
+        expected.add(new Key(9));
+        assertEquals(expected, new HashSet<Key>(map.diff(other)));
+        assertEquals(Collections.singletonList(new Key(9)), other.diff(map));
+    }
+
+    public void testSameValue() {
+        PersistentHashMap<String, String> map =
+            PersistentHashMap.<String, String>empty().put("a", "b");
+        assertSame(map, map.put("a", map.get("a")));
+        assertNotSame(map, map.put("a", "c"));
+    }
+
+    /**
+     * Key with few distinct hash codes.
+     */
+    private static class Key {
+
+        private final int value;
+
+        Key(int value) {
+            this.value = value;
+        }
+
+        public int hashCode() {
+            return value % 3 == 0 ? 42 : value % 7;
+        }
+
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).value == value;
+        }
+
+    }
+
+}
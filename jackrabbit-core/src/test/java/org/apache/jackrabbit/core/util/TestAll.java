@@ -34,6 +34,8 @@ public class TestAll extends TestCase {
         TestSuite suite = new TestSuite("Utility tests");
         suite.addTestSuite(RepositoryLockTest.class);
         suite.addTestSuite(CooperativeFileLockTest.class);
+        suite.addTestSuite(PersistentHashMapTest.class);
+        suite.addTestSuite(XAReentrantLockTest.class);
         return suite;
     }
 }
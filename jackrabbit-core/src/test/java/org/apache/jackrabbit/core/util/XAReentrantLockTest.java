@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link XAReentrantLock} and the
+ * {@link XAReentrantWriterPreferenceReadWriteLock} with many concurrent
+ * threads.
+ */
+public class XAReentrantLockTest extends TestCase {
+
+    private static final int THREADS = 1000;
+
+    private static final int ITERATIONS = 20;
+
+    public void testMutualExclusion() throws Exception {
+        final Lock lock = new XAReentrantLock();
+        final AtomicInteger holders = new AtomicInteger();
+        final int[] counter = new int[1];
+        run(new Task() {
+            public void run(int thread) throws Exception {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    lock.lock();
+                    try {
+                        // reentrant acquisition by the same thread
+                        lock.lock();
+                        try {
+                            assertEquals(1, holders.incrementAndGet());
+                            counter[0]++;
+                            Thread.yield();
+                            holders.decrementAndGet();
+                        } finally {
+                            lock.unlock();
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+        });
+        assertEquals(THREADS * ITERATIONS, counter[0]);
+    }
+
+    public void testReentrancy() throws Exception {
+        final Lock lock = new XAReentrantLock();
+        lock.lock();
+        lock.lock();
+        assertFalse(tryLockInOtherThread(lock));
+        lock.unlock();
+        assertFalse(tryLockInOtherThread(lock));
+        lock.unlock();
+        assertTrue(tryLockInOtherThread(lock));
+    }
+
+    public void testUnlockByOtherThread() throws Exception {
+        final Lock lock = new XAReentrantLock();
+        lock.lock();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    lock.unlock();
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        };
+        t.start();
+        t.join();
+        assertTrue(error.get() instanceof IllegalMonitorStateException);
+        lock.unlock();
+    }
+
+    public void testReadersAndWriters() throws Exception {
+        final ReadWriteLock lock = new XAReentrantWriterPreferenceReadWriteLock();
+        final AtomicInteger readers = new AtomicInteger();
+        final AtomicInteger writers = new AtomicInteger();
+        final AtomicInteger maxReaders = new AtomicInteger();
+        run(new Task() {
+            public void run(int thread) throws Exception {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    if ((thread + i) % 50 == 0) {
+                        lock.writeLock().lockInterruptibly();
+                        try {
+                            assertEquals(1, writers.incrementAndGet());
+                            assertEquals(0, readers.get());
+                            Thread.yield();
+                            writers.decrementAndGet();
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                    } else {
+                        lock.readLock().lockInterruptibly();
+                        try {
+                            int current = readers.incrementAndGet();
+                            assertEquals(0, writers.get());
+                            if (current > maxReaders.get()) {
+                                maxReaders.set(current);
+                            }
+                            Thread.yield();
+                            readers.decrementAndGet();
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+                    }
+                }
+            }
+        });
+        assertTrue(maxReaders.get() >= 1);
+    }
+
+    public void testWriterPreference() throws Exception {
+        final ReadWriteLock lock = new XAReentrantWriterPreferenceReadWriteLock();
+        lock.readLock().lock();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread writer = new Thread() {
+            public void run() {
+                lock.writeLock().lock();
+                acquired.countDown();
+                lock.writeLock().unlock();
+            }
+        };
+        writer.start();
+        while (writer.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        // a new reader has to wait for the waiting writer
+        assertFalse(tryLockInOtherThread(lock.readLock()));
+        // but the current reader can re-enter
+        assertTrue(lock.readLock().tryLock());
+        lock.readLock().unlock();
+        assertFalse(acquired.await(10, TimeUnit.MILLISECONDS));
+        lock.readLock().unlock();
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        writer.join();
+    }
+
+    public void testInterruptedWriterAdmitsReaders() throws Exception {
+        final ReadWriteLock lock = new XAReentrantWriterPreferenceReadWriteLock();
+        lock.readLock().lock();
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    lock.writeLock().lockInterruptibly();
+                    lock.writeLock().unlock();
+                } catch (InterruptedException e) {
+                    // expected
+                }
+            }
+        };
+        writer.start();
+        while (writer.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread reader = new Thread() {
+            public void run() {
+                lock.readLock().lock();
+                acquired.countDown();
+                lock.readLock().unlock();
+            }
+        };
+        reader.start();
+        assertFalse(acquired.await(10, TimeUnit.MILLISECONDS));
+        writer.interrupt();
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        writer.join();
+        reader.join();
+        lock.readLock().unlock();
+    }
+
+    public void testUpgradeAndDowngrade() throws Exception {
+        ReadWriteLock lock = new XAReentrantWriterPreferenceReadWriteLock();
+        // the only reader may acquire the write lock
+        lock.readLock().lock();
+        assertTrue(lock.writeLock().tryLock());
+        lock.readLock().unlock();
+        // the writer may acquire the read lock and release the write lock
+        lock.readLock().lock();
+        lock.writeLock().unlock();
+        assertFalse(tryLockInOtherThread(lock.writeLock()));
+        assertTrue(tryLockInOtherThread(lock.readLock()));
+        lock.readLock().unlock();
+        assertTrue(tryLockInOtherThread(lock.writeLock()));
+    }
+
+    //-------------------------------------------------------------< internal >
+
+    private interface Task {
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * Runs the task in {@link #THREADS} threads that start at the same time.
+     */
+    private static void run(final Task task) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        task.run(thread);
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            };
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (error.get() != null) {
+            throw new Exception(error.get());
+        }
+    }
+
+    /**
+     * Tries to acquire the lock in another thread, and releases it again if
+     * that succeeded.
+     */
+    private static boolean tryLockInOtherThread(final Lock lock)
+            throws InterruptedException {
+        final boolean[] acquired = new boolean[1];
+        Thread t = new Thread() {
+            public void run() {
+                acquired[0] = lock.tryLock();
+                if (acquired[0]) {
+                    lock.unlock();
+                }
+            }
+        };
+        t.start();
+        t.join();
+        return acquired[0];
+    }
+
+}
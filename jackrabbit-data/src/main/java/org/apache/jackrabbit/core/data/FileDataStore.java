@@ -33,6 +33,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -118,6 +119,11 @@ public class FileDataStore extends AbstractDataStore
     protected Map<DataIdentifier, WeakReference<DataIdentifier>> inUse =
         Collections.synchronizedMap(new WeakHashMap<DataIdentifier, WeakReference<DataIdentifier>>());
 
+    /**
+     * Lock that guards adding, touching and deleting record files.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
     /**
      * Initialized the data store.
      * If the path is not set, &lt;repository home&gt;/repository/datastore is used.
@@ -146,10 +152,13 @@ public class FileDataStore extends AbstractDataStore
         }
         if (minModifiedDate != 0) {
             // only check when running garbage collection
-            synchronized (this) {
+            lock.lock();
+            try {
                 if (getLastModified(file) < minModifiedDate) {
                     setLastModified(file, System.currentTimeMillis() + ACCESS_TIME_RESOLUTION);
                 }
+            } finally {
+                lock.unlock();
             }
         }
         usesIdentifier(identifier);
@@ -193,7 +202,8 @@ public class FileDataStore extends AbstractDataStore
                     new DataIdentifier(encodeHexString(digest.digest()));
             File file;
 
-            synchronized (this) {
+            lock.lock();
+            try {
                 // Check if the same record already exists, or
                 // move the temporary file in place if needed
                 usesIdentifier(identifier);
@@ -224,6 +234,8 @@ public class FileDataStore extends AbstractDataStore
                     }
                     throw new IOException(DIGEST + " collision: " + file);
                 }
+            } finally {
+                lock.unlock();
             }
             // this will also make sure that
             // tempId is not garbage collected until here
@@ -278,7 +290,8 @@ public class FileDataStore extends AbstractDataStore
     public void deleteRecord(DataIdentifier identifier)
 			throws DataStoreException {
         File file = getFile(identifier);
-        synchronized (this) {
+        lock.lock();
+        try {
             if (file.exists()) {
                 if (file.delete()) {
                     deleteEmptyParentDirs(file);
@@ -286,6 +299,8 @@ public class FileDataStore extends AbstractDataStore
                     log.warn("Failed to delete file " + file.getAbsolutePath());
                 }
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -326,7 +341,8 @@ public class FileDataStore extends AbstractDataStore
     private int deleteOlderRecursive(File file, long min) {
         int count = 0;
         if (file.isFile() && file.exists() && file.canWrite()) {
-            synchronized (this) {
+            lock.lock();
+            try {
                 long lastModified;
                 try {
                     lastModified = getLastModified(file);
@@ -349,6 +365,8 @@ public class FileDataStore extends AbstractDataStore
                         count++;
                     }
                 }
+            } finally {
+                lock.unlock();
             }
         } else if (file.isDirectory()) {
             File[] list = file.listFiles();
@@ -360,11 +378,14 @@ public class FileDataStore extends AbstractDataStore
 
             // JCR-1396: FileDataStore Garbage Collector and empty directories
             // Automatic removal of empty directories (but not the root!)
-            synchronized (this) {
+            lock.lock();
+            try {
                 list = file.listFiles();
                 if (list != null && list.length == 0) {
                     file.delete();
                 }
+            } finally {
+                lock.unlock();
             }
         }
         return count;
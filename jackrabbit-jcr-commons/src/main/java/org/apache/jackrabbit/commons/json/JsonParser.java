@@ -45,6 +45,13 @@ public class JsonParser {
     /* the handler */
     private final JsonHandler handler;
 
+    /* the parser state of the current input */
+    private Reader reader;
+    private int state;
+    private int next;
+    private final Stack<Integer> complexVStack = new Stack<Integer>();
+    private final StringBuilder value = new StringBuilder();
+
     /**
      * Create a new <code>JSONParser</code> with the specified <code>JSONHandler</code>.
      *
@@ -79,15 +86,29 @@ public class JsonParser {
      * @throws IOException If an error occurs.
      */
     public void parse(Reader reader) throws IOException {
+        start(reader);
+        while (parseNext()) {
+            // continue until the end of the input is reached
+        }
+    }
 
-        //StringBuffer key = new StringBuffer();
-        StringBuffer value = new StringBuffer();
-
-        int state;
-        Stack complexVStack = new Stack();
+    /**
+     * Starts parsing the JSON object read from the given reader without
+     * parsing it completely. The remaining input is parsed by subsequent
+     * calls to {@link #parseNext()}, which allows to process the handler
+     * notifications while the input is still being read. A parser instance
+     * can only parse one input at a time.
+     *
+     * @param reader The reader
+     * @throws IOException If an error occurs.
+     */
+    public void start(Reader reader) throws IOException {
+        this.reader = reader;
+        complexVStack.clear();
+        value.setLength(0);
 
-        int next = reader.read();
-        if (next == '{') {
+        int first = reader.read();
+        if (first == '{') {
             handler.object();
             complexVStack.push(OBJECT);
             state = KEY_START;
@@ -95,7 +116,20 @@ public class JsonParser {
         } else {
             throw new IOException("JSON object must start with a '{'");
         }
+    }
 
+    /**
+     * Continues parsing the input passed to {@link #start(Reader)} up to and
+     * including the next {@link JsonHandler#endObject()} notification.
+     *
+     * @return <code>true</code> if there is remaining input to be parsed,
+     * <code>false</code> if the end of the input has been reached.
+     * @throws IOException If an error occurs.
+     */
+    public boolean parseNext() throws IOException {
+        if (reader == null) {
+            throw new IllegalStateException("Parsing has not been started.");
+        }
 
         while (next != EOF) {
             switch (state) {
@@ -148,13 +182,13 @@ public class JsonParser {
                         throw new IOException("Invalid json format");
                     } else if (next == ',') {
                         state = (complexVStack.peek() == OBJECT) ? KEY_START : VALUE_START;
-                        value = resetValue(value);
+                        resetValue();
                         next = readIgnoreWhitespace(reader);
                     } else if (next == ']') {
                         if (complexVStack.pop() != ARRAY) {
                             throw new IOException("Invalid json format: Unexpected array termination.");
                         }
-                        value = resetValue(value);
+                        resetValue();
                         handler.endArray();
 
                         next = readIgnoreWhitespace(reader);
@@ -165,13 +199,16 @@ public class JsonParser {
                         if (complexVStack.pop() != OBJECT) {
                             throw new IOException("Invalid json format: Unexpected object termination.");
                         }
-                        value = resetValue(value);
+                        resetValue();
                         handler.endObject();
 
                         next = readIgnoreWhitespace(reader);
                         if (!(next == ',' || next == '}' || next == ']' || next == EOF)) {
                             throw new IOException("Invalid json format");
                         }
+                        if (next != EOF) {
+                            return true;
+                        }
                     } else {
                         // simple value
                         value.append((char) next);
@@ -185,6 +222,7 @@ public class JsonParser {
         if (value.length() != 0) {
             throw new IOException("Invalid json format");
         }
+        return false;
     }
 
     /**
@@ -274,8 +312,8 @@ public class JsonParser {
         return next;
     }
 
-    private StringBuffer resetValue(StringBuffer value) throws IOException {
-        if (value != null && value.length() > 0) {
+    private void resetValue() throws IOException {
+        if (value.length() > 0) {
             String v = value.toString();
             if (NULL.equals(v)) {
                 handler.value(null);
@@ -291,6 +329,6 @@ public class JsonParser {
                 handler.value(l);
             }
         }
-        return new StringBuffer();
+        value.setLength(0);
     }
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.jackrabbit.api.stats.LatencyHistogram;
+
+/**
+ * Recorder of a latency histogram. The values are counted in buckets with
+ * a log-linear layout as in an HDR histogram: values below
+ * {@value #LINEAR_BUCKETS} have a bucket each, above that every power of
+ * two is split into {@value #SUB_BUCKETS} buckets of equal width. A bucket
+ * is thus never wider than 1/{@value #SUB_BUCKETS} of its values, and the
+ * whole range of <code>long</code> fits into a few thousand buckets.
+ * <p>
+ * Recording a value does not lock; it increments a bucket and a few
+ * counters with atomic operations, so it can be called on every operation
+ * from any number of threads. Readers see a histogram that may be slightly
+ * behind concurrent recordings.
+ */
+public class LatencyHistogramRecorder implements LatencyHistogram {
+
+    /** Number of values below the first power of two that is split. */
+    static final int LINEAR_BUCKETS = 128;
+
+    /** Number of buckets per power of two above {@link #LINEAR_BUCKETS}. */
+    static final int SUB_BUCKETS = LINEAR_BUCKETS / 2;
+
+    /** Number of bits of the values in {@link #LINEAR_BUCKETS}. */
+    private static final int LINEAR_BITS =
+            Integer.numberOfTrailingZeros(LINEAR_BUCKETS);
+
+    /** Number of buckets needed for all positive <code>long</code>s. */
+    private static final int BUCKET_COUNT =
+            getBucketIndex(Long.MAX_VALUE) + 1;
+
+    /** Number of recorded values per bucket */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /** Number of recorded values */
+    private final AtomicLong count = new AtomicLong();
+
+    /** Sum of the recorded values */
+    private final AtomicLong total = new AtomicLong();
+
+    /** Highest recorded value */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos latency in nano seconds, negative values are recorded
+     *              as <code>0</code>
+     */
+    public void recordValue(long nanos) {
+        recordValue(nanos, 1);
+    }
+
+    /**
+     * Records a latency that was sampled from the given number of
+     * operations, so that it counts as that many values.
+     *
+     * @param nanos latency in nano seconds, negative values are recorded
+     *              as <code>0</code>
+     * @param operations number of operations the latency stands for
+     */
+    public void recordValue(long nanos, long operations) {
+        long value = Math.max(nanos, 0);
+        buckets.addAndGet(getBucketIndex(value), operations);
+        total.addAndGet(value * operations);
+        count.addAndGet(operations);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    //--------------------------------------------------< LatencyHistogram >--
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMean() {
+        long n = count.get();
+        return n > 0 ? total.get() / n : 0;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long n = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        double fraction = Math.min(Math.max(percentile, 0), 100) / 100;
+        long rank = Math.max((long) Math.ceil(fraction * n), 1);
+        long seen = 0;
+        int i = 0;
+        while (i < BUCKET_COUNT - 1) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                break;
+            }
+            i++;
+        }
+        return Math.min(getHighestValue(i), getMax());
+    }
+
+    //-------------------------------------------------------------< internal >
+
+    /**
+     * Returns the bucket of the given value.
+     *
+     * @param value non-negative value
+     * @return bucket index
+     */
+    static int getBucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        // the bits below the highest SUB_BUCKETS bits are dropped
+        int shift = 64 - Long.numberOfLeadingZeros(value) - LINEAR_BITS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS
+                + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the highest value that is counted in the given bucket.
+     *
+     * @param index bucket index
+     * @return highest value of the bucket
+     */
+    static long getHighestValue(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+}
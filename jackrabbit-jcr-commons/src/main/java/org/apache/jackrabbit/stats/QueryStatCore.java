@@ -37,4 +37,12 @@ public interface QueryStatCore extends QueryStat {
      */
     void logQuery(final String language, final String statement, long durationMs);
 
+    /**
+     * Logs a lookup in the query result cache.
+     * 
+     * @param hit
+     *            <code>true</code> if the result was found in the cache
+     */
+    void logResultCacheAccess(boolean hit);
+
 }
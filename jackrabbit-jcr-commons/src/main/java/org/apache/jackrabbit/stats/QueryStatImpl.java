@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.jackrabbit.api.stats.QueryStatDto;
 
@@ -89,6 +90,10 @@ public class QueryStatImpl implements QueryStatCore {
         }
     }
 
+    private final AtomicLong resultCacheHits = new AtomicLong();
+
+    private final AtomicLong resultCacheMisses = new AtomicLong();
+
     private boolean enabled = false;
 
     public QueryStatImpl() {
@@ -133,6 +138,25 @@ public class QueryStatImpl implements QueryStatCore {
         }
     }
 
+    public void logResultCacheAccess(boolean hit) {
+        if (!enabled) {
+            return;
+        }
+        if (hit) {
+            resultCacheHits.incrementAndGet();
+        } else {
+            resultCacheMisses.incrementAndGet();
+        }
+    }
+
+    public long getResultCacheHitCount() {
+        return resultCacheHits.get();
+    }
+
+    public long getResultCacheMissCount() {
+        return resultCacheMisses.get();
+    }
+
     public void clearSlowQueriesQueue() {
         slowQueries.clear();
     }
@@ -182,5 +206,7 @@ public class QueryStatImpl implements QueryStatCore {
     public void reset() {
         clearSlowQueriesQueue();
         clearPopularQueriesQueue();
+        resultCacheHits.set(0);
+        resultCacheMisses.set(0);
     }
 }
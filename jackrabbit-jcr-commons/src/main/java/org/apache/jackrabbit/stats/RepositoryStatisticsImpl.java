@@ -16,6 +16,7 @@
  */
 package org.apache.jackrabbit.stats;
 
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -25,6 +26,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.jackrabbit.api.stats.LatencyHistogram;
 import org.apache.jackrabbit.api.stats.RepositoryStatistics;
 import org.apache.jackrabbit.api.stats.TimeSeries;
 
@@ -37,7 +39,14 @@ public class RepositoryStatisticsImpl implements
     private final Map<String, TimeSeriesAverage> avg =
             new HashMap<String, TimeSeriesAverage>();
 
+    private final Map<LatencyType, LatencyHistogramRecorder> latencies =
+            new EnumMap<LatencyType, LatencyHistogramRecorder>(LatencyType.class);
+
     public RepositoryStatisticsImpl() {
+        for (LatencyType type : LatencyType.values()) {
+            latencies.put(type, new LatencyHistogramRecorder());
+        }
+
         getOrCreateRecorder(Type.SESSION_COUNT);
         getOrCreateRecorder(Type.SESSION_LOGIN_COUNTER);
 
@@ -49,6 +58,15 @@ public class RepositoryStatisticsImpl implements
                 Type.BUNDLE_CACHE_MISS_DURATION, Type.BUNDLE_CACHE_MISS_AVERAGE);
         createAvg(Type.BUNDLE_WRITE_COUNTER, Type.BUNDLE_WRITE_DURATION,
                 Type.BUNDLE_WRITE_AVERAGE);
+        createAvg(Type.BUNDLE_COMPRESSION_COUNTER,
+                Type.BUNDLE_COMPRESSION_DURATION, Type.BUNDLE_COMPRESSION_AVERAGE);
+        createAvg(Type.BUNDLE_DECOMPRESSION_COUNTER,
+                Type.BUNDLE_DECOMPRESSION_DURATION,
+                Type.BUNDLE_DECOMPRESSION_AVERAGE);
+        avg.put(Type.BUNDLE_COMPRESSION_RATIO.name(), new TimeSeriesAverage(
+                getOrCreateRecorder(Type.BUNDLE_COMPRESSED_SIZE_COUNTER),
+                getOrCreateRecorder(Type.BUNDLE_UNCOMPRESSED_SIZE_COUNTER),
+                0, 100));
         createAvg(Type.QUERY_COUNT, Type.QUERY_DURATION,
                 Type.QUERY_AVERAGE);
         createAvg(Type.OBSERVATION_EVENT_COUNTER, Type.OBSERVATION_EVENT_DURATION,
@@ -95,6 +113,22 @@ public class RepositoryStatisticsImpl implements
         return getOrCreateRecorder(type, resetValueEachSecond);
     }
 
+    /**
+     * Returns the recorder of the latencies of the given operation. The
+     * recorders are created with this instance, so this method does not
+     * lock.
+     *
+     * @param type operation
+     * @return latency recorder
+     */
+    public LatencyHistogramRecorder getLatencyRecorder(LatencyType type) {
+        return latencies.get(type);
+    }
+
+    public LatencyHistogram getLatencyHistogram(LatencyType type) {
+        return latencies.get(type);
+    }
+
     private synchronized TimeSeriesRecorder getOrCreateRecorder(Type type) {
         return getOrCreateRecorder(type.name(), type.isResetValueEachSecond());
     }
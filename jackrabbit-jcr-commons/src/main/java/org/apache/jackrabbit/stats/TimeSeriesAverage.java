@@ -33,6 +33,9 @@ public class TimeSeriesAverage implements TimeSeries {
     /** The value used to encode missing values */
     private final long missingValue;
 
+    /** The factor the measured values are multiplied with */
+    private final long factor;
+
     /**
      * Same as {@link #TimeSeriesAverage(TimeSeries, TimeSeries, long)} passing 0 for the 3rd argument.
      * @param value         {@code TimeSeries} of values
@@ -48,9 +51,21 @@ public class TimeSeriesAverage implements TimeSeries {
      * @param missingValue  The value used to encode missing values
      */
     public TimeSeriesAverage(TimeSeries value, TimeSeries counter, long missingValue) {
+        this(value, counter, missingValue, 1);
+    }
+
+    /**
+     * @param value         {@code TimeSeries} of values
+     * @param counter       {@code TimeSeries} of counts
+     * @param missingValue  The value used to encode missing values
+     * @param factor        The factor the values are multiplied with before
+     *                      the division, e.g. 100 for a percentage
+     */
+    public TimeSeriesAverage(TimeSeries value, TimeSeries counter, long missingValue, long factor) {
         this.value = value;
         this.counter = counter;
         this.missingValue = missingValue;
+        this.factor = factor;
     }
 
     //----------------------------------------------------------< TimeSeries >
@@ -103,7 +118,7 @@ public class TimeSeriesAverage implements TimeSeries {
             if (c[i] == 0 || v[i] == value.getMissingValue() || c[i] == counter.getMissingValue()) {
                 avg[i] = missingValue;
             } else {
-                avg[i] = v[i] / c[i];
+                avg[i] = v[i] * factor / c[i];
             }
         }
         return avg;
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.stats.jmx;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.jackrabbit.api.jmx.LatencyStatsMBean;
+import org.apache.jackrabbit.api.stats.LatencyHistogram;
+import org.apache.jackrabbit.api.stats.RepositoryStatistics;
+import org.apache.jackrabbit.api.stats.RepositoryStatistics.LatencyType;
+
+/**
+ * The LatencyStatsMBean default implementation
+ */
+public class LatencyStats implements LatencyStatsMBean {
+
+    private static final String[] INDEX = { "operation" };
+
+    private static final String[] NAMES = { "operation", "count", "mean",
+            "p50", "p99", "p999", "max" };
+
+    private static final String[] DESCRIPTIONS = { "operation",
+            "number of operations", "mean latency in nano seconds",
+            "median latency in nano seconds",
+            "99th percentile latency in nano seconds",
+            "99.9th percentile latency in nano seconds",
+            "maximum latency in nano seconds" };
+
+    private static final OpenType<?>[] TYPES = { SimpleType.STRING,
+            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG };
+
+    private final RepositoryStatistics statistics;
+
+    public LatencyStats(RepositoryStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public TabularData getLatencies() {
+        try {
+            CompositeType ct = new CompositeType(
+                    LatencyHistogram.class.getName(), "Operation latencies",
+                    NAMES, DESCRIPTIONS, TYPES);
+            TabularDataSupport tds = new TabularDataSupport(new TabularType(
+                    LatencyHistogram.class.getName(), "Operation latencies",
+                    ct, INDEX));
+            for (LatencyType type : LatencyType.values()) {
+                LatencyHistogram h = statistics.getLatencyHistogram(type);
+                tds.put(new CompositeDataSupport(ct, NAMES, new Object[] {
+                        type.name(), h.getCount(), h.getMean(),
+                        h.getValueAtPercentile(50),
+                        h.getValueAtPercentile(99),
+                        h.getValueAtPercentile(99.9), h.getMax() }));
+            }
+            return tds;
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(
+                    "Error creating TabularData of the latencies", e);
+        }
+    }
+
+}
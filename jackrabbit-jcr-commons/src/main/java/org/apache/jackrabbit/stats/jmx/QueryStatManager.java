@@ -81,6 +81,14 @@ public class QueryStatManager implements QueryStatManagerMBean {
         queryStat.clearPopularQueriesQueue();
     }
 
+    public long getResultCacheHitCount() {
+        return queryStat.getResultCacheHitCount();
+    }
+
+    public long getResultCacheMissCount() {
+        return queryStat.getResultCacheMissCount();
+    }
+
     public TabularData getSlowQueries() {
         return asTabularData(queryStat.getSlowQueries());
     }
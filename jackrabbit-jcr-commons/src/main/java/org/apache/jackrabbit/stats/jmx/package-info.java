@@ -15,5 +15,5 @@
  * limitations under the License.
  */
 /* see JCR-4060 */
-@aQute.bnd.annotation.Version("2.13.5")
+@aQute.bnd.annotation.Version("2.15.0")
 package org.apache.jackrabbit.stats.jmx;
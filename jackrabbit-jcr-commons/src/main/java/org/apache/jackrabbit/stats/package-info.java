@@ -14,5 +14,5 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-@aQute.bnd.annotation.Version("2.7.5")
+@aQute.bnd.annotation.Version("2.9.0")
 package org.apache.jackrabbit.stats;
@@ -18,6 +18,7 @@ package org.apache.jackrabbit.commons.json;
 
 import junit.framework.TestCase;
 
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -528,6 +529,28 @@ public class JsonParserTest extends TestCase {
         }
     }
 
+    public void testParseNext() throws Exception {
+        final List<String> keys = new ArrayList<String>();
+        JsonHandler handler = new DummyJsonHandler() {
+            public void key(String key) {
+                keys.add(key);
+            }
+        };
+        String str = "{\"a\":{\"b\":1},\"c\":{\"d\":[1,2]},\"e\":true}";
+        JsonParser parser = new JsonParser(handler);
+        parser.start(new StringReader(str));
+        assertTrue(keys.isEmpty());
+
+        assertTrue(parser.parseNext());
+        assertEquals(Arrays.asList("a", "b"), keys);
+
+        assertTrue(parser.parseNext());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), keys);
+
+        assertFalse(parser.parseNext());
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), keys);
+    }
+
     private static JSONObject getObj() {
         JSONObject obj = new JSONObject();
         obj.put("boolean", true);
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.stats;
+
+import static org.apache.jackrabbit.stats.LatencyHistogramRecorder.getBucketIndex;
+import static org.apache.jackrabbit.stats.LatencyHistogramRecorder.getHighestValue;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramRecorderTest extends TestCase {
+
+    public void testEmpty() {
+        LatencyHistogramRecorder histogram = new LatencyHistogramRecorder();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    public void testBuckets() {
+        for (long value = 0; value < 128; value++) {
+            assertEquals(value, getBucketIndex(value));
+            assertEquals(value, getHighestValue((int) value));
+        }
+        assertEquals(128, getBucketIndex(128));
+        assertEquals(128, getBucketIndex(129));
+        assertEquals(129, getBucketIndex(130));
+        assertEquals(129, getHighestValue(128));
+
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = getBucketIndex(value);
+            assertTrue(value <= getHighestValue(index));
+            assertTrue(index == 0 || value > getHighestValue(index - 1));
+            assertTrue(getHighestValue(index) - value <= value / 64);
+        }
+        assertEquals(Long.MAX_VALUE,
+                getHighestValue(getBucketIndex(Long.MAX_VALUE)));
+    }
+
+    public void testPercentiles() {
+        LatencyHistogramRecorder histogram = new LatencyHistogramRecorder();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.recordValue(value * 1000);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(5000500, histogram.getMean());
+        assertEquals(10000000, histogram.getMax());
+        assertEquals(10000000, histogram.getValueAtPercentile(100));
+        assertEquals(1000, histogram.getValueAtPercentile(0), 1000 / 64);
+        assertEquals(5000000, histogram.getValueAtPercentile(50), 5000000 / 64);
+        assertEquals(9900000, histogram.getValueAtPercentile(99), 9900000 / 64);
+        assertEquals(9990000, histogram.getValueAtPercentile(99.9), 9990000 / 64);
+    }
+
+    public void testSampledValues() {
+        LatencyHistogramRecorder histogram = new LatencyHistogramRecorder();
+        histogram.recordValue(100, 99);
+        histogram.recordValue(10000);
+        assertEquals(100, histogram.getCount());
+        assertEquals((99 * 100 + 10000) / 100, histogram.getMean());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(100, histogram.getValueAtPercentile(99));
+        assertEquals(10000, histogram.getValueAtPercentile(100));
+    }
+
+    public void testNegativeValue() {
+        LatencyHistogramRecorder histogram = new LatencyHistogramRecorder();
+        histogram.recordValue(-1);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    public void testConcurrentRecording() throws Exception {
+        final LatencyHistogramRecorder histogram = new LatencyHistogramRecorder();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 1; j <= 100000; j++) {
+                        histogram.recordValue(j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400000, histogram.getCount());
+        assertEquals(50000, histogram.getMean());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+    }
+
+}
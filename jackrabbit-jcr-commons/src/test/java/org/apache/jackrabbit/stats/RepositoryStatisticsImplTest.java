@@ -19,12 +19,17 @@ package org.apache.jackrabbit.stats;
 import java.util.Iterator;
 import java.util.Map.Entry;
 
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
 import junit.framework.TestCase;
+import org.apache.jackrabbit.api.stats.RepositoryStatistics.LatencyType;
 import org.apache.jackrabbit.api.stats.TimeSeries;
+import org.apache.jackrabbit.stats.jmx.LatencyStats;
 
 public class RepositoryStatisticsImplTest extends TestCase {
 
-    private static final int DEFAULT_NUMBER_OF_ELEMENTS = 20;
+    private static final int DEFAULT_NUMBER_OF_ELEMENTS = 29;
 
     public void testDefaultIterator() {
         RepositoryStatisticsImpl repositoryStatistics = new RepositoryStatisticsImpl();
@@ -56,4 +61,23 @@ public class RepositoryStatisticsImplTest extends TestCase {
         assertEquals(DEFAULT_NUMBER_OF_ELEMENTS + 1, count);
         assertTrue(customTypeExists);
     }
+
+    public void testLatencyHistograms() {
+        RepositoryStatisticsImpl repositoryStatistics = new RepositoryStatisticsImpl();
+        for (LatencyType type : LatencyType.values()) {
+            assertSame(repositoryStatistics.getLatencyRecorder(type),
+                    repositoryStatistics.getLatencyHistogram(type));
+        }
+        repositoryStatistics.getLatencyRecorder(LatencyType.QUERY).recordValue(42);
+
+        TabularData latencies =
+                new LatencyStats(repositoryStatistics).getLatencies();
+        assertEquals(LatencyType.values().length, latencies.size());
+        CompositeData query = latencies.get(new Object[] { "QUERY" });
+        assertEquals(1L, query.get("count"));
+        assertEquals(42L, query.get("p99"));
+        assertEquals(42L, query.get("max"));
+        CompositeData append = latencies.get(new Object[] { "JOURNAL_APPEND" });
+        assertEquals(0L, append.get("count"));
+    }
 }
@@ -23,6 +23,17 @@ import junit.framework.TestCase;
 public class TimeSeriesAverageTest extends TestCase {
     private TimeSeriesAverage avg;
 
+    public void testFactor() {
+        TimeSeriesRecorder values = new TimeSeriesRecorder(true);
+        TimeSeriesRecorder counts = new TimeSeriesRecorder(true);
+        avg = new TimeSeriesAverage(values, counts, 0, 100);
+        values.getCounter().set(30);
+        counts.getCounter().set(120);
+        values.recordOneSecond();
+        counts.recordOneSecond();
+        assertValues(avg.getValuePerSecond(), 25);
+    }
+
     public void testAverage() {
         TimeSeriesRecorder values = new TimeSeriesRecorder(true);
         TimeSeriesRecorder counts = new TimeSeriesRecorder(true);
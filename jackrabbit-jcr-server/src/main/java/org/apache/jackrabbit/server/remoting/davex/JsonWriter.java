@@ -188,7 +188,9 @@ class JsonWriter {
             }
         } else {
             boolean isMultiple = p.isMultiple();
-            if (requiresTypeInfo(p) || (isMultiple && p.getValues().length == 0)) {
+            // retrieve the values only once, they are written right away
+            Value[] values = (isMultiple) ? p.getValues() : null;
+            if (requiresTypeInfo(p) || (isMultiple && values.length == 0)) {
                 /* special property types that have no correspondence in JSON
                    are transported as String. the type is transported with an
                    extra key-value pair, the key having a leading ':' the value
@@ -201,7 +203,7 @@ class JsonWriter {
             /* append key-value pair containing the jcr value(s).
                for String, Boolean, Double, Long -> types in json available */
             if (isMultiple) {
-                writeKeyArray(p.getName(), p.getValues());
+                writeKeyArray(p.getName(), values);
             } else {
                 writeKeyValue(p.getName(), p.getValue());
             }
@@ -16,6 +16,8 @@
  */
 package org.apache.jackrabbit.jcr2spi.state;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -35,6 +37,7 @@ import org.apache.jackrabbit.spi.ChildInfo;
 import org.apache.jackrabbit.spi.IdFactory;
 import org.apache.jackrabbit.spi.ItemInfo;
 import org.apache.jackrabbit.spi.ItemInfoCache;
+import org.apache.jackrabbit.spi.ItemInfoIteratorException;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.NodeId;
 import org.apache.jackrabbit.spi.NodeInfo;
@@ -112,9 +115,9 @@ public class WorkspaceItemStateFactory extends AbstractItemStateFactory {
     public NodeState createDeepNodeState(NodeId nodeId, NodeEntry anyParent) throws ItemNotFoundException,
             RepositoryException {
 
+        // Get item info from cache
+        Iterator<? extends ItemInfo> infos = null;
         try {
-            // Get item info from cache
-            Iterator<? extends ItemInfo> infos = null;
             Entry<NodeInfo> cached = cache.getNodeInfo(nodeId);
             ItemInfo info;
             if (cached == null) {
@@ -153,6 +156,13 @@ public class WorkspaceItemStateFactory extends AbstractItemStateFactory {
         catch (PathNotFoundException e) {
             throw new ItemNotFoundException(e);
         }
+        finally {
+            // the service may still be streaming the batch: make sure its
+            // resources are released even if it has not been cached.
+            if (infos != null) {
+                release(infos);
+            }
+        }
     }
 
     /**
@@ -266,22 +276,49 @@ public class WorkspaceItemStateFactory extends AbstractItemStateFactory {
      * If <code>cache</code> is not <code>null</code>, caches all items by the given
      * <code>generation</code>.
      */
-    private static ItemInfo first(Iterator<? extends ItemInfo> infos, ItemInfoCache cache, long generation) {
-        ItemInfo first = null;
-        if (infos.hasNext()) {
-            first = infos.next();
+    private static ItemInfo first(Iterator<? extends ItemInfo> infos, ItemInfoCache cache, long generation)
+            throws RepositoryException {
+        try {
+            ItemInfo first = null;
+            if (infos.hasNext()) {
+                first = infos.next();
+                if (cache != null) {
+                    cache.put(first, generation);
+                }
+            }
+
             if (cache != null) {
-                cache.put(first, generation);
+                while (infos.hasNext()) {
+                    cache.put(infos.next(), generation);
+                }
             }
+
+            return first;
+        } catch (ItemInfoIteratorException e) {
+            throw e.getCause();
         }
+    }
 
-        if (cache != null) {
-            while (infos.hasNext()) {
-                cache.put(infos.next(), generation);
+    /**
+     * Releases a batch of item infos that may not have been consumed
+     * completely. The iterator is closed if it supports it, otherwise it is
+     * consumed. Failures are logged and not thrown, so that they do not mask
+     * an exception thrown while the batch was processed.
+     */
+    private static void release(Iterator<? extends ItemInfo> infos) {
+        try {
+            if (infos instanceof Closeable) {
+                ((Closeable) infos).close();
+            } else {
+                while (infos.hasNext()) {
+                    infos.next();
+                }
             }
+        } catch (IOException e) {
+            log.warn("Unable to release batch of item infos", e);
+        } catch (RuntimeException e) {
+            log.warn("Unable to release batch of item infos", e);
         }
-
-        return first;
     }
 
     /**
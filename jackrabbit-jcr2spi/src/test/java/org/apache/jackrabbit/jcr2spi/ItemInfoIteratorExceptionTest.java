@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.jcr2spi;
+
+import org.apache.jackrabbit.spi.ChildInfo;
+import org.apache.jackrabbit.spi.ItemId;
+import org.apache.jackrabbit.spi.ItemInfo;
+import org.apache.jackrabbit.spi.ItemInfoIteratorException;
+import org.apache.jackrabbit.spi.NodeId;
+import org.apache.jackrabbit.spi.NodeInfo;
+import org.apache.jackrabbit.spi.PropertyId;
+import org.apache.jackrabbit.spi.PropertyInfo;
+import org.apache.jackrabbit.spi.QNodeDefinition;
+import org.apache.jackrabbit.spi.RepositoryService;
+import org.apache.jackrabbit.spi.SessionInfo;
+import org.apache.jackrabbit.spi.commons.ItemInfoBuilder.NodeInfoBuilder;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Test cases for {@link RepositoryService#getItemInfos(SessionInfo, ItemId)}
+ * returning an iterator that fails while it is consumed.
+ */
+public class ItemInfoIteratorExceptionTest extends AbstractJCR2SPITest {
+    private Session session;
+    private boolean fail;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        session = repository.login("default");
+    }
+
+    @Override
+    protected void initInfosStore(NodeInfoBuilder builder) throws RepositoryException {
+        builder
+            .createNodeInfo("node1")
+                .createNodeInfo("node11").build()
+            .build()
+            .build();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (session != null) {
+            session.logout();
+            session = null;
+        }
+        super.tearDown();
+    }
+
+    /**
+     * The <code>RepositoryException</code> carried by the iterator is thrown
+     * instead of the runtime exception.
+     * @throws RepositoryException
+     */
+    public void testExceptionIsUnwrapped() throws RepositoryException {
+        fail = true;
+        try {
+            session.getNode("/node1");
+            fail("RepositoryException expected");
+        } catch (RepositoryException e) {
+            assertEquals("failed to read next item info", e.getMessage());
+        }
+
+        fail = false;
+        assertEquals("/node1", session.getNode("/node1").getPath());
+    }
+
+    @Override
+    protected QNodeDefinition createRootNodeDefinition() {
+        fail("Not implemented");
+        return null;
+    }
+
+    @Override
+    public Iterator<ChildInfo> getChildInfos(SessionInfo sessionInfo, NodeId parentId)
+            throws RepositoryException {
+
+        fail("Not implemented");
+        return null;
+    }
+
+    @Override
+    public Iterator<ItemInfo> getItemInfos(SessionInfo sessionInfo, final ItemId itemId)
+            throws RepositoryException {
+
+        final ItemInfo info = itemInfoStore.getItemInfo(itemId);
+        final boolean failing = fail;
+        return new Iterator<ItemInfo>() {
+            private boolean consumed;
+
+            public boolean hasNext() {
+                if (consumed && failing) {
+                    throw new ItemInfoIteratorException(
+                            new RepositoryException("failed to read next item info"));
+                }
+                return !consumed;
+            }
+
+            public ItemInfo next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                consumed = true;
+                return info;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public NodeInfo getNodeInfo(SessionInfo sessionInfo, NodeId nodeId) throws RepositoryException {
+        return itemInfoStore.getNodeInfo(nodeId);
+    }
+
+    @Override
+    public PropertyInfo getPropertyInfo(SessionInfo sessionInfo, PropertyId propertyId)
+            throws ItemNotFoundException {
+
+        return itemInfoStore.getPropertyInfo(propertyId);
+    }
+
+}
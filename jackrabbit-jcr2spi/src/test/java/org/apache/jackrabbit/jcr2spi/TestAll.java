@@ -32,6 +32,7 @@ public class TestAll extends TestCase {
 
         suite.addTestSuite(AccessByRelativePathTest.class);
         suite.addTestSuite(GetItemsTest.class);
+        suite.addTestSuite(ItemInfoIteratorExceptionTest.class);
 
         // get node(s)
         suite.addTestSuite(SNSIndexTest.class);
@@ -16,9 +16,11 @@
  */
 package org.apache.jackrabbit.spi.commons.conversion;
 
-import java.util.Map;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Generational cache. The cache implemented by this class consists of three
@@ -27,6 +29,13 @@ import java.util.Iterator;
  * are used within two successive generations get promoted to the long term
  * cache. The entries within the long term cache are discarded only when the
  * size of the cache exceeds the given maximum cache size.
+ * <p>
+ * The cache is split into a number of segments, selected by the hash code
+ * of the key, each with its own generations and a share of the maximum
+ * size and age. Lookups and updates do not lock: the long term cache is
+ * replaced instead of modified, the generations are concurrent maps, and a
+ * new generation is started by the thread whose update reaches the maximum
+ * age of the segment.
  */
 class GenerationalCache {
 
@@ -42,34 +51,21 @@ class GenerationalCache {
     private static final int DEFAULT_SIZE_AGE_RATIO = 10;
 
     /**
-     * Maximum size of the name cache.
-     */
-    private final int maxSize;
-
-    /**
-     * Maximum age of a cache generation.
-     */
-    private final int maxAge;
-
-    /**
-     * Long term cache. Read only.
-     */
-    private Map cache = new HashMap();
-
-    /**
-     * Old cache generation.
+     * Maximum number of segments.
      */
-    private Map old = new HashMap();
+    private static final int MAX_SEGMENTS = 16;
 
     /**
-     * Young cache generation.
+     * Minimum generation age of a segment. Smaller caches use fewer
+     * segments, so that entries still have a chance to be used within
+     * two successive generations.
      */
-    private Map young = new HashMap();
+    private static final int MIN_SEGMENT_AGE = 8;
 
     /**
-     * Age of the young cache generation.
+     * The segments, the number of which is a power of two.
      */
-    private int age = 0;
+    private final Segment[] segments;
 
     /**
      * Creates a caching resolver.
@@ -78,8 +74,15 @@ class GenerationalCache {
      * @param maxAge maximum age of a cache generation
      */
     public GenerationalCache(int maxSize, int maxAge) {
-        this.maxSize = maxSize;
-        this.maxAge = maxAge;
+        int count = 1;
+        while (count < MAX_SEGMENTS && count * 2 * MIN_SEGMENT_AGE <= maxAge) {
+            count *= 2;
+        }
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(
+                    Math.max(maxSize / count, 1), Math.max(maxAge / count, 1));
+        }
     }
 
     /**
@@ -109,11 +112,12 @@ class GenerationalCache {
      * @return value of the cache entry, or <code>null</code>
      */
     public Object get(Object key) {
-        Object value = cache.get(key);
+        Segment segment = getSegment(key);
+        Object value = segment.cache.get(key);
         if (value == null) {
-            value = old.get(key);
+            value = segment.old.get(key);
             if (value != null) {
-                put(key, value);
+                segment.put(key, value);
             }
         }
         return value;
@@ -121,8 +125,8 @@ class GenerationalCache {
 
     /**
      * Caches the given key-value pair and increases the age of the current
-     * cache generation. When the maximum age of a generation is reached,
-     * the following steps are taken:
+     * cache generation of the segment of the key. When the maximum age of
+     * a generation is reached, the following steps are taken:
      * <ol>
      *   <li>The union of the two cache generations is calculated</li>
      *   <li>The union is added to the long term name cache</li>
@@ -133,30 +137,97 @@ class GenerationalCache {
      * @param key key of the cache entry
      * @param value value of the cache entry
      */
-    public synchronized void put(Object key, Object value) {
-        young.put(key, value);
-
-        if (++age == maxAge) {
-            Map union = new HashMap();
-            Iterator iterator = old.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry entry = (Map.Entry) iterator.next();
-                if (young.containsKey(entry.getKey())) {
-                    union.put(entry.getKey(), entry.getValue());
+    public void put(Object key, Object value) {
+        getSegment(key).put(key, value);
+    }
+
+    /**
+     * Returns the segment of the given key. The hash code is spread, as
+     * the low bits of string hash codes of similar names are not well
+     * distributed.
+     *
+     * @param key key of a cache entry
+     * @return the segment
+     */
+    private Segment getSegment(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return segments[h & (segments.length - 1)];
+    }
+
+    /**
+     * A part of the cache with its own generations.
+     */
+    private static final class Segment {
+
+        /**
+         * Maximum size of the long term cache of this segment.
+         */
+        private final int maxSize;
+
+        /**
+         * Maximum age of a cache generation of this segment.
+         */
+        private final int maxAge;
+
+        /**
+         * Long term cache. Read only, replaced when a generation ends.
+         */
+        private volatile Map<Object, Object> cache = Collections.emptyMap();
+
+        /**
+         * Old cache generation.
+         */
+        private volatile Map<Object, Object> old =
+            new ConcurrentHashMap<Object, Object>();
+
+        /**
+         * Young cache generation.
+         */
+        private volatile Map<Object, Object> young =
+            new ConcurrentHashMap<Object, Object>();
+
+        /**
+         * Age of the young cache generation. Updates that arrive while
+         * a new generation is started count beyond the maximum age and
+         * are discarded when the age is reset.
+         */
+        private final AtomicInteger age = new AtomicInteger();
+
+        private Segment(int maxSize, int maxAge) {
+            this.maxSize = maxSize;
+            this.maxAge = maxAge;
+        }
+
+        private void put(Object key, Object value) {
+            Map<Object, Object> young = this.young;
+            young.put(key, value);
+
+            // only one thread reaches the maximum age of a generation
+            if (age.incrementAndGet() == maxAge) {
+                Map<Object, Object> union = new HashMap<Object, Object>();
+                for (Map.Entry<Object, Object> entry : old.entrySet()) {
+                    if (young.containsKey(entry.getKey())) {
+                        union.put(entry.getKey(), entry.getValue());
+                    }
                 }
-            }
 
-            if (!union.isEmpty()) {
-                if (cache.size() + union.size() <= maxSize) {
-                    union.putAll(cache);
+                if (!union.isEmpty()) {
+                    Map<Object, Object> cache = this.cache;
+                    if (cache.size() + union.size() <= maxSize) {
+                        union.putAll(cache);
+                    }
+                    this.cache = union;
                 }
-                cache = union;
-            }
 
-            old = young;
-            young = new HashMap();
-            age = 0;
+                old = young;
+                this.young = new ConcurrentHashMap<Object, Object>();
+                age.set(0);
+            }
         }
+
     }
 
 }
@@ -68,4 +68,18 @@ public class HashCache<T> {
         }
     }
 
+    /**
+     * Returns the object cached at the position of the given hash code,
+     * without modifying the cache. Used to look up a cached copy without
+     * first creating the object to compare with; the caller must check
+     * whether the returned object is the one it looks for.
+     *
+     * @param hashCode hash code of the object to look up
+     * @return the object at the position of the hash code, or
+     *         <code>null</code>
+     */
+    public T peek(int hashCode) {
+        return array[hashCode & (array.length - 1)];
+    }
+
 }
@@ -51,6 +51,13 @@ public class NameFactoryImpl implements NameFactory {
         if (localName == null) {
             throw new IllegalArgumentException("No localName specified");
         }
+        // look up the flyweight before creating a new instance, as the
+        // constructor internalizes the namespace URI
+        Name name = cache.peek(NameImpl.hashCode(namespaceURI, localName));
+        if (name instanceof NameImpl
+                && ((NameImpl) name).matches(namespaceURI, localName)) {
+            return name;
+        }
         return cache.get(new NameImpl(namespaceURI, localName));
     }
 
@@ -74,8 +81,7 @@ public class NameFactoryImpl implements NameFactory {
             throw new IllegalArgumentException(
                     "Invalid Name literal: " + nameString);
         }
-        return (Name) cache.get(new NameImpl(
-                nameString.substring(1, i), nameString.substring(i + 1)));
+        return create(nameString.substring(1, i), nameString.substring(i + 1));
     }
 
     //--------------------------------------------------------< inner class >---
@@ -189,14 +195,40 @@ public class NameFactoryImpl implements NameFactory {
             // Name is immutable, we can store the computed hash code value
             int h = hash;
             if (h == 0) {
-                h = 17;
-                h = 37 * h + namespaceURI.hashCode();
-                h = 37 * h + localName.hashCode();
+                h = hashCode(namespaceURI, localName);
                 hash = h;
             }
             return h;
         }
 
+        /**
+         * Computes the hash code of a name with the given namespace URI and
+         * local part.
+         *
+         * @param namespaceURI the namespace URI
+         * @param localName the local part
+         * @return hash code
+         */
+        private static int hashCode(String namespaceURI, String localName) {
+            int h = 17;
+            h = 37 * h + namespaceURI.hashCode();
+            h = 37 * h + localName.hashCode();
+            return h;
+        }
+
+        /**
+         * Checks whether this name has the given namespace URI and local
+         * part. The namespace URI need not be internalized.
+         *
+         * @param namespaceURI the namespace URI
+         * @param localName the local part
+         * @return <code>true</code> if this name matches
+         */
+        private boolean matches(String namespaceURI, String localName) {
+            return this.localName.equals(localName)
+                && this.namespaceURI.equals(namespaceURI);
+        }
+
         //------------------------------------------------------< Cloneable >---
         /**
          * Creates a clone of this <code>Name</code>.
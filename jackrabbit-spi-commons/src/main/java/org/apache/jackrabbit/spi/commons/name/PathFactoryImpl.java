@@ -127,7 +127,7 @@ public class PathFactoryImpl implements PathFactory {
         } else if (element.denotesIdentifier()) {
             return new IdentifierPath(element.getIdentifier());
         } else if (element.denotesName()) {
-            return new NamePath(null, element.getName(), element.getIndex());
+            return createNamePath(null, element);
         } else if (element.denotesParent()) {
             return ParentPath.PARENT_PATH;
         } else if (element.denotesRoot()) {
@@ -152,7 +152,7 @@ public class PathFactoryImpl implements PathFactory {
                 }
                 path = new IdentifierPath(element.getIdentifier());
             } else if (element.denotesName()) {
-                path = new NamePath(path, element.getName(), element.getIndex());
+                path = createNamePath(path, element);
             } else if (element.denotesParent()) {
                 if (path != null && path.isAbsolute() && path.getDepth() == 0) {
                     throw new IllegalArgumentException();
@@ -168,6 +168,20 @@ public class PathFactoryImpl implements PathFactory {
         return path;
     }
 
+    /**
+     * Returns a path of the given name element below the given parent. The
+     * name elements created by this factory are paths without a parent, so
+     * they are returned as is instead of being copied.
+     */
+    private static Path createNamePath(Path parent, Path.Element element) {
+        if (parent == null && element instanceof NamePath
+                && ((NamePath) element).parent == null) {
+            return (NamePath) element;
+        } else {
+            return new NamePath(parent, element.getName(), element.getIndex());
+        }
+    }
+
     /**
      * @see PathFactory#create(String)
      */
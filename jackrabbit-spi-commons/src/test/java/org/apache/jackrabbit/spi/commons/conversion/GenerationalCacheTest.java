@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.spi.commons.conversion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for the {@link GenerationalCache} class.
+ */
+public class GenerationalCacheTest extends TestCase {
+
+    /**
+     * Tests that entries used within two successive generations are
+     * promoted to the long term cache, and that other entries expire.
+     */
+    public void testPromotion() {
+        // a single segment, as the maximum age is small
+        GenerationalCache cache = new GenerationalCache(100, 10);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        // found in the old generation, and added to the young one
+        assertEquals("value1", cache.get("key1"));
+        for (int i = 10; i < 19; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+
+        // later generations do not contain the keys
+        for (int i = 100; i < 130; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        assertEquals("value1", cache.get("key1"));
+        assertNull(cache.get("key2"));
+        assertNull(cache.get("key10"));
+    }
+
+    /**
+     * Tests that concurrent readers and writers only see the values that
+     * were cached for a key.
+     */
+    public void testConcurrentAccess() throws Exception {
+        final GenerationalCache cache = new GenerationalCache(1000);
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            Thread thread = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        int n = (i * 31 + seed) % 2000;
+                        String key = "key" + n;
+                        Object value = cache.get(key);
+                        if (value == null) {
+                            cache.put(key, "value" + n);
+                        } else if (!value.equals("value" + n)) {
+                            failure.set(key + " -> " + value);
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+    }
+
+}
@@ -109,4 +109,13 @@ public class NameFactoryTest extends TestCase {
             }
         }
     }
+
+    public void testFlyweight() throws Exception {
+        Name n1 = factory.create("http://www.example.org/ns", "name");
+        Name n2 = factory.create(new String("http://www.example.org/ns"), "name");
+        Name n3 = factory.create("{http://www.example.org/ns}name");
+        assertSame(n1, n2);
+        assertSame(n1, n3);
+        assertSame(n1.getNamespaceURI(), n2.getNamespaceURI());
+    }
 }
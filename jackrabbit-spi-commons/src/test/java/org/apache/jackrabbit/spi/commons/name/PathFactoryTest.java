@@ -149,6 +149,20 @@ public class PathFactoryTest extends TestCase {
         }
     }
 
+    public void testCreateFromNameElement() throws RepositoryException {
+        Name name = NameFactoryImpl.getInstance().create(Name.NS_JCR_URI, "content");
+        Path.Element element = factory.createElement(name, 2);
+
+        // name elements are not copied
+        assertSame(element, factory.create(element));
+        assertSame(element, factory.create(new Path.Element[] {element}));
+
+        Path path = factory.create(new Path.Element[] {element, element});
+        assertEquals(2, path.getLength());
+        assertEquals(element, path.getNameElement());
+        assertEquals(factory.create(element), path.getAncestor(1));
+    }
+
     public void testCurrent() {
         Path.Element currElem = factory.getCurrentElement();
         Name currName = currElem.getName();
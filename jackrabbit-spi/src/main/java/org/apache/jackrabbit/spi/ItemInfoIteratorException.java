@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.spi;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * <code>ItemInfoIteratorException</code> is thrown by the iterator returned
+ * from {@link RepositoryService#getItemInfos(SessionInfo, ItemId)} if the
+ * item infos are read while the iterator is consumed and reading fails.
+ * It carries the <code>RepositoryException</code> that would have been
+ * thrown if the batch had been read at once.
+ */
+public class ItemInfoIteratorException extends RuntimeException {
+
+    private static final long serialVersionUID = -4374016183402455396L;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param cause the reason why the next item info could not be read.
+     */
+    public ItemInfoIteratorException(RepositoryException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    /**
+     * Returns the reason why the next item info could not be read.
+     *
+     * @return the <code>RepositoryException</code> carried by this exception.
+     */
+    @Override
+    public RepositoryException getCause() {
+        return (RepositoryException) super.getCause();
+    }
+}
@@ -309,6 +309,13 @@ public interface RepositoryService {
      * <code>ItemInfo</code> for the given <code>ItemId</code> as the first
      * element in the <code>Iterator</code>. In addition the iterator may contain
      * arbitrary <code>ItemInfo</code>s.
+     * <p>
+     * Implementations may read the <code>ItemInfo</code>s while the iterator
+     * is consumed. Such an iterator throws an {@link ItemInfoIteratorException}
+     * if reading fails, and holds on to resources until it has been consumed
+     * completely. If it also implements {@link java.io.Closeable}, callers that
+     * do not consume it completely must close it; otherwise they must consume
+     * it completely.
      *
      * @param sessionInfo
      * @param itemId
@@ -18,8 +18,7 @@ package org.apache.jackrabbit.spi2davex;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Stack;
 
@@ -53,7 +52,10 @@ class ItemInfoJsonHandler implements JsonHandler {
 
     private static final String LEAF_NODE_HINT = "::NodeIteratorSize";
 
-    private final List<ItemInfo> itemInfos;
+    /**
+     * The item infos that have been parsed but not yet been retrieved.
+     */
+    private final LinkedList<ItemInfo> itemInfos;
     private final NamePathResolver resolver;
     private final String rootURI;
 
@@ -87,7 +89,7 @@ class ItemInfoJsonHandler implements JsonHandler {
         this.pFactory = pFactory;
         this.idFactory = idFactory;
 
-        itemInfos = new ArrayList<ItemInfo>();
+        itemInfos = new LinkedList<ItemInfo>();
         itemInfos.add(nInfo);
         nodeInfos.push(nInfo);
         propInfoLists.push(new ArrayList<PropertyInfoImpl>(8));
@@ -341,8 +343,16 @@ class ItemInfoJsonHandler implements JsonHandler {
         }
     }
 
-    Iterator<? extends ItemInfo> getItemInfos() {
-        return Collections.unmodifiableList(itemInfos).iterator();
+    /**
+     * Retrieves and removes the next item info that has been parsed. Note,
+     * that the item info of the node passed to the constructor is the first
+     * item info returned, but is only complete once the whole JSON object
+     * has been parsed.
+     *
+     * @return the next item info or <code>null</code> if there is none.
+     */
+    ItemInfo nextItemInfo() {
+        return itemInfos.poll();
     }
 
     private NodeInfoImpl getCurrentNodeInfo() {
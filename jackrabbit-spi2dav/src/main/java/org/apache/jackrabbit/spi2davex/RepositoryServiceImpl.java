@@ -16,7 +16,10 @@
  */
 package org.apache.jackrabbit.spi2davex;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -27,6 +30,13 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jcr.Credentials;
 import javax.jcr.ItemNotFoundException;
@@ -50,6 +60,7 @@ import org.apache.jackrabbit.commons.webdav.ValueUtil;
 import org.apache.jackrabbit.spi.Batch;
 import org.apache.jackrabbit.spi.ItemId;
 import org.apache.jackrabbit.spi.ItemInfo;
+import org.apache.jackrabbit.spi.ItemInfoIteratorException;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.NodeId;
 import org.apache.jackrabbit.spi.Path;
@@ -147,6 +158,22 @@ public class RepositoryServiceImpl extends org.apache.jackrabbit.spi2dav.Reposit
 
     private final Map<SessionInfo, QValueFactoryImpl> qvFactories = new HashMap<SessionInfo, QValueFactoryImpl>();
 
+    /**
+     * The maximum number of sibling subtrees that are read ahead when a
+     * tree traversal is detected. <code>0</code> disables read ahead.
+     */
+    private final int prefetchSize;
+
+    /**
+     * The executor for read ahead requests. Created on demand and shut down
+     * when the last session that read ahead is disposed.
+     */
+    private ExecutorService prefetchExecutor;
+
+    private final Object prefetchLock = new Object();
+
+    private final ConcurrentMap<SessionInfo, TraversalTracker> trackers = new ConcurrentHashMap<SessionInfo, TraversalTracker>();
+
     /**
      * Same as {@link #RepositoryServiceImpl(String, String, BatchReadConfig, int, int)}
      * using <code>null</code> workspace name, {@link ItemInfoCacheImpl#DEFAULT_CACHE_SIZE}
@@ -192,6 +219,32 @@ public class RepositoryServiceImpl extends org.apache.jackrabbit.spi2dav.Reposit
     public RepositoryServiceImpl(String jcrServerURI, String defaultWorkspaceName,
                                  BatchReadConfig batchReadConfig, int itemInfoCacheSize,
                                  int maximumHttpConnections) throws RepositoryException {
+        this(jcrServerURI, defaultWorkspaceName, batchReadConfig, itemInfoCacheSize, maximumHttpConnections, 0);
+    }
+
+    /**
+     * Creates a new instance of this repository service, which reads sibling
+     * subtrees ahead when a client walks down the tree below the configured
+     * batch read depth. When a node is read that was listed as child of an
+     * earlier batch read without its own item infos, up to
+     * <code>prefetchSize</code> of its following siblings are read in
+     * the background, without delaying the requested node. Their item infos
+     * are kept until the siblings are requested or until the repository is
+     * modified through this service.
+     *
+     * @param jcrServerURI The server uri.
+     * @param defaultWorkspaceName The default workspace name.
+     * @param batchReadConfig The batch read configuration.
+     * @param itemInfoCacheSize The size of the item info cache.
+     * @param maximumHttpConnections maximumHttpConnections A int &gt;0 defining
+     * the maximum number of connections per host.
+     * @param prefetchSize The maximum number of sibling subtrees read ahead
+     * in parallel. <code>0</code> disables read ahead.
+     * @throws RepositoryException If an exception occurs.
+     */
+    public RepositoryServiceImpl(String jcrServerURI, String defaultWorkspaceName,
+                                 BatchReadConfig batchReadConfig, int itemInfoCacheSize,
+                                 int maximumHttpConnections, int prefetchSize) throws RepositoryException {
 
         super(jcrServerURI, IdFactoryImpl.getInstance(), NameFactoryImpl.getInstance(),
                 PathFactoryImpl.getInstance(), new QValueFactoryImpl(), itemInfoCacheSize, maximumHttpConnections);
@@ -213,6 +266,8 @@ public class RepositoryServiceImpl extends org.apache.jackrabbit.spi2dav.Reposit
         } else {
             this.batchReadConfig = batchReadConfig;
         }
+
+        this.prefetchSize = prefetchSize;
     }
 
     private Path getPath(ItemId itemId, SessionInfo sessionInfo) throws RepositoryException {
@@ -294,6 +349,34 @@ public class RepositoryServiceImpl extends org.apache.jackrabbit.spi2dav.Reposit
         return qv;
     }
 
+    private TraversalTracker getTracker(SessionInfo sessionInfo) {
+        TraversalTracker tracker = trackers.get(sessionInfo);
+        if (tracker == null) {
+            TraversalTracker t = new TraversalTracker(getPathFactory(), getIdFactory());
+            tracker = trackers.putIfAbsent(sessionInfo, t);
+            if (tracker == null) {
+                tracker = t;
+            }
+        }
+        return tracker;
+    }
+
+    private ExecutorService getPrefetchExecutor() {
+        synchronized (prefetchLock) {
+            if (prefetchExecutor == null) {
+                prefetchExecutor = Executors.newFixedThreadPool(prefetchSize, new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "spi2davex-prefetch-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+            return prefetchExecutor;
+        }
+    }
+
     //--------------------------------------------------< RepositoryService >---
 
     // exists && getPropertyInfo -> to be done
@@ -336,6 +419,35 @@ public class RepositoryServiceImpl extends org.apache.jackrabbit.spi2dav.Reposit
         // remove the qvalue factory created for the given SessionInfo from the
         // map of valuefactories.
         qvFactories.remove(sessionInfo);
+        if (trackers.remove(sessionInfo) != null) {
+            synchronized (prefetchLock) {
+                if (trackers.isEmpty() && prefetchExecutor != null) {
+                    prefetchExecutor.shutdownNow();
+                    prefetchExecutor = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the subtrees read ahead by all sessions before a request that
+     * may modify the repository is executed.
+     *
+     * @see org.apache.jackrabbit.spi2dav.RepositoryServiceImpl#executeRequest(SessionInfo, HttpUriRequest)
+     */
+    @Override
+    public HttpResponse executeRequest(SessionInfo sessionInfo, HttpUriRequest request) throws IOException, RepositoryException {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"PROPFIND".equals(method) && !"REPORT".equals(method)) {
+            clearPrefetched();
+        }
+        return super.executeRequest(sessionInfo, request);
+    }
+
+    private void clearPrefetched() {
+        for (TraversalTracker tracker : trackers.values()) {
+            tracker.clearPrefetched();
+        }
     }
 
     /**
@@ -349,40 +461,56 @@ public class RepositoryServiceImpl extends org.apache.jackrabbit.spi2dav.Reposit
         } else {
             NodeId nodeId = (NodeId) itemId;
             Path path = getPath(itemId, sessionInfo);
-            String uri = getURI(path, sessionInfo);
-            int depth = batchReadConfig.getDepth(path, this.getNamePathResolver(sessionInfo));
+            NamePathResolver resolver = getNamePathResolver(sessionInfo);
+            QValueFactoryImpl qvFactory = getQValueFactory(sessionInfo);
+            if (prefetchSize <= 0) {
+                return getItemInfos(sessionInfo, nodeId, path, resolver, qvFactory);
+            }
+            TraversalTracker tracker = getTracker(sessionInfo);
+            return tracker.getItemInfos(nodeId, path,
+                    new ItemInfoLoader(sessionInfo, resolver, qvFactory),
+                    getPrefetchExecutor(), prefetchSize);
+        }
+    }
 
-            HttpGet request = new HttpGet(uri + "." + depth + ".json");
-            HttpResponse response = null;
-            try {
-                response = executeRequest(sessionInfo, request);
-                int statusCode = response.getStatusLine().getStatusCode();
-                if (statusCode == DavServletResponse.SC_OK) {
-                    HttpEntity entity = response.getEntity();
-                    if (entity.getContentLength() == 0) {
-                        // no JSON response -> no such node on the server
-                        throw new ItemNotFoundException("No such item " + nodeId);
-                    }
+    private Iterator<? extends ItemInfo> getItemInfos(SessionInfo sessionInfo, NodeId nodeId, Path path,
+                                                      NamePathResolver resolver, QValueFactoryImpl qvFactory)
+            throws RepositoryException {
+        String uri = getURI(path, sessionInfo);
+        int depth = batchReadConfig.getDepth(path, resolver);
+
+        HttpGet request = new HttpGet(uri + "." + depth + ".json");
+        HttpResponse response = null;
+        boolean streaming = false;
+        try {
+            response = executeRequest(sessionInfo, request);
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == DavServletResponse.SC_OK) {
+                HttpEntity entity = response.getEntity();
+                if (entity.getContentLength() == 0) {
+                    // no JSON response -> no such node on the server
+                    throw new ItemNotFoundException("No such item " + nodeId);
+                }
 
-                    NamePathResolver resolver = getNamePathResolver(sessionInfo);
-                    NodeInfoImpl nInfo = new NodeInfoImpl(nodeId, path);
+                NodeInfoImpl nInfo = new NodeInfoImpl(nodeId, path);
 
-                    ItemInfoJsonHandler handler = new ItemInfoJsonHandler(resolver, nInfo, getRootURI(sessionInfo), getQValueFactory(sessionInfo), getPathFactory(), getIdFactory());
-                    JsonParser ps = new JsonParser(handler);
-                    ps.parse(entity.getContent(), ContentType.get(entity).getCharset().name());
+                ItemInfoJsonHandler handler = new ItemInfoJsonHandler(resolver, nInfo, getRootURI(sessionInfo), qvFactory, getPathFactory(), getIdFactory());
+                JsonParser ps = new JsonParser(handler);
+                ps.start(new BufferedReader(new InputStreamReader(entity.getContent(), ContentType.get(entity).getCharset().name())));
 
-                    Iterator<? extends ItemInfo> it = handler.getItemInfos();
-                    if (!it.hasNext()) {
-                        throw new ItemNotFoundException("No such node " + uri);
-                    }
-                    return handler.getItemInfos();
-                } else {
-                    throw ExceptionConverter.generate(new DavException(statusCode, "Unable to retrieve NodeInfo for " + uri), request);
-                }
-            } catch (IOException e) {
-                log.error("Internal error while retrieving NodeInfo.",e);
-                throw new RepositoryException(e.getMessage());
-            } finally {
+                // the remaining response is parsed while the item infos are
+                // consumed, the iterator releases the connection when done.
+                Iterator<ItemInfo> it = new ItemInfoIterator(request, ps, handler);
+                streaming = true;
+                return it;
+            } else {
+                throw ExceptionConverter.generate(new DavException(statusCode, "Unable to retrieve NodeInfo for " + uri), request);
+            }
+        } catch (IOException e) {
+            log.error("Internal error while retrieving NodeInfo.",e);
+            throw new RepositoryException(e.getMessage());
+        } finally {
+            if (!streaming) {
                 request.releaseConnection();
             }
         }
@@ -462,6 +590,7 @@ public class RepositoryServiceImpl extends org.apache.jackrabbit.spi2dav.Reposit
         BatchImpl batchImpl = (BatchImpl) batch;
         try {
             if (!batchImpl.isEmpty()) {
+                clearPrefetched();
                 batchImpl.start();
             }
         } finally {
@@ -914,6 +1043,107 @@ public class RepositoryServiceImpl extends org.apache.jackrabbit.spi2dav.Reposit
         }
     }
 
+    //--------------------------------------------------------------------------
+    /**
+     * Iterates over the item infos of a batch read while the JSON response
+     * is being parsed. The response is only parsed as far as needed to return
+     * the next item info, such that the infos of large batches are not all
+     * held in memory at the same time. The connection is released as soon as
+     * the response has been parsed completely, parsing fails or the iterator
+     * is closed.
+     */
+    private static final class ItemInfoIterator implements Iterator<ItemInfo>, Closeable {
+
+        private final JsonParser parser;
+        private final ItemInfoJsonHandler handler;
+
+        /**
+         * The request of the response being parsed or <code>null</code> once
+         * its connection has been released.
+         */
+        private HttpGet request;
+
+        private ItemInfo next;
+
+        private ItemInfoIterator(HttpGet request, JsonParser parser, ItemInfoJsonHandler handler) {
+            this.request = request;
+            this.parser = parser;
+            this.handler = handler;
+        }
+
+        public boolean hasNext() {
+            if (next == null) {
+                next = fetchNext();
+            }
+            return next != null;
+        }
+
+        public ItemInfo next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ItemInfo info = next;
+            next = null;
+            return info;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+
+        /**
+         * Releases the connection without reading the rest of the response.
+         */
+        public void close() {
+            if (request != null) {
+                request.releaseConnection();
+                request = null;
+            }
+        }
+
+        private ItemInfo fetchNext() {
+            ItemInfo info = handler.nextItemInfo();
+            while (info == null && request != null) {
+                boolean more = false;
+                try {
+                    more = parser.parseNext();
+                } catch (IOException e) {
+                    log.error("Internal error while retrieving NodeInfo.", e);
+                    throw new ItemInfoIteratorException(new RepositoryException(
+                            "Unable to read item infos: " + e.getMessage(), e));
+                } finally {
+                    if (!more) {
+                        request.releaseConnection();
+                        request = null;
+                    }
+                }
+                info = handler.nextItemInfo();
+            }
+            return info;
+        }
+    }
+
+    /**
+     * Loads the item infos of a subtree with a batch read.
+     */
+    private class ItemInfoLoader implements TraversalTracker.Loader {
+
+        private final SessionInfo sessionInfo;
+        private final NamePathResolver resolver;
+        private final QValueFactoryImpl qvFactory;
+
+        private ItemInfoLoader(SessionInfo sessionInfo, NamePathResolver resolver,
+                               QValueFactoryImpl qvFactory) {
+            this.sessionInfo = sessionInfo;
+            this.resolver = resolver;
+            this.qvFactory = qvFactory;
+        }
+
+        public Iterator<? extends ItemInfo> load(NodeId id, Path path) throws RepositoryException {
+            return getItemInfos(sessionInfo, id, path, resolver, qvFactory);
+        }
+    }
+
     //--------------------------------------------------------------------------
     class JsonTree extends AbstractTree {
 
@@ -66,6 +66,14 @@ public class Spi2davexRepositoryServiceFactory implements RepositoryServiceFacto
      */
     public static final String PARAM_MAX_CONNECTIONS = "org.apache.jackrabbit.spi2davex.MaxConnections";
 
+    /**
+     * Optional configuration parameter: It's value defines the maximum number
+     * of sibling subtrees that are read ahead in parallel when a client walks
+     * the tree below the batch read depth. Defaults to <code>0</code>, which
+     * disables reading ahead.
+     */
+    public static final String PARAM_PREFETCH_SIZE = "org.apache.jackrabbit.spi2davex.PrefetchSize";
+
 
     public static final String PARAM_WORKSPACE_NAME_DEFAULT =  "org.apache.jackrabbit.spi2davex.WorkspaceNameDefault";
 
@@ -88,6 +96,7 @@ public class Spi2davexRepositoryServiceFactory implements RepositoryServiceFacto
         BatchReadConfig brc = null;
         int itemInfoCacheSize = ItemInfoCacheImpl.DEFAULT_CACHE_SIZE;
         int maximumHttpConnections = 0;
+        int prefetchSize = 0;
 
         String workspaceNameDefault = DEFAULT_WORKSPACE_NAME_DEFAULT;
 
@@ -118,13 +127,28 @@ public class Spi2davexRepositoryServiceFactory implements RepositoryServiceFacto
                 }
             }
 
+            // read ahead config
+            param = parameters.get(PARAM_PREFETCH_SIZE);
+            if (param != null) {
+                try {
+                    prefetchSize = Integer.parseInt(param.toString());
+                } catch (NumberFormatException e) {
+                    // using default
+                }
+            }
+
             param = parameters.get(PARAM_WORKSPACE_NAME_DEFAULT);
             if (param != null) {
                 workspaceNameDefault = param.toString();
             }
         }
 
-        if (maximumHttpConnections > 0) {
+        if (prefetchSize > 0) {
+            if (maximumHttpConnections <= 0) {
+                maximumHttpConnections = RepositoryServiceImpl.MAX_CONNECTIONS_DEFAULT;
+            }
+            return new RepositoryServiceImpl(uri, workspaceNameDefault, brc, itemInfoCacheSize, maximumHttpConnections, prefetchSize);
+        } else if (maximumHttpConnections > 0) {
             return new RepositoryServiceImpl(uri, workspaceNameDefault, brc, itemInfoCacheSize, maximumHttpConnections);
         } else {
             return new RepositoryServiceImpl(uri, workspaceNameDefault, brc, itemInfoCacheSize);
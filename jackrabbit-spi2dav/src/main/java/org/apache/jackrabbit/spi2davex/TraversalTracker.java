@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.spi2davex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.spi.ChildInfo;
+import org.apache.jackrabbit.spi.IdFactory;
+import org.apache.jackrabbit.spi.ItemInfo;
+import org.apache.jackrabbit.spi.NodeId;
+import org.apache.jackrabbit.spi.NodeInfo;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.PathFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>TraversalTracker</code> keeps track of the child nodes that were
+ * listed by a batch read without their own item infos, i.e. the children of
+ * the nodes at the configured batch read depth. When one of these children
+ * is read, the client is most probably walking the tree and will read the
+ * following siblings next. These siblings are then read ahead of time in
+ * the background and kept until they are requested.
+ */
+class TraversalTracker {
+
+    private static Logger log = LoggerFactory.getLogger(TraversalTracker.class);
+
+    /**
+     * The maximum number of parent nodes that are tracked.
+     */
+    private static final int MAX_PARENTS = 256;
+
+    /**
+     * The maximum number of read ahead subtrees that are kept.
+     */
+    private static final int MAX_PREFETCHED = 256;
+
+    private final PathFactory pathFactory;
+
+    private final IdFactory idFactory;
+
+    /**
+     * Maps the path of a parent node to its children that have not been
+     * read yet.
+     */
+    private final Map<Path, Children> parents =
+            new LinkedHashMap<Path, Children>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Children> eldest) {
+            return size() > MAX_PARENTS;
+        }
+    };
+
+    /**
+     * Maps the path of a sibling node to the pending or completed read of
+     * its subtree.
+     */
+    private final Map<Path, Future<List<ItemInfo>>> prefetched =
+            new LinkedHashMap<Path, Future<List<ItemInfo>>>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Future<List<ItemInfo>>> eldest) {
+            return size() > MAX_PREFETCHED;
+        }
+    };
+
+    TraversalTracker(PathFactory pathFactory, IdFactory idFactory) {
+        this.pathFactory = pathFactory;
+        this.idFactory = idFactory;
+    }
+
+    /**
+     * Returns the item infos of the subtree at <code>path</code>. If the node
+     * is an unread child of a node read before, up to <code>max</code> of its
+     * following siblings are submitted to <code>executor</code> to be read
+     * ahead; this method does not wait for them. If the subtree itself was
+     * read ahead, the infos read are returned, waiting for the read to
+     * complete if necessary. Otherwise the infos loaded by
+     * <code>loader</code> are returned as they are read.
+     *
+     * @param id       the id of the node.
+     * @param path     the path of the node.
+     * @param loader   loads the item infos of a subtree.
+     * @param executor the executor for read ahead loads.
+     * @param max      the maximum number of siblings read ahead.
+     * @return the item infos of the subtree.
+     * @throws RepositoryException if the item infos cannot be loaded.
+     */
+    Iterator<? extends ItemInfo> getItemInfos(NodeId id, Path path, final Loader loader,
+                                              ExecutorService executor, int max)
+            throws RepositoryException {
+        for (final Sibling sibling : nextSiblings(path, max)) {
+            Future<List<ItemInfo>> future;
+            try {
+                future = executor.submit(new Callable<List<ItemInfo>>() {
+                    public List<ItemInfo> call() throws RepositoryException {
+                        return toList(loader.load(sibling.id, sibling.path));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.debug("Unable to read ahead " + sibling.path + ": " + e);
+                break;
+            }
+            synchronized (this) {
+                prefetched.put(sibling.path, future);
+            }
+        }
+
+        Future<List<ItemInfo>> future;
+        synchronized (this) {
+            future = prefetched.remove(path);
+        }
+        if (future != null) {
+            try {
+                List<ItemInfo> infos = future.get();
+                record(infos);
+                return infos.iterator();
+            } catch (ExecutionException e) {
+                log.debug("Unable to read ahead " + path + ": " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RepositoryException(e);
+            }
+        }
+        return new RecordingIterator(loader.load(id, path));
+    }
+
+    /**
+     * Discards all subtrees read ahead, e.g. because the workspace was
+     * modified since they were read.
+     */
+    synchronized void clearPrefetched() {
+        prefetched.clear();
+    }
+
+    /**
+     * Records the children of the nodes in <code>infos</code> that are not
+     * contained in <code>infos</code> themselves.
+     *
+     * @param infos the item infos returned by a batch read.
+     * @throws RepositoryException if a path cannot be created.
+     */
+    synchronized void record(List<? extends ItemInfo> infos)
+            throws RepositoryException {
+        Set<Path> paths = new HashSet<Path>();
+        for (ItemInfo info : infos) {
+            if (info.denotesNode()) {
+                paths.add(info.getPath());
+            }
+        }
+        for (ItemInfo info : infos) {
+            if (!info.denotesNode()) {
+                continue;
+            }
+            NodeInfo nInfo = (NodeInfo) info;
+            Iterator<ChildInfo> childInfos = nInfo.getChildInfos();
+            if (childInfos == null) {
+                continue;
+            }
+            LinkedList<ChildInfo> pending = new LinkedList<ChildInfo>();
+            while (childInfos.hasNext()) {
+                ChildInfo ci = childInfos.next();
+                Path p = pathFactory.create(nInfo.getPath(), ci.getName(), ci.getIndex(), true);
+                if (!paths.contains(p)) {
+                    pending.add(ci);
+                }
+            }
+            if (pending.isEmpty()) {
+                parents.remove(nInfo.getPath());
+            } else {
+                parents.put(nInfo.getPath(), new Children(nInfo.getId(), pending));
+            }
+        }
+    }
+
+    /**
+     * Returns up to <code>max</code> unread siblings following the node at
+     * <code>path</code>, if that node was recorded as an unread child. The
+     * node and the returned siblings are no longer tracked afterwards.
+     *
+     * @param path the path of the node that is read.
+     * @param max  the maximum number of siblings.
+     * @return the siblings to read ahead.
+     * @throws RepositoryException if an id or path cannot be created.
+     */
+    synchronized List<Sibling> nextSiblings(Path path, int max)
+            throws RepositoryException {
+        List<Sibling> siblings = new ArrayList<Sibling>();
+        if (path.denotesRoot()) {
+            return siblings;
+        }
+        Path parentPath = path.getAncestor(1);
+        Children children = parents.get(parentPath);
+        if (children == null) {
+            return siblings;
+        }
+        Iterator<ChildInfo> it = children.pending.iterator();
+        boolean found = false;
+        while (it.hasNext() && siblings.size() < max) {
+            ChildInfo ci = it.next();
+            if (found) {
+                it.remove();
+                Path p = pathFactory.create(parentPath, ci.getName(), ci.getIndex(), true);
+                NodeId id;
+                if (ci.getUniqueID() != null) {
+                    id = idFactory.createNodeId(ci.getUniqueID());
+                } else {
+                    id = idFactory.createNodeId(children.parentId,
+                            pathFactory.create(ci.getName(), ci.getIndex()));
+                }
+                siblings.add(new Sibling(id, p));
+            } else if (ci.getName().equals(path.getName())
+                    && ci.getIndex() == path.getNormalizedIndex()) {
+                it.remove();
+                found = true;
+            }
+        }
+        if (children.pending.isEmpty()) {
+            parents.remove(parentPath);
+        }
+        return siblings;
+    }
+
+    private static List<ItemInfo> toList(Iterator<? extends ItemInfo> infos) {
+        List<ItemInfo> list = new ArrayList<ItemInfo>();
+        while (infos.hasNext()) {
+            list.add(infos.next());
+        }
+        return list;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Loads the item infos of a subtree.
+     */
+    interface Loader {
+
+        /**
+         * @param id   the id of the root node of the subtree.
+         * @param path the path of the root node of the subtree.
+         * @return the item infos of the subtree.
+         * @throws RepositoryException if the item infos cannot be loaded.
+         */
+        Iterator<? extends ItemInfo> load(NodeId id, Path path) throws RepositoryException;
+    }
+
+    /**
+     * Passes the item infos of a batch read through to the caller and records
+     * the batch once it has been read completely.
+     */
+    private final class RecordingIterator implements Iterator<ItemInfo>, Closeable {
+
+        private final Iterator<? extends ItemInfo> infos;
+
+        private List<NodeInfo> nodeInfos = new ArrayList<NodeInfo>();
+
+        private RecordingIterator(Iterator<? extends ItemInfo> infos) {
+            this.infos = infos;
+        }
+
+        public boolean hasNext() {
+            boolean hasNext = infos.hasNext();
+            if (!hasNext && nodeInfos != null) {
+                try {
+                    record(nodeInfos);
+                } catch (RepositoryException e) {
+                    log.debug("Unable to record batch read: " + e);
+                }
+                nodeInfos = null;
+            }
+            return hasNext;
+        }
+
+        public ItemInfo next() {
+            ItemInfo info = infos.next();
+            if (info.denotesNode() && nodeInfos != null) {
+                nodeInfos.add((NodeInfo) info);
+            }
+            return info;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() throws IOException {
+            nodeInfos = null;
+            if (infos instanceof Closeable) {
+                ((Closeable) infos).close();
+            }
+        }
+    }
+
+    /**
+     * The unread children of a node.
+     */
+    private static final class Children {
+
+        private final NodeId parentId;
+
+        private final LinkedList<ChildInfo> pending;
+
+        private Children(NodeId parentId, LinkedList<ChildInfo> pending) {
+            this.parentId = parentId;
+            this.pending = pending;
+        }
+    }
+
+    /**
+     * A sibling node to read ahead.
+     */
+    static final class Sibling {
+
+        final NodeId id;
+
+        final Path path;
+
+        private Sibling(NodeId id, Path path) {
+            this.id = id;
+            this.path = path;
+        }
+    }
+}
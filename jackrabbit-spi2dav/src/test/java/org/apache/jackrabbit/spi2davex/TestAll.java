@@ -37,6 +37,7 @@ public class TestAll extends TestCase {
         suite.addTestSuite(CloneTest.class);
         suite.addTestSuite(ExtensionTest.class);
         suite.addTestSuite(CreateFileTest.class);
+        suite.addTestSuite(TraversalTrackerTest.class);
 
         return suite;
     }
@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.spi2davex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.spi.IdFactory;
+import org.apache.jackrabbit.spi.ItemInfo;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NodeId;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.PathFactory;
+import org.apache.jackrabbit.spi.commons.ChildInfoImpl;
+import org.apache.jackrabbit.spi.commons.identifier.IdFactoryImpl;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.jackrabbit.spi2davex.TraversalTracker.Sibling;
+
+/**
+ * <code>TraversalTrackerTest</code>...
+ */
+public class TraversalTrackerTest extends TestCase {
+
+    private final PathFactory pathFactory = PathFactoryImpl.getInstance();
+
+    private final IdFactory idFactory = IdFactoryImpl.getInstance();
+
+    private Path parentPath;
+
+    private NodeId parentId;
+
+    private TraversalTracker tracker;
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        parentPath = path(pathFactory.getRootPath(), "parent");
+        parentId = idFactory.createNodeId((String) null, parentPath);
+        tracker = new TraversalTracker(pathFactory, idFactory);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testNextSiblings() throws RepositoryException {
+        tracker.record(Collections.singletonList(parent("a", "b", "c", "d", "e")));
+
+        List<Sibling> siblings = tracker.nextSiblings(child("b"), 2);
+        assertEquals(2, siblings.size());
+        assertEquals(child("c"), siblings.get(0).path);
+        assertEquals(child("d"), siblings.get(1).path);
+        assertEquals(idFactory.createNodeId(parentId, pathFactory.create(name("c"), Path.INDEX_DEFAULT)),
+                siblings.get(0).id);
+
+        // nodes returned or read before are no longer tracked
+        assertTrue(tracker.nextSiblings(child("c"), 2).isEmpty());
+        assertTrue(tracker.nextSiblings(child("b"), 2).isEmpty());
+
+        siblings = tracker.nextSiblings(child("a"), 5);
+        assertEquals(1, siblings.size());
+        assertEquals(child("e"), siblings.get(0).path);
+        assertTrue(tracker.nextSiblings(child("e"), 5).isEmpty());
+    }
+
+    public void testNextSiblingsOfUntrackedNode() throws RepositoryException {
+        assertTrue(tracker.nextSiblings(pathFactory.getRootPath(), 2).isEmpty());
+        assertTrue(tracker.nextSiblings(child("a"), 2).isEmpty());
+    }
+
+    public void testRecordSkipsNodesInBatch() throws RepositoryException {
+        List<ItemInfo> infos = new ArrayList<ItemInfo>();
+        infos.add(parent("a", "b", "c"));
+        infos.add(leaf(child("b")));
+        tracker.record(infos);
+
+        List<Sibling> siblings = tracker.nextSiblings(child("a"), 5);
+        assertEquals(1, siblings.size());
+        assertEquals(child("c"), siblings.get(0).path);
+    }
+
+    public void testRecordReplacesChildren() throws RepositoryException {
+        tracker.record(Collections.singletonList(parent("a", "b", "c")));
+        tracker.record(Collections.singletonList(parent("a", "c")));
+
+        List<Sibling> siblings = tracker.nextSiblings(child("a"), 5);
+        assertEquals(1, siblings.size());
+        assertEquals(child("c"), siblings.get(0).path);
+    }
+
+    public void testSiblingWithUniqueId() throws RepositoryException {
+        NodeInfoImpl parent = new NodeInfoImpl(parentId, parentPath);
+        parent.addChildInfo(new ChildInfoImpl(name("a"), null, Path.INDEX_DEFAULT));
+        parent.addChildInfo(new ChildInfoImpl(name("b"), "1234", Path.INDEX_DEFAULT));
+        tracker.record(Collections.singletonList(parent));
+
+        List<Sibling> siblings = tracker.nextSiblings(child("a"), 1);
+        assertEquals(1, siblings.size());
+        assertEquals(idFactory.createNodeId("1234"), siblings.get(0).id);
+    }
+
+    public void testGetItemInfosReadsAhead() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        TestLoader loader = new TestLoader() {
+            @Override
+            protected void loading(Path path) throws Exception {
+                if (path.equals(child("b")) || path.equals(child("c"))) {
+                    released.await(10, TimeUnit.SECONDS);
+                }
+            }
+        };
+        drain(tracker.getItemInfos(parentId, parentPath, loader, executor, 2));
+
+        // the requested node is returned while its siblings are still read
+        Iterator<? extends ItemInfo> infos = tracker.getItemInfos(id(child("a")), child("a"), loader, executor, 2);
+        assertEquals(child("a"), infos.next().getPath());
+        assertFalse(loader.isFinished(child("b")));
+        released.countDown();
+
+        infos = tracker.getItemInfos(id(child("b")), child("b"), loader, executor, 2);
+        assertEquals(child("b"), infos.next().getPath());
+        infos = tracker.getItemInfos(id(child("c")), child("c"), loader, executor, 2);
+        assertEquals(child("c"), infos.next().getPath());
+        assertEquals(1, loader.count(child("b")));
+        assertEquals(1, loader.count(child("c")));
+
+        // d was not read ahead, reading it reads ahead e
+        tracker.getItemInfos(id(child("d")), child("d"), loader, executor, 2);
+        tracker.getItemInfos(id(child("e")), child("e"), loader, executor, 2);
+        assertEquals(1, loader.count(child("d")));
+        assertEquals(1, loader.count(child("e")));
+    }
+
+    public void testGetItemInfosWithoutReadAhead() throws Exception {
+        TestLoader loader = new TestLoader();
+        drain(tracker.getItemInfos(parentId, parentPath, loader, executor, 0));
+        tracker.getItemInfos(id(child("a")), child("a"), loader, executor, 0);
+        tracker.getItemInfos(id(child("b")), child("b"), loader, executor, 0);
+        assertEquals(1, loader.count(child("a")));
+        assertEquals(1, loader.count(child("b")));
+        assertEquals(0, loader.count(child("c")));
+    }
+
+    public void testFailedReadAhead() throws Exception {
+        TestLoader loader = new TestLoader() {
+            @Override
+            protected void loading(Path path) throws Exception {
+                if (path.equals(child("b")) && count(path) == 1) {
+                    throw new RepositoryException("failed");
+                }
+            }
+        };
+        drain(tracker.getItemInfos(parentId, parentPath, loader, executor, 1));
+        tracker.getItemInfos(id(child("a")), child("a"), loader, executor, 1);
+
+        Iterator<? extends ItemInfo> infos = tracker.getItemInfos(id(child("b")), child("b"), loader, executor, 1);
+        assertEquals(child("b"), infos.next().getPath());
+        assertEquals(2, loader.count(child("b")));
+    }
+
+    public void testClearPrefetched() throws Exception {
+        TestLoader loader = new TestLoader();
+        drain(tracker.getItemInfos(parentId, parentPath, loader, executor, 1));
+        tracker.getItemInfos(id(child("a")), child("a"), loader, executor, 1);
+        tracker.clearPrefetched();
+
+        tracker.getItemInfos(id(child("b")), child("b"), loader, executor, 1);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(2, loader.count(child("b")));
+    }
+
+    public void testUnreadBatchIsNotRecorded() throws Exception {
+        TestLoader loader = new TestLoader();
+        Iterator<? extends ItemInfo> infos = tracker.getItemInfos(parentId, parentPath, loader, executor, 2);
+        infos.next();
+        ((Closeable) infos).close();
+        assertTrue(loader.closed);
+        assertTrue(tracker.nextSiblings(child("a"), 2).isEmpty());
+    }
+
+    //--------------------------------------------------------------------------
+
+    private void drain(Iterator<? extends ItemInfo> infos) {
+        while (infos.hasNext()) {
+            infos.next();
+        }
+    }
+
+    private NodeInfoImpl parent(String... children) throws RepositoryException {
+        NodeInfoImpl info = new NodeInfoImpl(parentId, parentPath);
+        for (String child : children) {
+            info.addChildInfo(new ChildInfoImpl(name(child), null, Path.INDEX_DEFAULT));
+        }
+        return info;
+    }
+
+    private NodeInfoImpl leaf(Path path) throws RepositoryException {
+        NodeInfoImpl info = new NodeInfoImpl(id(path), path);
+        info.markAsLeafNode();
+        return info;
+    }
+
+    private NodeId id(Path path) {
+        return idFactory.createNodeId(parentId, pathFactory.create(path.getName(), Path.INDEX_DEFAULT));
+    }
+
+    private Path child(String name) throws RepositoryException {
+        return path(parentPath, name);
+    }
+
+    private Path path(Path parent, String name) throws RepositoryException {
+        return pathFactory.create(parent, name(name), true);
+    }
+
+    private static Name name(String name) {
+        return NameFactoryImpl.getInstance().create("", name);
+    }
+
+    /**
+     * Returns the parent with the children a to e for the parent path and
+     * leaf nodes for all other paths.
+     */
+    private class TestLoader implements TraversalTracker.Loader {
+
+        private final List<Path> loaded = new ArrayList<Path>();
+
+        private final List<Path> finished = new ArrayList<Path>();
+
+        private volatile boolean closed;
+
+        public Iterator<? extends ItemInfo> load(NodeId id, Path path) throws RepositoryException {
+            synchronized (loaded) {
+                loaded.add(path);
+            }
+            try {
+                loading(path);
+            } catch (RepositoryException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RepositoryException(e);
+            }
+            synchronized (loaded) {
+                finished.add(path);
+            }
+            ItemInfo info = path.equals(parentPath) ? parent("a", "b", "c", "d", "e") : leaf(path);
+            return new CloseableIterator(Collections.singletonList(info).iterator());
+        }
+
+        protected void loading(Path path) throws Exception {
+        }
+
+        int count(Path path) {
+            synchronized (loaded) {
+                return Collections.frequency(loaded, path);
+            }
+        }
+
+        boolean isFinished(Path path) {
+            synchronized (loaded) {
+                return finished.contains(path);
+            }
+        }
+
+        private class CloseableIterator implements Iterator<ItemInfo>, Closeable {
+
+            private final Iterator<ItemInfo> it;
+
+            private CloseableIterator(Iterator<ItemInfo> it) {
+                this.it = it;
+            }
+
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public ItemInfo next() {
+                return it.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            public void close() throws IOException {
+                closed = true;
+            }
+        }
+    }
+}